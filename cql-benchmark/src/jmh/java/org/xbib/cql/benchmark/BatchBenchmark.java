@@ -0,0 +1,57 @@
+package org.xbib.cql.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.xbib.cql.elasticsearch.BatchResult;
+import org.xbib.cql.elasticsearch.BatchTranslator;
+import org.xbib.cql.elasticsearch.ElasticsearchTranslator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the batch translation of the query corpus at several parallelism levels,
+ * to show how the batch translator scales with the number of cores.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class BatchBenchmark {
+
+    private static final int REPETITIONS = 100;
+
+    @Param({"1", "2", "4", "8"})
+    public int parallelism;
+
+    private List<String> queries;
+
+    private BatchTranslator batchTranslator;
+
+    @Setup
+    public void setup() {
+        List<String> corpus = Corpus.load(Corpus.ELASTICSEARCH);
+        queries = new ArrayList<>(corpus.size() * REPETITIONS);
+        for (int i = 0; i < REPETITIONS; i++) {
+            queries.addAll(corpus);
+        }
+        batchTranslator = new BatchTranslator(new ElasticsearchTranslator("cql.allIndexes"), parallelism);
+    }
+
+    @TearDown
+    public void tearDown() {
+        batchTranslator.close();
+    }
+
+    @Benchmark
+    public List<BatchResult> translateAll() {
+        return batchTranslator.translateAll(queries, 0, 10);
+    }
+}
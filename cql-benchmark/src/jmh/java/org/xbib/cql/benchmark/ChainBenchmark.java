@@ -0,0 +1,89 @@
+package org.xbib.cql.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.xbib.cql.CQLNormalizer;
+import org.xbib.cql.CQLParser;
+import org.xbib.cql.SortedQuery;
+import org.xbib.cql.elasticsearch.ElasticsearchTranslator;
+import org.xbib.cql.elasticsearch.optimizer.ExpressionOptimizer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Long boolean chains, as built from ID lists like <code>id = 1 or id = 2 or ... or id = 10000</code>.
+ * The time per operation should grow linearly with the length of the chain.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+public class ChainBenchmark {
+
+    private static final String GLOBAL_FIELD = "cql.allIndexes";
+
+    @Param({"100", "1000", "10000"})
+    int length;
+
+    @Param({"or", "and"})
+    String operator;
+
+    private String query;
+
+    private SortedQuery parsed;
+
+    private ElasticsearchTranslator translator;
+
+    private ElasticsearchTranslator optimizingTranslator;
+
+    @Setup
+    public void setup() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            if (i > 0) {
+                sb.append(' ').append(operator).append(' ');
+            }
+            sb.append("idKeyword = ").append(i);
+        }
+        query = sb.toString();
+        CQLParser parser = new CQLParser(query);
+        parser.parse();
+        parsed = parser.getCQLQuery();
+        translator = new ElasticsearchTranslator(GLOBAL_FIELD);
+        optimizingTranslator = new ElasticsearchTranslator(GLOBAL_FIELD).withOptimizer(ExpressionOptimizer.defaults());
+    }
+
+    @Benchmark
+    public SortedQuery parse() {
+        CQLParser parser = new CQLParser(query);
+        parser.parse();
+        return parser.getCQLQuery();
+    }
+
+    @Benchmark
+    public String serialize() {
+        CQLParser parser = new CQLParser(query);
+        parser.parse();
+        return parser.getCQLQuery().toString();
+    }
+
+    @Benchmark
+    public String canonicalize() {
+        return CQLNormalizer.canonicalize(parsed);
+    }
+
+    @Benchmark
+    public String translate() {
+        return translator.translate(parsed, 0, 10).getSource();
+    }
+
+    @Benchmark
+    public String translateOptimized() {
+        return optimizingTranslator.translate(parsed, 0, 10).getSource();
+    }
+}
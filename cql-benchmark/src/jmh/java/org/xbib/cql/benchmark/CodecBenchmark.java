@@ -0,0 +1,79 @@
+package org.xbib.cql.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.xbib.cql.CQLCodec;
+import org.xbib.cql.CQLParser;
+import org.xbib.cql.SortedQuery;
+import org.xbib.cql.SyntaxException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares decoding the binary form of the parsed query corpus by {@link CQLCodec} with parsing
+ * the CQL strings again, and measures encoding.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class CodecBenchmark {
+
+    private String[] queries;
+
+    private SortedQuery[] parsed;
+
+    private byte[][] encoded;
+
+    @Setup
+    public void setup() {
+        List<String> list = new ArrayList<>();
+        List<SortedQuery> parsedList = new ArrayList<>();
+        for (String query : Corpus.all()) {
+            try {
+                CQLParser parser = new CQLParser(query);
+                parser.parse();
+                parsedList.add(parser.getCQLQuery());
+                list.add(query);
+            } catch (SyntaxException e) {
+                // the corpora contain some invalid queries
+            }
+        }
+        queries = list.toArray(new String[0]);
+        parsed = parsedList.toArray(new SortedQuery[0]);
+        encoded = new byte[parsed.length][];
+        for (int i = 0; i < parsed.length; i++) {
+            encoded[i] = CQLCodec.encode(parsed[i]);
+        }
+    }
+
+    @Benchmark
+    public void parse(Blackhole blackhole) {
+        for (String query : queries) {
+            CQLParser parser = new CQLParser(query);
+            parser.parse();
+            blackhole.consume(parser.getCQLQuery());
+        }
+    }
+
+    @Benchmark
+    public void decode(Blackhole blackhole) {
+        for (byte[] bytes : encoded) {
+            blackhole.consume(CQLCodec.decode(bytes));
+        }
+    }
+
+    @Benchmark
+    public void encode(Blackhole blackhole) {
+        for (SortedQuery query : parsed) {
+            blackhole.consume(CQLCodec.encode(query));
+        }
+    }
+}
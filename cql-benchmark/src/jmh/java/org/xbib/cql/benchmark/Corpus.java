@@ -0,0 +1,61 @@
+package org.xbib.cql.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.LineNumberReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The benchmark workload: the CQL query corpora of the cql-common and cql-elasticsearch test suites.
+ */
+public final class Corpus {
+
+    public static final String COMMON = "/org/xbib/cql/queries.txt";
+
+    public static final String ELASTICSEARCH = "/org/xbib/cql/elasticsearch/queries.txt";
+
+    private Corpus() {
+    }
+
+    /**
+     * Load the queries of a corpus. Empty lines and comments are skipped, expected results
+     * after a '|' are cut off.
+     *
+     * @param path the resource path of the corpus
+     * @return the CQL queries
+     */
+    public static List<String> load(String path) {
+        List<String> list = new ArrayList<>();
+        try (InputStream in = Corpus.class.getResourceAsStream(path)) {
+            if (in == null) {
+                throw new IllegalStateException("corpus not found: " + path);
+            }
+            LineNumberReader lr = new LineNumberReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            String line;
+            while ((line = lr.readLine()) != null) {
+                if (line.trim().length() > 0 && !line.startsWith("#")) {
+                    int pos = line.indexOf('|');
+                    list.add(pos > 0 ? line.substring(0, pos) : line);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return list;
+    }
+
+    /**
+     * Load the queries of both corpora.
+     *
+     * @return the CQL queries
+     */
+    public static List<String> all() {
+        List<String> list = new ArrayList<>(load(COMMON));
+        list.addAll(load(ELASTICSEARCH));
+        return list;
+    }
+}
@@ -0,0 +1,81 @@
+package org.xbib.cql.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.xbib.cql.elasticsearch.ElasticsearchTranslator;
+import org.xbib.cql.metrics.DefaultQueryMetrics;
+import org.xbib.cql.metrics.QueryMetrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The overhead of metrics on the whole pipeline, from parsing to the search request source.
+ * <code>none</code> is the default, <code>disabled</code> are default metrics that are switched off,
+ * and <code>enabled</code> records every phase. Run with several threads to see contention.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+public class MetricsBenchmark {
+
+    private static final String GLOBAL_FIELD = "cql.allIndexes";
+
+    @Param({"none", "disabled", "enabled"})
+    String metrics;
+
+    private String[] queries;
+
+    private ElasticsearchTranslator translator;
+
+    /**
+     * The position in the corpus, per thread.
+     */
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        int next;
+    }
+
+    @Setup
+    public void setup() {
+        QueryMetrics queryMetrics;
+        switch (metrics) {
+            case "disabled":
+                queryMetrics = new DefaultQueryMetrics().setEnabled(false);
+                break;
+            case "enabled":
+                queryMetrics = new DefaultQueryMetrics();
+                break;
+            default:
+                queryMetrics = QueryMetrics.NONE;
+                break;
+        }
+        ElasticsearchTranslator plain = new ElasticsearchTranslator(GLOBAL_FIELD);
+        List<String> list = new ArrayList<>();
+        for (String query : Corpus.all()) {
+            try {
+                plain.translate(query, 0, 10);
+                list.add(query);
+            } catch (RuntimeException e) {
+                // skip queries that are not valid
+            }
+        }
+        queries = list.toArray(new String[0]);
+        translator = plain.withMetrics(queryMetrics);
+    }
+
+    @Benchmark
+    public String translate(Cursor cursor) {
+        String query = queries[cursor.next];
+        cursor.next = (cursor.next + 1) % queries.length;
+        return translator.translate(query, 0, 10).getSource();
+    }
+}
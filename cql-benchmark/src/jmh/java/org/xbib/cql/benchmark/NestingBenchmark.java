@@ -0,0 +1,84 @@
+package org.xbib.cql.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.xbib.cql.CQLParser;
+import org.xbib.cql.CQLSerializer;
+import org.xbib.cql.SortedQuery;
+import org.xbib.cql.elasticsearch.ClausePlacement;
+import org.xbib.cql.elasticsearch.ElasticsearchTranslator;
+import org.xbib.cql.elasticsearch.optimizer.ExpressionOptimizer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deeply nested parenthesized queries, as built by generated clients, like
+ * <code>id = 0 and (id = 1 or (id = 2 and (...)))</code>. The generators run on an explicit stack,
+ * so the time per operation should grow linearly with the depth, and no depth overflows the thread stack.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+public class NestingBenchmark {
+
+    private static final String GLOBAL_FIELD = "cql.allIndexes";
+
+    @Param({"100", "1000", "10000"})
+    int depth;
+
+    private String query;
+
+    private SortedQuery parsed;
+
+    private ElasticsearchTranslator translator;
+
+    private ElasticsearchTranslator optimizingTranslator;
+
+    @Setup
+    public void setup() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            sb.append("idKeyword = ").append(i).append(i % 2 == 0 ? " and (" : " or (");
+        }
+        sb.append("title = end");
+        for (int i = 0; i < depth; i++) {
+            sb.append(')');
+        }
+        query = sb.toString();
+        CQLParser parser = new CQLParser(query);
+        parser.parse();
+        parsed = parser.getCQLQuery();
+        translator = new ElasticsearchTranslator(GLOBAL_FIELD);
+        optimizingTranslator = new ElasticsearchTranslator(GLOBAL_FIELD)
+                .withOptimizer(ExpressionOptimizer.defaults())
+                .withClausePlacement(new ClausePlacement());
+    }
+
+    @Benchmark
+    public SortedQuery parse() {
+        CQLParser parser = new CQLParser(query);
+        parser.parse();
+        return parser.getCQLQuery();
+    }
+
+    @Benchmark
+    public String serialize() {
+        return CQLSerializer.toCQL(parsed);
+    }
+
+    @Benchmark
+    public String translate() {
+        return translator.translate(parsed, 0, 10).getSource();
+    }
+
+    @Benchmark
+    public String translateOptimized() {
+        return optimizingTranslator.translate(parsed, 0, 10).getSource();
+    }
+}
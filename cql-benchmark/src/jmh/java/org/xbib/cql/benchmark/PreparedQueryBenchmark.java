@@ -0,0 +1,50 @@
+package org.xbib.cql.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.xbib.cql.elasticsearch.ElasticsearchTranslator;
+import org.xbib.cql.elasticsearch.PreparedQuery;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares binding values to a {@link PreparedQuery} with parsing and translating the same query.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class PreparedQueryBenchmark {
+
+    private static final String[] TITLES = {"unix", "linux", "Jörg", "database", "network"};
+
+    private ElasticsearchTranslator translator;
+
+    private PreparedQuery prepared;
+
+    private int i;
+
+    @Setup
+    public void setup() {
+        translator = new ElasticsearchTranslator("cql.allIndexes");
+        prepared = translator.prepare("dc.title = ? and dc.creator = ? and dc.date > ? sortby dc.date", 0, 10);
+    }
+
+    @Benchmark
+    public String translate() {
+        int n = i++;
+        return translator.translate("dc.title = \"" + TITLES[n % TITLES.length] + "\" and dc.creator = \""
+                + TITLES[(n + 1) % TITLES.length] + "\" and dc.date > " + (1900 + n % 100) + " sortby dc.date",
+                0, 10).getSource();
+    }
+
+    @Benchmark
+    public String bind() {
+        int n = i++;
+        return prepared.getSource(TITLES[n % TITLES.length], TITLES[(n + 1) % TITLES.length], 1900L + n % 100);
+    }
+}
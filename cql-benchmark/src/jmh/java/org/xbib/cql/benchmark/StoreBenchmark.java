@@ -0,0 +1,80 @@
+package org.xbib.cql.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+import org.xbib.cql.SyntaxException;
+import org.xbib.cql.elasticsearch.CompiledQuery;
+import org.xbib.cql.elasticsearch.CompiledQueryCache;
+import org.xbib.cql.elasticsearch.CompiledQueryStore;
+import org.xbib.cql.elasticsearch.QuerySettings;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares a cold start, where every query of the corpus is parsed and translated, with a warm start
+ * from a {@link CompiledQueryStore}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+public class StoreBenchmark {
+
+    private static final QuerySettings SETTINGS = new QuerySettings("cql.allIndexes");
+
+    private String[] queries;
+
+    private Path path;
+
+    private CompiledQueryStore store;
+
+    @Setup
+    public void setup() throws IOException {
+        path = Files.createTempFile("cql", ".store");
+        store = new CompiledQueryStore(path);
+        CompiledQueryCache cache = new CompiledQueryCache(1000, 1, store);
+        List<String> list = new ArrayList<>();
+        for (String query : Corpus.load(Corpus.ELASTICSEARCH)) {
+            try {
+                cache.get(query, SETTINGS, 0, 10);
+                list.add(query);
+            } catch (SyntaxException e) {
+                // the corpus contains some invalid queries
+            }
+        }
+        queries = list.toArray(new String[0]);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        store.close();
+        Files.deleteIfExists(path);
+    }
+
+    @Benchmark
+    public void compile(Blackhole blackhole) {
+        CompiledQueryCache cache = new CompiledQueryCache(1000, 1);
+        for (String query : queries) {
+            blackhole.consume(cache.get(query, SETTINGS, 0, 10));
+        }
+    }
+
+    @Benchmark
+    public void load(Blackhole blackhole) {
+        for (String query : queries) {
+            CompiledQuery compiled = store.get(query, SETTINGS, 0, 10);
+            blackhole.consume(compiled);
+        }
+    }
+}
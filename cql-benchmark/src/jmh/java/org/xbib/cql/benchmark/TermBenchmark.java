@@ -0,0 +1,100 @@
+package org.xbib.cql.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.xbib.cql.CQLLexer;
+import org.xbib.cql.Term;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the date recognition of {@link Term} with the former probing by {@link SimpleDateFormat},
+ * on the words of the query corpus.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TermBenchmark {
+
+    /**
+     * The words of the corpus, prepared once per thread.
+     */
+    @State(Scope.Thread)
+    public static class Words {
+
+        String[] words;
+
+        int next;
+
+        @Setup
+        public void setup() throws IOException {
+            List<String> list = new ArrayList<>();
+            for (String query : Corpus.all()) {
+                CQLLexer lexer = new CQLLexer(query);
+                try {
+                    while (lexer.nextToken() != 0) {
+                        if (lexer.getSemantic() instanceof String) {
+                            list.add((String) lexer.getSemantic());
+                        }
+                    }
+                } catch (RuntimeException e) {
+                    // skip the rest of the query
+                }
+            }
+            list.add("2013-01-01");
+            list.add("2013-01-01T00:00:00Z");
+            words = list.toArray(new String[0]);
+        }
+
+        String next() {
+            if (next >= words.length) {
+                next = 0;
+            }
+            return words[next++];
+        }
+    }
+
+    @Benchmark
+    public boolean term(Words words) {
+        return new Term(words.next()).isDate();
+    }
+
+    @Benchmark
+    public String termToString(Words words) {
+        return new Term(words.next()).toString();
+    }
+
+    @Benchmark
+    public boolean simpleDateFormatProbe(Words words) {
+        return probe(words.next()) != null;
+    }
+
+    private static Date probe(String value) {
+        SimpleDateFormat sdf = new SimpleDateFormat();
+        sdf.applyPattern("yyyy-MM-dd'T'HH:mm:ss'Z'");
+        sdf.setTimeZone(TimeZone.getTimeZone("GMT"));
+        sdf.setLenient(true);
+        try {
+            return sdf.parse(value);
+        } catch (ParseException pe) {
+            // skip
+        }
+        sdf.applyPattern("yyyy-MM-dd");
+        try {
+            return sdf.parse(value);
+        } catch (ParseException pe) {
+            return null;
+        }
+    }
+}
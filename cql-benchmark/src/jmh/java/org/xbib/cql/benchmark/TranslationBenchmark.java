@@ -0,0 +1,215 @@
+package org.xbib.cql.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.xbib.cql.CQLGenerator;
+import org.xbib.cql.CQLLexer;
+import org.xbib.cql.CQLParser;
+import org.xbib.cql.SortedQuery;
+import org.xbib.cql.elasticsearch.ElasticsearchQueryGenerator;
+import org.xbib.cql.elasticsearch.ElasticsearchTranslator;
+import org.xbib.cql.elasticsearch.FacetsGenerator;
+import org.xbib.cql.elasticsearch.QueryGenerator;
+import org.xbib.cql.elasticsearch.SortGenerator;
+import org.xbib.cql.elasticsearch.SourceGenerator;
+import org.xbib.cql.elasticsearch.Utf8JsonWriter;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures each phase of the CQL to Elasticsearch translation separately, and the whole pipeline.
+ * Every invocation processes the next query of the corpus, so the sample mode reports
+ * per-query latency percentiles.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TranslationBenchmark {
+
+    private static final String GLOBAL_FIELD = "cql.allIndexes";
+
+    /**
+     * The workload, prepared once per thread.
+     */
+    @State(Scope.Thread)
+    public static class Workload {
+
+        String[] queries;
+
+        SortedQuery[] parsed;
+
+        String[] translatable;
+
+        SortedQuery[] translatableParsed;
+
+        QueryGenerator[] queryResults;
+
+        SortGenerator[] sortResults;
+
+        FacetsGenerator[] facetResults;
+
+        ElasticsearchTranslator translator;
+
+        ByteBuffer buffer;
+
+        CQLLexer lexer;
+
+        CQLParser parser;
+
+        int next;
+
+        @Setup
+        public void setup() throws IOException {
+            List<String> list = new ArrayList<>();
+            List<SortedQuery> parsedList = new ArrayList<>();
+            for (String query : Corpus.all()) {
+                try {
+                    CQLParser parser = new CQLParser(query);
+                    parser.parse();
+                    list.add(query);
+                    parsedList.add(parser.getCQLQuery());
+                } catch (RuntimeException e) {
+                    // not part of the workload
+                }
+            }
+            queries = list.toArray(new String[0]);
+            parsed = parsedList.toArray(new SortedQuery[0]);
+            List<String> esList = new ArrayList<>();
+            List<SortedQuery> esParsed = new ArrayList<>();
+            List<QueryGenerator> queryGens = new ArrayList<>();
+            List<SortGenerator> sortGens = new ArrayList<>();
+            List<FacetsGenerator> facetGens = new ArrayList<>();
+            for (String query : Corpus.load(Corpus.ELASTICSEARCH)) {
+                try {
+                    CQLParser parser = new CQLParser(query);
+                    parser.parse();
+                    QueryGenerator queryGen = new QueryGenerator();
+                    SortGenerator sortGen = new SortGenerator();
+                    FacetsGenerator facetGen = new FacetsGenerator();
+                    ElasticsearchQueryGenerator generator = new ElasticsearchQueryGenerator(GLOBAL_FIELD,
+                            new SourceGenerator(), queryGen, facetGen, sortGen, false);
+                    parser.getCQLQuery().accept(generator);
+                    esList.add(query);
+                    esParsed.add(parser.getCQLQuery());
+                    queryGens.add(queryGen);
+                    sortGens.add(sortGen);
+                    facetGens.add(facetGen);
+                } catch (RuntimeException e) {
+                    // not part of the workload
+                }
+            }
+            translatable = esList.toArray(new String[0]);
+            translatableParsed = esParsed.toArray(new SortedQuery[0]);
+            queryResults = queryGens.toArray(new QueryGenerator[0]);
+            sortResults = sortGens.toArray(new SortGenerator[0]);
+            facetResults = facetGens.toArray(new FacetsGenerator[0]);
+            translator = new ElasticsearchTranslator(GLOBAL_FIELD);
+            buffer = ByteBuffer.allocate(64 * 1024);
+            lexer = new CQLLexer("");
+            parser = new CQLParser("");
+        }
+
+        int next(int length) {
+            if (next >= length) {
+                next = 0;
+            }
+            return next++;
+        }
+    }
+
+    @Benchmark
+    public int lex(Workload workload) {
+        CQLLexer lexer = new CQLLexer(new StringReader(workload.queries[workload.next(workload.queries.length)]));
+        int count = 0;
+        while (lexer.nextToken() != 0) {
+            count++;
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int lexReuse(Workload workload) {
+        CQLLexer lexer = workload.lexer;
+        lexer.reset(workload.queries[workload.next(workload.queries.length)]);
+        int count = 0;
+        while (lexer.nextToken() != 0) {
+            count++;
+        }
+        return count;
+    }
+
+    @Benchmark
+    public SortedQuery parse(Workload workload) {
+        CQLParser parser = new CQLParser(workload.queries[workload.next(workload.queries.length)]);
+        parser.parse();
+        return parser.getCQLQuery();
+    }
+
+    @Benchmark
+    public SortedQuery parseReuse(Workload workload) {
+        CQLParser parser = workload.parser.reset(workload.queries[workload.next(workload.queries.length)]);
+        parser.parse();
+        return parser.getCQLQuery();
+    }
+
+    @Benchmark
+    public String normalize(Workload workload) {
+        CQLGenerator generator = new CQLGenerator();
+        workload.parsed[workload.next(workload.parsed.length)].accept(generator);
+        return generator.getResult();
+    }
+
+    @Benchmark
+    public String translate(Workload workload) throws IOException {
+        ElasticsearchQueryGenerator generator = new ElasticsearchQueryGenerator(GLOBAL_FIELD);
+        workload.translatableParsed[workload.next(workload.translatableParsed.length)].accept(generator);
+        return generator.getQueryResult();
+    }
+
+    @Benchmark
+    public String translateShared(Workload workload) {
+        return workload.translator.translate(workload.translatableParsed[workload.next(workload.translatableParsed.length)],
+                0, 10).getSource();
+    }
+
+    @Benchmark
+    public String buildSource(Workload workload) throws IOException {
+        int i = workload.next(workload.queryResults.length);
+        SourceGenerator sourceGen = new SourceGenerator();
+        sourceGen.build(workload.queryResults[i], 0, 10,
+                workload.sortResults[i].getResult(), workload.facetResults[i].getResult());
+        return sourceGen.getResult().build();
+    }
+
+    @Benchmark
+    public ByteBuffer writeSource(Workload workload) throws IOException {
+        int i = workload.next(workload.queryResults.length);
+        ByteBuffer buffer = workload.buffer;
+        buffer.clear();
+        Utf8JsonWriter writer = new Utf8JsonWriter(buffer);
+        new SourceGenerator().write(workload.queryResults[i], 0, 10,
+                workload.sortResults[i], workload.facetResults[i], writer);
+        writer.flush();
+        return buffer;
+    }
+
+    @Benchmark
+    public String pipeline(Workload workload) throws IOException {
+        CQLParser parser = new CQLParser(workload.translatable[workload.next(workload.translatable.length)]);
+        parser.parse();
+        CQLGenerator cqlGenerator = new CQLGenerator();
+        parser.getCQLQuery().accept(cqlGenerator);
+        ElasticsearchQueryGenerator generator = new ElasticsearchQueryGenerator(GLOBAL_FIELD);
+        parser.getCQLQuery().accept(generator);
+        return generator.getSourceResult();
+    }
+}
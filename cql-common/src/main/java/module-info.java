@@ -1,6 +1,9 @@
 module org.xbib.cql {
     exports org.xbib.cql;
+    exports org.xbib.cql.jfr to org.xbib.cql.elasticsearch;
+    exports org.xbib.cql.metrics;
     exports org.xbib.cql.model;
     exports org.xbib.cql.model.breadcrumb;
     exports org.xbib.cql.util;
+    requires jdk.jfr;
 }
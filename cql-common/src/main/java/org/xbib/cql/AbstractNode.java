@@ -1,10 +1,58 @@
 package org.xbib.cql;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
 /**
  * This abstract node class is the base class for the CQL abstract syntax tree.
+ *
+ * The CQL string of a node is computed once and cached, together with a 64-bit fingerprint.
+ * Hash codes, comparisons and the fast path of equality checks use the cached values.
+ *
+ * Constructors register their children with {@link #adopt(AbstractNode)}, so every node knows its
+ * parent. The string of a node depends on all of its descendants, so setters that modify a node call
+ * {@link #checkModifiable()} before and {@link #invalidate()} after the modification, which clears
+ * the cached strings of the node and of its ancestors. A node that is adopted by more than one parent
+ * can not find all of its ancestors, so it and its descendants can not be modified any more. Rewriters
+ * such as {@link CQLNormalizer} therefore copy the nodes of their input instead of adopting them.
+ *
+ * The structural equality of the subclasses compares the nodes of two trees pair by pair on an explicit
+ * stack, see {@link #structurallyEquals(AbstractNode, AbstractNode)}, so deeply nested trees do not use
+ * the thread stack.
+ *
+ * A node must not be modified while other threads use the tree.
  */
 public abstract class AbstractNode implements Node {
 
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * The parent of nodes that are adopted by more than one parent.
+     */
+    private static final AbstractNode SHARED = new AbstractNode() {
+        @Override
+        public void accept(Visitor visitor) {
+        }
+    };
+
+    private static final VarHandle PARENT;
+
+    static {
+        try {
+            PARENT = MethodHandles.lookup().findVarHandle(AbstractNode.class, "parent", AbstractNode.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private volatile AbstractNode parent;
+
+    private volatile Canonical canonical;
+
     public AbstractNode() {
     }
 
@@ -16,6 +64,34 @@ public abstract class AbstractNode implements Node {
     @Override
     public abstract void accept(Visitor visitor);
 
+    /**
+     * Render the CQL string of this node.
+     *
+     * @return the CQL string
+     */
+    protected String render() {
+        return CQLSerializer.toCQL(this);
+    }
+
+    /**
+     * Get the 64-bit fingerprint of the CQL string of this node.
+     *
+     * @return the fingerprint
+     */
+    public long getFingerprint() {
+        return canonical().fingerprint;
+    }
+
+    /**
+     * Whether the CQL string and the fingerprint of this node are computed already, so that
+     * {@link #toString()} and {@link #getFingerprint()} do not render the node.
+     *
+     * @return true if the string of this node is cached
+     */
+    public boolean isRendered() {
+        return canonical != null;
+    }
+
     /**
      * Compare this node to another node.
      */
@@ -26,4 +102,187 @@ public abstract class AbstractNode implements Node {
         }
         return toString().compareTo(object.toString());
     }
+
+    /**
+     * The hash code is derived from the fingerprint. Structurally equal nodes render
+     * the same string, so this is consistent with the structural equality of the subclasses.
+     */
+    @Override
+    public int hashCode() {
+        long fingerprint = getFingerprint();
+        return (int) (fingerprint ^ (fingerprint >>> 32));
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        return this == object;
+    }
+
+    /**
+     * Get the CQL string of this node.
+     *
+     * @return the CQL string
+     */
+    @Override
+    public final String toString() {
+        return canonical().text;
+    }
+
+    /**
+     * Fast check for the equality of subclasses: nodes with different fingerprints can not be equal.
+     *
+     * @param other the other node
+     * @return false if the nodes are not equal, true if they may be equal
+     */
+    protected boolean sameFingerprint(AbstractNode other) {
+        return getFingerprint() == other.getFingerprint();
+    }
+
+    /**
+     * Compare two trees node by node. The fingerprints of a pair of nodes are only compared if both
+     * are cached already, so that the subtrees are not rendered again.
+     *
+     * @param a the first tree
+     * @param b the second tree
+     * @return true if the trees are structurally equal
+     */
+    static boolean structurallyEquals(AbstractNode a, AbstractNode b) {
+        Deque<AbstractNode> pending = new ArrayDeque<>();
+        pend(pending, a, b);
+        while (!pending.isEmpty()) {
+            AbstractNode y = pending.pop();
+            AbstractNode x = pending.pop();
+            if (x == y) {
+                continue;
+            }
+            if (x.isRendered() && y.isRendered() && !x.sameFingerprint(y)) {
+                return false;
+            }
+            if (!x.equalFields(y, pending)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compare the fields of this node to the fields of another node. Children that may nest deeply are
+     * not compared here, but pushed with {@link #pend(Deque, AbstractNode, AbstractNode)}.
+     *
+     * @param other   the other node
+     * @param pending the pairs of nodes that are still to be compared
+     * @return false if the nodes are not equal
+     */
+    boolean equalFields(AbstractNode other, Deque<AbstractNode> pending) {
+        return equals(other);
+    }
+
+    /**
+     * Push a pair of children to be compared.
+     *
+     * @param pending the pairs of nodes that are still to be compared
+     * @param a       the child of the first node, may be null
+     * @param b       the child of the second node, may be null
+     * @return false if only one of the children is null
+     */
+    static boolean pend(Deque<AbstractNode> pending, AbstractNode a, AbstractNode b) {
+        if (a == null || b == null) {
+            return a == b;
+        }
+        pending.push(a);
+        pending.push(b);
+        return true;
+    }
+
+    /**
+     * Register a child of this node. Constructors call this for each of their children.
+     *
+     * @param child the child, may be null
+     * @param <T>   the type of the child
+     * @return the child
+     */
+    protected final <T extends AbstractNode> T adopt(T child) {
+        AbstractNode node = child;
+        if (node != null && !PARENT.compareAndSet(node, null, this) && node.parent != this) {
+            node.parent = SHARED;
+        }
+        return child;
+    }
+
+    /**
+     * Check that this node can be modified, before a setter modifies it.
+     *
+     * @throws IllegalStateException if this node or one of its ancestors is shared by several parents
+     */
+    protected final void checkModifiable() {
+        for (AbstractNode node = this; node != null; node = node.parent) {
+            if (node.parent == SHARED) {
+                throw new IllegalStateException("node is shared by several trees and can not be modified: "
+                        + node);
+            }
+        }
+    }
+
+    /**
+     * Invalidate the cached strings of this node and of its ancestors after a modification.
+     */
+    protected final void invalidate() {
+        for (AbstractNode node = this; node != null && node != SHARED; node = node.parent) {
+            node.canonical = null;
+        }
+    }
+
+    /**
+     * Whether the string of this node is cached. Nodes that are views of other nodes do not cache,
+     * because they are not registered as parents of their children.
+     *
+     * @return true if the string is cached
+     */
+    protected boolean isCached() {
+        return true;
+    }
+
+    private Canonical canonical() {
+        Canonical c = canonical;
+        if (c == null) {
+            c = new Canonical(render());
+            if (isCached()) {
+                canonical = c;
+            }
+        }
+        return c;
+    }
+
+    /**
+     * Check that this node is still being built by the parser: it has no parent, and its string is not
+     * cached. Such a node can grow without invalidating any cached string.
+     *
+     * @throws IllegalStateException if the node is in use
+     */
+    final void checkBuilding() {
+        if (parent != null || canonical != null) {
+            throw new IllegalStateException(getClass().getSimpleName() + " is in use and can not be extended");
+        }
+    }
+
+    /**
+     * The cached string and fingerprint.
+     */
+    private static final class Canonical {
+
+        private final String text;
+
+        private final long fingerprint;
+
+        Canonical(String text) {
+            this.text = text;
+            long h = FNV_OFFSET_BASIS;
+            for (int i = 0; text != null && i < text.length(); i++) {
+                char ch = text.charAt(i);
+                h = (h ^ (ch & 0xff)) * FNV_PRIME;
+                h = (h ^ (ch >>> 8)) * FNV_PRIME;
+            }
+            this.fingerprint = h;
+        }
+    }
 }
@@ -1,5 +1,7 @@
 package org.xbib.cql;
 
+import java.util.Objects;
+
 /**
  * Abstract syntax tree of CQL - Boolean Group.
  */
@@ -10,7 +12,7 @@ public class BooleanGroup extends AbstractNode {
 
     BooleanGroup(BooleanOperator op, ModifierList modifiers) {
         this.op = op;
-        this.modifiers = modifiers;
+        this.modifiers = adopt(modifiers);
     }
 
     BooleanGroup(BooleanOperator op) {
@@ -25,14 +27,31 @@ public class BooleanGroup extends AbstractNode {
         return modifiers;
     }
 
+    /**
+     * Copy this group and its modifiers, so that another tree can use it without sharing it.
+     *
+     * @return the copy
+     */
+    BooleanGroup copy() {
+        return new BooleanGroup(op, modifiers != null ? modifiers.copy() : null);
+    }
+
     @Override
     public void accept(Visitor visitor) {
         visitor.visit(this);
     }
 
     @Override
-    public String toString() {
-        return op != null && modifiers != null ? op + modifiers.toString()
-                : op != null ? op.toString() : "";
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof BooleanGroup)) {
+            return false;
+        }
+        BooleanGroup other = (BooleanGroup) o;
+        return sameFingerprint(other)
+                && Objects.equals(op, other.op)
+                && Objects.equals(modifiers, other.modifiers);
     }
 }
@@ -0,0 +1,719 @@
+package org.xbib.cql;
+
+import org.xbib.cql.util.Traversal;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact, versioned binary form of a parsed CQL query. Decoding the binary form is cheaper than
+ * parsing the CQL string again, so it is used to store and to ship compiled queries.
+ *
+ * The binary form starts with the magic bytes <code>CQL</code> and a version byte, followed by a
+ * string table and the nodes of the query in post-order. All strings, like index names, modifier names
+ * and terms, are written once into the string table and are referenced by their position, so repeated
+ * index names cost one or two bytes. Lengths, counts and references are unsigned LEB128 varints, long
+ * terms are zig-zag varints, and double terms are the eight bytes of their IEEE 754 bits.
+ *
+ * Each node is a tag byte with the scalar fields of the node, written after all of its children.
+ * The decoder is a stack machine: leaves are pushed, and a node pops its children from the stack.
+ * Neither the encoder nor the decoder recurses, so the depth of a query is only limited by the heap.
+ * Operators and comparitors are written by their ordinal, new constants must be appended to their enums.
+ *
+ * The codec is stateless and thread safe.
+ */
+public final class CQLCodec {
+
+    /**
+     * The version of the binary form.
+     */
+    public static final int VERSION = 1;
+
+    private static final byte[] MAGIC = {'C', 'Q', 'L'};
+
+    private static final String PLACEHOLDER = "?";
+
+    private static final int TERM_STRING = 1;
+
+    private static final int TERM_DATE = 2;
+
+    private static final int TERM_LONG = 3;
+
+    private static final int TERM_DOUBLE = 4;
+
+    private static final int TERM_IDENTIFIER = 5;
+
+    private static final int TERM_QUOTED_IDENTIFIER = 6;
+
+    private static final int TERM_NAME = 7;
+
+    private static final int INDEX = 8;
+
+    private static final int MODIFIER = 9;
+
+    private static final int MODIFIER_WITH_TERM = 10;
+
+    private static final int MODIFIER_LIST = 11;
+
+    private static final int RELATION = 12;
+
+    private static final int BOOLEAN_GROUP = 13;
+
+    private static final int SEARCH_CLAUSE = 14;
+
+    private static final int SEARCH_CLAUSE_TERM = 15;
+
+    private static final int SEARCH_CLAUSE_QUERY = 16;
+
+    private static final int SCOPED_CLAUSE = 17;
+
+    private static final int PREFIX_ASSIGNMENT = 18;
+
+    private static final int QUERY = 19;
+
+    private static final int SINGLE_SPEC = 20;
+
+    private static final int SORT_SPEC = 21;
+
+    private static final int SORTED_QUERY = 22;
+
+    private static final int FLAG_MODIFIERS = 1;
+
+    private static final int FLAG_NESTED = 2;
+
+    private static final Comparitor[] COMPARITORS = Comparitor.values();
+
+    private static final BooleanOperator[] OPERATORS = BooleanOperator.values();
+
+    private CQLCodec() {
+    }
+
+    /**
+     * Encode a query.
+     *
+     * @param query the query
+     * @return the binary form
+     */
+    public static byte[] encode(SortedQuery query) {
+        Encoder encoder = new Encoder();
+        Traversal.walk(query, encoder);
+        Output out = new Output(encoder.nodes.size + 64);
+        out.write(MAGIC);
+        out.writeByte(VERSION);
+        out.writeVarint(encoder.strings.size());
+        for (byte[] bytes : encoder.strings) {
+            out.writeVarint(bytes.length);
+            out.write(bytes);
+        }
+        out.write(encoder.nodes.bytes, encoder.nodes.size);
+        return out.toByteArray();
+    }
+
+    /**
+     * Decode a query.
+     *
+     * @param bytes the binary form
+     * @return the query
+     * @throws SyntaxException if the bytes are not a query of a supported version
+     */
+    public static SortedQuery decode(byte[] bytes) {
+        return decode(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Decode a query from a range of a byte array.
+     *
+     * @param bytes  the bytes
+     * @param offset the offset of the binary form
+     * @param length the length of the binary form
+     * @return the query
+     * @throws SyntaxException if the bytes are not a query of a supported version
+     */
+    public static SortedQuery decode(byte[] bytes, int offset, int length) {
+        return decoder(bytes, offset, length, null).getQuery();
+    }
+
+    /**
+     * Decode a query template, and replace its placeholders, the unquoted terms <code>?</code>,
+     * by parameters. The placeholders are replaced in the order of the query.
+     *
+     * @param bytes      the binary form of the template
+     * @param offset     the offset of the binary form
+     * @param length     the length of the binary form
+     * @param parameters the parameters, or null to keep the placeholders
+     * @return the decoder with the query and the number of placeholders
+     */
+    static Decoder decoder(byte[] bytes, int offset, int length, Term[] parameters) {
+        if (offset < 0 || length < 0 || offset + length > bytes.length) {
+            throw new IndexOutOfBoundsException("offset " + offset + ", length " + length
+                    + ", array length " + bytes.length);
+        }
+        Input in = new Input(bytes, offset, offset + length);
+        for (byte b : MAGIC) {
+            if (in.pos >= in.end || in.bytes[in.pos++] != b) {
+                throw new SyntaxException("not an encoded CQL query");
+            }
+        }
+        try {
+            int version = in.readByte();
+            if (version != VERSION) {
+                throw new SyntaxException("unsupported version of an encoded CQL query: " + version);
+            }
+            Decoder decoder = new Decoder(in, parameters);
+            decoder.decode();
+            return decoder;
+        } catch (IndexOutOfBoundsException | ClassCastException | IllegalArgumentException e) {
+            throw new SyntaxException("corrupt encoded CQL query at offset " + (in.pos - offset), e);
+        }
+    }
+
+    /**
+     * Writes the nodes in post-order, and collects the string table.
+     */
+    private static final class Encoder implements Traversal.Listener<Node> {
+
+        private final Map<String, Integer> refs = new HashMap<>();
+
+        private final List<byte[]> strings = new ArrayList<>();
+
+        private final Output nodes = new Output(256);
+
+        @Override
+        public void enter(Node node, Traversal<Node> traversal) {
+            if (node instanceof SortedQuery) {
+                SortedQuery query = (SortedQuery) node;
+                traversal.child(query.getQuery());
+                if (query.getSortSpec() != null) {
+                    traversal.child(query.getSortSpec());
+                }
+            } else if (node instanceof Query) {
+                Query query = (Query) node;
+                for (PrefixAssignment assignment : query.getPrefixAssignments()) {
+                    traversal.child(assignment);
+                }
+                if (query.getQuery() != null) {
+                    if (query.getPrefixAssignments().isEmpty()) {
+                        throw new IllegalArgumentException("nested query without prefix assignment");
+                    }
+                    traversal.child(query.getQuery());
+                } else {
+                    traversal.child(query.getScopedClause());
+                }
+            } else if (node instanceof ScopedClause) {
+                ScopedClause clause = (ScopedClause) node;
+                List<SearchClause> clauses = clause.getSearchClauses();
+                List<BooleanGroup> groups = clause.getBooleanGroups();
+                traversal.child(clauses.get(0));
+                for (int i = 1; i < clauses.size(); i++) {
+                    traversal.child(groups.get(i - 1));
+                    traversal.child(clauses.get(i));
+                }
+            } else if (node instanceof SearchClause) {
+                SearchClause clause = (SearchClause) node;
+                if (clause.getQuery() != null) {
+                    traversal.child(clause.getQuery());
+                } else {
+                    if (clause.getIndex() != null) {
+                        traversal.child(clause.getIndex());
+                        traversal.child(clause.getRelation());
+                    }
+                    traversal.child(clause.getTerm());
+                }
+            } else if (node instanceof PrefixAssignment) {
+                PrefixAssignment assignment = (PrefixAssignment) node;
+                if (assignment.getPrefix() != null) {
+                    traversal.child(assignment.getPrefix());
+                }
+                traversal.child(assignment.getURI());
+            } else if (node instanceof Relation) {
+                child(traversal, ((Relation) node).getModifierList());
+            } else if (node instanceof BooleanGroup) {
+                child(traversal, ((BooleanGroup) node).getModifierList());
+            } else if (node instanceof SortSpec) {
+                SortSpec spec = (SortSpec) node;
+                if (spec.getSortSpec() != null) {
+                    traversal.child(spec.getSortSpec());
+                }
+                traversal.child(spec.getSingleSpec());
+            } else if (node instanceof SingleSpec) {
+                traversal.child(((SingleSpec) node).getIndex());
+                child(traversal, ((SingleSpec) node).getModifierList());
+            } else if (node instanceof ModifierList) {
+                for (Modifier modifier : ((ModifierList) node).getModifierList()) {
+                    traversal.child(modifier);
+                }
+            } else if (node instanceof Modifier) {
+                if (((Modifier) node).getTerm() != null) {
+                    traversal.child(((Modifier) node).getTerm());
+                }
+            }
+        }
+
+        @Override
+        public void leave(Node node) {
+            if (node instanceof Term) {
+                term((Term) node);
+            } else if (node instanceof Index) {
+                Index index = (Index) node;
+                nodes.writeByte(INDEX);
+                string(index.getContext());
+                string(index.getName());
+            } else if (node instanceof SearchClause) {
+                SearchClause clause = (SearchClause) node;
+                nodes.writeByte(clause.getQuery() != null ? SEARCH_CLAUSE_QUERY
+                        : clause.getIndex() != null ? SEARCH_CLAUSE : SEARCH_CLAUSE_TERM);
+            } else if (node instanceof Relation) {
+                Relation relation = (Relation) node;
+                nodes.writeByte(RELATION);
+                nodes.writeByte(relation.getModifierList() != null ? FLAG_MODIFIERS : 0);
+                nodes.writeVarint(relation.getComparitor().ordinal());
+            } else if (node instanceof BooleanGroup) {
+                BooleanGroup group = (BooleanGroup) node;
+                nodes.writeByte(BOOLEAN_GROUP);
+                nodes.writeByte(group.getModifierList() != null ? FLAG_MODIFIERS : 0);
+                nodes.writeVarint(group.getOperator().ordinal());
+            } else if (node instanceof ScopedClause) {
+                nodes.writeByte(SCOPED_CLAUSE);
+                nodes.writeVarint(((ScopedClause) node).getSearchClauses().size());
+            } else if (node instanceof Query) {
+                Query query = (Query) node;
+                nodes.writeByte(QUERY);
+                nodes.writeByte(query.getQuery() != null ? FLAG_NESTED : 0);
+                nodes.writeVarint(query.getPrefixAssignments().size());
+            } else if (node instanceof PrefixAssignment) {
+                nodes.writeByte(PREFIX_ASSIGNMENT);
+                nodes.writeByte(((PrefixAssignment) node).getPrefix() != null ? FLAG_NESTED : 0);
+            } else if (node instanceof Modifier) {
+                Modifier modifier = (Modifier) node;
+                if (modifier.getTerm() != null) {
+                    nodes.writeByte(MODIFIER_WITH_TERM);
+                    string(modifier.getName().getName());
+                    nodes.writeVarint(modifier.getOperator().ordinal());
+                } else {
+                    nodes.writeByte(MODIFIER);
+                    string(modifier.getName().getName());
+                }
+            } else if (node instanceof ModifierList) {
+                nodes.writeByte(MODIFIER_LIST);
+                nodes.writeVarint(((ModifierList) node).getModifierList().size());
+            } else if (node instanceof SingleSpec) {
+                nodes.writeByte(SINGLE_SPEC);
+                nodes.writeByte(((SingleSpec) node).getModifierList() != null ? FLAG_MODIFIERS : 0);
+            } else if (node instanceof SortSpec) {
+                nodes.writeByte(SORT_SPEC);
+                nodes.writeByte(((SortSpec) node).getSortSpec() != null ? FLAG_NESTED : 0);
+            } else if (node instanceof SortedQuery) {
+                nodes.writeByte(SORTED_QUERY);
+                nodes.writeByte(((SortedQuery) node).getSortSpec() != null ? FLAG_NESTED : 0);
+            } else {
+                throw new IllegalArgumentException("can not encode " + node.getClass().getName());
+            }
+        }
+
+        private static void child(Traversal<Node> traversal, ModifierList modifiers) {
+            if (modifiers != null) {
+                traversal.child(modifiers);
+            }
+        }
+
+        private void term(Term term) {
+            if (term.isLong()) {
+                nodes.writeByte(TERM_LONG);
+                long value = Long.parseLong(term.getValue());
+                nodes.writeVarlong((value << 1) ^ (value >> 63));
+            } else if (term.isFloat()) {
+                nodes.writeByte(TERM_DOUBLE);
+                nodes.writeLong(Double.doubleToRawLongBits(Double.parseDouble(term.getValue())));
+            } else if (term.isDate() || term.isString()) {
+                // the same precedence as in the serializer, an inline replacement of an identifier is
+                // a string, and a replacement that looks like a date is not recognized again
+                String value = term.getValue();
+                nodes.writeByte(term.isDate() ? TERM_DATE : TERM_STRING);
+                string(value);
+            } else if (term.isIdentifier()) {
+                Identifier identifier = term.getIdentifier();
+                nodes.writeByte(identifier.isQuoted() ? TERM_QUOTED_IDENTIFIER : TERM_IDENTIFIER);
+                string(identifier.getValue());
+            } else {
+                nodes.writeByte(TERM_NAME);
+                string(term.getName().getName());
+            }
+        }
+
+        private void string(String s) {
+            if (s == null) {
+                nodes.writeVarint(0);
+                return;
+            }
+            Integer ref = refs.get(s);
+            if (ref == null) {
+                strings.add(s.getBytes(StandardCharsets.UTF_8));
+                ref = strings.size();
+                refs.put(s, ref);
+            }
+            nodes.writeVarint(ref);
+        }
+    }
+
+    /**
+     * Decodes the nodes on an operand stack.
+     */
+    static final class Decoder {
+
+        private final Input in;
+
+        private final String[] strings;
+
+        private final Term[] parameters;
+
+        private Node[] stack;
+
+        private int size;
+
+        private SortedQuery query;
+
+        private int placeholders;
+
+        Decoder(Input in, Term[] parameters) {
+            this.in = in;
+            this.parameters = parameters;
+            int count = in.readVarint();
+            if (count > in.end - in.pos) {
+                throw new SyntaxException("corrupt string table of an encoded CQL query: " + count);
+            }
+            this.strings = new String[count];
+            for (int i = 0; i < count; i++) {
+                int length = in.readVarint();
+                if (length > in.end - in.pos) {
+                    throw new IndexOutOfBoundsException("string of length " + length);
+                }
+                strings[i] = new String(in.bytes, in.pos, length, StandardCharsets.UTF_8);
+                in.pos += length;
+            }
+            this.stack = new Node[16];
+        }
+
+        SortedQuery getQuery() {
+            return query;
+        }
+
+        int getPlaceholders() {
+            return placeholders;
+        }
+
+        void decode() {
+            while (in.pos < in.end) {
+                int tag = in.readByte();
+                switch (tag) {
+                    case TERM_STRING: {
+                        String value = string();
+                        Term term = new Term(value);
+                        if (term.isDate()) {
+                            term.setValue(value);
+                        }
+                        push(term);
+                        break;
+                    }
+                    case TERM_DATE:
+                        push(new Term(string()));
+                        break;
+                    case TERM_LONG: {
+                        long value = in.readVarlong();
+                        push(new Term((value >>> 1) ^ -(value & 1)));
+                        break;
+                    }
+                    case TERM_DOUBLE:
+                        push(new Term(Double.longBitsToDouble(in.readLong())));
+                        break;
+                    case TERM_IDENTIFIER: {
+                        String value = string();
+                        if (parameters != null && PLACEHOLDER.equals(value) && placeholders < parameters.length) {
+                            push(parameters[placeholders++]);
+                        } else {
+                            if (PLACEHOLDER.equals(value)) {
+                                placeholders++;
+                            }
+                            push(new Term(new Identifier(new SimpleName(value))));
+                        }
+                        break;
+                    }
+                    case TERM_QUOTED_IDENTIFIER:
+                        push(new Term(new Identifier(string())));
+                        break;
+                    case TERM_NAME:
+                        push(new Term(new SimpleName(string())));
+                        break;
+                    case INDEX: {
+                        String context = string();
+                        Index index = new Index((String) null);
+                        index.setContext(context);
+                        index.setName(string());
+                        push(index);
+                        break;
+                    }
+                    case MODIFIER:
+                        push(new Modifier(new SimpleName(string())));
+                        break;
+                    case MODIFIER_WITH_TERM: {
+                        SimpleName name = new SimpleName(string());
+                        Comparitor comparitor = COMPARITORS[in.readVarint()];
+                        push(new Modifier(name, comparitor, pop(Term.class)));
+                        break;
+                    }
+                    case MODIFIER_LIST: {
+                        int count = count();
+                        Modifier[] modifiers = new Modifier[count];
+                        for (int i = count - 1; i >= 0; i--) {
+                            modifiers[i] = pop(Modifier.class);
+                        }
+                        ModifierList list = new ModifierList(modifiers[0]);
+                        list.getModifierList().addAll(Arrays.asList(modifiers).subList(1, count));
+                        push(list);
+                        break;
+                    }
+                    case RELATION: {
+                        int flags = in.readByte();
+                        Comparitor comparitor = COMPARITORS[in.readVarint()];
+                        push((flags & FLAG_MODIFIERS) != 0
+                                ? new Relation(comparitor, pop(ModifierList.class)) : new Relation(comparitor));
+                        break;
+                    }
+                    case BOOLEAN_GROUP: {
+                        int flags = in.readByte();
+                        BooleanOperator operator = OPERATORS[in.readVarint()];
+                        push((flags & FLAG_MODIFIERS) != 0
+                                ? new BooleanGroup(operator, pop(ModifierList.class)) : new BooleanGroup(operator));
+                        break;
+                    }
+                    case SEARCH_CLAUSE: {
+                        Term term = pop(Term.class);
+                        Relation relation = pop(Relation.class);
+                        push(new SearchClause(pop(Index.class), relation, term));
+                        break;
+                    }
+                    case SEARCH_CLAUSE_TERM:
+                        push(new SearchClause(pop(Term.class)));
+                        break;
+                    case SEARCH_CLAUSE_QUERY:
+                        push(new SearchClause(pop(Query.class)));
+                        break;
+                    case SCOPED_CLAUSE: {
+                        int count = count();
+                        SearchClause[] clauses = new SearchClause[count];
+                        BooleanGroup[] groups = new BooleanGroup[count - 1];
+                        clauses[count - 1] = pop(SearchClause.class);
+                        for (int i = count - 2; i >= 0; i--) {
+                            groups[i] = pop(BooleanGroup.class);
+                            clauses[i] = pop(SearchClause.class);
+                        }
+                        push(new ScopedClause(Arrays.asList(clauses), Arrays.asList(groups)));
+                        break;
+                    }
+                    case PREFIX_ASSIGNMENT: {
+                        int flags = in.readByte();
+                        Term uri = pop(Term.class);
+                        push((flags & FLAG_NESTED) != 0
+                                ? new PrefixAssignment(pop(Term.class), uri) : new PrefixAssignment(uri));
+                        break;
+                    }
+                    case QUERY:
+                        push(query());
+                        break;
+                    case SINGLE_SPEC: {
+                        int flags = in.readByte();
+                        ModifierList modifiers = (flags & FLAG_MODIFIERS) != 0 ? pop(ModifierList.class) : null;
+                        Index index = pop(Index.class);
+                        push(modifiers != null ? new SingleSpec(index, modifiers) : new SingleSpec(index));
+                        break;
+                    }
+                    case SORT_SPEC: {
+                        int flags = in.readByte();
+                        SingleSpec spec = pop(SingleSpec.class);
+                        push((flags & FLAG_NESTED) != 0
+                                ? new SortSpec(pop(SortSpec.class), spec) : new SortSpec(spec));
+                        break;
+                    }
+                    case SORTED_QUERY: {
+                        int flags = in.readByte();
+                        SortSpec spec = (flags & FLAG_NESTED) != 0 ? pop(SortSpec.class) : null;
+                        Query query = pop(Query.class);
+                        push(spec != null ? new SortedQuery(query, spec) : new SortedQuery(query));
+                        break;
+                    }
+                    default:
+                        throw new IllegalArgumentException("unknown tag " + tag);
+                }
+            }
+            if (size != 1) {
+                throw new IllegalArgumentException(size + " nodes left on the stack");
+            }
+            query = pop(SortedQuery.class);
+        }
+
+        private Query query() {
+            int flags = in.readByte();
+            int count = in.readVarint();
+            Query query;
+            if ((flags & FLAG_NESTED) != 0) {
+                Query nested = pop(Query.class);
+                if (count == 0) {
+                    throw new IllegalArgumentException("nested query without prefix assignment");
+                }
+                PrefixAssignment[] assignments = prefixAssignments(count);
+                query = new Query(assignments[0], nested);
+                query.getPrefixAssignments().addAll(Arrays.asList(assignments).subList(1, count));
+            } else {
+                ScopedClause clause = pop(ScopedClause.class);
+                query = new Query(clause);
+                query.getPrefixAssignments().addAll(Arrays.asList(prefixAssignments(count)));
+            }
+            return query;
+        }
+
+        private PrefixAssignment[] prefixAssignments(int count) {
+            if (count > size) {
+                throw new IllegalArgumentException(count + " prefix assignments");
+            }
+            PrefixAssignment[] assignments = new PrefixAssignment[count];
+            for (int i = count - 1; i >= 0; i--) {
+                assignments[i] = pop(PrefixAssignment.class);
+            }
+            return assignments;
+        }
+
+        private int count() {
+            int count = in.readVarint();
+            if (count < 1 || count > size) {
+                throw new IllegalArgumentException("count " + count);
+            }
+            return count;
+        }
+
+        private String string() {
+            int ref = in.readVarint();
+            return ref == 0 ? null : strings[ref - 1];
+        }
+
+        private void push(Node node) {
+            if (size == stack.length) {
+                stack = Arrays.copyOf(stack, size * 2);
+            }
+            stack[size++] = node;
+        }
+
+        private <T extends Node> T pop(Class<T> type) {
+            if (size == 0) {
+                throw new IllegalArgumentException("expected " + type.getSimpleName() + " on an empty stack");
+            }
+            Node node = stack[--size];
+            stack[size] = null;
+            return type.cast(node);
+        }
+    }
+
+    private static final class Output {
+
+        private byte[] bytes;
+
+        private int size;
+
+        Output(int capacity) {
+            this.bytes = new byte[capacity];
+        }
+
+        void writeByte(int b) {
+            if (size == bytes.length) {
+                bytes = Arrays.copyOf(bytes, size * 2);
+            }
+            bytes[size++] = (byte) b;
+        }
+
+        void write(byte[] b) {
+            write(b, b.length);
+        }
+
+        void write(byte[] b, int length) {
+            if (size + length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(size * 2, size + length));
+            }
+            System.arraycopy(b, 0, bytes, size, length);
+            size += length;
+        }
+
+        void writeVarint(int value) {
+            writeVarlong(value & 0xffffffffL);
+        }
+
+        void writeVarlong(long value) {
+            while ((value & ~0x7fL) != 0) {
+                writeByte((int) (value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            writeByte((int) value);
+        }
+
+        void writeLong(long value) {
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                writeByte((int) (value >>> shift));
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+    }
+
+    private static final class Input {
+
+        private final byte[] bytes;
+
+        private final int end;
+
+        private int pos;
+
+        Input(byte[] bytes, int pos, int end) {
+            this.bytes = bytes;
+            this.pos = pos;
+            this.end = end;
+        }
+
+        int readByte() {
+            if (pos >= end) {
+                throw new IndexOutOfBoundsException("unexpected end of an encoded CQL query");
+            }
+            return bytes[pos++] & 0xff;
+        }
+
+        int readVarint() {
+            long value = readVarlong();
+            if (value < 0 || value > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("varint out of range: " + value);
+            }
+            return (int) value;
+        }
+
+        long readVarlong() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("malformed varint");
+        }
+
+        long readLong() {
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | readByte();
+            }
+            return value;
+        }
+    }
+}
@@ -1,12 +1,21 @@
 package org.xbib.cql;
 
+import org.xbib.cql.jfr.GenerateEvent;
+import org.xbib.cql.metrics.Phase;
+import org.xbib.cql.metrics.QueryMetrics;
 import org.xbib.cql.model.CQLQueryModel;
 import org.xbib.cql.model.Facet;
 import org.xbib.cql.model.Filter;
 import org.xbib.cql.model.Option;
+import org.xbib.cql.util.Traversal;
+
+import java.util.List;
 
 /**
  * This is a CQL abstract syntax tree generator useful for normalizing CQL queries.
+ *
+ * Queries, scoped clauses and search clauses are visited on an explicit-stack {@link Traversal},
+ * so deeply nested parentheses do not use the thread stack.
  */
 public final class CQLGenerator implements Visitor {
 
@@ -17,8 +26,13 @@ public final class CQLGenerator implements Visitor {
 
     private Visitor substitutor;
 
+    private final Traversal<Node> traversal;
+
+    private QueryMetrics metrics = QueryMetrics.NONE;
+
     public CQLGenerator() {
         this.model = new CQLQueryModel();
+        this.traversal = new Traversal<>();
     }
 
     public CQLGenerator setSubstitutor(Visitor substitutor) {
@@ -26,6 +40,17 @@ public final class CQLGenerator implements Visitor {
         return this;
     }
 
+    /**
+     * Set the metrics that record the time of a walk, as {@link Phase#GENERATE}, and the exceptions of a walk.
+     *
+     * @param metrics the metrics
+     * @return this generator
+     */
+    public CQLGenerator setMetrics(QueryMetrics metrics) {
+        this.metrics = metrics != null ? metrics : QueryMetrics.NONE;
+        return this;
+    }
+
     public CQLGenerator setModel(CQLQueryModel model) {
         this.model = model;
         return this;
@@ -41,6 +66,9 @@ public final class CQLGenerator implements Visitor {
 
     @Override
     public void visit(SortedQuery node) {
+        if (walk(node)) {
+            return;
+        }
         if (substitutor != null) {
             substitutor.visit(node);
         }
@@ -48,13 +76,16 @@ public final class CQLGenerator implements Visitor {
             node.getSortSpec().accept(this);
         }
         if (node.getQuery() != null) {
-            node.getQuery().accept(this);
+            traversal.child(node.getQuery());
         }
-        model.setQuery(node.toString());
+        traversal.step(() -> model.setQuery(node.toString()));
     }
 
     @Override
     public void visit(Query node) {
+        if (walk(node)) {
+            return;
+        }
         if (substitutor != null) {
             substitutor.visit(node);
         }
@@ -64,10 +95,10 @@ public final class CQLGenerator implements Visitor {
             }
         }
         if (node.getQuery() != null) {
-            node.getQuery().accept(this);
+            traversal.child(node.getQuery());
         }
         if (node.getScopedClause() != null) {
-            node.getScopedClause().accept(this);
+            traversal.child(node.getScopedClause());
         }
     }
 
@@ -108,18 +139,26 @@ public final class CQLGenerator implements Visitor {
 
     @Override
     public void visit(ScopedClause node) {
+        if (walk(node)) {
+            return;
+        }
         if (substitutor != null) {
             substitutor.visit(node);
         }
-        if (node.getScopedClause() != null) {
-            node.getScopedClause().accept(this);
-        }
-        node.getSearchClause().accept(this);
-        if (node.getBooleanGroup() != null) {
-            node.getBooleanGroup().accept(this);
-            BooleanOperator op = node.getBooleanGroup().getOperator();
-            checkFilter(op, node);
-            checkFilter(op, node.getScopedClause());
+        List<SearchClause> clauses = node.getSearchClauses();
+        List<BooleanGroup> groups = node.getBooleanGroups();
+        traversal.child(clauses.get(0));
+        for (int i = 1; i < clauses.size(); i++) {
+            SearchClause previous = clauses.get(i - 1);
+            SearchClause clause = clauses.get(i);
+            BooleanGroup group = groups.get(i - 1);
+            traversal.child(clause);
+            traversal.step(() -> {
+                group.accept(this);
+                BooleanOperator op = group.getOperator();
+                checkFilter(op, clause);
+                checkFilter(op, previous);
+            });
         }
     }
 
@@ -135,11 +174,15 @@ public final class CQLGenerator implements Visitor {
 
     @Override
     public void visit(SearchClause node) {
+        if (node.getQuery() != null && walk(node)) {
+            return;
+        }
         if (substitutor != null) {
             substitutor.visit(node);
         }
         if (node.getQuery() != null) {
-            node.getQuery().accept(this);
+            // a clause in parentheses has no index, relation or term
+            traversal.child(node.getQuery());
         }
         if (node.getTerm() != null) {
             node.getTerm().accept(this);
@@ -228,12 +271,37 @@ public final class CQLGenerator implements Visitor {
         return model.toCQL();
     }
 
-    private void checkFilter(BooleanOperator op, ScopedClause node) {
-        if (node.getSearchClause().getIndex() != null
-                && CQLQueryModel.FILTER_INDEX_NAME.equals(node.getSearchClause().getIndex().getContext())) {
-            String filtername = node.getSearchClause().getIndex().getName();
-            Comparitor filterop = node.getSearchClause().getRelation().getComparitor();
-            Term filterterm = node.getSearchClause().getTerm();
+    /**
+     * Start a walk if the node is not visited by the running walk.
+     *
+     * @param node the node
+     * @return true if the node was visited by a new walk
+     */
+    private boolean walk(Node node) {
+        if (traversal.isRunning()) {
+            return false;
+        }
+        long start = metrics.start();
+        GenerateEvent event = new GenerateEvent();
+        event.begin();
+        try {
+            traversal.run(node, (n, t) -> n.accept(this));
+        } catch (RuntimeException e) {
+            metrics.failed(Phase.GENERATE, e);
+            event.finish(this, node, 0L, e);
+            throw e;
+        }
+        metrics.stop(Phase.GENERATE, start);
+        event.finish(this, node, getResult(), null);
+        return true;
+    }
+
+    private void checkFilter(BooleanOperator op, SearchClause node) {
+        if (node.getIndex() != null
+                && CQLQueryModel.FILTER_INDEX_NAME.equals(node.getIndex().getContext())) {
+            String filtername = node.getIndex().getName();
+            Comparitor filterop = node.getRelation().getComparitor();
+            Term filterterm = node.getTerm();
             Filter<AbstractNode> filter2 = new Filter<>(filtername, filterterm, filterop);
             model.addFilter(op, filter2);
         }
@@ -0,0 +1,347 @@
+package org.xbib.cql;
+
+import org.xbib.cql.util.Traversal;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Rewrite CQL abstract syntax trees into a canonical form, so that queries which only differ
+ * in the order of commutative operands, in grouping or in spelling map to the same tree and string.
+ * Canonical strings are suitable as keys of query and request caches.
+ *
+ * The canonical form is built by these rules:
+ * <ul>
+ * <li>chains and parenthesized groups of the same operator, {@code and} or {@code or} without
+ * modifiers, are flattened into one operand list</li>
+ * <li>the operands of such a list are ordered by their canonical string, clauses in the facet,
+ * filter and option contexts keep their positions, because the operator before a filter clause
+ * decides whether the filter is conjunctive or disjunctive</li>
+ * <li>parentheses around a single clause are removed, nested groups are always parenthesized; a
+ * group that begins with a clause in the facet, filter or option context is not flattened, and such
+ * a single clause is not unwrapped behind an operator, for the same reason</li>
+ * <li>named comparitors lose the default <code>cql.</code> context, for example
+ * <code>cql.any</code> becomes <code>any</code></li>
+ * <li>string terms that carry their own quotation marks become quoted identifiers</li>
+ * </ul>
+ * The operands of {@code not}, {@code prox} and of operators with modifiers keep their order.
+ * Prefix assignments and sort specifications are kept as they are.
+ *
+ * The canonical tree is built from fresh nodes and copies of the terms and indexes of the input tree, so it
+ * shares no node that can be modified with the input tree, and the input tree can still be modified. The tree
+ * is rewritten bottom-up on an explicit-stack {@link Traversal}, so deeply nested parentheses do not use the
+ * thread stack.
+ */
+public final class CQLNormalizer {
+
+    private CQLNormalizer() {
+    }
+
+    /**
+     * Parse a CQL query and return its canonical string.
+     *
+     * @param cql the CQL query
+     * @return the canonical CQL string, including clauses in the facet, filter and option contexts
+     * @throws SyntaxException if the query is not valid
+     */
+    public static String canonicalize(String cql) {
+        CQLParser parser = new CQLParser(cql);
+        parser.parse();
+        return canonicalize(parser.getCQLQuery());
+    }
+
+    /**
+     * Return the canonical string of a CQL query.
+     *
+     * @param query the query
+     * @return the canonical CQL string, including clauses in the facet, filter and option contexts
+     */
+    public static String canonicalize(SortedQuery query) {
+        return CQLSerializer.toCQL(normalize(query), true);
+    }
+
+    /**
+     * Rewrite a CQL query into canonical form.
+     *
+     * @param query the query
+     * @return the canonical query
+     */
+    public static SortedQuery normalize(SortedQuery query) {
+        Rewriter rewriter = new Rewriter();
+        Traversal.walk(query.getQuery(), rewriter);
+        // normalization keeps every search clause
+        SortSpec spec = query.getSortSpec() != null ? query.getSortSpec().copy() : null;
+        return new SortedQuery((Query) rewriter.results.pop(), spec, query.getClauseCount());
+    }
+
+    /**
+     * Rewrite a query bottom-up. Children are rewritten before their parents, and their results wait
+     * on a stack.
+     */
+    private static final class Rewriter implements Traversal.Listener<Node> {
+
+        /**
+         * The rewritten children: queries, and operands of search clauses and scoped clauses.
+         */
+        private final Deque<Object> results = new ArrayDeque<>();
+
+        @Override
+        public void enter(Node node, Traversal<Node> traversal) {
+            if (node instanceof Query) {
+                Query query = (Query) node;
+                traversal.child(query.getScopedClause() != null ? query.getScopedClause() : query.getQuery());
+            } else if (node instanceof ScopedClause) {
+                for (SearchClause clause : ((ScopedClause) node).getSearchClauses()) {
+                    traversal.child(clause);
+                }
+            } else if (node instanceof SearchClause) {
+                Query query = ((SearchClause) node).getQuery();
+                if (query != null) {
+                    // a redundant grouping is replaced by the operand of its scoped clause
+                    traversal.child(query.getScopedClause() != null ? query.getScopedClause() : query);
+                }
+            }
+        }
+
+        @Override
+        public void leave(Node node) {
+            if (node instanceof Query) {
+                Query query = (Query) node;
+                results.push(query.getScopedClause() != null ? new Query(toScopedClause((Operand) results.pop()))
+                        : new Query(query.getPrefixAssignments().get(0).copy(), (Query) results.pop()));
+            } else if (node instanceof ScopedClause) {
+                ScopedClause clause = (ScopedClause) node;
+                Operand[] operands = new Operand[clause.getSearchClauses().size()];
+                for (int i = operands.length - 1; i >= 0; i--) {
+                    operands[i] = (Operand) results.pop();
+                }
+                results.push(convert(clause, operands));
+            } else if (node instanceof SearchClause) {
+                SearchClause clause = (SearchClause) node;
+                Query query = clause.getQuery();
+                if (query == null) {
+                    results.push(convert(clause));
+                } else if (query.getScopedClause() == null) {
+                    results.push(new Operand(new SearchClause((Query) results.pop())));
+                }
+            }
+        }
+    }
+
+    /**
+     * Combine the operands of the search clauses of a scoped clause.
+     */
+    private static Operand convert(ScopedClause clause, Operand[] converted) {
+        List<SearchClause> clauses = clause.getSearchClauses();
+        List<BooleanGroup> groups = clause.getBooleanGroups();
+        Operand left = converted[0];
+        int i = 0;
+        while (i < groups.size()) {
+            BooleanGroup group = groups.get(i).copy();
+            BooleanOperator op = group.getOperator();
+            if (isCommutative(group)) {
+                // the operators are evaluated from left to right, collect the run of equal operators at once
+                List<Operand> operands = new ArrayList<>();
+                left.addTo(operands, op);
+                while (i < groups.size() && isCommutative(groups.get(i)) && groups.get(i).getOperator() == op) {
+                    operand(clauses.get(i + 1), converted[i + 1]).addTo(operands, op);
+                    i++;
+                }
+                left = new Operand(group, operands, true);
+            } else {
+                left = new Operand(group, Arrays.asList(left, operand(clauses.get(i + 1), converted[i + 1])), false);
+                i++;
+            }
+        }
+        return left;
+    }
+
+    /**
+     * Convert a search clause behind an operator. A group that begins with an invisible clause keeps
+     * its parentheses, so the invisible clause is not moved behind the operator.
+     */
+    private static Operand operand(SearchClause clause, Operand operand) {
+        Query query = clause.getQuery();
+        if (query == null || query.getScopedClause() == null || !operand.beginsInvisible()) {
+            return operand;
+        }
+        return new Operand(operand.clause != null ? new SearchClause(new Query(new ScopedClause(operand.clause)))
+                : operand.toSearchClause());
+    }
+
+    private static boolean isCommutative(BooleanGroup group) {
+        BooleanOperator op = group.getOperator();
+        return group.getModifierList() == null && (op == BooleanOperator.AND || op == BooleanOperator.OR);
+    }
+
+    /**
+     * Convert a search clause with a term. The clause is always rebuilt from copies, so the canonical
+     * tree does not adopt the nodes of the input tree.
+     */
+    private static Operand convert(SearchClause clause) {
+        if (clause.getIndex() == null) {
+            return new Operand(new SearchClause(normalize(clause.getTerm())));
+        }
+        return new Operand(new SearchClause(clause.getIndex().copy(), normalize(clause.getRelation()),
+                normalize(clause.getTerm())));
+    }
+
+    private static Relation normalize(Relation relation) {
+        Comparitor comparitor = relation.getComparitor();
+        Comparitor normalized;
+        if (comparitor == null) {
+            return relation.copy();
+        }
+        switch (comparitor) {
+            case CQLWITHIN:
+                normalized = Comparitor.WITHIN;
+                break;
+            case CQLENCLOSES:
+                normalized = Comparitor.ENCLOSES;
+                break;
+            case CQLADJ:
+                normalized = Comparitor.ADJ;
+                break;
+            case CQLALL:
+                normalized = Comparitor.ALL;
+                break;
+            case CQLANY:
+                normalized = Comparitor.ANY;
+                break;
+            default:
+                return relation.copy();
+        }
+        return relation.getModifierList() != null ? new Relation(normalized, relation.getModifierList().copy())
+                : new Relation(normalized);
+    }
+
+    private static Term normalize(Term term) {
+        if (!term.isString()) {
+            return term.copy();
+        }
+        String value = term.getValue();
+        int len = value.length();
+        if (len < 2 || value.charAt(0) != '"' || value.charAt(len - 1) != '"') {
+            return term.copy();
+        }
+        StringBuilder sb = new StringBuilder(len);
+        for (int i = 1; i < len - 1; i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < len - 1 && value.charAt(i + 1) == '"') {
+                c = '"';
+                i++;
+            }
+            sb.append(c);
+        }
+        return new Term(new Identifier(sb.toString()));
+    }
+
+    private static ScopedClause toScopedClause(Operand operand) {
+        if (operand.clause != null) {
+            return new ScopedClause(operand.clause);
+        }
+        List<SearchClause> clauses = new ArrayList<>(operand.operands.size());
+        for (Operand o : operand.operands) {
+            clauses.add(o.toSearchClause());
+        }
+        return new ScopedClause(clauses, Collections.nCopies(clauses.size() - 1, operand.group));
+    }
+
+    /**
+     * An operand of a boolean expression: a search clause, or a group of operands
+     * combined by one boolean operator.
+     */
+    private static final class Operand {
+
+        private final SearchClause clause;
+
+        private final BooleanGroup group;
+
+        private final List<Operand> operands;
+
+        private final boolean commutative;
+
+        private SearchClause searchClause;
+
+        private String key;
+
+        private boolean invisible;
+
+        Operand(SearchClause clause) {
+            this.clause = clause;
+            this.group = null;
+            this.operands = null;
+            this.commutative = false;
+        }
+
+        Operand(BooleanGroup group, List<Operand> operands, boolean commutative) {
+            this.clause = null;
+            this.group = group;
+            this.operands = operands;
+            this.commutative = commutative;
+            if (!commutative) {
+                // build the clauses of the operands now, so that the clause of this operand is built without recursion
+                for (Operand operand : operands) {
+                    operand.toSearchClause();
+                }
+            } else {
+                // sort the visible operands, the invisible operands keep their positions
+                List<Operand> visible = new ArrayList<>(operands.size());
+                for (Operand operand : operands) {
+                    operand.computeKey();
+                    if (!operand.invisible) {
+                        visible.add(operand);
+                    }
+                }
+                if (visible.size() > 1) {
+                    visible.sort((a, b) -> a.key.compareTo(b.key));
+                    int next = 0;
+                    for (int i = 0; i < operands.size(); i++) {
+                        if (!operands.get(i).invisible) {
+                            operands.set(i, visible.get(next++));
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Whether the first clause of this operand is a clause in the facet, filter or option context.
+         */
+        boolean beginsInvisible() {
+            Operand operand = this;
+            while (operand.clause == null) {
+                operand = operand.operands.get(0);
+            }
+            operand.computeKey();
+            return operand.invisible;
+        }
+
+        void addTo(List<Operand> list, BooleanOperator op) {
+            if (commutative && group.getOperator() == op && !beginsInvisible()) {
+                list.addAll(operands);
+            } else {
+                list.add(this);
+            }
+        }
+
+        SearchClause toSearchClause() {
+            if (searchClause == null) {
+                searchClause = clause != null ? clause : new SearchClause(new Query(toScopedClause(this)));
+            }
+            return searchClause;
+        }
+
+        void computeKey() {
+            if (key == null) {
+                SearchClause node = toSearchClause();
+                key = CQLSerializer.toCQL(node, true);
+                invisible = CQLSerializer.toCQL(node).isEmpty();
+            }
+        }
+    }
+}
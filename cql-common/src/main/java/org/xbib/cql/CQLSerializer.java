@@ -0,0 +1,411 @@
+package org.xbib.cql;
+
+import org.xbib.cql.model.CQLQueryModel;
+import org.xbib.cql.util.Traversal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+/**
+ * Serialize a CQL abstract syntax tree in a single pass into a string builder or any other appendable.
+ *
+ * Empty clauses, for example clauses in invisible contexts, are dropped without truncating the output:
+ * boolean operators and opening parentheses are deferred until the clause after them writes something,
+ * and are discarded if it does not. Subtrees whose CQL string is cached already are written from the cache.
+ *
+ * Queries, scoped clauses and search clauses are written on an explicit-stack {@link Traversal},
+ * so deeply nested parentheses do not use the thread stack.
+ */
+public final class CQLSerializer implements Visitor {
+
+    private final Appendable out;
+
+    private final boolean allContexts;
+
+    private final Traversal<Node> traversal;
+
+    /**
+     * The deferred text that is written before the next character.
+     */
+    private final StringBuilder deferred;
+
+    public CQLSerializer(Appendable out) {
+        this(out, false);
+    }
+
+    /**
+     * Create a serializer. Failures of the appendable are thrown as {@link UncheckedIOException}.
+     *
+     * @param out         the appendable
+     * @param allContexts true if clauses in the facet, filter and option contexts should be written, too
+     */
+    public CQLSerializer(Appendable out, boolean allContexts) {
+        this.out = out;
+        this.allContexts = allContexts;
+        this.traversal = new Traversal<>();
+        this.deferred = new StringBuilder();
+    }
+
+    /**
+     * Serialize a node to a CQL string.
+     *
+     * @param node the node
+     * @return the CQL string
+     */
+    public static String toCQL(Node node) {
+        return toCQL(node, false);
+    }
+
+    /**
+     * Serialize a node to a CQL string.
+     *
+     * @param node        the node
+     * @param allContexts true if clauses in the facet, filter and option contexts should be written, too
+     * @return the CQL string
+     */
+    public static String toCQL(Node node, boolean allContexts) {
+        StringBuilder sb = new StringBuilder();
+        node.accept(new CQLSerializer(sb, allContexts));
+        return sb.toString();
+    }
+
+    /**
+     * Serialize a node to a string builder.
+     *
+     * @param node the node
+     * @param sb   the string builder
+     */
+    public static void write(Node node, StringBuilder sb) {
+        node.accept(new CQLSerializer(sb));
+    }
+
+    /**
+     * Serialize a node to an appendable.
+     *
+     * @param node       the node
+     * @param appendable the appendable
+     * @throws IOException if the appendable fails
+     */
+    public static void write(Node node, Appendable appendable) throws IOException {
+        try {
+            node.accept(new CQLSerializer(appendable));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Append a string in double quotes, escaping double quotes inside the string.
+     *
+     * @param sb    the string builder
+     * @param value the string
+     */
+    public static void appendQuoted(StringBuilder sb, String value) {
+        sb.append('"');
+        int start = 0;
+        int pos = value.indexOf('"');
+        while (pos >= 0) {
+            sb.append(value, start, pos).append("\\\"");
+            start = pos + 1;
+            pos = value.indexOf('"', start);
+        }
+        sb.append(value, start, value.length()).append('"');
+    }
+
+    @Override
+    public void visit(SortedQuery node) {
+        if (cached(node) || walk(node)) {
+            return;
+        }
+        if (node.getQuery() != null) {
+            traversal.child(node.getQuery());
+            if (node.getSortSpec() != null) {
+                traversal.step(() -> {
+                    append(" sortby ");
+                    node.getSortSpec().accept(this);
+                });
+            }
+        }
+    }
+
+    @Override
+    public void visit(Query node) {
+        if (cached(node) || walk(node)) {
+            return;
+        }
+        for (PrefixAssignment assignment : node.getPrefixAssignments()) {
+            assignment.accept(this);
+            append(' ');
+        }
+        if (node.getQuery() != null) {
+            traversal.child(node.getQuery());
+        }
+        if (node.getScopedClause() != null) {
+            traversal.child(node.getScopedClause());
+        }
+    }
+
+    @Override
+    public void visit(PrefixAssignment node) {
+        append("> ");
+        write(node.getPrefix());
+        append(" = ");
+        write(node.getURI());
+    }
+
+    @Override
+    public void visit(ScopedClause node) {
+        if (cached(node) || walk(node)) {
+            return;
+        }
+        List<SearchClause> clauses = node.getSearchClauses();
+        List<BooleanGroup> groups = node.getBooleanGroups();
+        traversal.child(clauses.get(0));
+        for (int i = 1; i < clauses.size(); i++) {
+            BooleanGroup group = groups.get(i - 1);
+            int[] mark = new int[1];
+            traversal.step(() -> mark[0] = defer(" " + group + " "));
+            traversal.child(clauses.get(i));
+            // an empty search clause drops the boolean operator
+            traversal.step(() -> discard(mark[0]));
+        }
+    }
+
+    @Override
+    public void visit(BooleanGroup node) {
+        if (node.getOperator() != null) {
+            append(node.getOperator().getToken());
+            if (node.getModifierList() != null) {
+                node.getModifierList().accept(this);
+            }
+        }
+    }
+
+    @Override
+    public void visit(SearchClause node) {
+        if (node.getQuery() != null) {
+            if (cached(node) || walk(node)) {
+                return;
+            }
+            int mark = defer("(");
+            traversal.child(node.getQuery());
+            traversal.step(() -> {
+                if (!discard(mark)) {
+                    append(')');
+                }
+            });
+            return;
+        }
+        Index index = node.getIndex();
+        if (index != null) {
+            if (index.getContext() == null && index.getName() == null && node.getTerm() != null) {
+                node.getTerm().accept(this);
+            } else if (allContexts || CQLQueryModel.isVisible(index.getContext())) {
+                index.accept(this);
+                append(' ');
+                write(node.getRelation());
+                append(' ');
+                write(node.getTerm());
+            }
+        } else if (node.getTerm() != null) {
+            node.getTerm().accept(this);
+        }
+    }
+
+    @Override
+    public void visit(Relation node) {
+        append(String.valueOf(node.getComparitor()));
+        if (node.getModifierList() != null) {
+            node.getModifierList().accept(this);
+        }
+    }
+
+    @Override
+    public void visit(Modifier node) {
+        append('/');
+        write(node.getName());
+        if (node.getTerm() != null) {
+            append(String.valueOf(node.getOperator()));
+            node.getTerm().accept(this);
+        }
+    }
+
+    @Override
+    public void visit(ModifierList node) {
+        for (Modifier modifier : node.getModifierList()) {
+            modifier.accept(this);
+        }
+    }
+
+    @Override
+    public void visit(Term node) {
+        if (node.isLong() || node.isFloat()) {
+            append(node.getValue());
+        } else if (node.isDate()) {
+            StringBuilder date = new StringBuilder();
+            node.appendDate(date);
+            append(date);
+        } else if (node.isString()) {
+            String value = node.getValue();
+            if (value.startsWith("\"") && value.endsWith("\"")) {
+                append(value);
+            } else {
+                appendQuoted(value);
+            }
+        } else if (node.isIdentifier()) {
+            node.getIdentifier().accept(this);
+        } else if (node.isName()) {
+            node.getName().accept(this);
+        }
+    }
+
+    @Override
+    public void visit(Identifier node) {
+        if (node.isQuoted()) {
+            appendQuoted(node.getValue());
+        } else {
+            append(node.getValue());
+        }
+    }
+
+    @Override
+    public void visit(Index node) {
+        String context = node.getContext();
+        if (context != null && !context.isEmpty()) {
+            append(context);
+            append('.');
+        }
+        append(node.getName());
+    }
+
+    @Override
+    public void visit(SimpleName node) {
+        append(node.getName());
+    }
+
+    @Override
+    public void visit(SortSpec node) {
+        if (node.getSortSpec() != null) {
+            node.getSortSpec().accept(this);
+            append(' ');
+        }
+        write(node.getSingleSpec());
+    }
+
+    @Override
+    public void visit(SingleSpec node) {
+        write(node.getIndex());
+        if (node.getModifierList() != null) {
+            node.getModifierList().accept(this);
+        }
+    }
+
+    /**
+     * Start a walk if the node is not visited by the running walk.
+     *
+     * @param node the node
+     * @return true if the node was written by a new walk
+     */
+    private boolean walk(Node node) {
+        if (traversal.isRunning()) {
+            return false;
+        }
+        traversal.run(node, (n, t) -> n.accept(this));
+        return true;
+    }
+
+    /**
+     * Write the cached CQL string of a node, if there is one. The cache holds the strings without
+     * the clauses in the facet, filter and option contexts.
+     *
+     * @param node the node
+     * @return true if the node was written from the cache
+     */
+    private boolean cached(Node node) {
+        if (allContexts || !(node instanceof AbstractNode) || !((AbstractNode) node).isRendered()) {
+            return false;
+        }
+        append(node.toString());
+        return true;
+    }
+
+    /**
+     * Defer text until the next character is written.
+     *
+     * @param text the text
+     * @return the mark to {@link #discard(int)} the text
+     */
+    private int defer(String text) {
+        int mark = deferred.length();
+        deferred.append(text);
+        return mark;
+    }
+
+    /**
+     * Discard deferred text if nothing was written after it.
+     *
+     * @param mark the mark of the text
+     * @return true if the text was discarded, false if it was written
+     */
+    private boolean discard(int mark) {
+        if (deferred.length() > mark) {
+            deferred.setLength(mark);
+            return true;
+        }
+        return false;
+    }
+
+    private void append(CharSequence csq) {
+        if (csq == null || csq.length() > 0) {
+            flush();
+            try {
+                out.append(csq);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private void append(char c) {
+        flush();
+        try {
+            out.append(c);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void flush() {
+        if (deferred.length() > 0) {
+            try {
+                out.append(deferred);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            deferred.setLength(0);
+        }
+    }
+
+    private void appendQuoted(String value) {
+        append('"');
+        int start = 0;
+        int pos = value.indexOf('"');
+        while (pos >= 0) {
+            append(value.subSequence(start, pos));
+            append("\\\"");
+            start = pos + 1;
+            pos = value.indexOf('"', start);
+        }
+        append(value.subSequence(start, value.length()));
+        append('"');
+    }
+
+    private void write(Node node) {
+        if (node != null) {
+            node.accept(this);
+        } else {
+            append((String) null);
+        }
+    }
+}
@@ -0,0 +1,545 @@
+package org.xbib.cql;
+
+import org.xbib.cql.model.CQLQueryModel;
+import org.xbib.cql.util.Traversal;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Simplify CQL queries with the laws of boolean algebra, and detect queries that can not match anything.
+ *
+ * The query is normalized by {@link CQLNormalizer} first, so equal clauses have equal canonical
+ * strings. Then these rules are applied bottom-up:
+ * <ul>
+ * <li>idempotence: <code>a and a</code> and <code>a or a</code> become <code>a</code></li>
+ * <li>absorption: <code>a and (a or b)</code> and <code>a or (a and b)</code> become <code>a</code></li>
+ * <li>contradiction: <code>a not a</code> and <code>(a and b) not a</code> match nothing</li>
+ * <li>double negation: <code>a not (b not a)</code> becomes <code>a</code>,
+ * <code>a not (a not b)</code> becomes <code>a and b</code></li>
+ * <li>ranges: a conjunction with numeric or date bounds on the same index that exclude each other,
+ * for example <code>year &gt; 2010 and year &lt; 2000</code>, matches nothing</li>
+ * <li>clauses that match nothing are removed from disjunctions, and make conjunctions match nothing</li>
+ * </ul>
+ * Clauses in the facet and option contexts are not search conditions, they are never removed or
+ * used to prove anything. Clauses in the facet, filter and option contexts apply to the whole query,
+ * wherever they are, so groups that contain them are never absorbed.
+ *
+ * The expressions are converted, simplified and converted back on explicit-stack {@link Traversal}s,
+ * so deeply nested parentheses do not use the thread stack.
+ */
+public final class CQLSimplifier {
+
+    private static final Expr EMPTY = new Expr(null);
+
+    private boolean changed;
+
+    private CQLSimplifier() {
+    }
+
+    /**
+     * Simplify a CQL query.
+     *
+     * @param query the query
+     * @return the simplification
+     */
+    public static Simplification simplify(SortedQuery query) {
+        CQLSimplifier simplifier = new CQLSimplifier();
+        SortedQuery normalized = CQLNormalizer.normalize(query);
+        Query simplified = simplifier.simplify(normalized.getQuery());
+        if (simplified == null) {
+            return new Simplification(null, true);
+        }
+        // the simplified tree is built from the nodes of the normalized tree, which shares no node with the input
+        SortedQuery result = normalized.getSortSpec() != null ? new SortedQuery(simplified, normalized.getSortSpec())
+                : new SortedQuery(simplified);
+        return new Simplification(simplifier.changed ? CQLNormalizer.normalize(result) : result, simplifier.changed);
+    }
+
+    private Query simplify(Query query) {
+        List<PrefixAssignment> prefixes = new ArrayList<>();
+        while (query.getScopedClause() == null) {
+            prefixes.add(query.getPrefixAssignments().get(0));
+            query = query.getQuery();
+        }
+        Expr expr = simplify(convert(query.getScopedClause()));
+        if (expr == EMPTY) {
+            return null;
+        }
+        Query result = new Query(toScopedClause(expr));
+        for (int i = prefixes.size() - 1; i >= 0; i--) {
+            result = new Query(prefixes.get(i), result);
+        }
+        return result;
+    }
+
+    /**
+     * Simplify an expression bottom-up, the arguments of a group before the group.
+     */
+    private Expr simplify(Expr expr) {
+        Deque<Expr> results = new ArrayDeque<>();
+        Traversal.walk(expr, new Traversal.Listener<Expr>() {
+            @Override
+            public void enter(Expr e, Traversal<Expr> traversal) {
+                if (e.clause == null) {
+                    e.args.forEach(traversal::child);
+                }
+            }
+
+            @Override
+            public void leave(Expr e) {
+                if (e.clause != null) {
+                    results.push(e);
+                    return;
+                }
+                Expr[] args = new Expr[e.args.size()];
+                for (int i = args.length - 1; i >= 0; i--) {
+                    args[i] = results.pop();
+                }
+                results.push(simplify(e, Arrays.asList(args)));
+            }
+        });
+        return results.pop();
+    }
+
+    /**
+     * Simplify a group whose arguments are simplified.
+     */
+    private Expr simplify(Expr expr, List<Expr> args) {
+        boolean plain = expr.group.getModifierList() == null;
+        switch (expr.group.getOperator()) {
+            case AND:
+                return plain ? simplifyAnd(expr.group, args) : args.contains(EMPTY) ? empty() : expr.with(args);
+            case OR:
+                return plain ? simplifyOr(expr.group, args) : args.contains(EMPTY) ? remove(expr, args) : expr.with(args);
+            case NOT:
+                return simplifyNot(expr, args.get(0), args.get(1), plain);
+            default:
+                return args.contains(EMPTY) ? empty() : expr.with(args);
+        }
+    }
+
+    private Expr simplifyAnd(BooleanGroup group, List<Expr> args) {
+        Map<String, Expr> unique = new LinkedHashMap<>();
+        for (Expr arg : args) {
+            if (arg == EMPTY) {
+                return empty();
+            }
+            for (Expr e : arg.isGroup(BooleanOperator.AND) ? arg.args : List.of(arg)) {
+                if (unique.putIfAbsent(e.key(), e) != null) {
+                    changed = true;
+                }
+            }
+        }
+        List<Expr> list = absorb(unique, BooleanOperator.OR);
+        if (isUnsatisfiableRange(list)) {
+            return empty();
+        }
+        return list.size() == 1 ? list.get(0) : new Expr(group, list);
+    }
+
+    private Expr simplifyOr(BooleanGroup group, List<Expr> args) {
+        Map<String, Expr> unique = new LinkedHashMap<>();
+        for (Expr arg : args) {
+            if (arg == EMPTY) {
+                changed = true;
+                continue;
+            }
+            for (Expr e : arg.isGroup(BooleanOperator.OR) ? arg.args : List.of(arg)) {
+                if (unique.putIfAbsent(e.key(), e) != null) {
+                    changed = true;
+                }
+            }
+        }
+        if (unique.isEmpty()) {
+            return EMPTY;
+        }
+        List<Expr> list = absorb(unique, BooleanOperator.AND);
+        return list.size() == 1 ? list.get(0) : new Expr(group, list);
+    }
+
+    private Expr simplifyNot(Expr expr, Expr left, Expr right, boolean plain) {
+        if (left == EMPTY) {
+            return empty();
+        }
+        if (right == EMPTY) {
+            changed = true;
+            return left;
+        }
+        if (plain) {
+            Set<String> leftConjuncts = conjuncts(left);
+            if (implies(leftConjuncts, right)) {
+                return empty();
+            }
+            if (right.isGroup(BooleanOperator.NOT) && right.group.getModifierList() == null) {
+                if (implies(leftConjuncts, right.args.get(1))) {
+                    // a and not (b and not a) = a
+                    changed = true;
+                    return left;
+                }
+                if (implies(leftConjuncts, right.args.get(0))) {
+                    // a and not (a and not b) = a and b
+                    changed = true;
+                    return simplifyAnd(new BooleanGroup(BooleanOperator.AND), Arrays.asList(left, right.args.get(1)));
+                }
+            }
+        }
+        return expr.with(Arrays.asList(left, right));
+    }
+
+    /**
+     * Remove the groups of the inner operator that contain one of the other operands. Groups with
+     * clauses in the facet, filter or option contexts are kept, because these clauses apply to the whole
+     * query wherever they are.
+     */
+    private List<Expr> absorb(Map<String, Expr> unique, BooleanOperator inner) {
+        List<Expr> list = new ArrayList<>();
+        for (Expr e : unique.values()) {
+            boolean absorbed = false;
+            if (e.isGroup(inner) && e.group.getModifierList() == null && !e.hasInvisible()) {
+                for (Expr child : e.args) {
+                    if (child.isPredicate() && unique.containsKey(child.key())) {
+                        absorbed = true;
+                        break;
+                    }
+                }
+            }
+            if (absorbed) {
+                changed = true;
+            } else {
+                list.add(e);
+            }
+        }
+        return list;
+    }
+
+    private Expr empty() {
+        changed = true;
+        return EMPTY;
+    }
+
+    private Expr remove(Expr expr, List<Expr> args) {
+        List<Expr> list = new ArrayList<>();
+        for (Expr arg : args) {
+            if (arg != EMPTY) {
+                list.add(arg);
+            }
+        }
+        changed = true;
+        return list.isEmpty() ? EMPTY : list.size() == 1 ? list.get(0) : expr.with(list);
+    }
+
+    private static Set<String> conjuncts(Expr expr) {
+        Set<String> set = new HashSet<>();
+        for (Expr e : expr.isGroup(BooleanOperator.AND) && expr.group.getModifierList() == null
+                ? expr.args : List.of(expr)) {
+            if (e.isPredicate()) {
+                set.add(e.key());
+            }
+        }
+        return set;
+    }
+
+    /**
+     * Whether the conjuncts of an expression imply another expression, that is whether all its
+     * conjuncts are among them.
+     */
+    private static boolean implies(Set<String> conjuncts, Expr expr) {
+        List<Expr> list = expr.isGroup(BooleanOperator.AND) && expr.group.getModifierList() == null
+                ? expr.args : List.of(expr);
+        for (Expr e : list) {
+            if (!e.isPredicate() || !conjuncts.contains(e.key())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isUnsatisfiableRange(List<Expr> list) {
+        Map<String, Bound> lower = new HashMap<>();
+        Map<String, Bound> upper = new HashMap<>();
+        for (Expr e : list) {
+            SearchClause clause = e.clause;
+            if (clause == null || !e.isPredicate() || clause.getIndex() == null
+                    || clause.getRelation().getModifierList() != null) {
+                continue;
+            }
+            Comparable<?> value = rangeValue(clause.getTerm());
+            if (value == null) {
+                continue;
+            }
+            String index = clause.getIndex().getContext() + "." + clause.getIndex().getName();
+            Comparitor comparitor = clause.getRelation().getComparitor();
+            if (comparitor == Comparitor.GREATER || comparitor == Comparitor.GREATER_EQUALS) {
+                Bound bound = new Bound(value, comparitor == Comparitor.GREATER);
+                Bound other = lower.get(index);
+                if (other == null || bound.isTighterLower(other)) {
+                    lower.put(index, bound);
+                }
+            } else if (comparitor == Comparitor.LESS || comparitor == Comparitor.LESS_EQUALS) {
+                Bound bound = new Bound(value, comparitor == Comparitor.LESS);
+                Bound other = upper.get(index);
+                if (other == null || bound.isTighterUpper(other)) {
+                    upper.put(index, bound);
+                }
+            }
+        }
+        for (Map.Entry<String, Bound> entry : lower.entrySet()) {
+            Bound up = upper.get(entry.getKey());
+            if (up != null && entry.getValue().excludes(up)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Comparable<?> rangeValue(Term term) {
+        if (term.isLong()) {
+            return Double.valueOf(term.getValue());
+        }
+        if (term.isFloat()) {
+            return Double.valueOf(term.getValue());
+        }
+        if (term.isDate()) {
+            return term.getDate();
+        }
+        // the parser creates names and identifiers, dates are recognized here
+        String value = term.getValue();
+        if (value != null && value.length() > 1 && value.startsWith("\"") && value.endsWith("\"")) {
+            value = value.substring(1, value.length() - 1);
+        }
+        return value != null && IsoDate.recognize(value) != IsoDate.NONE ? new Term(value).getDate() : null;
+    }
+
+    /**
+     * Convert a scoped clause to an expression bottom-up. A search clause with a parenthesized scoped clause
+     * is converted to the expression of the scoped clause.
+     */
+    private static Expr convert(ScopedClause root) {
+        Deque<Expr> results = new ArrayDeque<>();
+        Traversal.walk((Node) root, new Traversal.Listener<Node>() {
+            @Override
+            public void enter(Node node, Traversal<Node> traversal) {
+                if (node instanceof ScopedClause) {
+                    ((ScopedClause) node).getSearchClauses().forEach(traversal::child);
+                } else if (isGroup((SearchClause) node)) {
+                    traversal.child(((SearchClause) node).getQuery().getScopedClause());
+                }
+            }
+
+            @Override
+            public void leave(Node node) {
+                if (node instanceof ScopedClause) {
+                    ScopedClause clause = (ScopedClause) node;
+                    Expr[] converted = new Expr[clause.getSearchClauses().size()];
+                    for (int i = converted.length - 1; i >= 0; i--) {
+                        converted[i] = results.pop();
+                    }
+                    results.push(convert(clause, converted));
+                } else if (!isGroup((SearchClause) node)) {
+                    results.push(new Expr((SearchClause) node));
+                }
+            }
+        });
+        return results.pop();
+    }
+
+    /**
+     * Combine the expressions of the search clauses of a scoped clause.
+     */
+    private static Expr convert(ScopedClause clause, Expr[] converted) {
+        List<BooleanGroup> groups = clause.getBooleanGroups();
+        Expr left = converted[0];
+        int i = 0;
+        while (i < groups.size()) {
+            BooleanGroup group = groups.get(i);
+            List<Expr> args = new ArrayList<>();
+            args.add(left);
+            args.add(converted[++i]);
+            if (isFlat(group)) {
+                // a run of equal operators is one group, so that long chains are not nested
+                while (i < groups.size() && isFlat(groups.get(i))
+                        && groups.get(i).getOperator() == group.getOperator()) {
+                    args.add(converted[++i]);
+                }
+            }
+            left = new Expr(group, args);
+        }
+        return left;
+    }
+
+    private static boolean isGroup(SearchClause clause) {
+        return clause.getQuery() != null && clause.getQuery().getScopedClause() != null;
+    }
+
+    private static boolean isFlat(BooleanGroup group) {
+        BooleanOperator op = group.getOperator();
+        return group.getModifierList() == null && (op == BooleanOperator.AND || op == BooleanOperator.OR);
+    }
+
+    private static ScopedClause toScopedClause(Expr expr) {
+        if (expr.clause != null) {
+            return new ScopedClause(expr.clause);
+        }
+        for (Expr arg : expr.args) {
+            toSearchClause(arg);
+        }
+        return scopedClause(expr);
+    }
+
+    /**
+     * Convert an expression to a search clause. The search clauses of groups are built bottom-up and kept
+     * in the expressions, so every group is converted once.
+     */
+    private static SearchClause toSearchClause(Expr expr) {
+        if (expr.searchClause == null) {
+            Traversal.walk(expr, new Traversal.Listener<Expr>() {
+                @Override
+                public void enter(Expr e, Traversal<Expr> traversal) {
+                    if (e.searchClause == null) {
+                        e.args.forEach(traversal::child);
+                    }
+                }
+
+                @Override
+                public void leave(Expr e) {
+                    if (e.searchClause == null) {
+                        e.searchClause = new SearchClause(new Query(scopedClause(e)));
+                    }
+                }
+            });
+        }
+        return expr.searchClause;
+    }
+
+    /**
+     * Build the scoped clause of a group from the search clauses of its arguments.
+     */
+    private static ScopedClause scopedClause(Expr expr) {
+        List<SearchClause> clauses = new ArrayList<>(expr.args.size());
+        for (Expr arg : expr.args) {
+            clauses.add(arg.searchClause);
+        }
+        return new ScopedClause(clauses, Collections.nCopies(clauses.size() - 1, expr.group));
+    }
+
+    /**
+     * A boolean expression: a search clause, or a group of expressions combined by one boolean operator.
+     */
+    private static final class Expr {
+
+        private final SearchClause clause;
+
+        private final BooleanGroup group;
+
+        private final List<Expr> args;
+
+        private SearchClause searchClause;
+
+        private String key;
+
+        Expr(SearchClause clause) {
+            this.clause = clause;
+            this.group = null;
+            this.args = null;
+            this.searchClause = clause;
+        }
+
+        Expr(BooleanGroup group, List<Expr> args) {
+            this.clause = null;
+            this.group = group;
+            this.args = args;
+        }
+
+        Expr with(List<Expr> newArgs) {
+            return newArgs.equals(args) ? this : new Expr(group, newArgs);
+        }
+
+        boolean isGroup(BooleanOperator op) {
+            return group != null && group.getOperator() == op;
+        }
+
+        /**
+         * Whether this expression is a search condition. Clauses in the facet and option contexts are not.
+         */
+        boolean isPredicate() {
+            if (clause == null || clause.getIndex() == null) {
+                return true;
+            }
+            String context = clause.getIndex().getContext();
+            return !CQLQueryModel.isFacetContext(context) && !CQLQueryModel.isOptionContext(context);
+        }
+
+        /**
+         * Whether this expression contains a clause in the facet, filter or option context.
+         */
+        boolean hasInvisible() {
+            Deque<Expr> stack = new ArrayDeque<>();
+            stack.push(this);
+            while (!stack.isEmpty()) {
+                Expr e = stack.pop();
+                if (e.clause == null) {
+                    e.args.forEach(stack::push);
+                } else if (e.clause.getIndex() != null
+                        && !CQLQueryModel.isVisible(e.clause.getIndex().getContext())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        String key() {
+            if (key == null) {
+                key = CQLSerializer.toCQL(toSearchClause(this), true);
+            }
+            return key;
+        }
+    }
+
+    /**
+     * A lower or upper range bound.
+     */
+    private static final class Bound {
+
+        private final Comparable<?> value;
+
+        private final boolean exclusive;
+
+        Bound(Comparable<?> value, boolean exclusive) {
+            this.value = value;
+            this.exclusive = exclusive;
+        }
+
+        boolean isTighterLower(Bound other) {
+            Integer cmp = compare(value, other.value);
+            return cmp != null && (cmp > 0 || (cmp == 0 && exclusive));
+        }
+
+        boolean isTighterUpper(Bound other) {
+            Integer cmp = compare(value, other.value);
+            return cmp != null && (cmp < 0 || (cmp == 0 && exclusive));
+        }
+
+        /**
+         * Whether this lower bound and an upper bound leave no value in between.
+         */
+        boolean excludes(Bound upper) {
+            Integer cmp = compare(value, upper.value);
+            return cmp != null && (cmp > 0 || (cmp == 0 && (exclusive || upper.exclusive)));
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private static Integer compare(Comparable a, Comparable b) {
+            return a.getClass() == b.getClass() ? a.compareTo(b) : null;
+        }
+    }
+}
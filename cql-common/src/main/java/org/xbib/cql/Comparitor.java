@@ -1,6 +1,7 @@
 package org.xbib.cql;
 
 import java.util.HashMap;
+import java.util.Locale;
 
 /**
  * CQL operators.
@@ -59,13 +60,13 @@ public enum Comparitor {
     }
 
     /**
-     * Get operator for token.
+     * Get operator for token. Named comparitors are case insensitive.
      *
      * @param token the token
      * @return the operator
      */
     static Comparitor forToken(Object token) {
-        return tokenMap.get(token.toString());
+        return tokenMap.get(token.toString().toLowerCase(Locale.ROOT));
     }
 
     /**
@@ -1,5 +1,7 @@
 package org.xbib.cql;
 
+import java.util.Objects;
+
 /**
  * An Identifier is a SimpleName or a String in double quotes.
  */
@@ -23,12 +25,25 @@ public class Identifier extends AbstractNode {
         return value;
     }
 
+    public boolean isQuoted() {
+        return quoted;
+    }
+
     public void accept(Visitor visitor) {
         visitor.visit(this);
     }
 
     @Override
-    public String toString() {
-        return quoted ? "\"" + value.replaceAll("\"", "\\\\\"") + "\"" : value;
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Identifier)) {
+            return false;
+        }
+        Identifier other = (Identifier) o;
+        return sameFingerprint(other)
+                && Objects.equals(value, other.value)
+                && quoted == other.quoted;
     }
 }
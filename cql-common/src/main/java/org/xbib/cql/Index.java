@@ -1,5 +1,7 @@
 package org.xbib.cql;
 
+import java.util.Objects;
+
 /**
  * Abstract syntax tree of CQL - Index.
  * The Index consists of <b>context</b> and <b>name</b>
@@ -27,8 +29,21 @@ public class Index extends AbstractNode {
         }
     }
 
+    private Index(String context, String name) {
+        this.context = context;
+        this.name = name;
+    }
+
+    /**
+     * Set the context of the index.
+     *
+     * @param context the context
+     * @throws IllegalStateException if the index is shared by several trees
+     */
     public void setContext(String context) {
+        checkModifiable();
         this.context = context;
+        invalidate();
     }
 
     /**
@@ -38,8 +53,16 @@ public class Index extends AbstractNode {
         return context;
     }
 
+    /**
+     * Set the name of the index.
+     *
+     * @param name the name
+     * @throws IllegalStateException if the index is shared by several trees
+     */
     public void setName(String name) {
+        checkModifiable();
         this.name = name;
+        invalidate();
     }
 
     /**
@@ -51,12 +74,30 @@ public class Index extends AbstractNode {
         return name;
     }
 
+    /**
+     * Copy this index, so that another tree can use it without sharing it.
+     *
+     * @return the copy
+     */
+    Index copy() {
+        return new Index(context, name);
+    }
+
     public void accept(Visitor visitor) {
         visitor.visit(this);
     }
 
     @Override
-    public String toString() {
-        return context != null && !context.isEmpty() ? context + "." + name : name;
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Index)) {
+            return false;
+        }
+        Index other = (Index) o;
+        return sameFingerprint(other)
+                && Objects.equals(context, other.context)
+                && Objects.equals(name, other.name);
     }
 }
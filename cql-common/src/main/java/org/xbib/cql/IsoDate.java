@@ -0,0 +1,86 @@
+package org.xbib.cql;
+
+/**
+ * Recognizes the two ISO 8601 forms that CQL terms may hide, {@code yyyy-MM-dd} and
+ * {@code yyyy-MM-dd'T'HH:mm:ss'Z'}, without allocating and without exceptions.
+ * Most terms are rejected by the length or the first character.
+ */
+final class IsoDate {
+
+    static final int NONE = 0;
+
+    static final int DAY = 1;
+
+    static final int SECONDS = 2;
+
+    private IsoDate() {
+    }
+
+    /**
+     * Recognize an ISO date.
+     *
+     * @param s the string
+     * @return {@link #NONE}, {@link #DAY}, or {@link #SECONDS}
+     */
+    static int recognize(CharSequence s) {
+        if (s == null) {
+            return NONE;
+        }
+        int len = s.length();
+        if ((len != 10 && len != 20) || !isDigit(s.charAt(0))) {
+            return NONE;
+        }
+        if (s.charAt(4) != '-' || s.charAt(7) != '-') {
+            return NONE;
+        }
+        int year = digits(s, 0, 4);
+        int month = digits(s, 5, 2);
+        int day = digits(s, 8, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)) {
+            return NONE;
+        }
+        if (len == 10) {
+            return DAY;
+        }
+        if (s.charAt(10) != 'T' || s.charAt(13) != ':' || s.charAt(16) != ':' || s.charAt(19) != 'Z') {
+            return NONE;
+        }
+        int hour = digits(s, 11, 2);
+        int minute = digits(s, 14, 2);
+        int second = digits(s, 17, 2);
+        if (hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            return NONE;
+        }
+        return SECONDS;
+    }
+
+    private static boolean isDigit(char ch) {
+        return ch >= '0' && ch <= '9';
+    }
+
+    private static int digits(CharSequence s, int offset, int count) {
+        int n = 0;
+        for (int i = offset; i < offset + count; i++) {
+            char ch = s.charAt(i);
+            if (!isDigit(ch)) {
+                return -1;
+            }
+            n = n * 10 + (ch - '0');
+        }
+        return n;
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                return (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+}
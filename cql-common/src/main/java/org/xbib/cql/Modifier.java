@@ -1,5 +1,7 @@
 package org.xbib.cql;
 
+import java.util.Objects;
+
 /**
  * Modifier.
  */
@@ -12,13 +14,13 @@ public class Modifier extends AbstractNode {
     private Term term;
 
     public Modifier(SimpleName name, Comparitor op, Term term) {
-        this.name = name;
+        this.name = adopt(name);
         this.op = op;
-        this.term = term;
+        this.term = adopt(term);
     }
 
     public Modifier(SimpleName name) {
-        this.name = name;
+        this.name = adopt(name);
     }
 
     public SimpleName getName() {
@@ -33,13 +35,32 @@ public class Modifier extends AbstractNode {
         return term;
     }
 
+    /**
+     * Copy this modifier, so that another tree can use it without sharing its term.
+     *
+     * @return the copy
+     */
+    Modifier copy() {
+        return new Modifier(name, op, term != null ? term.copy() : null);
+    }
+
     public void accept(Visitor visitor) {
         visitor.visit(this);
     }
 
     @Override
-    public String toString() {
-        return "/" + (term != null ? name.toString() + op + term : name.toString());
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Modifier)) {
+            return false;
+        }
+        Modifier other = (Modifier) o;
+        return sameFingerprint(other)
+                && Objects.equals(name, other.name)
+                && Objects.equals(op, other.op)
+                && Objects.equals(term, other.term);
     }
 
 }
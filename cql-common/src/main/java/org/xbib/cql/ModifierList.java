@@ -2,6 +2,7 @@ package org.xbib.cql;
 
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Objects;
 
 /**
  * Modifier list. This is a recursive data structure with a Modifier and optionally a ModifierList.
@@ -11,12 +12,40 @@ public class ModifierList extends AbstractNode {
     private List<Modifier> modifierList = new LinkedList<>();
 
     public ModifierList(ModifierList modifiers, Modifier modifier) {
-        modifierList.addAll(modifiers.modifierList);
-        modifierList.add(modifier);
+        for (Modifier m : modifiers.modifierList) {
+            modifierList.add(adopt(m));
+        }
+        modifierList.add(adopt(modifier));
     }
 
     public ModifierList(Modifier modifier) {
-        modifierList.add(modifier);
+        modifierList.add(adopt(modifier));
+    }
+
+    /**
+     * Append a modifier to this list. Used by the parser, so the modifiers are not shared with
+     * intermediate lists.
+     *
+     * @param modifier the modifier
+     * @return this list
+     */
+    ModifierList append(Modifier modifier) {
+        checkBuilding();
+        modifierList.add(adopt(modifier));
+        return this;
+    }
+
+    /**
+     * Copy this list and its modifiers, so that another tree can use it without sharing it.
+     *
+     * @return the copy
+     */
+    ModifierList copy() {
+        ModifierList list = new ModifierList(modifierList.get(0).copy());
+        for (int i = 1; i < modifierList.size(); i++) {
+            list.append(modifierList.get(i).copy());
+        }
+        return list;
     }
 
     public List<Modifier> getModifierList() {
@@ -28,12 +57,16 @@ public class ModifierList extends AbstractNode {
     }
 
     @Override
-    public String toString() {
-        StringBuilder sb = new StringBuilder();
-        for (Modifier m : modifierList) {
-            sb.append(m.toString());
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ModifierList)) {
+            return false;
         }
-        return sb.toString();
+        ModifierList other = (ModifierList) o;
+        return sameFingerprint(other)
+                && Objects.equals(modifierList, other.modifierList);
     }
 
 }
@@ -1,5 +1,7 @@
 package org.xbib.cql;
 
+import java.util.Objects;
+
 /**
  * Prefix assignment.
  */
@@ -10,12 +12,12 @@ public class PrefixAssignment extends AbstractNode {
     private Term uri;
 
     public PrefixAssignment(Term prefix, Term uri) {
-        this.prefix = prefix;
-        this.uri = uri;
+        this.prefix = adopt(prefix);
+        this.uri = adopt(uri);
     }
 
     public PrefixAssignment(Term uri) {
-        this.uri = uri;
+        this.uri = adopt(uri);
     }
 
     public Term getPrefix() {
@@ -26,13 +28,31 @@ public class PrefixAssignment extends AbstractNode {
         return uri;
     }
 
+    /**
+     * Copy this assignment and its terms, so that another tree can use it without sharing it.
+     *
+     * @return the copy
+     */
+    PrefixAssignment copy() {
+        return new PrefixAssignment(prefix != null ? prefix.copy() : null, uri.copy());
+    }
+
     public void accept(Visitor visitor) {
         visitor.visit(this);
     }
 
     @Override
-    public String toString() {
-        return "> " + prefix + " = " + uri;
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof PrefixAssignment)) {
+            return false;
+        }
+        PrefixAssignment other = (PrefixAssignment) o;
+        return sameFingerprint(other)
+                && Objects.equals(prefix, other.prefix)
+                && Objects.equals(uri, other.uri);
     }
 
 }
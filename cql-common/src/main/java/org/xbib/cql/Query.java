@@ -1,7 +1,9 @@
 package org.xbib.cql;
 
+import java.util.Deque;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Objects;
 
 /**
  * CQL query.
@@ -15,12 +17,12 @@ public class Query extends AbstractNode {
     private ScopedClause clause;
 
     Query(PrefixAssignment assignment, Query query) {
-        prefixes.add(assignment);
-        this.query = query;
+        prefixes.add(adopt(assignment));
+        this.query = adopt(query);
     }
 
     Query(ScopedClause clause) {
-        this.clause = clause;
+        this.clause = adopt(clause);
     }
 
     public List<PrefixAssignment> getPrefixAssignments() {
@@ -40,18 +42,26 @@ public class Query extends AbstractNode {
     }
 
     @Override
-    public String toString() {
-        StringBuilder sb = new StringBuilder();
-        for (PrefixAssignment assignment : prefixes) {
-            sb.append(assignment.toString()).append(' ');
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
         }
-        if (query != null) {
-            sb.append(query);
+        if (!(o instanceof Query)) {
+            return false;
         }
-        if (clause != null) {
-            sb.append(clause);
+        Query other = (Query) o;
+        return sameFingerprint(other) && structurallyEquals(this, other);
+    }
+
+    @Override
+    boolean equalFields(AbstractNode o, Deque<AbstractNode> pending) {
+        if (!(o instanceof Query)) {
+            return false;
         }
-        return sb.toString();
+        Query other = (Query) o;
+        return Objects.equals(prefixes, other.prefixes)
+                && pend(pending, query, other.query)
+                && pend(pending, clause, other.clause);
     }
 
 }
@@ -0,0 +1,181 @@
+package org.xbib.cql;
+
+import org.xbib.cql.util.Traversal;
+
+import java.util.function.Consumer;
+
+/**
+ * Count the complexity of a query while it is parsed, and abort as soon as a {@link QueryLimits limit}
+ * is exceeded. Parentheses are counted by the lexer, search clauses and prefix assignments by the
+ * actions of the parser.
+ */
+final class QueryGuard {
+
+    private final QueryLimits limits;
+
+    private final Consumer<? super QueryLimitExceededException> failure;
+
+    private int depth;
+
+    private int clauses;
+
+    private int wildcardTerms;
+
+    private int leadingWildcardTerms;
+
+    private int termLength;
+
+    private int prefixAssignments;
+
+    QueryGuard(QueryLimits limits) {
+        this(limits, e -> { });
+    }
+
+    /**
+     * Create a guard that reports an exceeded limit before it aborts parsing.
+     *
+     * @param limits  the limits
+     * @param failure the receiver of the exception
+     */
+    QueryGuard(QueryLimits limits, Consumer<? super QueryLimitExceededException> failure) {
+        this.limits = limits != null ? limits : QueryLimits.UNLIMITED;
+        this.failure = failure;
+    }
+
+    QueryLimits getLimits() {
+        return limits;
+    }
+
+    int getClauses() {
+        return clauses;
+    }
+
+    void reset() {
+        depth = 0;
+        clauses = 0;
+        wildcardTerms = 0;
+        leadingWildcardTerms = 0;
+        termLength = 0;
+        prefixAssignments = 0;
+    }
+
+    /**
+     * An opening parenthesis.
+     */
+    void open() {
+        check(QueryLimits.Limit.DEPTH, ++depth, limits.getMaxDepth());
+    }
+
+    /**
+     * A closing parenthesis.
+     */
+    void close() {
+        depth--;
+    }
+
+    void prefixAssignment() {
+        check(QueryLimits.Limit.PREFIX_ASSIGNMENTS, ++prefixAssignments, limits.getMaxPrefixAssignments());
+    }
+
+    /**
+     * A search clause with a term.
+     *
+     * @param term the term
+     */
+    void clause(Term term) {
+        check(QueryLimits.Limit.CLAUSES, ++clauses, limits.getMaxClauses());
+        String text = text(term);
+        termLength += text.length();
+        check(QueryLimits.Limit.TERM_LENGTH, termLength, limits.getMaxTermLength());
+        if (text.length() > 1 && isWildcard(text)) {
+            check(QueryLimits.Limit.WILDCARD_TERMS, ++wildcardTerms, limits.getMaxWildcardTerms());
+            if (text.charAt(0) == '*' || text.charAt(0) == '?') {
+                check(QueryLimits.Limit.LEADING_WILDCARD_TERMS, ++leadingWildcardTerms,
+                        limits.getMaxLeadingWildcardTerms());
+            }
+        }
+    }
+
+    /**
+     * Check a parsed query.
+     *
+     * @param node the query
+     */
+    void check(Node node) {
+        reset();
+        Traversal.walk(node, new Traversal.Listener<Node>() {
+            @Override
+            public void enter(Node n, Traversal<Node> traversal) {
+                if (n instanceof SortedQuery) {
+                    if (((SortedQuery) n).getQuery() != null) {
+                        traversal.child(((SortedQuery) n).getQuery());
+                    }
+                } else if (n instanceof Query) {
+                    Query query = (Query) n;
+                    for (int i = 0; i < query.getPrefixAssignments().size(); i++) {
+                        prefixAssignment();
+                    }
+                    if (query.getQuery() != null) {
+                        traversal.child(query.getQuery());
+                    }
+                    if (query.getScopedClause() != null) {
+                        traversal.child(query.getScopedClause());
+                    }
+                } else if (n instanceof ScopedClause) {
+                    for (SearchClause clause : ((ScopedClause) n).getSearchClauses()) {
+                        traversal.child(clause);
+                    }
+                } else if (n instanceof SearchClause) {
+                    SearchClause clause = (SearchClause) n;
+                    if (clause.getQuery() != null) {
+                        open();
+                        traversal.child(clause.getQuery());
+                    } else if (clause.getTerm() != null) {
+                        clause(clause.getTerm());
+                    }
+                }
+            }
+
+            @Override
+            public void leave(Node n) {
+                if (n instanceof SearchClause && ((SearchClause) n).getQuery() != null) {
+                    close();
+                }
+            }
+        });
+    }
+
+    private static String text(Term term) {
+        if (term.isIdentifier()) {
+            return term.getIdentifier().getValue();
+        }
+        if (term.isName()) {
+            return term.getName().getName();
+        }
+        String value = term.getValue();
+        return value != null ? value : "";
+    }
+
+    /**
+     * Whether a term has an unescaped wildcard.
+     */
+    private static boolean isWildcard(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char ch = text.charAt(i);
+            if (ch == '\\') {
+                i++;
+            } else if (ch == '*' || ch == '?') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void check(QueryLimits.Limit limit, int value, int maximum) {
+        if (value > maximum) {
+            QueryLimitExceededException e = new QueryLimitExceededException(limit, maximum);
+            failure.accept(e);
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package org.xbib.cql;
+
+/**
+ * A query exceeds one of its {@link QueryLimits}.
+ */
+public class QueryLimitExceededException extends SyntaxException {
+
+    private static final long serialVersionUID = 4160326212539465398L;
+
+    private final QueryLimits.Limit limit;
+
+    private final int maximum;
+
+    /**
+     * Creates a new QueryLimitExceededException object.
+     *
+     * @param limit   the limit that is exceeded
+     * @param maximum the maximum of the limit
+     */
+    public QueryLimitExceededException(QueryLimits.Limit limit, int maximum) {
+        super("query exceeds the maximum " + limit + " of " + maximum);
+        this.limit = limit;
+        this.maximum = maximum;
+    }
+
+    public QueryLimits.Limit getLimit() {
+        return limit;
+    }
+
+    public int getMaximum() {
+        return maximum;
+    }
+}
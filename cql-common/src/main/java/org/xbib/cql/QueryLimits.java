@@ -0,0 +1,251 @@
+package org.xbib.cql;
+
+import java.util.Objects;
+
+/**
+ * Immutable limits of the complexity of a CQL query: the nesting depth of parentheses, the number of
+ * search clauses, the number of wildcard terms and of terms with a leading wildcard, the total length
+ * of all terms, and the number of prefix assignments.
+ *
+ * The limits are enforced by {@link CQLParser} while it reads a query, so a query that exceeds
+ * a limit is rejected as early as possible with a {@link QueryLimitExceededException}, before
+ * the rest of the query is parsed or anything is sent to the cluster. Queries that are already
+ * parsed are checked with {@link #check(Node)}.
+ *
+ * Limits are value objects, so they can be configured per tenant and be part of cache keys.
+ */
+public final class QueryLimits {
+
+    /**
+     * No limits.
+     */
+    public static final QueryLimits UNLIMITED = new QueryLimits(Integer.MAX_VALUE, Integer.MAX_VALUE,
+            Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE);
+
+    private final int maxDepth;
+
+    private final int maxClauses;
+
+    private final int maxWildcardTerms;
+
+    private final int maxLeadingWildcardTerms;
+
+    private final int maxTermLength;
+
+    private final int maxPrefixAssignments;
+
+    private QueryLimits(int maxDepth, int maxClauses, int maxWildcardTerms, int maxLeadingWildcardTerms,
+                        int maxTermLength, int maxPrefixAssignments) {
+        this.maxDepth = check(Limit.DEPTH, maxDepth);
+        this.maxClauses = check(Limit.CLAUSES, maxClauses);
+        this.maxWildcardTerms = check(Limit.WILDCARD_TERMS, maxWildcardTerms);
+        this.maxLeadingWildcardTerms = check(Limit.LEADING_WILDCARD_TERMS, maxLeadingWildcardTerms);
+        this.maxTermLength = check(Limit.TERM_LENGTH, maxTermLength);
+        this.maxPrefixAssignments = check(Limit.PREFIX_ASSIGNMENTS, maxPrefixAssignments);
+    }
+
+    /**
+     * Return limits that are equal to these, but with another maximum nesting depth of parentheses.
+     *
+     * @param maxDepth the maximum depth, 0 if no parentheses are allowed
+     * @return the limits
+     */
+    public QueryLimits withMaxDepth(int maxDepth) {
+        return new QueryLimits(maxDepth, maxClauses, maxWildcardTerms, maxLeadingWildcardTerms,
+                maxTermLength, maxPrefixAssignments);
+    }
+
+    /**
+     * Return limits that are equal to these, but with another maximum number of search clauses.
+     * Parenthesized queries are not counted, only the search clauses with a term.
+     *
+     * @param maxClauses the maximum number of search clauses
+     * @return the limits
+     */
+    public QueryLimits withMaxClauses(int maxClauses) {
+        return new QueryLimits(maxDepth, maxClauses, maxWildcardTerms, maxLeadingWildcardTerms,
+                maxTermLength, maxPrefixAssignments);
+    }
+
+    /**
+     * Return limits that are equal to these, but with another maximum number of terms with
+     * the wildcards <code>*</code> or <code>?</code>. A single <code>*</code> matches all documents
+     * and is not counted.
+     *
+     * @param maxWildcardTerms the maximum number of wildcard terms
+     * @return the limits
+     */
+    public QueryLimits withMaxWildcardTerms(int maxWildcardTerms) {
+        return new QueryLimits(maxDepth, maxClauses, maxWildcardTerms, maxLeadingWildcardTerms,
+                maxTermLength, maxPrefixAssignments);
+    }
+
+    /**
+     * Return limits that are equal to these, but with another maximum number of terms that start
+     * with a wildcard. Leading wildcards can not use the term index and are the most expensive terms.
+     *
+     * @param maxLeadingWildcardTerms the maximum number of terms with a leading wildcard
+     * @return the limits
+     */
+    public QueryLimits withMaxLeadingWildcardTerms(int maxLeadingWildcardTerms) {
+        return new QueryLimits(maxDepth, maxClauses, maxWildcardTerms, maxLeadingWildcardTerms,
+                maxTermLength, maxPrefixAssignments);
+    }
+
+    /**
+     * Return limits that are equal to these, but with another maximum total length of all terms
+     * of search clauses.
+     *
+     * @param maxTermLength the maximum total length in characters
+     * @return the limits
+     */
+    public QueryLimits withMaxTermLength(int maxTermLength) {
+        return new QueryLimits(maxDepth, maxClauses, maxWildcardTerms, maxLeadingWildcardTerms,
+                maxTermLength, maxPrefixAssignments);
+    }
+
+    /**
+     * Return limits that are equal to these, but with another maximum number of prefix assignments.
+     *
+     * @param maxPrefixAssignments the maximum number of prefix assignments
+     * @return the limits
+     */
+    public QueryLimits withMaxPrefixAssignments(int maxPrefixAssignments) {
+        return new QueryLimits(maxDepth, maxClauses, maxWildcardTerms, maxLeadingWildcardTerms,
+                maxTermLength, maxPrefixAssignments);
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public int getMaxClauses() {
+        return maxClauses;
+    }
+
+    public int getMaxWildcardTerms() {
+        return maxWildcardTerms;
+    }
+
+    public int getMaxLeadingWildcardTerms() {
+        return maxLeadingWildcardTerms;
+    }
+
+    public int getMaxTermLength() {
+        return maxTermLength;
+    }
+
+    public int getMaxPrefixAssignments() {
+        return maxPrefixAssignments;
+    }
+
+    /**
+     * Get the maximum of a limit.
+     *
+     * @param limit the limit
+     * @return the maximum
+     */
+    public int getMaximum(Limit limit) {
+        switch (limit) {
+            case DEPTH:
+                return maxDepth;
+            case CLAUSES:
+                return maxClauses;
+            case WILDCARD_TERMS:
+                return maxWildcardTerms;
+            case LEADING_WILDCARD_TERMS:
+                return maxLeadingWildcardTerms;
+            case TERM_LENGTH:
+                return maxTermLength;
+            case PREFIX_ASSIGNMENTS:
+                return maxPrefixAssignments;
+            default:
+                throw new IllegalArgumentException("unknown limit: " + limit);
+        }
+    }
+
+    public boolean isUnlimited() {
+        return equals(UNLIMITED);
+    }
+
+    /**
+     * Check a parsed query against these limits. The query is walked once, on an explicit stack.
+     *
+     * @param node the query
+     * @throws QueryLimitExceededException if the query exceeds a limit
+     */
+    public void check(Node node) {
+        if (!isUnlimited()) {
+            new QueryGuard(this).check(node);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof QueryLimits)) {
+            return false;
+        }
+        QueryLimits other = (QueryLimits) o;
+        return maxDepth == other.maxDepth
+                && maxClauses == other.maxClauses
+                && maxWildcardTerms == other.maxWildcardTerms
+                && maxLeadingWildcardTerms == other.maxLeadingWildcardTerms
+                && maxTermLength == other.maxTermLength
+                && maxPrefixAssignments == other.maxPrefixAssignments;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(maxDepth, maxClauses, maxWildcardTerms, maxLeadingWildcardTerms,
+                maxTermLength, maxPrefixAssignments);
+    }
+
+    @Override
+    public String toString() {
+        return "[maxDepth=" + maxDepth
+                + ",maxClauses=" + maxClauses
+                + ",maxWildcardTerms=" + maxWildcardTerms
+                + ",maxLeadingWildcardTerms=" + maxLeadingWildcardTerms
+                + ",maxTermLength=" + maxTermLength
+                + ",maxPrefixAssignments=" + maxPrefixAssignments + "]";
+    }
+
+    private static int check(Limit limit, int maximum) {
+        if (maximum < 0) {
+            throw new IllegalArgumentException("negative maximum of " + limit + ": " + maximum);
+        }
+        return maximum;
+    }
+
+    /**
+     * The limits of a query.
+     */
+    public enum Limit {
+
+        DEPTH("nesting depth"),
+
+        CLAUSES("number of search clauses"),
+
+        WILDCARD_TERMS("number of wildcard terms"),
+
+        LEADING_WILDCARD_TERMS("number of terms with a leading wildcard"),
+
+        TERM_LENGTH("total length of terms"),
+
+        PREFIX_ASSIGNMENTS("number of prefix assignments");
+
+        private final String description;
+
+        Limit(String description) {
+            this.description = description;
+        }
+
+        @Override
+        public String toString() {
+            return description;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package org.xbib.cql;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * A CQL query with placeholders, like <code>dc.title = ? and dc.date &gt;= ?</code>. A placeholder is
+ * an unquoted term <code>?</code>, a quoted <code>"?"</code> is a question mark.
+ *
+ * The template is parsed once. Binding parameters creates a new query from the binary form of the
+ * template, see {@link CQLCodec}, where the placeholders are replaced by the parameters in the order
+ * of the query. The template itself is never modified, so it can be shared between threads.
+ */
+public final class QueryTemplate {
+
+    private final SortedQuery query;
+
+    private final byte[] encoded;
+
+    private final int parameterCount;
+
+    /**
+     * Create a template from a parsed query.
+     *
+     * @param query the query with placeholders
+     */
+    public QueryTemplate(SortedQuery query) {
+        this.query = query;
+        this.encoded = CQLCodec.encode(query);
+        this.parameterCount = CQLCodec.decoder(encoded, 0, encoded.length, null).getPlaceholders();
+    }
+
+    /**
+     * Parse a template.
+     *
+     * @param cql the CQL query with placeholders
+     * @return the template
+     * @throws SyntaxException if the query is not valid
+     */
+    public static QueryTemplate parse(String cql) {
+        CQLParser parser = new CQLParser(cql);
+        parser.parse();
+        return new QueryTemplate(parser.getCQLQuery());
+    }
+
+    /**
+     * The query with placeholders.
+     *
+     * @return the query
+     */
+    public SortedQuery getQuery() {
+        return query;
+    }
+
+    public int getParameterCount() {
+        return parameterCount;
+    }
+
+    /**
+     * Bind parameters to the placeholders.
+     *
+     * @param parameters the terms of the placeholders, in the order of the query
+     * @return a new query without placeholders
+     * @throws IllegalArgumentException if the number of parameters does not match the number of placeholders
+     */
+    public SortedQuery bind(Term... parameters) {
+        if (parameters.length != parameterCount) {
+            throw new IllegalArgumentException("expected " + parameterCount + " parameters, got "
+                    + parameters.length);
+        }
+        for (int i = 0; i < parameters.length; i++) {
+            if (parameters[i] == null) {
+                throw new IllegalArgumentException("parameter " + i + " is null");
+            }
+        }
+        return CQLCodec.decoder(encoded, 0, encoded.length, parameters).getQuery();
+    }
+
+    /**
+     * A string parameter. It is a quoted term, so it is one value, even if it contains spaces or
+     * words like <code>and</code>.
+     *
+     * @param value the string
+     * @return the term
+     */
+    public static Term term(String value) {
+        return new Term(new Identifier(value));
+    }
+
+    public static Term term(long value) {
+        return new Term(value);
+    }
+
+    public static Term term(double value) {
+        return new Term(value);
+    }
+
+    /**
+     * A date parameter, at the start of the day in UTC.
+     *
+     * @param value the date
+     * @return the term
+     * @throws IllegalArgumentException if the year has more than four digits
+     */
+    public static Term term(LocalDate value) {
+        checkYear(value.getYear());
+        return new Term(DateTimeFormatter.ISO_LOCAL_DATE.format(value));
+    }
+
+    /**
+     * A date parameter. The date is converted to UTC and truncated to seconds, like all dates in CQL.
+     *
+     * @param value the date
+     * @return the term
+     * @throws IllegalArgumentException if the year has more than four digits
+     */
+    public static Term term(ZonedDateTime value) {
+        ZonedDateTime utc = value.withZoneSameInstant(ZoneOffset.UTC).truncatedTo(ChronoUnit.SECONDS);
+        checkYear(utc.getYear());
+        return new Term(DateTimeFormatter.ISO_INSTANT.format(utc));
+    }
+
+    private static void checkYear(int year) {
+        if (year < 0 || year > 9999) {
+            throw new IllegalArgumentException("year out of range of CQL dates: " + year);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return query.toString();
+    }
+}
@@ -1,5 +1,7 @@
 package org.xbib.cql;
 
+import java.util.Objects;
+
 /**
  * Relation to a ModifierList.
  */
@@ -10,7 +12,7 @@ public class Relation extends AbstractNode {
 
     public Relation(Comparitor comparitor, ModifierList modifiers) {
         this.comparitor = comparitor;
-        this.modifiers = modifiers;
+        this.modifiers = adopt(modifiers);
     }
 
     public Relation(Comparitor comparitor) {
@@ -25,15 +27,32 @@ public class Relation extends AbstractNode {
         return modifiers;
     }
 
+    /**
+     * Copy this relation and its modifiers, so that another tree can use it without sharing it.
+     *
+     * @return the copy
+     */
+    Relation copy() {
+        return new Relation(comparitor, modifiers != null ? modifiers.copy() : null);
+    }
+
     @Override
     public void accept(Visitor visitor) {
         visitor.visit(this);
     }
 
     @Override
-    public String toString() {
-        return modifiers != null ? comparitor + modifiers.toString()
-                : comparitor.toString();
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Relation)) {
+            return false;
+        }
+        Relation other = (Relation) o;
+        return sameFingerprint(other)
+                && Objects.equals(comparitor, other.comparitor)
+                && Objects.equals(modifiers, other.modifiers);
     }
 
 }
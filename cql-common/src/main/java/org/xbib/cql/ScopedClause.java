@@ -1,36 +1,140 @@
 package org.xbib.cql;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+
 /**
- * Scoped clause. This is a recursive data structure with a SearchClause and
- * optionally a ScopedClause.
- * SearchClause and ScopedClause are connected through a BooleanGroup.
+ * Scoped clause. The grammar defines it as a recursive data structure with a SearchClause and
+ * optionally a ScopedClause, connected through a BooleanGroup.
+ *
+ * Because the grammar is left-recursive, long chains like <code>id = 1 or id = 2 or ... or id = 5000</code>
+ * would become left-deep trees, so the clause is stored as a flat n-ary group instead: a list of
+ * search clauses, and a list of the boolean groups between them. The boolean group at position
+ * <code>i</code> connects the search clauses at positions <code>i</code> and <code>i + 1</code>,
+ * and the operators are evaluated from left to right.
  */
 public class ScopedClause extends AbstractNode {
 
-    private ScopedClause clause;
-    private BooleanGroup booleangroup;
-    private SearchClause search;
+    private final List<SearchClause> clauses;
+
+    private final List<BooleanGroup> groups;
+
+    private final boolean view;
 
     ScopedClause(ScopedClause clause, BooleanGroup bg, SearchClause search) {
-        this.clause = clause;
-        this.booleangroup = bg;
-        this.search = search;
+        this(clause.clauses, clause.groups);
+        groups.add(adopt(bg));
+        clauses.add(adopt(search));
     }
 
     ScopedClause(SearchClause search) {
-        this.search = search;
+        this.clauses = new ArrayList<>();
+        this.groups = new ArrayList<>();
+        this.view = false;
+        clauses.add(adopt(search));
+    }
+
+    /**
+     * Create a scoped clause from a flat list of search clauses.
+     *
+     * @param clauses the search clauses
+     * @param groups  the boolean groups between the search clauses, one less than the search clauses
+     */
+    ScopedClause(List<SearchClause> clauses, List<BooleanGroup> groups) {
+        if (clauses.isEmpty() || groups.size() != clauses.size() - 1) {
+            throw new IllegalArgumentException("expected " + (clauses.size() - 1)
+                    + " boolean groups for " + clauses.size() + " search clauses, got " + groups.size());
+        }
+        this.clauses = new ArrayList<>(clauses.size() + 1);
+        this.groups = new ArrayList<>(groups.size() + 1);
+        this.view = false;
+        for (SearchClause clause : clauses) {
+            this.clauses.add(adopt(clause));
+        }
+        for (BooleanGroup group : groups) {
+            this.groups.add(adopt(group));
+        }
     }
 
+    /**
+     * A read-only view of the first search clauses and boolean groups of another clause.
+     */
+    private ScopedClause(List<SearchClause> clauses, List<BooleanGroup> groups, boolean view) {
+        this.clauses = Collections.unmodifiableList(clauses);
+        this.groups = Collections.unmodifiableList(groups);
+        this.view = view;
+    }
+
+    /**
+     * Append a boolean group and a search clause to this clause. Used by the parser, so that
+     * a chain of n clauses is built in linear time. The clause is still being built, so there is
+     * no cached string to invalidate.
+     *
+     * @param bg     the boolean group
+     * @param search the search clause
+     * @return this clause
+     */
+    ScopedClause append(BooleanGroup bg, SearchClause search) {
+        checkBuilding();
+        groups.add(adopt(bg));
+        clauses.add(adopt(search));
+        return this;
+    }
+
+    /**
+     * Get the scoped clause before the last boolean group. This is the recursive view of the grammar.
+     * The result is a read-only view of this clause, it does not copy the search clauses. Use
+     * {@link #getSearchClauses()} and {@link #getBooleanGroups()} to walk long chains.
+     *
+     * @return the scoped clause before the last boolean group, or null if this clause has only one search clause
+     */
     public ScopedClause getScopedClause() {
-        return clause;
+        int n = clauses.size();
+        return n > 1 ? new ScopedClause(clauses.subList(0, n - 1), groups.subList(0, n - 2), true) : null;
     }
 
+    /**
+     * Get the last boolean group.
+     *
+     * @return the last boolean group, or null if this clause has only one search clause
+     */
     public BooleanGroup getBooleanGroup() {
-        return booleangroup;
+        return groups.isEmpty() ? null : groups.get(groups.size() - 1);
     }
 
+    /**
+     * Get the last search clause.
+     *
+     * @return the last search clause
+     */
     public SearchClause getSearchClause() {
-        return search;
+        return clauses.get(clauses.size() - 1);
+    }
+
+    /**
+     * Get all search clauses, from left to right.
+     *
+     * @return the search clauses
+     */
+    public List<SearchClause> getSearchClauses() {
+        return Collections.unmodifiableList(clauses);
+    }
+
+    /**
+     * Get the boolean groups between the search clauses, from left to right.
+     *
+     * @return the boolean groups
+     */
+    public List<BooleanGroup> getBooleanGroups() {
+        return Collections.unmodifiableList(groups);
+    }
+
+    @Override
+    protected boolean isCached() {
+        return !view;
     }
 
     @Override
@@ -39,12 +143,31 @@ public class ScopedClause extends AbstractNode {
     }
 
     @Override
-    public String toString() {
-        String s = search.toString();
-        boolean hasQuery = s.length() > 0;
-        return clause != null && hasQuery ? clause + " " + booleangroup + " " + search
-                : clause != null ? clause.toString()
-                : hasQuery ? search.toString()
-                : "";
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ScopedClause)) {
+            return false;
+        }
+        ScopedClause other = (ScopedClause) o;
+        return sameFingerprint(other) && structurallyEquals(this, other);
+    }
+
+    @Override
+    boolean equalFields(AbstractNode o, Deque<AbstractNode> pending) {
+        if (!(o instanceof ScopedClause)) {
+            return false;
+        }
+        ScopedClause other = (ScopedClause) o;
+        if (!Objects.equals(groups, other.groups) || clauses.size() != other.clauses.size()) {
+            return false;
+        }
+        for (int i = 0; i < clauses.size(); i++) {
+            if (!pend(pending, clauses.get(i), other.clauses.get(i))) {
+                return false;
+            }
+        }
+        return true;
     }
 }
@@ -1,6 +1,7 @@
 package org.xbib.cql;
 
-import org.xbib.cql.model.CQLQueryModel;
+import java.util.Deque;
+import java.util.Objects;
 
 /**
  * Search clause.
@@ -13,17 +14,17 @@ public class SearchClause extends AbstractNode {
     private Term term;
 
     SearchClause(Query query) {
-        this.query = query;
+        this.query = adopt(query);
     }
 
     SearchClause(Index index, Relation relation, Term term) {
-        this.index = index;
-        this.relation = relation;
-        this.term = term;
+        this.index = adopt(index);
+        this.relation = adopt(relation);
+        this.term = adopt(term);
     }
 
     SearchClause(Term term) {
-        this.term = term;
+        this.term = adopt(term);
     }
 
     public Query getQuery() {
@@ -46,17 +47,27 @@ public class SearchClause extends AbstractNode {
         visitor.visit(this);
     }
 
-    /**
-     * @return CQL string
-     */
     @Override
-    public String toString() {
-        return query != null && query.toString().length() > 0 ? "(" + query + ")"
-                : query != null ? ""
-                : index != null && index.getContext() == null && index.getName() == null && term != null ? term.toString()
-                : index != null && !CQLQueryModel.isVisible(index.getContext()) ? ""
-                : index != null ? index + " " + relation + " " + term
-                : term != null ? term.toString()
-                : "";
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof SearchClause)) {
+            return false;
+        }
+        SearchClause other = (SearchClause) o;
+        return sameFingerprint(other) && structurallyEquals(this, other);
+    }
+
+    @Override
+    boolean equalFields(AbstractNode o, Deque<AbstractNode> pending) {
+        if (!(o instanceof SearchClause)) {
+            return false;
+        }
+        SearchClause other = (SearchClause) o;
+        return pend(pending, query, other.query)
+                && Objects.equals(index, other.index)
+                && Objects.equals(relation, other.relation)
+                && Objects.equals(term, other.term);
     }
 }
@@ -1,5 +1,7 @@
 package org.xbib.cql;
 
+import java.util.Objects;
+
 /**
  * A SimpleName consists of a String which is not surrounded by double quotes.
  */
@@ -21,8 +23,16 @@ public class SimpleName extends AbstractNode {
     }
 
     @Override
-    public String toString() {
-        return name;
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof SimpleName)) {
+            return false;
+        }
+        SimpleName other = (SimpleName) o;
+        return sameFingerprint(other)
+                && Objects.equals(name, other.name);
     }
 
 }
@@ -0,0 +1,51 @@
+package org.xbib.cql;
+
+/**
+ * The result of a {@link CQLSimplifier} run.
+ */
+public final class Simplification {
+
+    private final SortedQuery query;
+
+    private final boolean changed;
+
+    Simplification(SortedQuery query, boolean changed) {
+        this.query = query;
+        this.changed = changed;
+    }
+
+    /**
+     * The simplified query, in canonical form.
+     *
+     * @return the simplified query, or null if the query can not match anything
+     */
+    public SortedQuery getQuery() {
+        return query;
+    }
+
+    /**
+     * Whether the query was proven to match nothing, for example because it contains
+     * <code>x not x</code> or a range pair like <code>year &gt; 2010 and year &lt; 2000</code>.
+     * Such queries need not be sent to a search engine at all.
+     *
+     * @return true if the query matches nothing
+     */
+    public boolean isUnsatisfiable() {
+        return query == null;
+    }
+
+    /**
+     * Whether a simplification rule removed or replaced a part of the query. Normalization alone
+     * does not count as change.
+     *
+     * @return true if the query was simplified
+     */
+    public boolean isChanged() {
+        return changed;
+    }
+
+    @Override
+    public String toString() {
+        return query != null ? query.toString() : "<unsatisfiable>";
+    }
+}
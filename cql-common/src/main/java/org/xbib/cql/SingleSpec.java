@@ -1,5 +1,7 @@
 package org.xbib.cql;
 
+import java.util.Objects;
+
 /**
  * Single spec.
  */
@@ -9,12 +11,12 @@ public class SingleSpec extends AbstractNode {
     private ModifierList modifiers;
 
     public SingleSpec(Index index, ModifierList modifiers) {
-        this.index = index;
-        this.modifiers = modifiers;
+        this.index = adopt(index);
+        this.modifiers = adopt(modifiers);
     }
 
     public SingleSpec(Index index) {
-        this.index = index;
+        this.index = adopt(index);
     }
 
     public Index getIndex() {
@@ -25,13 +27,32 @@ public class SingleSpec extends AbstractNode {
         return modifiers;
     }
 
+    /**
+     * Copy this specification, its index and its modifiers, so that another tree can use it without
+     * sharing it.
+     *
+     * @return the copy
+     */
+    SingleSpec copy() {
+        return new SingleSpec(index.copy(), modifiers != null ? modifiers.copy() : null);
+    }
+
     public void accept(Visitor visitor) {
         visitor.visit(this);
     }
 
     @Override
-    public String toString() {
-        return index + (modifiers != null ? modifiers.toString() : "");
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof SingleSpec)) {
+            return false;
+        }
+        SingleSpec other = (SingleSpec) o;
+        return sameFingerprint(other)
+                && Objects.equals(index, other.index)
+                && Objects.equals(modifiers, other.modifiers);
     }
 
 }
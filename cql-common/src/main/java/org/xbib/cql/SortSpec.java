@@ -1,5 +1,9 @@
 package org.xbib.cql;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Objects;
+
 /**
  * Abstract syntax tree of CQL, the sort specification.
  */
@@ -9,12 +13,12 @@ public class SortSpec extends AbstractNode {
     private SingleSpec spec;
 
     public SortSpec(SortSpec sortspec, SingleSpec spec) {
-        this.sortspec = sortspec;
-        this.spec = spec;
+        this.sortspec = adopt(sortspec);
+        this.spec = adopt(spec);
     }
 
     public SortSpec(SingleSpec spec) {
-        this.spec = spec;
+        this.spec = adopt(spec);
     }
 
     public SortSpec getSortSpec() {
@@ -25,14 +29,48 @@ public class SortSpec extends AbstractNode {
         return spec;
     }
 
+    /**
+     * Copy this chain of specifications, so that another tree can use it without sharing it.
+     * The chain is copied in a loop, so long chains do not use the thread stack.
+     *
+     * @return the copy
+     */
+    SortSpec copy() {
+        Deque<SingleSpec> specs = new ArrayDeque<>();
+        for (SortSpec s = this; s != null; s = s.sortspec) {
+            specs.push(s.spec);
+        }
+        SortSpec copy = new SortSpec(specs.pop().copy());
+        while (!specs.isEmpty()) {
+            copy = new SortSpec(copy, specs.pop().copy());
+        }
+        return copy;
+    }
+
     @Override
     public void accept(Visitor visitor) {
         visitor.visit(this);
     }
 
     @Override
-    public String toString() {
-        return (sortspec != null ? sortspec + " " : "") + spec;
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof SortSpec)) {
+            return false;
+        }
+        SortSpec other = (SortSpec) o;
+        return sameFingerprint(other) && structurallyEquals(this, other);
+    }
+
+    @Override
+    boolean equalFields(AbstractNode o, Deque<AbstractNode> pending) {
+        if (!(o instanceof SortSpec)) {
+            return false;
+        }
+        SortSpec other = (SortSpec) o;
+        return pend(pending, sortspec, other.sortspec) && Objects.equals(spec, other.spec);
     }
 
 }
@@ -1,5 +1,7 @@
 package org.xbib.cql;
 
+import java.util.Deque;
+
 /**
  * Sorted query.
  */
@@ -9,13 +11,20 @@ public class SortedQuery extends AbstractNode {
 
     private SortSpec spec;
 
+    private final int clauses;
+
     SortedQuery(Query query, SortSpec spec) {
-        this.query = query;
-        this.spec = spec;
+        this(query, spec, -1);
     }
 
     SortedQuery(Query query) {
-        this.query = query;
+        this(query, null, -1);
+    }
+
+    SortedQuery(Query query, SortSpec spec, int clauses) {
+        this.query = adopt(query);
+        this.spec = adopt(spec);
+        this.clauses = clauses;
     }
 
     public Query getQuery() {
@@ -26,14 +35,38 @@ public class SortedQuery extends AbstractNode {
         return spec;
     }
 
+    /**
+     * The number of search clauses with a term, as counted by the parser.
+     *
+     * @return the number of search clauses, or -1 if the query was not parsed
+     */
+    public int getClauseCount() {
+        return clauses;
+    }
+
     @Override
     public void accept(Visitor visitor) {
         visitor.visit(this);
     }
 
     @Override
-    public String toString() {
-        return query != null && spec != null ? query + " sortby " + spec
-                : query != null ? query.toString() : "";
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof SortedQuery)) {
+            return false;
+        }
+        SortedQuery other = (SortedQuery) o;
+        return sameFingerprint(other) && structurallyEquals(this, other);
+    }
+
+    @Override
+    boolean equalFields(AbstractNode o, Deque<AbstractNode> pending) {
+        if (!(o instanceof SortedQuery)) {
+            return false;
+        }
+        SortedQuery other = (SortedQuery) o;
+        return pend(pending, query, other.query) && pend(pending, spec, other.spec);
     }
 }
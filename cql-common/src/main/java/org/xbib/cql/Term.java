@@ -1,21 +1,16 @@
 package org.xbib.cql;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.TimeZone;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Objects;
 
 /**
  * A CQL Term.
  */
 public class Term extends AbstractNode {
 
-    private static final TimeZone tz = TimeZone.getTimeZone("GMT");
-
-    private static final String ISO_FORMAT_SECONDS = "yyyy-MM-dd'T'HH:mm:ss'Z'";
-
-    private static final String ISO_FORMAT_DAYS = "yyyy-MM-dd";
-
     private String value;
 
     private Long longvalue;
@@ -24,27 +19,24 @@ public class Term extends AbstractNode {
 
     private Identifier identifier;
 
-    private Date datevalue;
+    private int datekind;
+
+    private ZonedDateTime datevalue;
 
     private SimpleName name;
 
     public Term(String value) {
         this.value = value;
-        try {
-            // check for hidden dates. CQL does not support ISO dates.
-            this.datevalue = parseDateISO(value);
-            this.value = null;
-        } catch (Exception e) {
-            //
-        }
+        // check for hidden dates. CQL does not support ISO dates.
+        this.datekind = IsoDate.recognize(value);
     }
 
     public Term(Identifier identifier) {
-        this.identifier = identifier;
+        this.identifier = adopt(identifier);
     }
 
     public Term(SimpleName name) {
-        this.name = name;
+        this.name = adopt(name);
     }
 
     public Term(Long value) {
@@ -55,14 +47,29 @@ public class Term extends AbstractNode {
         this.doublevalue = value;
     }
 
+    private Term(Term term) {
+        this.value = term.value;
+        this.longvalue = term.longvalue;
+        this.doublevalue = term.doublevalue;
+        this.identifier = adopt(term.identifier);
+        this.datekind = term.datekind;
+        this.datevalue = term.datevalue;
+        this.name = adopt(term.name);
+    }
+
     /**
      * Set value, useful for inline replacements
      * in spellcheck suggestions.
      *
      * @param value the value
+     * @throws IllegalStateException if the term is shared by several trees
      */
     public void setValue(String value) {
+        checkModifiable();
         this.value = value;
+        this.datekind = IsoDate.NONE;
+        this.datevalue = null;
+        invalidate();
     }
 
     /**
@@ -90,7 +97,7 @@ public class Term extends AbstractNode {
     }
 
     public boolean isString() {
-        return value != null;
+        return value != null && datekind == IsoDate.NONE;
     }
 
     public boolean isName() {
@@ -102,53 +109,66 @@ public class Term extends AbstractNode {
     }
 
     public boolean isDate() {
-        return datevalue != null;
+        return datekind != IsoDate.NONE;
+    }
+
+    /**
+     * The date value of a term that is an ISO date. The date is parsed on the first call.
+     *
+     * @return the date in UTC, or null if the term is not a date
+     */
+    public ZonedDateTime getDate() {
+        if (datevalue == null && datekind != IsoDate.NONE) {
+            datevalue = datekind == IsoDate.DAY
+                    ? LocalDate.parse(value).atStartOfDay(ZoneOffset.UTC)
+                    : ZonedDateTime.parse(value, DateTimeFormatter.ISO_DATE_TIME);
+        }
+        return datevalue;
     }
 
     public void accept(Visitor visitor) {
         visitor.visit(this);
     }
 
-    private Date parseDateISO(String value) {
-        if (value == null) {
-            return null;
-        }
-        SimpleDateFormat sdf = new SimpleDateFormat();
-        sdf.applyPattern(ISO_FORMAT_SECONDS);
-        sdf.setTimeZone(tz);
-        sdf.setLenient(true);
-        try {
-            return sdf.parse(value);
-        } catch (ParseException pe) {
-            // skip
-        }
-        sdf.applyPattern(ISO_FORMAT_DAYS);
-        try {
-            return sdf.parse(value);
-        } catch (ParseException pe) {
-            return null;
-        }
+    /**
+     * Copy this term, so that another tree can use it without sharing it.
+     *
+     * @return the copy
+     */
+    Term copy() {
+        return new Term(this);
+    }
+
+    Identifier getIdentifier() {
+        return identifier;
+    }
+
+    SimpleName getName() {
+        return name;
     }
 
-    private String formatDateISO(Date date) {
-        if (date == null) {
-            return null;
+    void appendDate(StringBuilder sb) {
+        // the recognizer only accepts the canonical forms, so the value needs no formatting
+        sb.append(value);
+        if (datekind == IsoDate.DAY) {
+            sb.append("T00:00:00Z");
         }
-        SimpleDateFormat sdf = new SimpleDateFormat();
-        sdf.applyPattern(ISO_FORMAT_SECONDS);
-        sdf.setTimeZone(tz);
-        return sdf.format(date);
     }
 
     @Override
-    public String toString() {
-        return longvalue != null ? Long.toString(longvalue)
-                : doublevalue != null ? Double.toString(doublevalue)
-                : datevalue != null ? formatDateISO(datevalue)
-                : value != null ? value.startsWith("\"") && value.endsWith("\"") ? value
-                : "\"" + value.replaceAll("\"", "\\\\\"") + "\""
-                : identifier != null ? identifier.toString()
-                : name != null ? name.toString()
-                : "";
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Term)) {
+            return false;
+        }
+        Term other = (Term) o;
+        return sameFingerprint(other)
+                && Objects.equals(value, other.value)
+                && Objects.equals(longvalue, other.longvalue)
+                && Objects.equals(doublevalue, other.doublevalue)
+                && Objects.equals(identifier, other.identifier)
+                && Objects.equals(name, other.name);
     }
 }
@@ -0,0 +1,58 @@
+package org.xbib.cql.jfr;
+
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import org.xbib.cql.Node;
+
+/**
+ * A walk of a generator over a CQL query, from the visit of the root to the generated output.
+ */
+@Name("org.xbib.cql.Generate")
+@Label("CQL Generate")
+@Description("Generation of output from a CQL query")
+public final class GenerateEvent extends QueryEvent {
+
+    @Label("Generator")
+    @Description("The simple class name of the generator")
+    String generator;
+
+    @Label("Output Size")
+    @Description("The number of UTF-8 bytes of the generated output")
+    @DataAmount(DataAmount.BYTES)
+    long outputSize;
+
+    /**
+     * Finish the event and commit it, if it is enabled.
+     *
+     * @param generator  the generator
+     * @param query      the query
+     * @param outputSize the number of UTF-8 bytes of the output, as counted by the generator
+     * @param failure    the exception that aborted the walk, or null
+     */
+    public void finish(Object generator, Node query, long outputSize, Throwable failure) {
+        if (shouldCommit()) {
+            this.generator = generator.getClass().getSimpleName();
+            setQuery(query);
+            this.outputSize = failure == null ? outputSize : 0L;
+            setOutcome(failure);
+            commit();
+        }
+    }
+
+    /**
+     * Finish the event and commit it, if it is enabled. The size of the output is only computed if the event
+     * is committed.
+     *
+     * @param generator the generator
+     * @param query     the query
+     * @param output    the generated output, or null
+     * @param failure   the exception that aborted the walk, or null
+     */
+    public void finish(Object generator, Node query, CharSequence output, Throwable failure) {
+        if (shouldCommit()) {
+            finish(generator, query, utf8Length(output), failure);
+        }
+    }
+}
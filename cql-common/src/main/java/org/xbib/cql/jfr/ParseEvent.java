@@ -0,0 +1,37 @@
+package org.xbib.cql.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import org.xbib.cql.SortedQuery;
+
+/**
+ * The parsing of a CQL query by the lexer and the parser. The event begins with the first token, which
+ * is read when a parser is created or reset.
+ */
+@Name("org.xbib.cql.Parse")
+@Label("CQL Parse")
+@Description("Parsing of a CQL query")
+public final class ParseEvent extends QueryEvent {
+
+    /**
+     * Finish the event and commit it, if it is enabled.
+     *
+     * @param input   the CQL query
+     * @param query   the parsed query, or null if parsing failed; its fingerprint is only recorded if its
+     *                string is cached already
+     * @param clauses the number of search clauses that were parsed
+     * @param failure the exception that aborted parsing, or null
+     */
+    public void finish(CharSequence input, SortedQuery query, int clauses, Throwable failure) {
+        if (shouldCommit()) {
+            if (query != null && query.isRendered()) {
+                fingerprint = query.getFingerprint();
+            }
+            queryLength = input != null ? input.length() : 0;
+            this.clauses = clauses;
+            setOutcome(failure);
+            commit();
+        }
+    }
+}
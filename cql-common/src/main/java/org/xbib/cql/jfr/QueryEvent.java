@@ -0,0 +1,96 @@
+package org.xbib.cql.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Threshold;
+import jdk.jfr.Unsigned;
+import org.xbib.cql.AbstractNode;
+import org.xbib.cql.Node;
+import org.xbib.cql.SortedQuery;
+
+/**
+ * The fields that all CQL events share.
+ *
+ * Events follow the usual pattern of JDK Flight Recorder: an event is created and begun before the work,
+ * and finished after it. The fields are only computed if the event is enabled and passes its threshold,
+ * so events that are not recorded cost an allocation that the JIT compiler removes, and a few checks.
+ * The fields describe the query with what is known already: events do not render or walk the query.
+ *
+ * By default, only work that takes at least one millisecond is recorded. A recording can lower the
+ * threshold, for example to zero.
+ */
+@Category("CQL")
+@Threshold("1 ms")
+public abstract class QueryEvent extends jdk.jfr.Event {
+
+    /**
+     * The outcome of work that did not fail.
+     */
+    public static final String SUCCESS = "success";
+
+    @Label("Fingerprint")
+    @Description("The 64-bit fingerprint of the CQL string of the query")
+    @Unsigned
+    long fingerprint;
+
+    @Label("Query Length")
+    @Description("The number of characters of the CQL query")
+    int queryLength;
+
+    @Label("Clauses")
+    @Description("The number of search clauses with a term")
+    int clauses;
+
+    @Label("Outcome")
+    @Description("'success', or the class name of the exception that aborted the work")
+    String outcome;
+
+    /**
+     * Set the fields that describe the query. The fingerprint and the length are set if the string of
+     * the query is cached, and the number of clauses is set if the parser counted them.
+     *
+     * @param query the query, or null if it is not known
+     */
+    void setQuery(Node query) {
+        if (query instanceof AbstractNode && ((AbstractNode) query).isRendered()) {
+            fingerprint = ((AbstractNode) query).getFingerprint();
+            queryLength = query.toString().length();
+        }
+        if (query instanceof SortedQuery) {
+            clauses = Math.max(0, ((SortedQuery) query).getClauseCount());
+        }
+    }
+
+    void setOutcome(Throwable failure) {
+        outcome = failure != null ? failure.getClass().getName() : SUCCESS;
+    }
+
+    /**
+     * The number of bytes of a string in UTF-8.
+     *
+     * @param s the string
+     * @return the number of bytes
+     */
+    static long utf8Length(CharSequence s) {
+        if (s == null) {
+            return 0L;
+        }
+        long length = 0L;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length()
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+}
@@ -0,0 +1,51 @@
+package org.xbib.cql.jfr;
+
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import org.xbib.cql.Node;
+
+/**
+ * The building or writing of the source of a search request from a translated CQL query.
+ */
+@Name("org.xbib.cql.Source")
+@Label("CQL Source")
+@Description("Building of a search request source from a translated CQL query")
+public final class SourceEvent extends QueryEvent {
+
+    @Label("Output Size")
+    @Description("The number of UTF-8 bytes of the search request source")
+    @DataAmount(DataAmount.BYTES)
+    long outputSize;
+
+    /**
+     * Finish the event and commit it, if it is enabled.
+     *
+     * @param query      the translated query
+     * @param outputSize the number of UTF-8 bytes of the source
+     * @param failure    the exception that aborted building the source, or null
+     */
+    public void finish(Node query, long outputSize, Throwable failure) {
+        if (shouldCommit()) {
+            setQuery(query);
+            this.outputSize = outputSize;
+            setOutcome(failure);
+            commit();
+        }
+    }
+
+    /**
+     * Finish the event and commit it, if it is enabled. The size of the source is only computed if the event
+     * is committed.
+     *
+     * @param query   the translated query
+     * @param source  the source
+     * @param failure the exception that aborted building the source, or null
+     */
+    public void finish(Node query, CharSequence source, Throwable failure) {
+        if (shouldCommit()) {
+            finish(query, utf8Length(source), failure);
+        }
+    }
+}
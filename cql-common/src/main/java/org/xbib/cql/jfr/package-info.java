@@ -0,0 +1,7 @@
+/**
+ * Classes for JDK Flight Recorder events of CQL parsing and translation.
+ *
+ * The events are not part of the API: recordings select them by their names, like
+ * <code>org.xbib.cql.Parse</code>, and the package is only exported to the translators.
+ */
+package org.xbib.cql.jfr;
@@ -0,0 +1,138 @@
+package org.xbib.cql.metrics;
+
+import org.xbib.cql.BooleanOperator;
+import org.xbib.cql.Comparitor;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The default metrics: a lock-free latency {@link Histogram} for each phase, and counters for the
+ * boolean operators, the comparitors, and the exceptions of each phase. Counters are striped, so threads
+ * that translate queries at the same time do not contend for them.
+ *
+ * Metrics are exported with {@link #snapshot()}, as values or in the Prometheus text format.
+ */
+public class DefaultQueryMetrics implements QueryMetrics {
+
+    private static final Phase[] PHASES = Phase.values();
+
+    private static final BooleanOperator[] OPERATORS = BooleanOperator.values();
+
+    private static final Comparitor[] COMPARITORS = Comparitor.values();
+
+    private final Histogram[] latencies;
+
+    private final LongAdder[] operators;
+
+    private final LongAdder[] comparitors;
+
+    private final ConcurrentMap<Phase, ConcurrentMap<String, LongAdder>> failures;
+
+    private volatile boolean enabled;
+
+    public DefaultQueryMetrics() {
+        this.latencies = new Histogram[PHASES.length];
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new Histogram();
+        }
+        this.operators = adders(OPERATORS.length);
+        this.comparitors = adders(COMPARITORS.length);
+        this.failures = new ConcurrentHashMap<>();
+        this.enabled = true;
+    }
+
+    /**
+     * Enable or disable recording. Disabled metrics record no latencies, counts and failures, and keep
+     * their values.
+     *
+     * @param enabled true if metrics should be recorded
+     * @return these metrics
+     */
+    public DefaultQueryMetrics setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        return this;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void record(Phase phase, long nanos) {
+        if (enabled) {
+            latencies[phase.ordinal()].record(nanos);
+        }
+    }
+
+    @Override
+    public void count(BooleanOperator operator) {
+        if (enabled) {
+            operators[operator.ordinal()].increment();
+        }
+    }
+
+    @Override
+    public void count(Comparitor comparitor) {
+        if (enabled && comparitor != null) {
+            comparitors[comparitor.ordinal()].increment();
+        }
+    }
+
+    @Override
+    public void failed(Phase phase, Throwable t) {
+        if (!enabled) {
+            return;
+        }
+        failures.computeIfAbsent(phase, p -> new ConcurrentHashMap<>())
+                .computeIfAbsent(t.getClass().getName(), name -> new LongAdder())
+                .increment();
+    }
+
+    /**
+     * Take a snapshot of these metrics.
+     *
+     * @return the snapshot
+     */
+    public MetricsSnapshot snapshot() {
+        Map<Phase, HistogramSnapshot> latencySnapshots = new EnumMap<>(Phase.class);
+        for (Phase phase : PHASES) {
+            latencySnapshots.put(phase, latencies[phase.ordinal()].snapshot());
+        }
+        Map<BooleanOperator, Long> operatorCounts = new EnumMap<>(BooleanOperator.class);
+        for (BooleanOperator operator : OPERATORS) {
+            operatorCounts.put(operator, operators[operator.ordinal()].sum());
+        }
+        Map<Comparitor, Long> comparitorCounts = new EnumMap<>(Comparitor.class);
+        for (Comparitor comparitor : COMPARITORS) {
+            comparitorCounts.put(comparitor, comparitors[comparitor.ordinal()].sum());
+        }
+        Map<Phase, Map<String, Long>> failureCounts = new EnumMap<>(Phase.class);
+        for (Map.Entry<Phase, ConcurrentMap<String, LongAdder>> entry : failures.entrySet()) {
+            Map<String, Long> counts = new TreeMap<>();
+            for (Map.Entry<String, LongAdder> count : entry.getValue().entrySet()) {
+                counts.put(count.getKey(), count.getValue().sum());
+            }
+            failureCounts.put(entry.getKey(), counts);
+        }
+        return new MetricsSnapshot(latencySnapshots, operatorCounts, comparitorCounts, failureCounts);
+    }
+
+    @Override
+    public String toString() {
+        return snapshot().toString();
+    }
+
+    private static LongAdder[] adders(int length) {
+        LongAdder[] adders = new LongAdder[length];
+        for (int i = 0; i < length; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+}
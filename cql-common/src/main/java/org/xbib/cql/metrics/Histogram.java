@@ -0,0 +1,93 @@
+package org.xbib.cql.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of non-negative values, like latencies in nanoseconds.
+ *
+ * The buckets are log-linear, like the buckets of HdrHistogram: values below 64 have a bucket of their
+ * own, and above, each power of two is divided into 32 buckets of equal width. Every value is recorded
+ * with a relative error of at most 1/32, over the whole range of long values, in 1888 buckets.
+ * Recording a value increments one bucket with a single atomic operation, and never allocates.
+ *
+ * A histogram is thread safe. Snapshots taken while values are recorded are not atomic, but every
+ * value is either contained in a snapshot or not.
+ */
+public final class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 6;
+
+    private static final int SUB_BUCKET_HALF_COUNT = 1 << (SUB_BUCKET_BITS - 1);
+
+    private static final int BUCKET_COUNT = index(Long.MAX_VALUE) + 1;
+
+    private final AtomicLongArray counts;
+
+    private final LongAdder sum;
+
+    private final AtomicLong max;
+
+    public Histogram() {
+        this.counts = new AtomicLongArray(BUCKET_COUNT);
+        this.sum = new LongAdder();
+        this.max = new AtomicLong();
+    }
+
+    /**
+     * Record a value. Negative values are recorded as 0.
+     *
+     * @param value the value
+     */
+    public void record(long value) {
+        long v = Math.max(0L, value);
+        counts.incrementAndGet(index(v));
+        sum.add(v);
+        if (v > max.get()) {
+            max.accumulateAndGet(v, Math::max);
+        }
+    }
+
+    /**
+     * Take a snapshot of this histogram.
+     *
+     * @return the snapshot
+     */
+    public HistogramSnapshot snapshot() {
+        long[] snapshot = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = counts.get(i);
+        }
+        return new HistogramSnapshot(snapshot, sum.sum(), max.get());
+    }
+
+    /**
+     * The bucket of a value.
+     *
+     * @param value the value, not negative
+     * @return the index of the bucket
+     */
+    static int index(long value) {
+        if (value < 2 * SUB_BUCKET_HALF_COUNT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        return (shift + 1) * SUB_BUCKET_HALF_COUNT + (int) (value >>> shift) - SUB_BUCKET_HALF_COUNT;
+    }
+
+    /**
+     * The highest value of a bucket.
+     *
+     * @param index the index of the bucket
+     * @return the highest value that is recorded in the bucket
+     */
+    static long highestValue(int index) {
+        if (index < 2 * SUB_BUCKET_HALF_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_HALF_COUNT - 1;
+        long subBucket = index % SUB_BUCKET_HALF_COUNT + SUB_BUCKET_HALF_COUNT;
+        return (subBucket << shift) + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,91 @@
+package org.xbib.cql.metrics;
+
+/**
+ * A snapshot of a {@link Histogram}.
+ */
+public final class HistogramSnapshot {
+
+    private final long[] counts;
+
+    private final long count;
+
+    private final long sum;
+
+    private final long max;
+
+    HistogramSnapshot(long[] counts, long sum, long max) {
+        this.counts = counts;
+        long n = 0L;
+        for (long c : counts) {
+            n += c;
+        }
+        this.count = n;
+        this.sum = sum;
+        this.max = max;
+    }
+
+    /**
+     * The number of recorded values.
+     *
+     * @return the count
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * The sum of the recorded values.
+     *
+     * @return the sum
+     */
+    public long getSum() {
+        return sum;
+    }
+
+    /**
+     * The largest recorded value.
+     *
+     * @return the maximum, or 0 if no value was recorded
+     */
+    public long getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return count == 0L ? 0.0d : (double) sum / count;
+    }
+
+    /**
+     * The value below or at which a percentage of the recorded values are. The value is the highest value
+     * of its bucket, but never larger than the maximum, so it is at most 1/32 too large.
+     *
+     * @param percentile the percentage, between 0 and 100
+     * @return the value, or 0 if no value was recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (percentile < 0.0d || percentile > 100.0d) {
+            throw new IllegalArgumentException("percentile out of range: " + percentile);
+        }
+        if (count == 0L) {
+            return 0L;
+        }
+        long rank = Math.max(1L, (long) Math.ceil(percentile / 100.0d * count));
+        long seen = 0L;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(Histogram.highestValue(i), max);
+            }
+        }
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return "[count=" + count
+                + ",mean=" + getMean()
+                + ",p50=" + getValueAtPercentile(50.0d)
+                + ",p99=" + getValueAtPercentile(99.0d)
+                + ",max=" + max + "]";
+    }
+}
@@ -0,0 +1,151 @@
+package org.xbib.cql.metrics;
+
+import org.xbib.cql.BooleanOperator;
+import org.xbib.cql.Comparitor;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A snapshot of {@link DefaultQueryMetrics}.
+ */
+public final class MetricsSnapshot {
+
+    private static final double[] QUANTILES = {0.5d, 0.9d, 0.99d, 0.999d};
+
+    private final Map<Phase, HistogramSnapshot> latencies;
+
+    private final Map<BooleanOperator, Long> operators;
+
+    private final Map<Comparitor, Long> comparitors;
+
+    private final Map<Phase, Map<String, Long>> failures;
+
+    MetricsSnapshot(Map<Phase, HistogramSnapshot> latencies,
+                    Map<BooleanOperator, Long> operators,
+                    Map<Comparitor, Long> comparitors,
+                    Map<Phase, Map<String, Long>> failures) {
+        this.latencies = Collections.unmodifiableMap(latencies);
+        this.operators = Collections.unmodifiableMap(operators);
+        this.comparitors = Collections.unmodifiableMap(comparitors);
+        this.failures = Collections.unmodifiableMap(failures);
+    }
+
+    /**
+     * The latencies of a phase, in nanoseconds.
+     *
+     * @param phase the phase
+     * @return the latencies
+     */
+    public HistogramSnapshot getLatency(Phase phase) {
+        return latencies.get(phase);
+    }
+
+    public long getCount(BooleanOperator operator) {
+        return operators.get(operator);
+    }
+
+    public long getCount(Comparitor comparitor) {
+        return comparitors.get(comparitor);
+    }
+
+    /**
+     * The number of exceptions that aborted a phase, by the class name of the exception.
+     *
+     * @param phase the phase
+     * @return the counts, sorted by class name
+     */
+    public Map<String, Long> getFailures(Phase phase) {
+        Map<String, Long> counts = failures.get(phase);
+        return counts != null ? Collections.unmodifiableMap(counts) : Collections.emptyMap();
+    }
+
+    /**
+     * The number of exceptions that aborted a phase.
+     *
+     * @param phase the phase
+     * @return the count
+     */
+    public long getFailureCount(Phase phase) {
+        long count = 0L;
+        for (long c : getFailures(phase).values()) {
+            count += c;
+        }
+        return count;
+    }
+
+    /**
+     * Write this snapshot in the Prometheus text exposition format. Latencies are summaries in seconds,
+     * with the quantiles 0.5, 0.9, 0.99 and 0.999.
+     *
+     * @param out the output
+     * @throws IOException if writing fails
+     */
+    public void writePrometheus(Appendable out) throws IOException {
+        out.append("# HELP cql_phase_duration_seconds The duration of the phases of the translation of CQL queries.\n");
+        out.append("# TYPE cql_phase_duration_seconds summary\n");
+        for (Map.Entry<Phase, HistogramSnapshot> entry : latencies.entrySet()) {
+            String phase = entry.getKey().getLabel();
+            HistogramSnapshot histogram = entry.getValue();
+            for (double quantile : QUANTILES) {
+                out.append("cql_phase_duration_seconds{phase=\"").append(phase)
+                        .append("\",quantile=\"").append(Double.toString(quantile)).append("\"} ")
+                        .append(seconds(histogram.getValueAtPercentile(quantile * 100.0d))).append('\n');
+            }
+            out.append("cql_phase_duration_seconds_sum{phase=\"").append(phase).append("\"} ")
+                    .append(seconds(histogram.getSum())).append('\n');
+            out.append("cql_phase_duration_seconds_count{phase=\"").append(phase).append("\"} ")
+                    .append(Long.toString(histogram.getCount())).append('\n');
+        }
+        out.append("# HELP cql_operators_total The boolean operators of parsed CQL queries.\n");
+        out.append("# TYPE cql_operators_total counter\n");
+        for (Map.Entry<BooleanOperator, Long> entry : operators.entrySet()) {
+            out.append("cql_operators_total{operator=\"").append(entry.getKey().getToken()).append("\"} ")
+                    .append(Long.toString(entry.getValue())).append('\n');
+        }
+        out.append("# HELP cql_comparitors_total The comparitors of the relations of parsed CQL queries.\n");
+        out.append("# TYPE cql_comparitors_total counter\n");
+        for (Map.Entry<Comparitor, Long> entry : comparitors.entrySet()) {
+            out.append("cql_comparitors_total{comparitor=\"").append(entry.getKey().getToken()).append("\"} ")
+                    .append(Long.toString(entry.getValue())).append('\n');
+        }
+        out.append("# HELP cql_exceptions_total The exceptions that aborted a phase of the translation.\n");
+        out.append("# TYPE cql_exceptions_total counter\n");
+        for (Map.Entry<Phase, Map<String, Long>> entry : failures.entrySet()) {
+            for (Map.Entry<String, Long> count : entry.getValue().entrySet()) {
+                out.append("cql_exceptions_total{phase=\"").append(entry.getKey().getLabel())
+                        .append("\",exception=\"").append(count.getKey()).append("\"} ")
+                        .append(Long.toString(count.getValue())).append('\n');
+            }
+        }
+    }
+
+    /**
+     * This snapshot in the Prometheus text exposition format.
+     *
+     * @return the text
+     */
+    public String toPrometheus() {
+        StringBuilder sb = new StringBuilder();
+        try {
+            writePrometheus(sb);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "[latencies=" + latencies
+                + ",operators=" + operators
+                + ",comparitors=" + comparitors
+                + ",failures=" + failures + "]";
+    }
+
+    private static String seconds(long nanos) {
+        return Double.toString(nanos / 1.0e9d);
+    }
+}
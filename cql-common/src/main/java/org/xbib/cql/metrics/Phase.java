@@ -0,0 +1,62 @@
+package org.xbib.cql.metrics;
+
+/**
+ * The phases of the translation of a CQL query.
+ */
+public enum Phase {
+
+    /**
+     * Scanning the tokens of a query in the lexer.
+     */
+    LEX("lex"),
+
+    /**
+     * Parsing the tokens of a query to an abstract syntax tree, without the time spent in the lexer.
+     */
+    PARSE("parse"),
+
+    /**
+     * Bringing a query into a canonical form, or simplifying it.
+     */
+    NORMALIZE("normalize"),
+
+    /**
+     * Generating CQL and the breadcrumb trails of the query model.
+     */
+    GENERATE("generate"),
+
+    /**
+     * Building the Elasticsearch expression tree of a query.
+     */
+    TRANSLATE("translate"),
+
+    /**
+     * Rewriting the Elasticsearch expression tree with an optimizer.
+     */
+    OPTIMIZE("optimize"),
+
+    /**
+     * Emitting the JSON of the query, the filters, the facets and the sort.
+     */
+    EMIT_QUERY("emit_query"),
+
+    /**
+     * Emitting the JSON of the search request source.
+     */
+    EMIT_SOURCE("emit_source");
+
+    private final String label;
+
+    Phase(String label) {
+        this.label = label;
+    }
+
+    /**
+     * The label of the phase in exported metrics.
+     *
+     * @return the label
+     */
+    public String getLabel() {
+        return label;
+    }
+}
@@ -0,0 +1,110 @@
+package org.xbib.cql.metrics;
+
+import org.xbib.cql.BooleanOperator;
+import org.xbib.cql.Comparitor;
+
+/**
+ * The instrumentation of the translation of CQL queries. The parser and the generators call
+ * a metrics implementation around each {@link Phase}, for each boolean operator and comparitor
+ * of a parsed query, and for each exception that aborts a phase.
+ *
+ * Implementations must be thread safe, because one instance is shared by all threads that parse
+ * and translate queries. {@link #NONE} is the default. It is disabled, so callers do not even read
+ * the clock, and a disabled phase costs a field read and a branch.
+ */
+public interface QueryMetrics {
+
+    /**
+     * Metrics that record nothing.
+     */
+    QueryMetrics NONE = new QueryMetrics() {
+        @Override
+        public boolean isEnabled() {
+            return false;
+        }
+
+        @Override
+        public void record(Phase phase, long nanos) {
+        }
+
+        @Override
+        public void count(BooleanOperator operator) {
+        }
+
+        @Override
+        public void count(Comparitor comparitor) {
+        }
+
+        @Override
+        public void failed(Phase phase, Throwable t) {
+        }
+
+        @Override
+        public String toString() {
+            return "NONE";
+        }
+    };
+
+    /**
+     * Whether these metrics record anything. Callers skip reading the clock if they are not enabled.
+     *
+     * @return true if enabled
+     */
+    boolean isEnabled();
+
+    /**
+     * Record the duration of a phase.
+     *
+     * @param phase the phase
+     * @param nanos the duration in nanoseconds
+     */
+    void record(Phase phase, long nanos);
+
+    /**
+     * Count a boolean operator of a parsed query.
+     *
+     * @param operator the operator
+     */
+    void count(BooleanOperator operator);
+
+    /**
+     * Count the comparitor of a relation of a parsed query.
+     *
+     * @param comparitor the comparitor
+     */
+    void count(Comparitor comparitor);
+
+    /**
+     * Count an exception that aborted a phase.
+     *
+     * @param phase the phase
+     * @param t     the exception
+     */
+    void failed(Phase phase, Throwable t);
+
+    /**
+     * Start a phase.
+     *
+     * @return the start time in nanoseconds, or 0 if these metrics are not enabled
+     */
+    default long start() {
+        return isEnabled() ? System.nanoTime() : 0L;
+    }
+
+    /**
+     * Stop a phase and record its duration.
+     *
+     * @param phase the phase
+     * @param start the start time from {@link #start()}
+     * @return the stop time in nanoseconds, which can be the start time of the next phase,
+     * or 0 if these metrics are not enabled
+     */
+    default long stop(Phase phase, long start) {
+        if (!isEnabled()) {
+            return 0L;
+        }
+        long stop = System.nanoTime();
+        record(phase, stop - start);
+        return stop;
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * Classes for measuring the latency of the phases of the translation of CQL queries.
+ */
+package org.xbib.cql.metrics;
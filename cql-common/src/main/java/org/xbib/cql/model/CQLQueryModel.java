@@ -144,14 +144,7 @@ public final class CQLQueryModel {
 
     public String getFilterTrail() {
         StringBuilder sb = new StringBuilder();
-        if (!conjunctivefilterTrail.isEmpty()) {
-            sb.append(AND_OP).append(conjunctivefilterTrail.toString());
-        }
-        if (disjunctivefilterTrail.size() == 1) {
-            sb.append(OR_OP).append(disjunctivefilterTrail.toString());
-        } else if (disjunctivefilterTrail.size() > 1) {
-            sb.append(AND_OP).append(disjunctivefilterTrail.toString());
-        }
+        appendFilterTrail(sb);
         return sb.toString();
     }
 
@@ -214,18 +207,29 @@ public final class CQLQueryModel {
      */
     public String toCQL() {
         StringBuilder sb = new StringBuilder(query);
-        String facets = getFacetTrail().toCQL();
-        if (facets.length() > 0) {
-            sb.append(AND_OP).append(facets);
-        }
-        String filters = getFilterTrail();
-        if (filters.length() > 0) {
-            sb.append(filters);
+        if (!facetTrail.isEmpty()) {
+            sb.append(AND_OP);
+            facetTrail.toCQL(sb);
         }
-        String options = getOptionTrail().toCQL();
-        if (options.length() > 0) {
-            sb.append(AND_OP).append(options);
+        appendFilterTrail(sb);
+        if (!optionTrail.isEmpty()) {
+            sb.append(AND_OP);
+            optionTrail.toCQL(sb);
         }
         return sb.toString();
     }
+
+    private void appendFilterTrail(StringBuilder sb) {
+        if (!conjunctivefilterTrail.isEmpty()) {
+            sb.append(AND_OP);
+            conjunctivefilterTrail.toCQL(sb);
+        }
+        if (disjunctivefilterTrail.size() == 1) {
+            sb.append(OR_OP);
+            disjunctivefilterTrail.toCQL(sb);
+        } else if (disjunctivefilterTrail.size() > 1) {
+            sb.append(AND_OP);
+            disjunctivefilterTrail.toCQL(sb);
+        }
+    }
 }
@@ -1,5 +1,7 @@
 package org.xbib.cql.model;
 
+import org.xbib.cql.CQLSerializer;
+import org.xbib.cql.Node;
 import org.xbib.cql.QueryFacet;
 
 /**
@@ -55,7 +57,23 @@ public final class Facet<V> implements QueryFacet<V>, Comparable<Facet<V>> {
     }
 
     public String toCQL() {
-        return CQLQueryModel.FACET_INDEX_NAME + "." + name + " = " + value;
+        StringBuilder sb = new StringBuilder();
+        toCQL(sb);
+        return sb.toString();
+    }
+
+    /**
+     * Append this facet as CQL to a string builder.
+     *
+     * @param sb the string builder
+     */
+    public void toCQL(StringBuilder sb) {
+        sb.append(CQLQueryModel.FACET_INDEX_NAME).append('.').append(name).append(" = ");
+        if (value instanceof Node) {
+            CQLSerializer.write((Node) value, sb);
+        } else {
+            sb.append(value);
+        }
     }
 
     @Override
@@ -1,8 +1,12 @@
 package org.xbib.cql.model;
 
+import org.xbib.cql.CQLSerializer;
 import org.xbib.cql.Comparitor;
+import org.xbib.cql.Node;
 import org.xbib.cql.QueryFilter;
 
+import java.util.Objects;
+
 /**
  * Filter.
  * @param <V> filter parameter type
@@ -52,7 +56,23 @@ public class Filter<V> implements QueryFilter<V>, Comparable<Filter<V>> {
     }
 
     public String toCQL() {
-        return CQLQueryModel.FILTER_INDEX_NAME + "." + name + " " + op.getToken() + " " + value;
+        StringBuilder sb = new StringBuilder();
+        toCQL(sb);
+        return sb.toString();
+    }
+
+    /**
+     * Append this filter as CQL to a string builder.
+     *
+     * @param sb the string builder
+     */
+    public void toCQL(StringBuilder sb) {
+        sb.append(CQLQueryModel.FILTER_INDEX_NAME).append('.').append(name).append(' ').append(op.getToken()).append(' ');
+        if (value instanceof Node) {
+            CQLSerializer.write((Node) value, sb);
+        } else {
+            sb.append(value);
+        }
     }
 
     @Override
@@ -62,12 +82,21 @@ public class Filter<V> implements QueryFilter<V>, Comparable<Filter<V>> {
 
     @Override
     public boolean equals(Object o) {
-        return o instanceof Filter && toString().equals(o.toString());
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Filter)) {
+            return false;
+        }
+        Filter<?> other = (Filter<?>) o;
+        return Objects.equals(name, other.name)
+                && op == other.op
+                && Objects.equals(value, other.value);
     }
 
     @Override
     public int hashCode() {
-        return toString().hashCode();
+        return Objects.hash(name, op, value);
     }
 
     @Override
@@ -1,5 +1,7 @@
 package org.xbib.cql.model;
 
+import org.xbib.cql.CQLSerializer;
+import org.xbib.cql.Node;
 import org.xbib.cql.QueryOption;
 
 /**
@@ -36,7 +38,23 @@ public class Option<V> implements QueryOption<V>, Comparable<Option<V>> {
     }
 
     public String toCQL() {
-        return CQLQueryModel.OPTION_INDEX_NAME + "." + name + " = " + value;
+        StringBuilder sb = new StringBuilder();
+        toCQL(sb);
+        return sb.toString();
+    }
+
+    /**
+     * Append this option as CQL to a string builder.
+     *
+     * @param sb the string builder
+     */
+    public void toCQL(StringBuilder sb) {
+        sb.append(CQLQueryModel.OPTION_INDEX_NAME).append('.').append(name).append(" = ");
+        if (value instanceof Node) {
+            CQLSerializer.write((Node) value, sb);
+        } else {
+            sb.append(value);
+        }
     }
 
     @Override
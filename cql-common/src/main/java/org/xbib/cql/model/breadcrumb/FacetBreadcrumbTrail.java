@@ -23,16 +23,23 @@ public class FacetBreadcrumbTrail<V> extends TreeSet<Facet<V>> {
 
     public String toCQL() {
         StringBuilder sb = new StringBuilder();
-        if (isEmpty()) {
-            return sb.toString();
-        }
+        toCQL(sb);
+        return sb.toString();
+    }
+
+    /**
+     * Append the trail as CQL to a string builder.
+     *
+     * @param sb the string builder
+     */
+    public void toCQL(StringBuilder sb) {
         Iterator<Facet<V>> it = iterator();
         if (it.hasNext()) {
-            sb.append(it.next().toCQL());
+            it.next().toCQL(sb);
         }
         while (it.hasNext()) {
-            sb.append(" and ").append(it.next().toCQL());
+            sb.append(" and ");
+            it.next().toCQL(sb);
         }
-        return sb.toString();
     }
 }
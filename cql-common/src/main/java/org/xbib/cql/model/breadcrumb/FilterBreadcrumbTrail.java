@@ -27,20 +27,30 @@ public class FilterBreadcrumbTrail<V> extends TreeSet<Filter<V>> {
 
     public String toCQL() {
         StringBuilder sb = new StringBuilder();
+        toCQL(sb);
+        return sb.toString();
+    }
+
+    /**
+     * Append the trail as CQL to a string builder.
+     *
+     * @param sb the string builder
+     */
+    public void toCQL(StringBuilder sb) {
         if (isEmpty()) {
-            return sb.toString();
+            return;
         }
         if (op == BooleanOperator.OR && size() > 1) {
             sb.append('(');
         }
         Iterator<Filter<V>> it = this.iterator();
-        sb.append(it.next().toCQL());
+        it.next().toCQL(sb);
         while (it.hasNext()) {
-            sb.append(' ').append(op).append(' ').append(it.next().toCQL());
+            sb.append(' ').append(op).append(' ');
+            it.next().toCQL(sb);
         }
         if (op == BooleanOperator.OR && size() > 1) {
             sb.append(')');
         }
-        return sb.toString();
     }
 }
@@ -30,16 +30,23 @@ public class OptionBreadcrumbTrail<V> extends TreeSet<Option<V>> {
      */
     public String toCQL() {
         StringBuilder sb = new StringBuilder();
-        if (isEmpty()) {
-            return sb.toString();
-        }
+        toCQL(sb);
+        return sb.toString();
+    }
+
+    /**
+     * Append the trail as CQL to a string builder.
+     *
+     * @param sb the string builder
+     */
+    public void toCQL(StringBuilder sb) {
         Iterator<Option<V>> it = iterator();
         if (it.hasNext()) {
-            sb.append(it.next().toCQL());
+            it.next().toCQL(sb);
         }
         while (it.hasNext()) {
-            sb.append(" and ").append(it.next().toCQL());
+            sb.append(" and ");
+            it.next().toCQL(sb);
         }
-        return sb.toString();
     }
 }
@@ -0,0 +1,102 @@
+package org.xbib.cql.util;
+
+import java.io.Reader;
+import java.nio.CharBuffer;
+
+/**
+ * A resettable, unsynchronized reader over a character sequence. Unlike {@link java.io.StringReader},
+ * it does not require a string and can be reset to new input, so one instance can serve many queries.
+ * Slices of character arrays can be read without copying by wrapping them with {@link CharBuffer#wrap(char[], int, int)}.
+ */
+public class CharSequenceReader extends Reader {
+
+    private CharSequence input;
+
+    private int position;
+
+    private int mark;
+
+    public CharSequenceReader() {
+        this("");
+    }
+
+    public CharSequenceReader(CharSequence input) {
+        reset(input);
+    }
+
+    /**
+     * Reset this reader to new input.
+     *
+     * @param input the new input
+     * @return this reader
+     */
+    public CharSequenceReader reset(CharSequence input) {
+        this.input = input;
+        this.position = 0;
+        this.mark = 0;
+        return this;
+    }
+
+    public CharSequence getInput() {
+        return input;
+    }
+
+    @Override
+    public int read() {
+        return position < input.length() ? input.charAt(position++) : -1;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) {
+        int n = Math.min(len, input.length() - position);
+        if (n <= 0) {
+            return len == 0 ? 0 : -1;
+        }
+        if (input instanceof String) {
+            ((String) input).getChars(position, position + n, cbuf, off);
+        } else if (input instanceof StringBuilder) {
+            ((StringBuilder) input).getChars(position, position + n, cbuf, off);
+        } else if (input instanceof CharBuffer) {
+            CharBuffer charBuffer = (CharBuffer) input;
+            charBuffer.duplicate().position(charBuffer.position() + position).get(cbuf, off, n);
+        } else {
+            for (int i = 0; i < n; i++) {
+                cbuf[off + i] = input.charAt(position + i);
+            }
+        }
+        position += n;
+        return n;
+    }
+
+    @Override
+    public long skip(long n) {
+        int skipped = (int) Math.max(0L, Math.min(n, input.length() - position));
+        position += skipped;
+        return skipped;
+    }
+
+    @Override
+    public boolean ready() {
+        return true;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public void mark(int readAheadLimit) {
+        mark = position;
+    }
+
+    @Override
+    public void reset() {
+        position = mark;
+    }
+
+    @Override
+    public void close() {
+        // nothing to release, the reader can be reset to new input
+    }
+}
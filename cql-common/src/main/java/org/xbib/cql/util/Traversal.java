@@ -0,0 +1,176 @@
+package org.xbib.cql.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Depth-first traversal of a tree with an explicit stack on the heap instead of recursion,
+ * so that the thread stack used by a traversal does not depend on the depth of the tree.
+ * Deeply nested parenthesized queries can not overflow the stack of a thread, even on
+ * threads with small stacks, like virtual threads.
+ *
+ * The listener is called in pre-order when a node is entered, and in post-order when the node is
+ * left. While a node is entered, the listener schedules the children of the node with
+ * {@link #child(Object)}, and may schedule steps with {@link #step(Runnable)}, for example to write
+ * separators between the children. Children and steps run in the order they were scheduled, after
+ * the listener returns, and before the node is left. A node without scheduled children is a leaf.
+ *
+ * A traversal is not thread safe. It can be run again after a walk has finished.
+ *
+ * @param <N> the type of the nodes
+ */
+public final class Traversal<N> {
+
+    private final Deque<Item<N>> stack;
+
+    private final List<Item<N>> scheduled;
+
+    private Listener<N> listener;
+
+    private int maxSize;
+
+    public Traversal() {
+        this.stack = new ArrayDeque<>();
+        this.scheduled = new ArrayList<>();
+    }
+
+    /**
+     * Walk a tree with a new traversal.
+     *
+     * @param root     the root of the tree
+     * @param listener the listener
+     * @param <N>      the type of the nodes
+     */
+    public static <N> void walk(N root, Listener<N> listener) {
+        new Traversal<N>().run(root, listener);
+    }
+
+    /**
+     * Walk a tree.
+     *
+     * @param root     the root of the tree
+     * @param listener the listener
+     */
+    public void run(N root, Listener<N> listener) {
+        if (this.listener != null) {
+            throw new IllegalStateException("traversal is running");
+        }
+        this.listener = Objects.requireNonNull(listener, "listener");
+        try {
+            stack.push(new Item<>(root, null, false));
+            while (!stack.isEmpty()) {
+                Item<N> item = stack.pop();
+                if (item.step != null) {
+                    item.step.run();
+                } else if (item.leave) {
+                    listener.leave(item.node);
+                } else {
+                    listener.enter(item.node, this);
+                    stack.push(new Item<>(item.node, null, true));
+                    for (int i = scheduled.size() - 1; i >= 0; i--) {
+                        stack.push(scheduled.get(i));
+                    }
+                    scheduled.clear();
+                    maxSize = Math.max(maxSize, stack.size());
+                }
+            }
+        } finally {
+            this.listener = null;
+            stack.clear();
+            scheduled.clear();
+        }
+    }
+
+    /**
+     * Schedule a child of the node that is entered.
+     *
+     * @param node the child
+     * @return this traversal
+     */
+    public Traversal<N> child(N node) {
+        checkEntering();
+        scheduled.add(new Item<>(node, null, false));
+        return this;
+    }
+
+    /**
+     * Schedule a step after the children that are scheduled so far.
+     *
+     * @param step the step
+     * @return this traversal
+     */
+    public Traversal<N> step(Runnable step) {
+        checkEntering();
+        scheduled.add(new Item<>(null, Objects.requireNonNull(step, "step"), false));
+        return this;
+    }
+
+    /**
+     * Whether a walk is running. Visitors that run on a traversal use it to decide if a node is the
+     * root of a new walk, or a node of the running walk.
+     *
+     * @return true if a walk is running
+     */
+    public boolean isRunning() {
+        return listener != null;
+    }
+
+    /**
+     * Get the maximum number of pending items on the explicit stack. It grows with the depth and the
+     * width of the tree, and is allocated on the heap.
+     *
+     * @return the maximum number of pending items
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    private void checkEntering() {
+        if (listener == null) {
+            throw new IllegalStateException("traversal is not running");
+        }
+    }
+
+    /**
+     * The callbacks of a traversal.
+     *
+     * @param <N> the type of the nodes
+     */
+    @FunctionalInterface
+    public interface Listener<N> {
+
+        /**
+         * Enter a node, in pre-order. Children and steps of the node are scheduled on the traversal.
+         *
+         * @param node      the node
+         * @param traversal the traversal
+         */
+        void enter(N node, Traversal<N> traversal);
+
+        /**
+         * Leave a node, in post-order, after all of its children and steps.
+         *
+         * @param node the node
+         */
+        default void leave(N node) {
+        }
+    }
+
+    private static final class Item<N> {
+
+        private final N node;
+
+        private final Runnable step;
+
+        private final boolean leave;
+
+        Item(N node, Runnable step, boolean leave) {
+            this.node = node;
+            this.step = step;
+            this.leave = leave;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package org.xbib.cql;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.LineNumberReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CQLCodecTest {
+
+    @Test
+    void testQueries() throws IOException {
+        int count = 0;
+        try (LineNumberReader lr = new LineNumberReader(new InputStreamReader(
+                getClass().getResourceAsStream("queries.txt"), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = lr.readLine()) != null) {
+                if (line.trim().length() > 0 && !line.startsWith("#")) {
+                    int pos = line.indexOf('|');
+                    assertRoundTrip(pos > 0 ? line.substring(0, pos) : line);
+                    count++;
+                }
+            }
+        }
+        assertTrue(count > 0);
+    }
+
+    @Test
+    void testTerms() {
+        SortedQuery query = assertRoundTrip("a = 42 and b = 2.5 and c = \"x\" and d = y and e = and");
+        assertTrue(query.getQuery().getScopedClause().getSearchClauses().get(0).getTerm().isLong());
+        assertTrue(query.getQuery().getScopedClause().getSearchClauses().get(1).getTerm().isFloat());
+        assertTrue(query.getQuery().getScopedClause().getSearchClauses().get(2).getTerm().isIdentifier());
+        assertTrue(query.getQuery().getScopedClause().getSearchClauses().get(4).getTerm().isString());
+        for (Term term : new Term[] {new Term(Long.MIN_VALUE), new Term(-1L), new Term(Long.MAX_VALUE),
+                new Term(-0.0d), new Term(Double.NaN), new Term("2016-02-29"), new Term("2016-02-29T12:00:00Z"),
+                new Term("x"), new Term(new SimpleName("y"))}) {
+            SortedQuery encoded = new SortedQuery(new Query(new ScopedClause(new SearchClause(term))));
+            SortedQuery decoded = CQLCodec.decode(CQLCodec.encode(encoded));
+            Term decodedTerm = decoded.getQuery().getScopedClause().getSearchClause().getTerm();
+            assertEquals(encoded, decoded);
+            assertEquals(term.isDate(), decodedTerm.isDate());
+            assertEquals(term.getDate(), decodedTerm.getDate());
+        }
+        // an inline replacement that looks like a date stays a string
+        CQLParser parser = new CQLParser("a = b");
+        parser.parse();
+        SortedQuery replaced = parser.getCQLQuery();
+        replaced.getQuery().getScopedClause().getSearchClause().getTerm().setValue("2016-02-29");
+        SortedQuery decoded = CQLCodec.decode(CQLCodec.encode(replaced));
+        Term term = decoded.getQuery().getScopedClause().getSearchClause().getTerm();
+        assertFalse(term.isDate());
+        assertEquals("2016-02-29", term.getValue());
+        assertEquals(replaced.toString(), decoded.toString());
+    }
+
+    @Test
+    void testModifiersAndSortSpecs() {
+        assertRoundTrip("> dc = \"info:srw/cql-context-set/1/dc-v1.1\" > \"info:bib\" dc.title any/rel.algorithm=cori"
+                + "/cql.unit=word a prox/unit=word/distance>3 b sortBy dc.date/sort.descending dc.title");
+    }
+
+    @Test
+    void testStringTable() {
+        byte[] repeated = CQLCodec.encode(parse("dc.title = a and dc.title = a"));
+        byte[] distinct = CQLCodec.encode(parse("dc.title = a and bib.creator = b"));
+        // the second clause references the strings of the first one
+        assertEquals(distinct.length - "bibcreatorb".length() - 3, repeated.length);
+    }
+
+    @Test
+    void testDecodeRange() {
+        byte[] bytes = CQLCodec.encode(parse("dc.title = a"));
+        byte[] padded = new byte[bytes.length + 4];
+        System.arraycopy(bytes, 0, padded, 2, bytes.length);
+        assertEquals("dc.title = a", CQLCodec.decode(padded, 2, bytes.length).toString());
+    }
+
+    @Test
+    void testInvalidInput() {
+        byte[] bytes = CQLCodec.encode(parse("dc.title = a and b"));
+        assertThrows(SyntaxException.class, () -> CQLCodec.decode(new byte[] {'C', 'Q'}));
+        byte[] version = bytes.clone();
+        version[3] = (byte) (CQLCodec.VERSION + 1);
+        SyntaxException e = assertThrows(SyntaxException.class, () -> CQLCodec.decode(version));
+        assertTrue(e.getMessage().contains("version"), e.getMessage());
+        for (int length = 3; length < bytes.length; length++) {
+            byte[] truncated = Arrays.copyOf(bytes, length);
+            assertThrows(SyntaxException.class, () -> CQLCodec.decode(truncated));
+        }
+        byte[] tag = bytes.clone();
+        tag[tag.length - 2] = (byte) 0x7f;
+        assertThrows(SyntaxException.class, () -> CQLCodec.decode(tag));
+    }
+
+    @Test
+    void testDeepNesting() throws InterruptedException {
+        int depth = 10000;
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            sb.append("a = ").append(i).append(" and (");
+        }
+        sb.append("b");
+        for (int i = 0; i < depth; i++) {
+            sb.append(')');
+        }
+        SortedQuery query = parse(sb.toString());
+        AtomicReference<Object> result = new AtomicReference<>();
+        Thread thread = new Thread(null, () -> {
+            try {
+                result.set(CQLCodec.decode(CQLCodec.encode(query)));
+            } catch (Throwable t) {
+                result.set(t);
+            }
+        }, "codec", 64 * 1024);
+        thread.start();
+        thread.join();
+        assertTrue(result.get() instanceof SortedQuery, String.valueOf(result.get()));
+        assertEquals(query.getFingerprint(), ((SortedQuery) result.get()).getFingerprint());
+    }
+
+    @Test
+    void testNullIndexName() {
+        SortedQuery query = parse("dc.title = a");
+        query.getQuery().getScopedClause().getSearchClause().getIndex().setName(null);
+        assertNull(CQLCodec.decode(CQLCodec.encode(query)).getQuery().getScopedClause().getSearchClause()
+                .getIndex().getName());
+    }
+
+    private static SortedQuery assertRoundTrip(String cql) {
+        SortedQuery query = parse(cql);
+        SortedQuery decoded = CQLCodec.decode(CQLCodec.encode(query));
+        assertEquals(query, decoded, cql);
+        assertEquals(query.toString(), decoded.toString(), cql);
+        return decoded;
+    }
+
+    private static SortedQuery parse(String cql) {
+        CQLParser parser = new CQLParser(cql);
+        parser.parse();
+        return parser.getCQLQuery();
+    }
+}
@@ -0,0 +1,76 @@
+package org.xbib.cql;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.LineNumberReader;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class CQLNormalizerTest {
+
+    @Test
+    void testCommutativeOperands() {
+        assertEquals("a and b", CQLNormalizer.canonicalize("b AND a"));
+        assertEquals(CQLNormalizer.canonicalize("a and b and c"), CQLNormalizer.canonicalize("c and (b and a)"));
+        assertEquals("a or b or c", CQLNormalizer.canonicalize("(c or a) or ((b))"));
+        assertEquals("(a or b) and c", CQLNormalizer.canonicalize("c and (b or a)"));
+        assertEquals("a not b", CQLNormalizer.canonicalize("a not b"));
+        assertNotEquals(CQLNormalizer.canonicalize("a not b"), CQLNormalizer.canonicalize("b not a"));
+        assertEquals("(a and b) prox/distance=1 c", CQLNormalizer.canonicalize("(b and a) prox/distance=1 c"));
+    }
+
+    @Test
+    void testContextsAndComparitors() {
+        assertEquals("filter.dc.type = journal and dc.title any linux and filter.dc.type = book",
+                CQLNormalizer.canonicalize("filter.dc.type = journal and dc.title CQL.ANY linux and filter.dc.type = book"));
+        // filter clauses keep their positions, and the operators before them
+        assertEquals("filter.x = a or dc.title = b or dc.title = c",
+                CQLNormalizer.canonicalize("filter.x = a or dc.title = c or dc.title = b"));
+        assertEquals("b or filter.x = a or c", CQLNormalizer.canonicalize("c or filter.x = a or b"));
+        assertEquals("(filter.x = a or c) or d", CQLNormalizer.canonicalize("d or (filter.x = a or c)"));
+        assertEquals("d or (filter.x = a)", CQLNormalizer.canonicalize("d or (filter.x = a)"));
+        assertEquals("(filter.x = a or d) or c", CQLNormalizer.canonicalize("(filter.x = a or d) or c"));
+        assertEquals("a or c or d", CQLNormalizer.canonicalize("d or (c or a)"));
+        assertEquals("dc.date within \"2000 2010\" sortby dc.date/sort.descending",
+                CQLNormalizer.canonicalize("(dc.date cql.within \"2000 2010\") sortby dc.date/sort.descending"));
+    }
+
+    @Test
+    void testNormalizedTree() {
+        CQLParser parser = new CQLParser("dc.creator = meyer and dc.title = unix");
+        parser.parse();
+        SortedQuery query = parser.getCQLQuery();
+        SortedQuery normalized = CQLNormalizer.normalize(query);
+        assertEquals("dc.creator = meyer and dc.title = unix", normalized.toString());
+        parser = new CQLParser("dc.title = unix and (dc.creator = meyer)");
+        parser.parse();
+        assertEquals(normalized, CQLNormalizer.normalize(parser.getCQLQuery()));
+        Term term = new Term("\"a \\\"b\\\"\"");
+        assertEquals(term.toString(), new Term(new Identifier("a \"b\"")).toString());
+    }
+
+    @Test
+    void testIdempotent() throws IOException {
+        try (LineNumberReader lr = new LineNumberReader(new InputStreamReader(getClass().getResourceAsStream("queries.txt"),
+                StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = lr.readLine()) != null) {
+                if (line.trim().length() > 0 && !line.startsWith("#")) {
+                    int pos = line.indexOf('|');
+                    String cql = pos > 0 ? line.substring(0, pos) : line;
+                    String canonical;
+                    try {
+                        canonical = CQLNormalizer.canonicalize(cql);
+                    } catch (SyntaxException e) {
+                        continue;
+                    }
+                    assertEquals(canonical, CQLNormalizer.canonicalize(canonical), cql);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package org.xbib.cql;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CQLSerializerTest {
+
+    @Test
+    void testAppendable() throws IOException {
+        SortedQuery query = parse("dc.title = \"say \\\"hello\\\"\" and (dc.creator = a or b) sortby dc.date/sort.descending");
+        StringWriter writer = new StringWriter();
+        CQLSerializer.write(query, writer);
+        assertEquals("dc.title = \"say \\\"hello\\\"\" and (dc.creator = a or b) sortby dc.date/sort.descending",
+                writer.toString());
+        StringBuilder sb = new StringBuilder("q=");
+        CQLSerializer.write(query, sb);
+        assertEquals("q=" + writer, sb.toString());
+    }
+
+    @Test
+    void testAppendableWithInvisibleClauses() throws IOException {
+        String cql = "dc.title = d and filter.creator = a and (facet.subject = b or filter.date = c)"
+                + " and (dc.creator = e or filter.year = 2000)";
+        SortedQuery query = parse(cql);
+        // a rendered subtree is written from its cached string
+        assertEquals("(dc.creator = e)", query.getQuery().getScopedClause().getSearchClause().toString());
+        StringWriter writer = new StringWriter();
+        CQLSerializer.write(query, writer);
+        assertEquals("dc.title = d and (dc.creator = e)", writer.toString());
+        assertEquals(writer.toString(), parse(cql).toString());
+    }
+
+    @Test
+    void testInvisibleClauses() {
+        assertEquals("dc.title = \"unix\"", parse("dc.title = \"unix\" and (filter.creator = \"wolfinger\" and filter.subject= Computer)").toString());
+        assertEquals("", parse("(facet.creator = a)").toString());
+    }
+
+    @Test
+    void testBreadcrumbs() {
+        SortedQuery query = parse("dc.title = \"unix\" and filter.creator = \"wolfinger\" and option.offset = 10");
+        CQLGenerator generator = new CQLGenerator();
+        query.accept(generator);
+        assertEquals("dc.title = \"unix\"", generator.getResult());
+        assertEquals("dc.title = \"unix\" and filter.creator = \"wolfinger\" and option.offset = 10",
+                generator.withBreadcrumbs());
+    }
+
+    private static SortedQuery parse(String cql) {
+        CQLParser parser = new CQLParser(cql);
+        parser.parse();
+        return parser.getCQLQuery();
+    }
+}
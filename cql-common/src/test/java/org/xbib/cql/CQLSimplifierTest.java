@@ -0,0 +1,107 @@
+package org.xbib.cql;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.LineNumberReader;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CQLSimplifierTest {
+
+    @Test
+    void testIdempotence() {
+        assertEquals("a", simplify("a and a").toString());
+        assertEquals("a or b", simplify("(b or a) or a").toString());
+        assertEquals("dc.title = unix", simplify("dc.title = unix and (dc.title = unix)").toString());
+    }
+
+    @Test
+    void testAbsorption() {
+        assertEquals("a", simplify("a and (a or b)").toString());
+        assertEquals("a", simplify("a or (b and a)").toString());
+        assertEquals("a and c", simplify("c and a and (b or a)").toString());
+        assertEquals("(a or b) and c", simplify("(a or b) and c").toString());
+    }
+
+    @Test
+    void testNegation() {
+        assertTrue(simplify("a not a").isUnsatisfiable());
+        assertTrue(simplify("(a and b) not a").isUnsatisfiable());
+        assertTrue(simplify("c or (a not a) and b").isChanged());
+        assertEquals("a", simplify("a not (b not a)").toString());
+        assertEquals("a and b", simplify("a not (a not b)").toString());
+        assertEquals("a not b", simplify("a not b").toString());
+        assertFalse(simplify("a not b").isChanged());
+        assertEquals("b", simplify("(a not a) or b").toString());
+        assertTrue(simplify("(a not a) and b").isUnsatisfiable());
+    }
+
+    @Test
+    void testRanges() {
+        assertTrue(simplify("year > 2010 and year < 2000").isUnsatisfiable());
+        assertTrue(simplify("year >= 2010 and year < 2010").isUnsatisfiable());
+        assertTrue(simplify("dc.date > 2010-01-01 and dc.date <= \"2009-12-31\"").isUnsatisfiable());
+        assertFalse(simplify("year >= 2010 and year <= 2010").isUnsatisfiable());
+        assertFalse(simplify("year > 2010 and dc.year < 2000").isUnsatisfiable());
+        assertFalse(simplify("year > 2010 or year < 2000").isUnsatisfiable());
+        assertEquals("a", simplify("a or (year > 2010 and year < 2000)").toString());
+    }
+
+    @Test
+    void testContexts() {
+        // facets and options are no conditions and are never absorbed or used as proof
+        assertEquals("dc.title = unix and facet.dc.type = book",
+                CQLSerializer.toCQL(simplify("dc.title = unix and facet.dc.type = book").getQuery(), true));
+        assertFalse(simplify("facet.dc.type = book not facet.dc.type = book").isUnsatisfiable());
+        assertTrue(simplify("dc.title = unix and filter.year > 2010 and filter.year < 2000").isUnsatisfiable());
+        // groups with facets, filters or options are not absorbed
+        for (String cql : new String[] {"a or (a and facet.dc.type = book)", "a and (a or filter.dc.type = book)",
+                "a or (a and (b or option.offset = 10))"}) {
+            Simplification simplification = simplify(cql);
+            assertEquals(CQLNormalizer.canonicalize(cql), CQLSerializer.toCQL(simplification.getQuery(), true), cql);
+            assertFalse(simplification.isChanged(), cql);
+        }
+        assertEquals("a", simplify("a or (a and b)").toString());
+    }
+
+    @Test
+    void testSortSpec() {
+        assertEquals("a sortby dc.date/sort.descending", simplify("a and a sortby dc.date/sort.descending").toString());
+    }
+
+    @Test
+    void testQueries() throws IOException {
+        try (LineNumberReader lr = new LineNumberReader(new InputStreamReader(getClass().getResourceAsStream("queries.txt"),
+                StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = lr.readLine()) != null) {
+                if (line.trim().length() > 0 && !line.startsWith("#")) {
+                    int pos = line.indexOf('|');
+                    String cql = pos > 0 ? line.substring(0, pos) : line;
+                    CQLParser parser = new CQLParser(cql);
+                    try {
+                        parser.parse();
+                    } catch (SyntaxException e) {
+                        continue;
+                    }
+                    Simplification simplification = CQLSimplifier.simplify(parser.getCQLQuery());
+                    assertNotNull(simplification.getQuery(), cql);
+                    // simplified queries are fixpoints
+                    assertFalse(CQLSimplifier.simplify(simplification.getQuery()).isChanged(), cql);
+                }
+            }
+        }
+    }
+
+    private static Simplification simplify(String cql) {
+        CQLParser parser = new CQLParser(cql);
+        parser.parse();
+        return CQLSimplifier.simplify(parser.getCQLQuery());
+    }
+}
@@ -0,0 +1,153 @@
+package org.xbib.cql;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NodeTest {
+
+    @Test
+    void testStructuralEquality() {
+        SortedQuery q1 = parse("dc.title = \"a b\" and (dc.creator = c or d) sortby dc.date/sort.descending");
+        SortedQuery q2 = parse("dc.title = \"a b\" and (dc.creator = c or d) sortby dc.date/sort.descending");
+        assertEquals(q1, q2);
+        assertEquals(q1.hashCode(), q2.hashCode());
+        assertEquals(q1.getFingerprint(), q2.getFingerprint());
+        assertEquals(0, q1.compareTo(q2));
+        assertEquals(q1.getQuery().getScopedClause(), q2.getQuery().getScopedClause());
+        assertNotEquals(q1, parse("dc.title = \"a b\" and (dc.creator = c or e) sortby dc.date/sort.descending"));
+        assertNotEquals(q1, parse("dc.title = \"a b\" and (dc.creator = c or d)"));
+    }
+
+    @Test
+    void testCachedStringIsInvalidated() {
+        SortedQuery query = parse("dc.title = a and b");
+        String s = query.toString();
+        assertSame(s, query.toString());
+        long fingerprint = query.getFingerprint();
+        Term term = query.getQuery().getScopedClause().getSearchClause().getTerm();
+        term.setValue("c");
+        assertEquals("dc.title = a and \"c\"", query.toString());
+        assertNotEquals(fingerprint, query.getFingerprint());
+    }
+
+    @Test
+    void testInvalidationIsLocal() {
+        SortedQuery query = parse("dc.title = a and (b or c) sortby dc.date");
+        SortedQuery other = parse("dc.title = a and (b or c) sortby dc.date");
+        String s = other.toString();
+        long fingerprint = other.getFingerprint();
+        // parsing and modifying other trees keeps the cached strings of this tree
+        parse("x or y and z");
+        query.toString();
+        query.getSortSpec().getSingleSpec().getIndex().setName("year");
+        assertEquals("dc.title = a and (b or c) sortby dc.year", query.toString());
+        assertSame(s, other.toString());
+        assertEquals(fingerprint, other.getFingerprint());
+        // the view of the grammar does not change the parents of the clauses
+        ScopedClause clause = query.getQuery().getScopedClause();
+        assertEquals("dc.title = a", clause.getScopedClause().toString());
+        clause.getSearchClauses().get(0).getTerm().setValue("d");
+        assertEquals("dc.title = \"d\"", clause.getScopedClause().toString());
+        assertEquals("dc.title = \"d\" and (b or c) sortby dc.year", query.toString());
+    }
+
+    @Test
+    void testSharedNodesCanNotBeModified() {
+        Term term = new Term("a");
+        SearchClause first = new SearchClause(term);
+        SearchClause second = new SearchClause(term);
+        assertThrows(IllegalStateException.class, () -> term.setValue("c"));
+        assertEquals("\"a\"", first.toString());
+        assertEquals("\"a\"", second.toString());
+        // the parser extends clauses only while they are built
+        ScopedClause clause = new ScopedClause(new SearchClause(new Term("x")));
+        clause.toString();
+        assertThrows(IllegalStateException.class,
+                () -> clause.append(new BooleanGroup(BooleanOperator.AND), new SearchClause(new Term("y"))));
+    }
+
+    @Test
+    void testInputCanBeModifiedAfterNormalization() {
+        SortedQuery query = parse("> dc = \"info:srw/cql-context-set/1/dc-v1.1\" "
+                + "dc.title = a and b and b sortby dc.date");
+        SortedQuery normalized = CQLNormalizer.normalize(query);
+        SortedQuery simplified = CQLSimplifier.simplify(query).getQuery();
+        String canonical = normalized.toString();
+        Query inner = query.getQuery().getQuery();
+        Term term = inner.getScopedClause().getScopedClause().getScopedClause().getSearchClause().getTerm();
+        Index index = inner.getScopedClause().getScopedClause().getScopedClause().getSearchClause().getIndex();
+        term.setValue("c");
+        index.setContext("bib");
+        index.setName("name");
+        query.getSortSpec().getSingleSpec().getIndex().setName("year");
+        query.getQuery().getPrefixAssignments().get(0).getURI().setValue("x");
+        assertEquals("> dc = \"x\" bib.name = \"c\" and b and b sortby dc.year", query.toString());
+        assertEquals(canonical, normalized.toString());
+        assertEquals(canonical, CQLNormalizer.normalize(parse("> dc = \"info:srw/cql-context-set/1/dc-v1.1\" "
+                + "dc.title = a and b and b sortby dc.date")).toString());
+        assertEquals(CQLNormalizer.normalize(parse("> dc = \"info:srw/cql-context-set/1/dc-v1.1\" "
+                + "b and dc.title = a sortby dc.date")).toString(), simplified.toString());
+    }
+
+    @Test
+    void testLongChain() {
+        StringBuilder sb = new StringBuilder("id = 0");
+        for (int i = 1; i < 10000; i++) {
+            sb.append(i % 2 == 0 ? " or " : " and ").append("id = ").append(i);
+        }
+        String cql = sb.toString();
+        SortedQuery query = parse(cql);
+        ScopedClause clause = query.getQuery().getScopedClause();
+        assertEquals(10000, clause.getSearchClauses().size());
+        assertEquals(9999, clause.getBooleanGroups().size());
+        assertEquals(cql, query.toString());
+        assertEquals(query, parse(cql));
+        assertEquals("id = 9999", clause.getSearchClause().toString());
+        assertEquals("id = 0 and id = 1 or id = 2", parse("id = 0 and id = 1 or id = 2 or id = 3").getQuery()
+                .getScopedClause().getScopedClause().toString());
+        String or = cql.replace(" and ", " or ");
+        assertEquals(or.length(), CQLNormalizer.canonicalize(parse(or)).length());
+    }
+
+    @Test
+    void testDeepNesting() throws InterruptedException {
+        int depth = 10000;
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            sb.append("id = ").append(i).append(i % 2 == 0 ? " and (" : " or (");
+        }
+        sb.append("title = end and filter.year = 2020");
+        for (int i = 0; i < depth; i++) {
+            sb.append(')');
+        }
+        String cql = sb.toString();
+        SortedQuery query = parse(cql);
+        SortedQuery other = parse(cql);
+        String[] result = new String[2];
+        boolean[] equal = new boolean[1];
+        // serializing, comparing and generating must not depend on the stack size
+        Thread thread = new Thread(null, () -> {
+            result[0] = query.toString();
+            equal[0] = query.equals(other);
+            CQLGenerator generator = new CQLGenerator();
+            query.accept(generator);
+            result[1] = generator.getModel().getFilterTrail();
+        }, "small-stack", 128 * 1024);
+        thread.start();
+        thread.join();
+        assertEquals(cql.replace(" and filter.year = 2020", ""), result[0]);
+        assertEquals(" and filter.year = 2020", result[1]);
+        assertTrue(equal[0]);
+    }
+
+    private static SortedQuery parse(String cql) {
+        CQLParser parser = new CQLParser(cql);
+        parser.parse();
+        return parser.getCQLQuery();
+    }
+}
@@ -0,0 +1,117 @@
+package org.xbib.cql;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QueryLimitsTest {
+
+    @Test
+    void testDepth() {
+        QueryLimits limits = QueryLimits.UNLIMITED.withMaxDepth(2);
+        parse("a and (b or (c and d))", limits);
+        assertExceeded(QueryLimits.Limit.DEPTH, 2, "a and (b or (c and (d or e)))", limits);
+        assertExceeded(QueryLimits.Limit.DEPTH, 0, "(a)", QueryLimits.UNLIMITED.withMaxDepth(0));
+    }
+
+    @Test
+    void testDepthAbortsBeforeTheEndOfTheQuery() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            sb.append('(');
+        }
+        // unbalanced, but the limit is reached long before the parser could notice
+        CQLParser parser = new CQLParser(sb.append("a"), QueryLimits.UNLIMITED.withMaxDepth(64));
+        QueryLimitExceededException e = assertThrows(QueryLimitExceededException.class, parser::parse);
+        assertEquals(QueryLimits.Limit.DEPTH, e.getLimit());
+    }
+
+    @Test
+    void testClauses() {
+        QueryLimits limits = QueryLimits.UNLIMITED.withMaxClauses(3);
+        parse("a and b or dc.title = c", limits);
+        assertExceeded(QueryLimits.Limit.CLAUSES, 3, "a and (b or c) not d", limits);
+    }
+
+    @Test
+    void testWildcardTerms() {
+        QueryLimits limits = QueryLimits.UNLIMITED.withMaxWildcardTerms(1).withMaxLeadingWildcardTerms(0);
+        parse("dc.title = foo* and dc.creator = *", limits);
+        parse("dc.title = foo* and dc.creator = \"a\\*b\"", limits);
+        assertExceeded(QueryLimits.Limit.WILDCARD_TERMS, 1, "dc.title = foo* or dc.creator = b?r", limits);
+        assertExceeded(QueryLimits.Limit.LEADING_WILDCARD_TERMS, 0, "dc.title = *foo", limits);
+    }
+
+    @Test
+    void testTermLength() {
+        QueryLimits limits = QueryLimits.UNLIMITED.withMaxTermLength(10);
+        parse("dc.title = abcde and fghij", limits);
+        assertExceeded(QueryLimits.Limit.TERM_LENGTH, 10, "dc.title = abcde and fghijk", limits);
+    }
+
+    @Test
+    void testPrefixAssignments() {
+        QueryLimits limits = QueryLimits.UNLIMITED.withMaxPrefixAssignments(1);
+        parse("> dc = \"info:srw/cql-context-set/1/dc-v1.1\" dc.title = a", limits);
+        assertExceeded(QueryLimits.Limit.PREFIX_ASSIGNMENTS, 1,
+                "> dc = \"info:srw/cql-context-set/1/dc-v1.1\" > bib = \"info:bib\" dc.title = a", limits);
+    }
+
+    @Test
+    void testReset() {
+        QueryLimits limits = QueryLimits.UNLIMITED.withMaxClauses(2);
+        CQLParser parser = new CQLParser("a and b", limits);
+        parser.parse();
+        parser.reset("c and d").parse();
+        assertEquals("c and d", parser.getCQLQuery().toString());
+        assertEquals(limits, parser.getLimits());
+    }
+
+    @Test
+    void testCheck() {
+        SortedQuery query = parse("> dc = \"info:srw/cql-context-set/1/dc-v1.1\" dc.title = *a and (b or (c* and d))",
+                QueryLimits.UNLIMITED);
+        QueryLimits.UNLIMITED.check(query);
+        QueryLimits.UNLIMITED.withMaxDepth(2).withMaxClauses(4).withMaxWildcardTerms(2)
+                .withMaxLeadingWildcardTerms(1).withMaxTermLength(6).withMaxPrefixAssignments(1).check(query);
+        assertEquals(QueryLimits.Limit.DEPTH, assertThrows(QueryLimitExceededException.class,
+                () -> QueryLimits.UNLIMITED.withMaxDepth(1).check(query)).getLimit());
+        assertEquals(QueryLimits.Limit.CLAUSES, assertThrows(QueryLimitExceededException.class,
+                () -> QueryLimits.UNLIMITED.withMaxClauses(3).check(query)).getLimit());
+        assertEquals(QueryLimits.Limit.WILDCARD_TERMS, assertThrows(QueryLimitExceededException.class,
+                () -> QueryLimits.UNLIMITED.withMaxWildcardTerms(1).check(query)).getLimit());
+        assertEquals(QueryLimits.Limit.LEADING_WILDCARD_TERMS, assertThrows(QueryLimitExceededException.class,
+                () -> QueryLimits.UNLIMITED.withMaxLeadingWildcardTerms(0).check(query)).getLimit());
+        assertEquals(QueryLimits.Limit.TERM_LENGTH, assertThrows(QueryLimitExceededException.class,
+                () -> QueryLimits.UNLIMITED.withMaxTermLength(5).check(query)).getLimit());
+        assertEquals(QueryLimits.Limit.PREFIX_ASSIGNMENTS, assertThrows(QueryLimitExceededException.class,
+                () -> QueryLimits.UNLIMITED.withMaxPrefixAssignments(0).check(query)).getLimit());
+    }
+
+    @Test
+    void testValueObject() {
+        QueryLimits limits = QueryLimits.UNLIMITED.withMaxDepth(8);
+        assertEquals(limits, QueryLimits.UNLIMITED.withMaxDepth(8));
+        assertEquals(limits.hashCode(), QueryLimits.UNLIMITED.withMaxDepth(8).hashCode());
+        assertNotEquals(limits, QueryLimits.UNLIMITED);
+        assertEquals(8, limits.getMaximum(QueryLimits.Limit.DEPTH));
+        assertTrue(QueryLimits.UNLIMITED.withMaxDepth(Integer.MAX_VALUE).isUnlimited());
+        assertThrows(IllegalArgumentException.class, () -> QueryLimits.UNLIMITED.withMaxClauses(-1));
+    }
+
+    private static SortedQuery parse(String cql, QueryLimits limits) {
+        CQLParser parser = new CQLParser(cql, limits);
+        parser.parse();
+        return parser.getCQLQuery();
+    }
+
+    private static void assertExceeded(QueryLimits.Limit limit, int maximum, String cql, QueryLimits limits) {
+        QueryLimitExceededException e = assertThrows(QueryLimitExceededException.class, () -> parse(cql, limits));
+        assertEquals(limit, e.getLimit());
+        assertEquals(maximum, e.getMaximum());
+        assertTrue(e.getMessage().contains(limit.toString()), e.getMessage());
+    }
+}
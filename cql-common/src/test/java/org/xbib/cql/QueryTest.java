@@ -10,6 +10,8 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  *
@@ -23,6 +25,30 @@ class QueryTest {
         test("queries.txt");
     }
 
+    @Test
+    void testReusedParser() {
+        CQLParser parser = new CQLParser("dc.title = a");
+        parser.parse();
+        assertEquals("dc.title = a", parser.getCQLQuery().toString());
+        parser.reset(new StringBuilder("dc.creator = b and dc.date > 2000"));
+        parser.parse();
+        assertEquals("dc.creator = b and dc.date > 2000", parser.getCQLQuery().toString());
+        char[] chars = "xxdc.type = electronicyy".toCharArray();
+        parser.reset(chars, 2, chars.length - 4);
+        parser.parse();
+        assertEquals("dc.type = electronic", parser.getCQLQuery().toString());
+    }
+
+    @Test
+    void testErrorPosition() {
+        CQLParser parser = new CQLParser("dc.title = a and");
+        SyntaxException e = assertThrows(SyntaxException.class, parser::parse);
+        assertTrue(e.getMessage().startsWith("CQL syntax error at [0,16]"), e.getMessage());
+        parser.reset("dc.title = a and (");
+        e = assertThrows(SyntaxException.class, parser::parse);
+        assertTrue(e.getMessage().startsWith("CQL syntax error at [0,18]"), e.getMessage());
+    }
+
     private void test(String path) throws IOException {
         int count = 0;
         int ok = 0;
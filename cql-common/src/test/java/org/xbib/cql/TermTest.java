@@ -0,0 +1,44 @@
+package org.xbib.cql;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TermTest {
+
+    @Test
+    void testStrings() {
+        for (String s : new String[] { "and", "2013", "2013-01", "2013-13-01", "2013-02-29", "2012-02-30",
+                "2013-01-01T25:00:00Z", "2013-01-01x", "2013-01-01T00:00:00", "Jörg" }) {
+            Term term = new Term(s);
+            assertFalse(term.isDate(), s);
+            assertTrue(term.isString(), s);
+            assertNull(term.getDate());
+            assertEquals(s, term.getValue());
+        }
+    }
+
+    @Test
+    void testDates() {
+        Term day = new Term("2012-02-29");
+        assertTrue(day.isDate());
+        assertFalse(day.isString());
+        assertEquals("2012-02-29", day.getValue());
+        assertEquals("2012-02-29T00:00:00Z", day.toString());
+        assertEquals(ZonedDateTime.of(2012, 2, 29, 0, 0, 0, 0, ZoneOffset.UTC), day.getDate());
+        Term seconds = new Term("2013-10-17T12:30:59Z");
+        assertTrue(seconds.isDate());
+        assertEquals("2013-10-17T12:30:59Z", seconds.toString());
+        assertEquals(ZonedDateTime.of(2013, 10, 17, 12, 30, 59, 0, ZoneOffset.UTC).toInstant(),
+                seconds.getDate().toInstant());
+        seconds.setValue("replaced");
+        assertFalse(seconds.isDate());
+        assertEquals("\"replaced\"", seconds.toString());
+    }
+}
@@ -0,0 +1,121 @@
+package org.xbib.cql.jfr;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.xbib.cql.CQLGenerator;
+import org.xbib.cql.CQLParser;
+import org.xbib.cql.QueryLimitExceededException;
+import org.xbib.cql.QueryLimits;
+import org.xbib.cql.SortedQuery;
+import org.xbib.cql.SyntaxException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class QueryEventTest {
+
+    @Test
+    void testParseEvents() throws IOException {
+        String cql = "dc.title = \"Jörg\" and (dc.date > 2000 or b)";
+        SortedQuery[] query = new SortedQuery[1];
+        List<RecordedEvent> events = record(() -> {
+            CQLParser parser = new CQLParser(cql);
+            parser.parse();
+            query[0] = parser.getCQLQuery();
+            assertThrows(SyntaxException.class, () -> parser.reset("a and").parse());
+            assertThrows(QueryLimitExceededException.class,
+                    () -> new CQLParser("a or b or c", QueryLimits.UNLIMITED.withMaxClauses(2)).parse());
+        }, "org.xbib.cql.Parse");
+        assertEquals(3, events.size());
+        RecordedEvent event = events.get(0);
+        // the parser does not render the query
+        assertFalse(query[0].isRendered());
+        assertEquals(0L, event.getLong("fingerprint"));
+        assertEquals(cql.length(), event.getInt("queryLength"));
+        assertEquals(3, event.getInt("clauses"));
+        assertEquals(QueryEvent.SUCCESS, event.getString("outcome"));
+        event = events.get(1);
+        assertEquals(0L, event.getLong("fingerprint"));
+        assertEquals(1, event.getInt("clauses"));
+        assertEquals(SyntaxException.class.getName(), event.getString("outcome"));
+        event = events.get(2);
+        assertEquals(QueryLimitExceededException.class.getName(), event.getString("outcome"));
+    }
+
+    @Test
+    void testGenerateEvents() throws IOException {
+        CQLParser parser = new CQLParser("dc.title = \"Jörg\" and filter.year = 2020");
+        parser.parse();
+        SortedQuery query = parser.getCQLQuery();
+        CQLGenerator generator = new CQLGenerator();
+        List<RecordedEvent> events = record(() -> query.accept(generator), "org.xbib.cql.Generate");
+        assertEquals(1, events.size());
+        RecordedEvent event = events.get(0);
+        assertEquals("CQLGenerator", event.getString("generator"));
+        assertEquals(query.getFingerprint(), event.getLong("fingerprint"));
+        assertEquals(query.toString().length(), event.getInt("queryLength"));
+        assertEquals(2, event.getInt("clauses"));
+        // the umlaut has two bytes
+        assertEquals(generator.getResult().length() + 1, event.getLong("outputSize"));
+        assertEquals(QueryEvent.SUCCESS, event.getString("outcome"));
+    }
+
+    @Test
+    void testQueryIsNotRendered() throws IOException {
+        CQLParser parser = new CQLParser("dc.title = \"Jörg\" and (dc.date > 2000 or b)");
+        parser.parse();
+        SortedQuery query = parser.getCQLQuery();
+        List<RecordedEvent> events = record(() -> new SourceEvent().finish(query, 10L, null), "org.xbib.cql.Source");
+        assertEquals(1, events.size());
+        RecordedEvent event = events.get(0);
+        assertEquals(0L, event.getLong("fingerprint"));
+        assertEquals(3, event.getInt("clauses"));
+        assertEquals(10L, event.getLong("outputSize"));
+        assertFalse(query.isRendered());
+    }
+
+    @Test
+    void testUtf8Length() {
+        assertEquals(0L, QueryEvent.utf8Length(""));
+        assertEquals(8L, QueryEvent.utf8Length("Jörg€"));
+        assertEquals(4L, QueryEvent.utf8Length("😀"));
+    }
+
+    /**
+     * Record the events of a task with a flight recording.
+     *
+     * @param task the task
+     * @param name the name of the events
+     * @return the recorded events
+     * @throws IOException if the recording can not be read
+     */
+    static List<RecordedEvent> record(Runnable task, String name) throws IOException {
+        Path file = Files.createTempFile("cql", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(name).withoutThreshold();
+            recording.start();
+            task.run();
+            recording.stop();
+            recording.dump(file);
+            List<RecordedEvent> events = new ArrayList<>();
+            for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+                if (event.getEventType().getName().equals(name)) {
+                    events.add(event);
+                }
+            }
+            events.sort((e1, e2) -> e1.getStartTime().compareTo(e2.getStartTime()));
+            return events;
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
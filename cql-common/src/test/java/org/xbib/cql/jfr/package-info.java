@@ -0,0 +1,4 @@
+/**
+ * Classes for testing CQL flight recorder events.
+ */
+package org.xbib.cql.jfr;
@@ -0,0 +1,138 @@
+package org.xbib.cql.metrics;
+
+import org.junit.jupiter.api.Test;
+import org.xbib.cql.BooleanOperator;
+import org.xbib.cql.CQLGenerator;
+import org.xbib.cql.CQLParser;
+import org.xbib.cql.Comparitor;
+import org.xbib.cql.QueryLimitExceededException;
+import org.xbib.cql.QueryLimits;
+import org.xbib.cql.SyntaxException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DefaultQueryMetricsTest {
+
+    @Test
+    void testHistogramBuckets() {
+        for (long v : new long[] {0L, 1L, 63L, 64L, 65L, 1000L, 123456789L, Long.MAX_VALUE}) {
+            int index = Histogram.index(v);
+            assertTrue(Histogram.highestValue(index) >= v);
+            assertTrue(index == 0 || Histogram.highestValue(index - 1) < v);
+            // relative error of at most 1/32
+            assertTrue(Histogram.highestValue(index) - v <= v / 32, Long.toString(v));
+        }
+    }
+
+    @Test
+    void testHistogramPercentiles() throws InterruptedException {
+        Histogram histogram = new Histogram();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                for (long v = 1; v <= 25000; v++) {
+                    histogram.record(v * 4);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        HistogramSnapshot snapshot = histogram.snapshot();
+        assertEquals(100000L, snapshot.getCount());
+        assertEquals(100000L, snapshot.getMax());
+        assertEquals(50002.0d, snapshot.getMean(), 0.001d);
+        assertTrue(Math.abs(snapshot.getValueAtPercentile(50.0d) - 50000L) <= 50000L / 32);
+        assertTrue(Math.abs(snapshot.getValueAtPercentile(99.0d) - 99000L) <= 99000L / 32);
+        assertEquals(100000L, snapshot.getValueAtPercentile(100.0d));
+        assertEquals(4L, snapshot.getValueAtPercentile(0.0d));
+        assertEquals(0L, new Histogram().snapshot().getValueAtPercentile(99.0d));
+    }
+
+    @Test
+    void testParser() {
+        DefaultQueryMetrics metrics = new DefaultQueryMetrics();
+        CQLParser parser = new CQLParser("dc.title = a and (dc.date > 2000 or dc.creator any \"b c\") not d",
+                QueryLimits.UNLIMITED, metrics);
+        parser.parse();
+        parser.reset("a or b").parse();
+        assertThrows(SyntaxException.class, () -> parser.reset("a and").parse());
+        assertThrows(QueryLimitExceededException.class,
+                () -> new CQLParser("(a)", QueryLimits.UNLIMITED.withMaxDepth(0), metrics).parse());
+        MetricsSnapshot snapshot = metrics.snapshot();
+        assertEquals(2L, snapshot.getLatency(Phase.LEX).getCount());
+        assertEquals(2L, snapshot.getLatency(Phase.PARSE).getCount());
+        assertEquals(0L, snapshot.getLatency(Phase.TRANSLATE).getCount());
+        // the failed query counts its operator, too
+        assertEquals(2L, snapshot.getCount(BooleanOperator.AND));
+        assertEquals(2L, snapshot.getCount(BooleanOperator.OR));
+        assertEquals(1L, snapshot.getCount(BooleanOperator.NOT));
+        assertEquals(1L, snapshot.getCount(Comparitor.EQUALS));
+        assertEquals(1L, snapshot.getCount(Comparitor.GREATER));
+        assertEquals(1L, snapshot.getCount(Comparitor.ANY));
+        assertEquals(2L, snapshot.getFailureCount(Phase.PARSE));
+        assertEquals(1L, (long) snapshot.getFailures(Phase.PARSE).get(SyntaxException.class.getName()));
+        assertEquals(1L, (long) snapshot.getFailures(Phase.PARSE).get(QueryLimitExceededException.class.getName()));
+        assertTrue(snapshot.getFailures(Phase.GENERATE).isEmpty());
+    }
+
+    @Test
+    void testGenerator() {
+        DefaultQueryMetrics metrics = new DefaultQueryMetrics();
+        CQLParser parser = new CQLParser("dc.title = a and filter.year = 2020");
+        parser.parse();
+        CQLGenerator generator = new CQLGenerator().setMetrics(metrics);
+        parser.getCQLQuery().accept(generator);
+        assertEquals(1L, metrics.snapshot().getLatency(Phase.GENERATE).getCount());
+        // the parser of the query had no metrics
+        assertEquals(0L, metrics.snapshot().getLatency(Phase.PARSE).getCount());
+    }
+
+    @Test
+    void testDisabled() {
+        DefaultQueryMetrics metrics = new DefaultQueryMetrics();
+        new CQLParser("a = b and c", QueryLimits.UNLIMITED, metrics).parse();
+        assertThrows(SyntaxException.class, () -> new CQLParser("a and", QueryLimits.UNLIMITED, metrics).parse());
+        metrics.setEnabled(false);
+        new CQLParser("a = b and c", QueryLimits.UNLIMITED, metrics).parse();
+        assertThrows(SyntaxException.class, () -> new CQLParser("a and", QueryLimits.UNLIMITED, metrics).parse());
+        metrics.record(Phase.TRANSLATE, 1000L);
+        MetricsSnapshot snapshot = metrics.snapshot();
+        assertEquals(1L, snapshot.getLatency(Phase.PARSE).getCount());
+        assertEquals(0L, snapshot.getLatency(Phase.TRANSLATE).getCount());
+        assertEquals(2L, snapshot.getCount(BooleanOperator.AND));
+        assertEquals(1L, snapshot.getCount(Comparitor.EQUALS));
+        assertEquals(1L, snapshot.getFailureCount(Phase.PARSE));
+        assertFalse(QueryMetrics.NONE.isEnabled());
+        assertEquals(0L, QueryMetrics.NONE.start());
+        assertEquals(0L, QueryMetrics.NONE.stop(Phase.PARSE, 0L));
+    }
+
+    @Test
+    void testPrometheus() {
+        DefaultQueryMetrics metrics = new DefaultQueryMetrics();
+        metrics.record(Phase.PARSE, 1500L);
+        metrics.record(Phase.PARSE, ThreadLocalRandom.current().nextLong(1000L));
+        metrics.count(BooleanOperator.AND);
+        metrics.count(Comparitor.WITHIN);
+        metrics.failed(Phase.TRANSLATE, new IllegalArgumentException());
+        String text = metrics.snapshot().toPrometheus();
+        assertTrue(text.contains("# TYPE cql_phase_duration_seconds summary\n"), text);
+        assertTrue(text.contains("cql_phase_duration_seconds{phase=\"parse\",quantile=\"0.999\"} 1.5E-6\n"), text);
+        assertTrue(text.contains("cql_phase_duration_seconds_count{phase=\"parse\"} 2\n"), text);
+        assertTrue(text.contains("cql_phase_duration_seconds_count{phase=\"emit_source\"} 0\n"), text);
+        assertTrue(text.contains("cql_operators_total{operator=\"and\"} 1\n"), text);
+        assertTrue(text.contains("cql_comparitors_total{comparitor=\"within\"} 1\n"), text);
+        assertTrue(text.contains("cql_exceptions_total{phase=\"translate\","
+                + "exception=\"java.lang.IllegalArgumentException\"} 1\n"), text);
+    }
+}
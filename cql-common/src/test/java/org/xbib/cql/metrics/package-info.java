@@ -0,0 +1,4 @@
+/**
+ * Classes for testing CQL metrics.
+ */
+package org.xbib.cql.metrics;
@@ -0,0 +1,32 @@
+package org.xbib.cql.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.CharBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CharSequenceReaderTest {
+
+    @Test
+    void testReadAndReset() {
+        CharSequenceReader reader = new CharSequenceReader("dc.title = a");
+        assertEquals("dc.title = a", readAll(reader));
+        assertEquals(-1, reader.read());
+        reader.reset(new StringBuilder("x and y"));
+        assertEquals("x and y", readAll(reader));
+        char[] chars = "--slice--".toCharArray();
+        reader.reset(CharBuffer.wrap(chars, 2, 5));
+        assertEquals("slice", readAll(reader));
+    }
+
+    private static String readAll(CharSequenceReader reader) {
+        StringBuilder sb = new StringBuilder();
+        char[] buffer = new char[3];
+        int n;
+        while ((n = reader.read(buffer, 0, buffer.length)) > 0) {
+            sb.append(buffer, 0, n);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,70 @@
+package org.xbib.cql.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TraversalTest {
+
+    @Test
+    void testOrder() {
+        // a tree of integers, the children of n are 2n and 2n + 1, up to 7
+        StringBuilder sb = new StringBuilder();
+        Traversal.walk(1, new Traversal.Listener<Integer>() {
+            @Override
+            public void enter(Integer node, Traversal<Integer> traversal) {
+                sb.append('<').append(node);
+                if (node * 2 <= 7) {
+                    traversal.child(node * 2);
+                    traversal.step(() -> sb.append(','));
+                    traversal.child(node * 2 + 1);
+                }
+            }
+
+            @Override
+            public void leave(Integer node) {
+                sb.append('>');
+            }
+        });
+        assertEquals("<1<2<4>,<5>>,<3<6>,<7>>>", sb.toString());
+    }
+
+    @Test
+    void testDepth() throws InterruptedException {
+        // a path of a million nodes, on a thread with a small stack
+        int depth = 1_000_000;
+        List<Integer> left = new ArrayList<>();
+        Traversal<Integer> traversal = new Traversal<>();
+        Thread thread = new Thread(null, () -> traversal.run(0, new Traversal.Listener<Integer>() {
+            @Override
+            public void enter(Integer node, Traversal<Integer> t) {
+                if (node < depth) {
+                    t.child(node + 1);
+                }
+            }
+
+            @Override
+            public void leave(Integer node) {
+                if (left.isEmpty() || node % 100_000 == 0) {
+                    left.add(node);
+                }
+            }
+        }), "small-stack", 128 * 1024);
+        thread.start();
+        thread.join();
+        assertEquals(List.of(depth, 900_000, 800_000, 700_000, 600_000, 500_000, 400_000, 300_000, 200_000,
+                100_000, 0), left);
+        assertEquals(depth + 1, traversal.getMaxSize());
+        assertFalse(traversal.isRunning());
+    }
+
+    @Test
+    void testNotRunning() {
+        assertThrows(IllegalStateException.class, () -> new Traversal<Integer>().child(1));
+    }
+}
@@ -2,7 +2,9 @@ module org.xbib.cql.elasticsearch {
     exports org.xbib.cql.elasticsearch;
     exports org.xbib.cql.elasticsearch.ast;
     exports org.xbib.cql.elasticsearch.model;
+    exports org.xbib.cql.elasticsearch.optimizer;
     requires transitive org.xbib.cql;
     requires org.xbib.datastructures.api;
+    requires jdk.jfr;
     requires transitive org.xbib.datastructures.json.tiny;
 }
@@ -0,0 +1,64 @@
+package org.xbib.cql.elasticsearch;
+
+/**
+ * The outcome of translating one query of a batch: either a translation result, or the error
+ * that made the query untranslatable.
+ */
+public final class BatchResult {
+
+    private final int index;
+
+    private final String cql;
+
+    private final TranslationResult result;
+
+    private final RuntimeException error;
+
+    BatchResult(int index, String cql, TranslationResult result, RuntimeException error) {
+        this.index = index;
+        this.cql = cql;
+        this.result = result;
+        this.error = error;
+    }
+
+    /**
+     * The position of the query in the batch input.
+     *
+     * @return the position, starting at 0
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    public String getCQL() {
+        return cql;
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    /**
+     * The translation result.
+     *
+     * @return the translation result, or null if the query could not be translated
+     */
+    public TranslationResult getResult() {
+        return result;
+    }
+
+    /**
+     * The error, usually a {@link org.xbib.cql.SyntaxException}. A query that overflowed the stack has an
+     * {@link IllegalStateException}, with the {@link StackOverflowError} as its cause.
+     *
+     * @return the error, or null if the query was translated
+     */
+    public RuntimeException getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return index + ":" + cql + "|" + (error != null ? error.getMessage() : result.getSource());
+    }
+}
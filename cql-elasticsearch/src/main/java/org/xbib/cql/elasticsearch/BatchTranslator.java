@@ -0,0 +1,213 @@
+package org.xbib.cql.elasticsearch;
+
+import org.xbib.cql.CQLParser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Translate many CQL queries in parallel with a shared {@link ElasticsearchTranslator}.
+ *
+ * The input is split into contiguous chunks, and each chunk is translated by one task with its own
+ * reusable parser, so the tasks share nothing but the immutable translator. Results are returned in
+ * input order. A query that can not be parsed or translated does not abort the batch, its error is
+ * reported in its {@link BatchResult}. This holds for any runtime exception, and for a stack overflow,
+ * which is reported as an {@link IllegalStateException}.
+ *
+ * By default, the tasks run in a private {@link ForkJoinPool}, which is shut down by {@link #close()}.
+ * An executor can be given instead, for example {@code Executors.newVirtualThreadPerTaskExecutor()};
+ * such an executor is not shut down by this class.
+ */
+public class BatchTranslator implements AutoCloseable {
+
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private static final int MAX_CHUNK_SIZE = 1024;
+
+    private static final int STREAM_WINDOW_PER_THREAD = 256;
+
+    private final ElasticsearchTranslator translator;
+
+    private final ExecutorService executor;
+
+    private final int parallelism;
+
+    private final boolean ownExecutor;
+
+    public BatchTranslator(ElasticsearchTranslator translator) {
+        this(translator, Runtime.getRuntime().availableProcessors());
+    }
+
+    public BatchTranslator(ElasticsearchTranslator translator, int parallelism) {
+        this(translator, new ForkJoinPool(checkParallelism(parallelism)), parallelism, true);
+    }
+
+    /**
+     * Create a batch translator that runs its tasks in the given executor.
+     *
+     * @param translator  the translator
+     * @param executor    the executor, not shut down by this batch translator
+     * @param parallelism the number of tasks that should run at the same time, used to size the chunks
+     */
+    public BatchTranslator(ElasticsearchTranslator translator, ExecutorService executor, int parallelism) {
+        this(translator, executor, checkParallelism(parallelism), false);
+    }
+
+    private BatchTranslator(ElasticsearchTranslator translator, ExecutorService executor, int parallelism,
+                            boolean ownExecutor) {
+        this.translator = Objects.requireNonNull(translator, "translator");
+        this.executor = Objects.requireNonNull(executor, "executor");
+        this.parallelism = parallelism;
+        this.ownExecutor = ownExecutor;
+    }
+
+    public ElasticsearchTranslator getTranslator() {
+        return translator;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Translate a list of CQL queries.
+     *
+     * @param queries the CQL queries
+     * @param from    the offset of the first hit
+     * @param size    the number of hits
+     * @return the results, one for each query, in input order
+     */
+    public List<BatchResult> translateAll(List<String> queries, int from, int size) {
+        return Arrays.asList(translate(queries.toArray(new String[0]), 0, from, size));
+    }
+
+    /**
+     * Translate a stream of CQL queries. The stream is consumed lazily in windows, so only a window
+     * of queries and results is held in memory at a time.
+     *
+     * @param queries the CQL queries
+     * @param from    the offset of the first hit
+     * @param size    the number of hits
+     * @return the results, one for each query, in input order
+     */
+    public Stream<BatchResult> translate(Stream<String> queries, int from, int size) {
+        Iterator<String> iterator = queries.iterator();
+        Spliterator<BatchResult> spliterator = new Spliterators.AbstractSpliterator<BatchResult>(Long.MAX_VALUE,
+                Spliterator.ORDERED | Spliterator.NONNULL) {
+
+            private final int windowSize = parallelism * STREAM_WINDOW_PER_THREAD;
+
+            private BatchResult[] window = new BatchResult[0];
+
+            private int position;
+
+            private int offset;
+
+            @Override
+            public boolean tryAdvance(Consumer<? super BatchResult> action) {
+                if (position == window.length) {
+                    List<String> list = new ArrayList<>(windowSize);
+                    while (list.size() < windowSize && iterator.hasNext()) {
+                        list.add(iterator.next());
+                    }
+                    if (list.isEmpty()) {
+                        return false;
+                    }
+                    window = translate(list.toArray(new String[0]), offset, from, size);
+                    offset += window.length;
+                    position = 0;
+                }
+                action.accept(window[position++]);
+                return true;
+            }
+        };
+        return StreamSupport.stream(spliterator, false).onClose(queries::close);
+    }
+
+    /**
+     * Shut down the executor, if it was created by this batch translator.
+     */
+    @Override
+    public void close() {
+        if (ownExecutor) {
+            executor.shutdown();
+        }
+    }
+
+    private BatchResult[] translate(String[] queries, int offset, int from, int size) {
+        BatchResult[] results = new BatchResult[queries.length];
+        int chunkSize = Math.max(1, Math.min(MAX_CHUNK_SIZE,
+                queries.length / (parallelism * CHUNKS_PER_THREAD)));
+        if (chunkSize >= queries.length || parallelism == 1) {
+            translateChunk(queries, 0, queries.length, offset, from, size, results);
+            return results;
+        }
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int start = 0; start < queries.length; start += chunkSize) {
+                int begin = start;
+                int end = Math.min(start + chunkSize, queries.length);
+                futures.add(executor.submit(() -> translateChunk(queries, begin, end, offset, from, size, results)));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("batch translation interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        } finally {
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return results;
+    }
+
+    private void translateChunk(String[] queries, int begin, int end, int offset, int from, int size,
+                                BatchResult[] results) {
+        CQLParser parser = new CQLParser("", translator.getSettings().getLimits(), translator.getMetrics());
+        for (int i = begin; i < end; i++) {
+            String cql = queries[i];
+            try {
+                parser.reset(cql).parse();
+                results[i] = new BatchResult(offset + i, cql,
+                        new TranslationResult(translator.generate(parser.getCQLQuery(), from, size)), null);
+            } catch (RuntimeException e) {
+                results[i] = new BatchResult(offset + i, cql, null, e);
+            } catch (StackOverflowError e) {
+                // a pass that still recurses gave up on this query, the thread stack is unwound again
+                results[i] = new BatchResult(offset + i, cql, null,
+                        new IllegalStateException("query is nested too deeply to translate", e));
+            }
+        }
+    }
+
+    private static int checkParallelism(int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        }
+        return parallelism;
+    }
+}
@@ -0,0 +1,13 @@
+package org.xbib.cql.elasticsearch;
+
+import java.io.IOException;
+
+/**
+ * A write to a JSON builder that is scheduled on a traversal, after the children of a node
+ * that are scheduled before it.
+ */
+@FunctionalInterface
+interface BuilderStep {
+
+    void run() throws IOException;
+}
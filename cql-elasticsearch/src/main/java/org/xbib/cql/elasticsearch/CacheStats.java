@@ -0,0 +1,89 @@
+package org.xbib.cql.elasticsearch;
+
+/**
+ * A snapshot of the statistics of a {@link CompiledQueryCache}.
+ */
+public final class CacheStats {
+
+    private final long hitCount;
+
+    private final long missCount;
+
+    private final long loadCount;
+
+    private final long loadFailureCount;
+
+    private final long evictionCount;
+
+    public CacheStats(long hitCount, long missCount, long loadCount, long loadFailureCount, long evictionCount) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.loadCount = loadCount;
+        this.loadFailureCount = loadFailureCount;
+        this.evictionCount = evictionCount;
+    }
+
+    /**
+     * The number of lookups that were answered from the cache.
+     *
+     * @return the hit count
+     */
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * The number of lookups that were not answered from the cache. This includes lookups that
+     * waited for a concurrent compilation of the same key.
+     *
+     * @return the miss count
+     */
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * The number of compilations, i.e. parser and generator runs.
+     *
+     * @return the load count
+     */
+    public long getLoadCount() {
+        return loadCount;
+    }
+
+    /**
+     * The number of compilations that failed, for example with a syntax error.
+     *
+     * @return the load failure count
+     */
+    public long getLoadFailureCount() {
+        return loadFailureCount;
+    }
+
+    /**
+     * The number of entries that were evicted because the cache was full.
+     *
+     * @return the eviction count
+     */
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public long getRequestCount() {
+        return hitCount + missCount;
+    }
+
+    public double getHitRate() {
+        long requests = getRequestCount();
+        return requests == 0L ? 1.0d : (double) hitCount / requests;
+    }
+
+    @Override
+    public String toString() {
+        return "[hits=" + hitCount
+                + ",misses=" + missCount
+                + ",loads=" + loadCount
+                + ",loadFailures=" + loadFailureCount
+                + ",evictions=" + evictionCount + "]";
+    }
+}
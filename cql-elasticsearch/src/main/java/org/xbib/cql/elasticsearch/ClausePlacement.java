@@ -0,0 +1,124 @@
+package org.xbib.cql.elasticsearch;
+
+import org.xbib.cql.elasticsearch.ast.Expression;
+import org.xbib.cql.elasticsearch.ast.Modifier;
+import org.xbib.cql.elasticsearch.ast.Name;
+import org.xbib.cql.elasticsearch.ast.Node;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Decide where the clauses of a boolean query are placed.
+ *
+ * Clauses that can not affect relevance are moved from <code>must</code> to <code>filter</code>,
+ * where Elasticsearch skips scoring and can cache the matching documents as bitsets. These are
+ * range comparisons, and exact matches on keyword fields. A conjunction or disjunction is a filter
+ * if all of its clauses are. A relation modifier like <code>relevant</code> keeps a clause scoring.
+ * Disjunctions keep their clauses in <code>should</code>, because a filter must always match.
+ */
+public class ClausePlacement {
+
+    private final Predicate<String> exactFields;
+
+    private final Set<String> scoringModifiers;
+
+    /**
+     * Create a placement where fields ending with <code>Keyword</code> are exact fields, and the
+     * <code>relevant</code> relation modifier keeps clauses scoring.
+     */
+    public ClausePlacement() {
+        this(field -> field.endsWith("Keyword"), Set.of("relevant", "cql.relevant"));
+    }
+
+    /**
+     * Create a placement.
+     *
+     * @param exactFields      the predicate for fields that are not analyzed, like keyword fields
+     * @param scoringModifiers the names of relation modifiers that keep a clause scoring
+     */
+    public ClausePlacement(Predicate<String> exactFields, Set<String> scoringModifiers) {
+        this.exactFields = Objects.requireNonNull(exactFields, "exactFields");
+        this.scoringModifiers = Set.copyOf(scoringModifiers);
+    }
+
+    /**
+     * Place a clause of a boolean query.
+     *
+     * @param occur  the occurrence given by the boolean operator, must for conjunctions and
+     *               should for disjunctions
+     * @param clause the clause
+     * @return the occurrence of the clause
+     */
+    public Occur place(Occur occur, Node clause) {
+        return occur == Occur.MUST && !isScoring(clause) ? Occur.FILTER : occur;
+    }
+
+    /**
+     * Whether a clause may contribute to the score. Nested conjunctions and disjunctions are
+     * examined with an explicit stack, so deeply nested clauses do not use the thread stack.
+     *
+     * @param node the clause
+     * @return true if the clause must be scored
+     */
+    public boolean isScoring(Node node) {
+        Deque<Node> pending = new ArrayDeque<>();
+        pending.push(node);
+        while (!pending.isEmpty()) {
+            Node next = pending.pop();
+            if (!(next instanceof Expression)) {
+                return true;
+            }
+            Expression expression = (Expression) next;
+            Node[] args = expression.getArgs();
+            switch (expression.getOperator()) {
+                case RANGE_GREATER_THAN:
+                case RANGE_GREATER_OR_EQUAL:
+                case RANGE_LESS_THAN:
+                case RANGE_LESS_OR_EQUALS:
+                case RANGE_WITHIN:
+                case RANGE:
+                case TERMS:
+                    if (hasScoringModifier(args[0])) {
+                        return true;
+                    }
+                    break;
+                case EQUALS:
+                case NOT_EQUALS:
+                case ALL:
+                case ANY:
+                case PHRASE:
+                    if (!(args[0] instanceof Name) || !exactFields.test(args[0].toString())
+                            || hasScoringModifier(args[0])) {
+                        return true;
+                    }
+                    break;
+                case AND:
+                case OR:
+                    for (Node arg : args) {
+                        if (arg.isVisible()) {
+                            pending.push(arg);
+                        }
+                    }
+                    break;
+                default:
+                    return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean hasScoringModifier(Node node) {
+        if (node instanceof Name && ((Name) node).getModifiers() != null) {
+            for (Modifier modifier : ((Name) node).getModifiers()) {
+                if (scoringModifiers.contains(modifier.getName().toString())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,46 @@
+package org.xbib.cql.elasticsearch;
+
+import org.xbib.cql.SortedQuery;
+
+/**
+ * A compiled query: the parsed CQL query and the Elasticsearch search request source built from it.
+ * Compiled queries are shared between threads by {@link CompiledQueryCache}, the parsed query
+ * must not be modified.
+ */
+public final class CompiledQuery {
+
+    private final String cql;
+
+    private final SortedQuery query;
+
+    private final String source;
+
+    public CompiledQuery(String cql, SortedQuery query, String source) {
+        this.cql = cql;
+        this.query = query;
+        this.source = source;
+    }
+
+    public String getCQL() {
+        return cql;
+    }
+
+    public SortedQuery getQuery() {
+        return query;
+    }
+
+    /**
+     * The Elasticsearch search request source, as returned by
+     * {@link ElasticsearchQueryGenerator#getSourceResult()}.
+     *
+     * @return the search request source
+     */
+    public String getSource() {
+        return source;
+    }
+
+    @Override
+    public String toString() {
+        return cql + "|" + source;
+    }
+}
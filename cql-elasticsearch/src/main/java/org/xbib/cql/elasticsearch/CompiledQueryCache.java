@@ -0,0 +1,348 @@
+package org.xbib.cql.elasticsearch;
+
+import org.xbib.cql.CQLParser;
+import org.xbib.cql.SortedQuery;
+import org.xbib.cql.SyntaxException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A thread-safe, size-bounded cache of compiled queries, keyed by the CQL query string, the generator
+ * settings, and the result window.
+ *
+ * The cache is split into segments, each guarded by its own lock. A segment is a segmented LRU:
+ * new entries go into a probation area, entries that are hit again are promoted into a protected
+ * area. Eviction removes the least recently used probation entry first, so a burst of one-off
+ * queries can not flush the frequently used ones.
+ *
+ * Concurrent misses for the same key are coalesced: only one thread compiles the query, the
+ * other threads wait for its result. Failed compilations, for example syntax errors, are not cached.
+ *
+ * A cache can be backed by a {@link CompiledQueryStore}. Queries that are not in the cache are looked up
+ * in the store before they are compiled, and compiled queries are appended to the store, so a cache
+ * of a restarted translator is warmed from the store.
+ */
+public class CompiledQueryCache {
+
+    private static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+    private static final float PROTECTED_RATIO = 0.8f;
+
+    private final Segment[] segments;
+
+    private final ConcurrentHashMap<Key, CompletableFuture<CompiledQuery>> loading;
+
+    private final LongAdder hits;
+
+    private final LongAdder misses;
+
+    private final LongAdder loads;
+
+    private final LongAdder loadFailures;
+
+    private final LongAdder evictions;
+
+    private final CompiledQueryStore store;
+
+    public CompiledQueryCache(int maximumSize) {
+        this(maximumSize, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    public CompiledQueryCache(int maximumSize, int concurrencyLevel) {
+        this(maximumSize, concurrencyLevel, null);
+    }
+
+    /**
+     * Create a cache that is backed by a persistent store.
+     *
+     * @param maximumSize      the maximum number of entries
+     * @param concurrencyLevel the number of segments
+     * @param store            the store, or null
+     */
+    public CompiledQueryCache(int maximumSize, int concurrencyLevel, CompiledQueryStore store) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("maximum size must be positive: " + maximumSize);
+        }
+        if (concurrencyLevel <= 0) {
+            throw new IllegalArgumentException("concurrency level must be positive: " + concurrencyLevel);
+        }
+        int n = Integer.highestOneBit(Math.min(concurrencyLevel, maximumSize));
+        if (n < concurrencyLevel && n << 1 <= maximumSize) {
+            n <<= 1;
+        }
+        this.segments = new Segment[n];
+        for (int i = 0; i < n; i++) {
+            segments[i] = new Segment(maximumSize / n + (i < maximumSize % n ? 1 : 0));
+        }
+        this.loading = new ConcurrentHashMap<>();
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.loads = new LongAdder();
+        this.loadFailures = new LongAdder();
+        this.evictions = new LongAdder();
+        this.store = store;
+    }
+
+    /**
+     * Get the compiled query for a CQL query, compiling it if it is not in the cache.
+     *
+     * @param cql      the CQL query
+     * @param settings the generator settings
+     * @param from     the offset of the first hit
+     * @param size     the number of hits
+     * @return the compiled query
+     * @throws SyntaxException if the query can not be compiled
+     * @throws UncheckedIOException if the compiled query can not be appended to the store
+     */
+    public CompiledQuery get(String cql, QuerySettings settings, int from, int size) {
+        Key key = new Key(cql, settings, from, size);
+        Segment segment = segmentFor(key);
+        CompiledQuery value = segment.get(key);
+        if (value != null) {
+            hits.increment();
+            return value;
+        }
+        misses.increment();
+        CompletableFuture<CompiledQuery> future = new CompletableFuture<>();
+        CompletableFuture<CompiledQuery> inflight = loading.putIfAbsent(key, future);
+        if (inflight != null) {
+            return await(inflight);
+        }
+        try {
+            // a concurrent load may have finished between our lookup and the registration of the future
+            value = segment.get(key);
+            if (value == null) {
+                value = load(key);
+                evictions.add(segment.put(key, value));
+            }
+            future.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, future);
+        }
+    }
+
+    /**
+     * Get the compiled query for a CQL query if it is in the cache.
+     *
+     * @param cql      the CQL query
+     * @param settings the generator settings
+     * @param from     the offset of the first hit
+     * @param size     the number of hits
+     * @return the compiled query, or null if it is not in the cache
+     */
+    public CompiledQuery getIfPresent(String cql, QuerySettings settings, int from, int size) {
+        Key key = new Key(cql, settings, from, size);
+        CompiledQuery value = segmentFor(key).get(key);
+        if (value != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return value;
+    }
+
+    /**
+     * Remove all entries. The statistics are kept.
+     */
+    public void invalidateAll() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * The number of cached entries.
+     *
+     * @return the number of entries
+     */
+    public long size() {
+        long size = 0L;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public CacheStats getStats() {
+        return new CacheStats(hits.sum(), misses.sum(), loads.sum(), loadFailures.sum(), evictions.sum());
+    }
+
+    /**
+     * Compile a CQL query. Subclasses may override this to change the translation.
+     *
+     * @param cql      the CQL query
+     * @param settings the generator settings
+     * @param from     the offset of the first hit
+     * @param size     the number of hits
+     * @return the compiled query
+     */
+    protected CompiledQuery compile(String cql, QuerySettings settings, int from, int size) {
+        CQLParser parser = new CQLParser(cql, settings.getLimits());
+        parser.parse();
+        SortedQuery query = parser.getCQLQuery();
+        return new CompiledQuery(cql, query,
+                new TranslationResult(new ElasticsearchTranslator(settings).generate(query, from, size)).getSource());
+    }
+
+    private CompiledQuery load(Key key) {
+        loads.increment();
+        try {
+            CompiledQuery value = store != null ? store.get(key.cql, key.settings, key.from, key.size) : null;
+            if (value == null) {
+                value = compile(key.cql, key.settings, key.from, key.size);
+                if (store != null) {
+                    store.put(value, key.settings, key.from, key.size);
+                }
+            }
+            return value;
+        } catch (IOException e) {
+            loadFailures.increment();
+            throw new UncheckedIOException(e);
+        } catch (RuntimeException e) {
+            loadFailures.increment();
+            throw e;
+        }
+    }
+
+    private Segment segmentFor(Key key) {
+        int h = key.hash;
+        return segments[(h ^ (h >>> 16)) & (segments.length - 1)];
+    }
+
+    private static CompiledQuery await(CompletableFuture<CompiledQuery> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * A cache key.
+     */
+    private static final class Key {
+
+        private final String cql;
+
+        private final QuerySettings settings;
+
+        private final int from;
+
+        private final int size;
+
+        private final int hash;
+
+        Key(String cql, QuerySettings settings, int from, int size) {
+            this.cql = Objects.requireNonNull(cql, "cql");
+            this.settings = Objects.requireNonNull(settings, "settings");
+            this.from = from;
+            this.size = size;
+            this.hash = ((cql.hashCode() * 31 + settings.hashCode()) * 31 + from) * 31 + size;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return hash == other.hash && from == other.from && size == other.size
+                    && cql.equals(other.cql) && settings.equals(other.settings);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * A segmented LRU cache segment.
+     */
+    private static final class Segment {
+
+        private final int capacity;
+
+        private final int protectedCapacity;
+
+        private final LinkedHashMap<Key, CompiledQuery> probation;
+
+        private final LinkedHashMap<Key, CompiledQuery> protectedArea;
+
+        Segment(int capacity) {
+            this.capacity = capacity;
+            this.protectedCapacity = (int) (capacity * PROTECTED_RATIO);
+            this.probation = new LinkedHashMap<>();
+            this.protectedArea = new LinkedHashMap<>(16, 0.75f, true);
+        }
+
+        synchronized CompiledQuery get(Key key) {
+            CompiledQuery value = protectedArea.get(key);
+            if (value != null) {
+                return value;
+            }
+            value = probation.remove(key);
+            if (value != null) {
+                protectedArea.put(key, value);
+                if (protectedArea.size() > protectedCapacity) {
+                    // demote the least recently used protected entry to the most recently used probation entry
+                    Iterator<Map.Entry<Key, CompiledQuery>> it = protectedArea.entrySet().iterator();
+                    Map.Entry<Key, CompiledQuery> eldest = it.next();
+                    it.remove();
+                    probation.put(eldest.getKey(), eldest.getValue());
+                }
+            }
+            return value;
+        }
+
+        synchronized int put(Key key, CompiledQuery value) {
+            if (protectedArea.containsKey(key)) {
+                protectedArea.put(key, value);
+                return 0;
+            }
+            probation.remove(key);
+            probation.put(key, value);
+            int evicted = 0;
+            while (probation.size() + protectedArea.size() > capacity) {
+                Map<Key, CompiledQuery> victims = probation.isEmpty() ? protectedArea : probation;
+                Iterator<Key> it = victims.keySet().iterator();
+                it.next();
+                it.remove();
+                evicted++;
+            }
+            return evicted;
+        }
+
+        synchronized void clear() {
+            probation.clear();
+            protectedArea.clear();
+        }
+
+        synchronized int size() {
+            return probation.size() + protectedArea.size();
+        }
+    }
+}
@@ -0,0 +1,543 @@
+package org.xbib.cql.elasticsearch;
+
+import org.xbib.cql.CQLCodec;
+import org.xbib.cql.QueryLimits;
+import org.xbib.cql.SortedQuery;
+import org.xbib.cql.SyntaxException;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * A persistent store of compiled queries in an append-only file, so that a restarted translator
+ * can serve its queries without parsing and translating them again.
+ *
+ * Each record holds the CQL query, the fingerprint of the {@link QuerySettings}, the result window,
+ * the parsed query in the binary form of {@link CQLCodec}, and the search request source. A record is
+ * framed by its length and a CRC32C checksum. The file is read through a {@link MappedByteBuffer}.
+ * Records that are appended after the file was mapped are read through the file channel, until they
+ * make up half of the file and the file is mapped again. The position of the latest record of each
+ * query is kept in an open addressing hash table in a direct buffer, outside of the Java heap.
+ *
+ * Appends are crash safe: when the store is opened, the records are verified, and a torn or corrupt
+ * tail of the file, left by a crash during an append, is cut off. Appended records are durable after
+ * {@link #sync()} or {@link #close()}. Records that are replaced by later records of the same query
+ * are removed by {@link #compact()}, which is also run by {@link #put} when more than half of the file
+ * is replaced records.
+ *
+ * The store is thread safe. The file must not be opened by more than one store at a time.
+ */
+public final class CompiledQueryStore implements Closeable {
+
+    private static final int MAGIC = 0x43514c53;
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_LENGTH = 8;
+
+    /**
+     * The length and the checksum of a record.
+     */
+    private static final int FRAME_LENGTH = 8;
+
+    private static final long MIN_COMPACTION_LENGTH = 1L << 20;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final Path path;
+
+    private FileChannel channel;
+
+    private MappedByteBuffer map;
+
+    private Index index;
+
+    private long length;
+
+    private long liveLength;
+
+    public CompiledQueryStore(Path path) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            recover();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Get a compiled query from this store.
+     *
+     * @param cql      the CQL query
+     * @param settings the generator settings
+     * @param from     the offset of the first hit
+     * @param size     the number of hits
+     * @return the compiled query, or null if it is not in this store
+     * @throws UncheckedIOException if the record can not be read
+     */
+    public synchronized CompiledQuery get(String cql, QuerySettings settings, int from, int size) {
+        checkOpen();
+        long settingsFingerprint = fingerprint(settings);
+        long offset = index.get(key(cql, settingsFingerprint, from, size));
+        if (offset < 0L) {
+            return null;
+        }
+        ByteBuffer record = record(offset);
+        if (record.getLong() != settingsFingerprint || record.getInt() != from || record.getInt() != size
+                || !cql.equals(string(record))) {
+            return null;
+        }
+        int queryLength = record.getInt();
+        byte[] bytes = new byte[queryLength];
+        record.get(bytes);
+        SortedQuery query;
+        try {
+            query = CQLCodec.decode(bytes);
+        } catch (SyntaxException e) {
+            // written by an incompatible version of the codec
+            return null;
+        }
+        return new CompiledQuery(cql, query, string(record));
+    }
+
+    /**
+     * Append a compiled query to this store. A record of the same query is replaced.
+     *
+     * @param query    the compiled query
+     * @param settings the generator settings of the query
+     * @param from     the offset of the first hit
+     * @param size     the number of hits
+     * @throws IOException if the record can not be written
+     */
+    public synchronized void put(CompiledQuery query, QuerySettings settings, int from, int size)
+            throws IOException {
+        checkOpen();
+        long settingsFingerprint = fingerprint(settings);
+        byte[] cql = query.getCQL().getBytes(StandardCharsets.UTF_8);
+        byte[] encoded = CQLCodec.encode(query.getQuery());
+        byte[] source = query.getSource().getBytes(StandardCharsets.UTF_8);
+        int payloadLength = 8 + 4 + 4 + 4 + cql.length + 4 + encoded.length + 4 + source.length;
+        ByteBuffer buffer = ByteBuffer.allocate(FRAME_LENGTH + payloadLength);
+        buffer.putInt(payloadLength).putInt(0);
+        buffer.putLong(settingsFingerprint).putInt(from).putInt(size);
+        buffer.putInt(cql.length).put(cql);
+        buffer.putInt(encoded.length).put(encoded);
+        buffer.putInt(source.length).put(source);
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.array(), FRAME_LENGTH, payloadLength);
+        buffer.putInt(4, (int) crc.getValue());
+        buffer.flip();
+        long offset = length;
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, offset + buffer.position());
+        }
+        length += buffer.limit();
+        liveLength += buffer.limit();
+        long previous = index.put(key(query.getCQL(), settingsFingerprint, from, size), offset);
+        if (previous >= 0L) {
+            liveLength -= FRAME_LENGTH + record(previous).limit();
+        }
+        if (length - HEADER_LENGTH - liveLength > liveLength && length > MIN_COMPACTION_LENGTH) {
+            compact();
+        } else if (length > 2L * map.limit()) {
+            remap();
+        }
+    }
+
+    /**
+     * Rewrite the file with the latest record of each query only. The new file replaces the old
+     * one atomically, a crash during compaction leaves the old file. If the new file can not replace
+     * the old one, the store continues with the old file.
+     *
+     * @throws IOException if the file can not be rewritten
+     */
+    public synchronized void compact() throws IOException {
+        checkOpen();
+        Path compacted = path.resolveSibling(path.getFileName() + ".compact");
+        Index compactedIndex = new Index(index.capacity());
+        long compactedLength = HEADER_LENGTH;
+        try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeHeader(out);
+            for (int slot = 0; slot < index.capacity(); slot++) {
+                long offset = index.offsetAt(slot);
+                if (offset >= 0L) {
+                    ByteBuffer frame = frame(offset);
+                    compactedIndex.put(index.keyAt(slot), compactedLength);
+                    while (frame.hasRemaining()) {
+                        compactedLength += out.write(frame, compactedLength);
+                    }
+                }
+            }
+            out.force(true);
+        }
+        // some platforms do not replace a file that is open
+        channel.close();
+        channel = null;
+        map = null;
+        try {
+            Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            // the old file, and the index of it, are unchanged
+            try {
+                Files.deleteIfExists(compacted);
+                reopen();
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+        index = compactedIndex;
+        length = compactedLength;
+        liveLength = compactedLength - HEADER_LENGTH;
+        reopen();
+    }
+
+    /**
+     * Force the appended records to the storage device.
+     *
+     * @throws IOException if the records can not be forced
+     */
+    public synchronized void sync() throws IOException {
+        checkOpen();
+        channel.force(false);
+    }
+
+    /**
+     * The number of queries in this store.
+     *
+     * @return the number of queries
+     */
+    public synchronized int size() {
+        checkOpen();
+        return index.size();
+    }
+
+    /**
+     * The length of the file, including the records that are replaced by later records.
+     *
+     * @return the length in bytes
+     */
+    public synchronized long getFileLength() {
+        return length;
+    }
+
+    /**
+     * The length of the latest records of all queries, which is the length of the file after compaction
+     * without the header.
+     *
+     * @return the length in bytes
+     */
+    public synchronized long getLiveLength() {
+        return liveLength;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            try {
+                channel.force(false);
+            } finally {
+                channel.close();
+                channel = null;
+                map = null;
+                index = null;
+            }
+        }
+    }
+
+    /**
+     * Read the records of the file into the index, and cut off a torn tail.
+     */
+    private void recover() throws IOException {
+        long fileLength = channel.size();
+        if (fileLength < HEADER_LENGTH) {
+            reset();
+            return;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+            // read the header
+        }
+        if (header.getInt(0) != MAGIC) {
+            throw new IOException("not a compiled query store: " + path);
+        }
+        if (header.getInt(4) != VERSION) {
+            // a store is a cache, records of other versions are dropped
+            reset();
+            return;
+        }
+        length = fileLength;
+        remap();
+        index = new Index(64);
+        CRC32C crc = new CRC32C();
+        long offset = HEADER_LENGTH;
+        while (offset + FRAME_LENGTH <= fileLength) {
+            int payloadLength = map.getInt((int) offset);
+            if (payloadLength < 0 || offset + FRAME_LENGTH + payloadLength > fileLength) {
+                break;
+            }
+            crc.reset();
+            crc.update(map.slice((int) offset + FRAME_LENGTH, payloadLength));
+            if ((int) crc.getValue() != map.getInt((int) offset + 4)) {
+                break;
+            }
+            ByteBuffer record = record(offset);
+            long settingsFingerprint = record.getLong();
+            int from = record.getInt();
+            int size = record.getInt();
+            long previous = index.put(key(string(record), settingsFingerprint, from, size), offset);
+            liveLength += FRAME_LENGTH + payloadLength;
+            if (previous >= 0L) {
+                liveLength -= FRAME_LENGTH + record(previous).limit();
+            }
+            offset += FRAME_LENGTH + payloadLength;
+        }
+        if (offset < fileLength) {
+            channel.truncate(offset);
+            channel.force(true);
+            length = offset;
+            remap();
+        }
+    }
+
+    private void reset() throws IOException {
+        channel.truncate(0L);
+        writeHeader(channel);
+        channel.force(true);
+        length = HEADER_LENGTH;
+        liveLength = 0L;
+        index = new Index(64);
+        remap();
+    }
+
+    private static void writeHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH).putInt(MAGIC).putInt(VERSION);
+        header.flip();
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+    }
+
+    private void reopen() throws IOException {
+        FileChannel reopened = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            map = reopened.map(FileChannel.MapMode.READ_ONLY, 0L, length);
+        } catch (IOException | RuntimeException e) {
+            reopened.close();
+            throw e;
+        }
+        channel = reopened;
+    }
+
+    private void remap() throws IOException {
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("compiled query store exceeds 2 GiB: " + path);
+        }
+        map = channel.map(FileChannel.MapMode.READ_ONLY, 0L, length);
+    }
+
+    /**
+     * Get the payload of a record.
+     */
+    private ByteBuffer record(long offset) {
+        ByteBuffer frame = frame(offset);
+        return frame.slice(FRAME_LENGTH, frame.limit() - FRAME_LENGTH);
+    }
+
+    /**
+     * Get a record with its frame, from the mapped file, or from the channel if the record was
+     * appended after the file was mapped.
+     */
+    private ByteBuffer frame(long offset) {
+        if (offset + FRAME_LENGTH <= map.limit()) {
+            int payloadLength = map.getInt((int) offset);
+            return map.slice((int) offset, FRAME_LENGTH + payloadLength);
+        }
+        try {
+            int payloadLength = read(offset, ByteBuffer.allocate(4)).getInt(0);
+            return read(offset, ByteBuffer.allocate(FRAME_LENGTH + payloadLength));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private ByteBuffer read(long offset, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("unexpected end of compiled query store: " + path);
+            }
+        }
+        return buffer.flip();
+    }
+
+    private void checkOpen() {
+        if (channel == null) {
+            throw new IllegalStateException("compiled query store is closed: " + path);
+        }
+    }
+
+    private static String string(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        String s;
+        if (buffer.hasArray()) {
+            s = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        } else {
+            byte[] bytes = new byte[length];
+            buffer.get(buffer.position(), bytes);
+            s = new String(bytes, StandardCharsets.UTF_8);
+        }
+        buffer.position(buffer.position() + length);
+        return s;
+    }
+
+    /**
+     * The fingerprint of settings must not change between restarts, so it is computed from the values
+     * of the settings, and not from their hash code. A dialect is identified by its class and its name,
+     * and by its unmapped sort types.
+     */
+    private static long fingerprint(QuerySettings settings) {
+        long h = field(FNV_OFFSET_BASIS, settings.getGlobalField());
+        h = field(h, settings.getBoostField());
+        h = field(h, settings.getModifier());
+        h = field(h, settings.getFactor() != null ? settings.getFactor().toString() : null);
+        h = field(h, settings.getBoostMode());
+        h = (h ^ (settings.isPhraseBoostHint() ? 1 : 0)) * FNV_PRIME;
+        h = field(h, settings.getDialect().getClass().getName());
+        h = field(h, settings.getDialect().getName());
+        if (settings.getDialect() instanceof ModernDialect) {
+            Map<String, String> unmappedTypes = ((ModernDialect) settings.getDialect()).getUnmappedTypes();
+            for (Map.Entry<String, String> entry : unmappedTypes.entrySet()) {
+                h = field(field(h, entry.getKey()), entry.getValue());
+            }
+        }
+        QueryLimits limits = settings.getLimits();
+        for (QueryLimits.Limit limit : QueryLimits.Limit.values()) {
+            h = (h ^ limits.getMaximum(limit)) * FNV_PRIME;
+        }
+        return h;
+    }
+
+    /**
+     * Add a string that may be null to a fingerprint, followed by its length, so that adjacent
+     * fields can not run into each other.
+     */
+    private static long field(long h, String s) {
+        return s != null ? (fingerprint(h, s) ^ s.length()) * FNV_PRIME : (h ^ -1L) * FNV_PRIME;
+    }
+
+    private static long key(String cql, long settingsFingerprint, int from, int size) {
+        long h = fingerprint(settingsFingerprint, cql);
+        h = (h ^ from) * FNV_PRIME;
+        return (h ^ size) * FNV_PRIME;
+    }
+
+    private static long fingerprint(long h, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            h = (h ^ s.charAt(i)) * FNV_PRIME;
+        }
+        return h;
+    }
+
+    /**
+     * An open addressing hash table with linear probing from keys to record offsets, in a direct buffer.
+     * A slot is the key and the offset plus one, an offset of zero marks an empty slot.
+     */
+    private static final class Index {
+
+        private static final int SLOT_LENGTH = 16;
+
+        private ByteBuffer slots;
+
+        private int capacity;
+
+        private int size;
+
+        Index(int capacity) {
+            this.capacity = capacity;
+            this.slots = ByteBuffer.allocateDirect(capacity * SLOT_LENGTH);
+        }
+
+        int capacity() {
+            return capacity;
+        }
+
+        int size() {
+            return size;
+        }
+
+        long keyAt(int slot) {
+            return slots.getLong(slot * SLOT_LENGTH);
+        }
+
+        long offsetAt(int slot) {
+            return slots.getLong(slot * SLOT_LENGTH + 8) - 1L;
+        }
+
+        long get(long key) {
+            int mask = capacity - 1;
+            for (int slot = spread(key) & mask; ; slot = (slot + 1) & mask) {
+                long offset = offsetAt(slot);
+                if (offset < 0L || keyAt(slot) == key) {
+                    return offset;
+                }
+            }
+        }
+
+        /**
+         * Put a key.
+         *
+         * @return the previous offset of the key, or -1
+         */
+        long put(long key, long offset) {
+            if (size + 1 > capacity / 2) {
+                resize();
+            }
+            int mask = capacity - 1;
+            for (int slot = spread(key) & mask; ; slot = (slot + 1) & mask) {
+                long previous = offsetAt(slot);
+                if (previous < 0L || keyAt(slot) == key) {
+                    slots.putLong(slot * SLOT_LENGTH, key);
+                    slots.putLong(slot * SLOT_LENGTH + 8, offset + 1L);
+                    if (previous < 0L) {
+                        size++;
+                    }
+                    return previous;
+                }
+            }
+        }
+
+        private void resize() {
+            Index larger = new Index(capacity * 2);
+            for (int slot = 0; slot < capacity; slot++) {
+                long offset = offsetAt(slot);
+                if (offset >= 0L) {
+                    larger.put(keyAt(slot), offset);
+                }
+            }
+            this.slots = larger.slots;
+            this.capacity = larger.capacity;
+        }
+
+        private static int spread(long key) {
+            long h = key * 0x9e3779b97f4a7c15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
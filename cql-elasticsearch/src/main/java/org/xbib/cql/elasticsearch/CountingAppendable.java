@@ -0,0 +1,78 @@
+package org.xbib.cql.elasticsearch;
+
+/**
+ * A string builder for the JSON builders of generators, which counts the UTF-8 bytes of the characters
+ * while they are appended, so the size of the output is known without encoding it again.
+ *
+ * A surrogate pair is counted as four bytes, two for each half.
+ *
+ * The characters can be read as a char sequence, so they can be streamed to a writer without building a string.
+ */
+final class CountingAppendable implements Appendable, CharSequence {
+
+    private final StringBuilder sb;
+
+    private long utf8Length;
+
+    CountingAppendable() {
+        this.sb = new StringBuilder();
+    }
+
+    @Override
+    public CountingAppendable append(CharSequence csq) {
+        return csq != null ? append(csq, 0, csq.length()) : append("null");
+    }
+
+    @Override
+    public CountingAppendable append(CharSequence csq, int start, int end) {
+        if (csq == null) {
+            return append("null", start, end);
+        }
+        long length = end - start;
+        for (int i = start; i < end; i++) {
+            char c = csq.charAt(i);
+            if (c >= 0x80) {
+                length += c < 0x800 || Character.isSurrogate(c) ? 1 : 2;
+            }
+        }
+        utf8Length += length;
+        sb.append(csq, start, end);
+        return this;
+    }
+
+    @Override
+    public CountingAppendable append(char c) {
+        utf8Length += c < 0x80 ? 1 : c < 0x800 || Character.isSurrogate(c) ? 2 : 3;
+        sb.append(c);
+        return this;
+    }
+
+    /**
+     * The number of UTF-8 bytes of the characters appended so far.
+     *
+     * @return the number of bytes
+     */
+    long getUtf8Length() {
+        return utf8Length;
+    }
+
+    @Override
+    public int length() {
+        return sb.length();
+    }
+
+    @Override
+    public char charAt(int index) {
+        return sb.charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return sb.subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+        return sb.toString();
+    }
+}
@@ -0,0 +1,137 @@
+package org.xbib.cql.elasticsearch;
+
+import org.xbib.datastructures.json.tiny.JsonBuilder;
+
+import java.io.IOException;
+
+/**
+ * The query language of an Elasticsearch or OpenSearch version.
+ *
+ * A dialect writes the constructs whose syntax differs between versions, like filtered queries,
+ * ranges, negated filters and the handling of unmapped sort fields. The dialect is part of the
+ * {@link QuerySettings}, so it is selected once when a translator is built.
+ *
+ * Dialects must be immutable, they are shared by all generators.
+ */
+public interface Dialect {
+
+    /**
+     * Elasticsearch 1.x, with <code>filtered</code> queries and filters. This is the default.
+     */
+    Dialect LEGACY = new LegacyDialect();
+
+    /**
+     * Elasticsearch 7.x.
+     */
+    Dialect ELASTICSEARCH_7 = new ModernDialect("elasticsearch-7");
+
+    /**
+     * Elasticsearch 8.x.
+     */
+    Dialect ELASTICSEARCH_8 = new ModernDialect("elasticsearch-8");
+
+    /**
+     * OpenSearch 2.x.
+     */
+    Dialect OPENSEARCH_2 = new ModernDialect("opensearch-2");
+
+    String getName();
+
+    /**
+     * The placement of boolean query clauses that is used if the translator has none.
+     *
+     * @return the placement, or null if the dialect has no boolean filter clauses
+     */
+    ClausePlacement getClausePlacement();
+
+    /**
+     * Begin a query that is combined with a filter. The query follows; after its map is closed,
+     * the filter is written under the key <code>filter</code>, and then the map begun here is closed.
+     *
+     * @param builder the builder
+     * @throws IOException if writing fails
+     */
+    void startFiltered(JsonBuilder builder) throws IOException;
+
+    /**
+     * Write a query that matches no document.
+     *
+     * @param builder the builder
+     * @throws IOException if writing fails
+     */
+    void matchNone(JsonBuilder builder) throws IOException;
+
+    /**
+     * Write a range query.
+     *
+     * @param builder      the builder
+     * @param field        the field
+     * @param from         the lower bound, or null
+     * @param includeLower whether the lower bound is included
+     * @param to           the upper bound, or null
+     * @param includeUpper whether the upper bound is included
+     * @throws IOException if writing fails
+     */
+    void range(JsonBuilder builder, String field, String from, boolean includeLower, String to, boolean includeUpper)
+            throws IOException;
+
+    /**
+     * Write a query for values that start with a prefix.
+     *
+     * @param builder the builder
+     * @param field   the field
+     * @param value   the prefix
+     * @param exact   true if the field is not analyzed
+     * @throws IOException if writing fails
+     */
+    void prefix(JsonBuilder builder, String field, String value, boolean exact) throws IOException;
+
+    /**
+     * Begin a negated filter. The filter follows, then {@link #endNot(JsonBuilder)} is called.
+     *
+     * @param builder the builder
+     * @throws IOException if writing fails
+     */
+    void startNot(JsonBuilder builder) throws IOException;
+
+    void endNot(JsonBuilder builder) throws IOException;
+
+    /**
+     * Begin a collection of filters that must all match, or of which one should match.
+     * Each filter follows as a map, then {@link #endClauses(JsonBuilder)} is called.
+     *
+     * @param builder the builder
+     * @param occur   must or should
+     * @throws IOException if writing fails
+     */
+    void startClauses(JsonBuilder builder, Occur occur) throws IOException;
+
+    void endClauses(JsonBuilder builder) throws IOException;
+
+    /**
+     * Begin a query that is used as a filter. The query follows, then
+     * {@link #endQueryFilter(JsonBuilder)} is called.
+     *
+     * @param builder the builder
+     * @throws IOException if writing fails
+     */
+    void startQueryFilter(JsonBuilder builder) throws IOException;
+
+    void endQueryFilter(JsonBuilder builder) throws IOException;
+
+    /**
+     * Write the fields of a sort that let shards without a mapping of the sort field take part.
+     *
+     * @param builder the builder
+     * @param field   the sort field
+     * @throws IOException if writing fails
+     */
+    void unmappedSort(JsonBuilder builder, String field) throws IOException;
+
+    /**
+     * The key for ordering terms aggregations by term.
+     *
+     * @return the key
+     */
+    String getTermOrder();
+}
@@ -23,19 +23,25 @@ import org.xbib.cql.elasticsearch.ast.Modifier;
 import org.xbib.cql.elasticsearch.ast.Name;
 import org.xbib.cql.elasticsearch.ast.Node;
 import org.xbib.cql.elasticsearch.ast.Operator;
+import org.xbib.cql.elasticsearch.ast.Terms;
 import org.xbib.cql.elasticsearch.ast.Token;
 import org.xbib.cql.elasticsearch.ast.TokenType;
 import org.xbib.cql.elasticsearch.model.ElasticsearchQueryModel;
+import org.xbib.cql.jfr.GenerateEvent;
+import org.xbib.cql.util.Traversal;
 import org.xbib.datastructures.json.tiny.JsonBuilder;
 
 import java.io.IOException;
-import java.time.ZonedDateTime;
-import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Stack;
 
 /**
  * Generate Elasticsearch filter query from CQL abstract syntax tree.
+ *
+ * Queries, scoped clauses and search clauses are visited on an explicit-stack {@link Traversal},
+ * so deeply nested parentheses do not use the thread stack.
  */
 public class ElasticsearchFilterGenerator implements Visitor {
 
@@ -47,6 +53,8 @@ public class ElasticsearchFilterGenerator implements Visitor {
 
     private final FilterGenerator filterGen;
 
+    private final Traversal<org.xbib.cql.Node> traversal;
+
     public ElasticsearchFilterGenerator(String globalField) {
         this(globalField, new ElasticsearchQueryModel());
     }
@@ -56,6 +64,16 @@ public class ElasticsearchFilterGenerator implements Visitor {
         this.model = model;
         this.stack = new Stack<>();
         this.filterGen = new FilterGenerator();
+        this.traversal = new Traversal<>();
+    }
+
+    /**
+     * Set the dialect of the generated filter.
+     *
+     * @param dialect the dialect
+     */
+    public void setDialect(Dialect dialect) {
+        filterGen.setDialect(dialect);
     }
 
     public void addOrFilter(String filterKey, Collection<String> filterValues) {
@@ -72,15 +90,79 @@ public class ElasticsearchFilterGenerator implements Visitor {
         }
     }
 
+    /**
+     * Set the maximum number of values in a terms filter.
+     *
+     * @param maxTermsCount the <code>index.max_terms_count</code> setting of the cluster
+     */
+    public void setMaxTermsCount(int maxTermsCount) {
+        filterGen.setMaxTermsCount(maxTermsCount);
+    }
+
+    /**
+     * Add a filter for documents that have one of many values, as a single terms filter.
+     *
+     * @param filterKey    the field
+     * @param filterValues the values
+     */
+    public void addTermsFilter(String filterKey, Collection<?> filterValues) {
+        model.addTermsFilter(filterKey, Terms.of(filterValues));
+    }
+
+    /**
+     * Add a filter for documents that have one of many numbers, as a single terms filter.
+     *
+     * @param filterKey    the field
+     * @param filterValues the values
+     */
+    public void addTermsFilter(String filterKey, long... filterValues) {
+        model.addTermsFilter(filterKey, Terms.of(filterValues));
+    }
+
+    /**
+     * Add a filter for documents that have one of the values of a lookup document.
+     *
+     * @param filterKey the field
+     * @param lookup    the terms lookup
+     */
+    public void addTermsFilter(String filterKey, TermsLookup lookup) {
+        model.addTermsFilter(filterKey, Terms.lookup(lookup));
+    }
+
     public JsonBuilder getResult() {
         return filterGen.getResult();
     }
 
+    /**
+     * The number of UTF-8 bytes of the filter, counted while it is written.
+     *
+     * @return the number of bytes
+     */
+    public long getOutputSize() {
+        return filterGen.getOutputSize();
+    }
+
     @Override
     public void visit(SortedQuery node) {
+        if (walk(node)) {
+            return;
+        }
         try {
             filterGen.start();
-            node.getQuery().accept(this);
+        } catch (IOException e) {
+            throw new SyntaxException("unable to build a valid query from " + node + ", reason: " + e.getMessage(), e);
+        }
+        traversal.child(node.getQuery());
+        traversal.step(() -> build(node));
+    }
+
+    /**
+     * Build the filter after the query of a sorted query was visited.
+     *
+     * @param node the sorted query
+     */
+    private void build(SortedQuery node) {
+        try {
             Node querynode = stack.pop();
             if (querynode instanceof Token) {
                 filterGen.visit(new Expression(Operator.TERM_FILTER, new Name(globalField), querynode));
@@ -121,11 +203,14 @@ public class ElasticsearchFilterGenerator implements Visitor {
 
     @Override
     public void visit(Query node) {
+        if (walk(node)) {
+            return;
+        }
         for (PrefixAssignment assignment : node.getPrefixAssignments()) {
             assignment.accept(this);
         }
         if (node.getScopedClause() != null) {
-            node.getScopedClause().accept(this);
+            traversal.child(node.getScopedClause());
         }
     }
 
@@ -137,44 +222,80 @@ public class ElasticsearchFilterGenerator implements Visitor {
 
     @Override
     public void visit(ScopedClause node) {
-        if (node.getScopedClause() != null) {
-            node.getScopedClause().accept(this);
+        if (walk(node)) {
+            return;
         }
-        node.getSearchClause().accept(this);
-        if (node.getBooleanGroup() != null) {
-            node.getBooleanGroup().accept(this);
+        List<SearchClause> clauses = node.getSearchClauses();
+        List<BooleanGroup> groups = node.getBooleanGroups();
+        traversal.child(clauses.get(0));
+        // the operands of a run of equal conjunctions or disjunctions, collected into one expression
+        Run run = new Run();
+        for (int i = 1; i < clauses.size(); i++) {
+            BooleanGroup group = groups.get(i - 1);
+            Operator op = booleanToES(group.getOperator());
+            boolean flat = group.getModifierList() == null && (op == Operator.AND || op == Operator.OR);
+            traversal.step(() -> {
+                if (run.operands != null && (!flat || op != run.op)) {
+                    run.end();
+                }
+            });
+            traversal.child(clauses.get(i));
+            traversal.step(() -> {
+                group.accept(this);
+                evaluate(run, op, flat);
+            });
         }
-        // evaluate expression
+        traversal.step(() -> {
+            if (run.operands != null) {
+                run.end();
+            }
+        });
+    }
+
+    /**
+     * Evaluate the boolean group on top of the stack, after a search clause of a scoped clause was visited.
+     */
+    private void evaluate(Run run, Operator op, boolean flat) {
         if (!stack.isEmpty() && stack.peek() instanceof Operator) {
-            Operator op = (Operator) stack.pop();
+            stack.pop();
             if (!stack.isEmpty()) {
-                Node esnode = stack.pop();
-                // add default context if node is a literal without a context
-                if (esnode instanceof Token && TokenType.STRING.equals(esnode.getType())) {
-                    esnode = new Expression(Operator.ALL, new Name(globalField), esnode);
-                }
-                if (stack.isEmpty()) {
+                Node esnode = withGlobalField(stack.pop());
+                if (run.operands != null) {
+                    run.operands.add(esnode);
+                } else if (stack.isEmpty()) {
                     // unary expression
                     throw new IllegalArgumentException("unary expression not allowed, op=" + op + " node=" + esnode);
+                } else if (flat) {
+                    run.operands = new ArrayList<>();
+                    run.op = op;
+                    run.operands.add(withGlobalField(stack.pop()));
+                    run.operands.add(esnode);
                 } else {
                     // binary expression
-                    Node esnode2 = stack.pop();
-                    // add default context if node is a literal without context
-                    if (esnode2 instanceof Token && TokenType.STRING.equals(esnode2.getType())) {
-                        esnode2 = new Expression(Operator.ALL, new Name(globalField), esnode2);
-                    }
-                    esnode = new Expression(op, esnode2, esnode);
+                    stack.push(new Expression(op, withGlobalField(stack.pop()), esnode));
                 }
-                stack.push(esnode);
             }
         }
     }
 
+    /**
+     * Add default context if node is a literal without a context.
+     */
+    private Node withGlobalField(Node esnode) {
+        return esnode instanceof Token && TokenType.STRING.equals(esnode.getType())
+                ? new Expression(Operator.ALL, new Name(globalField), esnode) : esnode;
+    }
+
     @Override
     public void visit(SearchClause node) {
         if (node.getQuery() != null) {
-            // CQL query in parenthesis
-            node.getQuery().accept(this);
+            if (walk(node)) {
+                return;
+            }
+            // CQL query in parenthesis, it has no term, index or relation
+            traversal.child(node.getQuery());
+            traversal.step(this::evaluate);
+            return;
         }
         if (node.getTerm() != null) {
             node.getTerm().accept(this);
@@ -201,16 +322,22 @@ public class ElasticsearchFilterGenerator implements Visitor {
                 stack.push(op);
             }
         }
-        // evaluate expression
+        evaluate();
+    }
+
+    /**
+     * Evaluate the relation on top of the stack, after a search clause was visited.
+     */
+    private void evaluate() {
         if (!stack.isEmpty() && stack.peek() instanceof Operator) {
             Operator op = (Operator) stack.pop();
             Node arg1 = stack.pop();
             Node arg2 = stack.pop();
-            // fold two expressions if they have the same operator
+            // an expression with the same operator takes the new argument, in one n-ary expression
             boolean fold = arg1.isVisible() && arg2.isVisible()
                     && arg2 instanceof Expression
                     && ((Expression) arg2).getOperator().equals(op);
-            Expression expression = fold ? new Expression((Expression) arg2, arg1) : new Expression(op, arg1, arg2);
+            Expression expression = fold ? ((Expression) arg2).prepend(arg1) : new Expression(op, arg1, arg2);
             stack.push(expression);
         }
     }
@@ -282,7 +409,7 @@ public class ElasticsearchFilterGenerator implements Visitor {
         } else if (node.isIdentifier()) {
             return new Token(node.getValue());
         } else if (node.isDate()) {
-            return new Token(ZonedDateTime.from(DateTimeFormatter.ISO_INSTANT.parse(node.getValue())));
+            return new Token(node.getDate());
         } else if (node.isString()) {
             return new Token(node.getValue());
         }
@@ -348,4 +475,41 @@ public class ElasticsearchFilterGenerator implements Visitor {
         }
         return esop;
     }
+
+    /**
+     * Start a walk if the node is not visited by the running walk.
+     *
+     * @param node the node
+     * @return true if the node was visited by a new walk
+     */
+    private boolean walk(org.xbib.cql.Node node) {
+        if (traversal.isRunning()) {
+            return false;
+        }
+        GenerateEvent event = new GenerateEvent();
+        event.begin();
+        try {
+            traversal.run(node, (n, t) -> n.accept(this));
+        } catch (RuntimeException e) {
+            event.finish(this, node, 0L, e);
+            throw e;
+        }
+        event.finish(this, node, getOutputSize(), null);
+        return true;
+    }
+
+    /**
+     * The operands of a run of equal conjunctions or disjunctions in a scoped clause.
+     */
+    private final class Run {
+
+        private List<Node> operands;
+
+        private Operator op;
+
+        void end() {
+            stack.push(new Expression(op, operands.toArray(new Node[0])));
+            operands = null;
+        }
+    }
 }
@@ -13,6 +13,7 @@ import org.xbib.cql.Relation;
 import org.xbib.cql.ScopedClause;
 import org.xbib.cql.SearchClause;
 import org.xbib.cql.SimpleName;
+import org.xbib.cql.Simplification;
 import org.xbib.cql.SingleSpec;
 import org.xbib.cql.SortSpec;
 import org.xbib.cql.SortedQuery;
@@ -27,25 +28,39 @@ import org.xbib.cql.elasticsearch.ast.Operator;
 import org.xbib.cql.elasticsearch.ast.Token;
 import org.xbib.cql.elasticsearch.ast.TokenType;
 import org.xbib.cql.elasticsearch.model.ElasticsearchQueryModel;
+import org.xbib.cql.elasticsearch.optimizer.ExpressionOptimizer;
+import org.xbib.cql.elasticsearch.optimizer.Optimization;
+import org.xbib.cql.jfr.GenerateEvent;
+import org.xbib.cql.jfr.SourceEvent;
+import org.xbib.cql.metrics.Phase;
+import org.xbib.cql.metrics.QueryMetrics;
+import org.xbib.cql.util.Traversal;
 import org.xbib.datastructures.json.tiny.JsonBuilder;
 
 import java.io.IOException;
-import java.time.ZonedDateTime;
-import java.time.format.DateTimeFormatter;
+import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
 import java.util.Stack;
 
 /**
  * Generate Elasticsearch QueryModel DSL from CQL abstract syntax tree.
+ *
+ * Queries, scoped clauses and search clauses are visited on an explicit-stack {@link Traversal},
+ * so deeply nested parentheses do not use the thread stack.
  */
 public class ElasticsearchQueryGenerator implements Visitor {
 
     private final ElasticsearchQueryModel model;
 
-    private final ElasticsearchFilterGenerator elasticsearchFilterGenerator;
+    private ElasticsearchFilterGenerator elasticsearchFilterGenerator;
 
     private final Stack<Node> stack;
 
+    private final Traversal<org.xbib.cql.Node> traversal;
+
     private int from;
 
     private int size;
@@ -58,18 +73,46 @@ public class ElasticsearchQueryGenerator implements Visitor {
 
     private String boostMode;
 
-    private final SourceGenerator sourceGen;
+    private final GeneratorFactory<SourceGenerator> sourceGens;
+
+    private final GeneratorFactory<FacetsGenerator> facetGens;
+
+    private final GeneratorFactory<SortGenerator> sortGens;
+
+    private SourceGenerator sourceGen;
 
     private final QueryGenerator queryGen;
 
-    private final FacetsGenerator facetGen;
+    private FacetsGenerator facetGen;
 
-    private final SortGenerator sortGen;
+    private SortGenerator sortGen;
 
     private final String globalField;
 
     private FilterGenerator filterGen;
 
+    private ExpressionOptimizer optimizer;
+
+    private Optimization optimization;
+
+    private Simplification simplification;
+
+    private Dialect dialect = Dialect.LEGACY;
+
+    private int maxTermsCount = FilterGenerator.DEFAULT_MAX_TERMS_COUNT;
+
+    private boolean translated;
+
+    private boolean sourceBuilt;
+
+    private QueryMetrics metrics = QueryMetrics.NONE;
+
+    private Phase phase;
+
+    private long phaseStart;
+
+    private org.xbib.cql.Node query;
+
     public ElasticsearchQueryGenerator(String globalField) throws IOException {
         this(globalField, false);
     }
@@ -84,17 +127,57 @@ public class ElasticsearchQueryGenerator implements Visitor {
                                        FacetsGenerator facetGen,
                                        SortGenerator sortGen,
                                        boolean phraseBoostHint) throws IOException {
+        this(globalField, sourceGen != null ? () -> sourceGen : SourceGenerator::new,
+                queryGen != null ? queryGen : new QueryGenerator(),
+                facetGen != null ? () -> facetGen : FacetsGenerator::new,
+                sortGen != null ? () -> sortGen : SortGenerator::new);
+        this.queryGen.setPhraseBoostHint(phraseBoostHint);
+    }
+
+    /**
+     * Create the per-call context of a translator. The settings, the optimizer, the metrics and the resolved
+     * clause placement are taken from the translator. The generators of the source, the sort and the aggregations
+     * are created by the factories of the translator when the query needs them.
+     *
+     * @param translator the translator
+     * @param from       the offset of the first hit
+     * @param size       the number of hits
+     * @throws IOException if the query generator can not be created
+     */
+    ElasticsearchQueryGenerator(ElasticsearchTranslator translator, int from, int size) throws IOException {
+        this(translator.getSettings().getGlobalField(), translator.getSourceGenerators(),
+                translator.getQueryGenerators().create(), translator.getFacetsGenerators(),
+                translator.getSortGenerators());
+        QuerySettings settings = translator.getSettings();
+        this.from = from;
+        this.size = size;
+        this.optimizer = translator.getOptimizer();
+        this.metrics = translator.getMetrics();
+        this.dialect = settings.getDialect();
+        this.boostField = settings.getBoostField();
+        this.modifier = settings.getModifier();
+        this.factor = settings.getFactor();
+        this.boostMode = settings.getBoostMode();
+        queryGen.setPhraseBoostHint(settings.isPhraseBoostHint());
+        queryGen.setDialect(dialect);
+        queryGen.setClausePlacement(translator.getEffectiveClausePlacement());
+    }
+
+    private ElasticsearchQueryGenerator(String globalField,
+                                        GeneratorFactory<SourceGenerator> sourceGens,
+                                        QueryGenerator queryGen,
+                                        GeneratorFactory<FacetsGenerator> facetGens,
+                                        GeneratorFactory<SortGenerator> sortGens) {
         this.globalField = globalField;
         this.from = 0;
         this.size = 10;
         this.model = new ElasticsearchQueryModel();
-        this.elasticsearchFilterGenerator = new ElasticsearchFilterGenerator(globalField, model);
         this.stack = new Stack<>();
-        this.sourceGen = sourceGen != null ? sourceGen : new SourceGenerator();
-        this.queryGen = queryGen != null ? queryGen : new QueryGenerator();
-        this.facetGen = facetGen != null ? facetGen : new FacetsGenerator();
-        this.sortGen = sortGen != null ? sortGen : new SortGenerator();
-        this.queryGen.setPhraseBoostHint(phraseBoostHint);
+        this.traversal = new Traversal<>();
+        this.sourceGens = sourceGens;
+        this.queryGen = queryGen;
+        this.facetGens = facetGens;
+        this.sortGens = sortGens;
     }
 
     public ElasticsearchQueryGenerator setFrom(int from) {
@@ -107,6 +190,90 @@ public class ElasticsearchQueryGenerator implements Visitor {
         return this;
     }
 
+    /**
+     * Set an optimizer that rewrites the query tree before the query is generated.
+     *
+     * @param optimizer the optimizer, or null for no optimization
+     * @return this generator
+     */
+    public ElasticsearchQueryGenerator setOptimizer(ExpressionOptimizer optimizer) {
+        this.optimizer = optimizer;
+        return this;
+    }
+
+    /**
+     * The optimization of the query tree.
+     *
+     * @return the optimization, or null if there is no optimizer
+     */
+    public Optimization getOptimization() {
+        return optimization;
+    }
+
+    /**
+     * Set the metrics that record the phases of a translation: building the expression tree, optimizing it,
+     * emitting the query, and emitting the search request source.
+     *
+     * @param metrics the metrics
+     * @return this generator
+     */
+    public ElasticsearchQueryGenerator setMetrics(QueryMetrics metrics) {
+        this.metrics = metrics != null ? metrics : QueryMetrics.NONE;
+        return this;
+    }
+
+    /**
+     * Set the simplification of the query that is translated. If the simplification proved that
+     * the query can not match anything, a query that matches no document is generated.
+     *
+     * @param simplification the simplification, or null
+     * @return this generator
+     */
+    public ElasticsearchQueryGenerator setSimplification(Simplification simplification) {
+        this.simplification = simplification;
+        return this;
+    }
+
+    public Simplification getSimplification() {
+        return simplification;
+    }
+
+    /**
+     * Set the dialect of the generated search request.
+     *
+     * @param dialect the dialect
+     * @return this generator
+     */
+    public ElasticsearchQueryGenerator setDialect(Dialect dialect) {
+        this.dialect = Objects.requireNonNull(dialect, "dialect");
+        queryGen.setDialect(dialect);
+        if (facetGen != null) {
+            facetGen.setDialect(dialect);
+        }
+        if (sortGen != null) {
+            sortGen.setDialect(dialect);
+        }
+        if (elasticsearchFilterGenerator != null) {
+            elasticsearchFilterGenerator.setDialect(dialect);
+        }
+        return this;
+    }
+
+    public Dialect getDialect() {
+        return dialect;
+    }
+
+    /**
+     * Set the placement of boolean query clauses.
+     *
+     * @param placement the placement, or null to score all clauses
+     * @return this generator
+     */
+    public ElasticsearchQueryGenerator setClausePlacement(ClausePlacement placement) {
+        queryGen.setClausePlacement(placement);
+        return this;
+    }
+
     public ElasticsearchQueryGenerator setBoostParams(String boostField, String modifier, Float factor, String boostMode) {
         this.boostField = boostField;
         this.modifier = modifier;
@@ -118,23 +285,67 @@ public class ElasticsearchQueryGenerator implements Visitor {
     public ElasticsearchQueryGenerator filter(String filter) {
         CQLParser parser = new CQLParser(filter);
         parser.parse();
-        parser.getCQLQuery().accept(elasticsearchFilterGenerator);
+        parser.getCQLQuery().accept(filterGenerator());
         return this;
     }
 
     public ElasticsearchQueryGenerator andfilter(String filterKey, Collection<String> filterValues) {
-        elasticsearchFilterGenerator.addAndFilter(filterKey, filterValues);
+        filterGenerator().addAndFilter(filterKey, filterValues);
         return this;
     }
 
     public ElasticsearchQueryGenerator orfilter(String filterKey, Collection<String> filterValues) {
-        elasticsearchFilterGenerator.addOrFilter(filterKey, filterValues);
+        filterGenerator().addOrFilter(filterKey, filterValues);
+        return this;
+    }
+
+    /**
+     * Filter by one of many values, for example the library sigels of a holdings filter.
+     * The values are written as a single terms filter, split at the maximum terms count.
+     *
+     * @param filterKey    the field
+     * @param filterValues the values
+     * @return this generator
+     */
+    public ElasticsearchQueryGenerator termsfilter(String filterKey, Collection<?> filterValues) {
+        filterGenerator().addTermsFilter(filterKey, filterValues);
+        return this;
+    }
+
+    public ElasticsearchQueryGenerator termsfilter(String filterKey, long... filterValues) {
+        filterGenerator().addTermsFilter(filterKey, filterValues);
+        return this;
+    }
+
+    /**
+     * Filter by the values of a lookup document, which are not sent with the request.
+     *
+     * @param filterKey the field
+     * @param lookup    the terms lookup
+     * @return this generator
+     */
+    public ElasticsearchQueryGenerator termsfilter(String filterKey, TermsLookup lookup) {
+        filterGenerator().addTermsFilter(filterKey, lookup);
+        return this;
+    }
+
+    /**
+     * Set the maximum number of values in a terms filter.
+     *
+     * @param maxTermsCount the <code>index.max_terms_count</code> setting of the cluster
+     * @return this generator
+     */
+    public ElasticsearchQueryGenerator setMaxTermsCount(int maxTermsCount) {
+        if (elasticsearchFilterGenerator != null) {
+            elasticsearchFilterGenerator.setMaxTermsCount(maxTermsCount);
+        }
+        this.maxTermsCount = maxTermsCount;
         return this;
     }
 
     public ElasticsearchQueryGenerator facet(String facetLimit, String facetSort) {
         try {
-            facetGen.facet(facetLimit, facetSort);
+            facetGenerator().facet(facetLimit, facetSort);
         } catch (IOException e) {
             // ignore
         }
@@ -155,33 +366,141 @@ public class ElasticsearchQueryGenerator implements Visitor {
     }
 
     public String getFacetResult() {
-        return facetGen.getResult().build();
+        return facetGen != null ? facetGen.getResult().build() : "";
     }
 
     public String getSortRequest() {
-        return sortGen.getResult().build();
+        return sortGen != null ? sortGen.getResult().build() : "";
     }
 
+    /**
+     * Get the search request source. The source is built on the first call.
+     *
+     * @return the search request source
+     */
     public String getSourceResult() {
-        return sourceGen.getResult().build();
+        if (translated && !sourceBuilt) {
+            long start = metrics.start();
+            SourceEvent event = new SourceEvent();
+            event.begin();
+            try {
+                sourceGenerator().build(queryGen, from, size, result(sortGen), result(facetGen));
+            } catch (IOException e) {
+                SyntaxException se = new SyntaxException("unable to build source, reason: " + e.getMessage(), e);
+                metrics.failed(Phase.EMIT_SOURCE, se);
+                event.finish(query, 0L, se);
+                throw se;
+            }
+            sourceBuilt = true;
+            String source = sourceGen.getResult().build();
+            metrics.stop(Phase.EMIT_SOURCE, start);
+            event.finish(query, source, null);
+            return source;
+        }
+        return sourceGen != null ? sourceGen.getResult().build() : "";
+    }
+
+    /**
+     * Write the search request source as UTF-8 to an output stream, without building it as a string.
+     *
+     * @param out the output stream
+     * @throws IOException if writing fails
+     */
+    public void writeSource(OutputStream out) throws IOException {
+        writeSource(new Utf8JsonWriter(out));
+    }
+
+    /**
+     * Write the search request source to a UTF-8 writer and flush the writer.
+     *
+     * @param writer the writer
+     * @throws IOException if writing fails
+     */
+    public void writeSource(Utf8JsonWriter writer) throws IOException {
+        write(writer);
+        writer.flush();
+    }
+
+    void write(Utf8JsonWriter writer) throws IOException {
+        long start = metrics.start();
+        SourceEvent event = new SourceEvent();
+        event.begin();
+        long count = writer.getByteCount();
+        try {
+            sourceGenerator().write(queryGen, from, size, sortGen, facetGen, writer);
+        } catch (IOException | RuntimeException e) {
+            metrics.failed(Phase.EMIT_SOURCE, e);
+            event.finish(query, writer.getByteCount() - count, e);
+            throw e;
+        }
+        metrics.stop(Phase.EMIT_SOURCE, start);
+        event.finish(query, writer.getByteCount() - count, null);
+    }
+
+    private ElasticsearchFilterGenerator filterGenerator() {
+        if (elasticsearchFilterGenerator == null) {
+            elasticsearchFilterGenerator = new ElasticsearchFilterGenerator(globalField, model);
+            elasticsearchFilterGenerator.setDialect(dialect);
+            elasticsearchFilterGenerator.setMaxTermsCount(maxTermsCount);
+        }
+        return elasticsearchFilterGenerator;
+    }
+
+    private SourceGenerator sourceGenerator() throws IOException {
+        if (sourceGen == null) {
+            sourceGen = sourceGens.create();
+        }
+        return sourceGen;
+    }
+
+    private FacetsGenerator facetGenerator() throws IOException {
+        if (facetGen == null) {
+            facetGen = facetGens.create();
+            facetGen.setDialect(dialect);
+        }
+        return facetGen;
+    }
+
+    private SortGenerator sortGenerator() throws IOException {
+        if (sortGen == null) {
+            sortGen = sortGens.create();
+            sortGen.setDialect(dialect);
+        }
+        return sortGen;
+    }
+
+    private static JsonBuilder result(SortGenerator sortGen) {
+        return sortGen != null ? sortGen.getResult() : null;
+    }
+
+    private static JsonBuilder result(FacetsGenerator facetGen) {
+        return facetGen != null ? facetGen.getResult() : null;
     }
 
     @Override
     public void visit(SortedQuery node) {
+        if (walk(node)) {
+            return;
+        }
         try {
             if (node.getSortSpec() != null) {
                 node.getSortSpec().accept(this);
             }
             queryGen.start();
-            node.getQuery().accept(this);
-            if (boostField != null) {
-                queryGen.startBoost(boostField, modifier, factor, boostMode);
-            }
-            if (model.hasFilter()) {
-                queryGen.startFiltered();
-            } else if (elasticsearchFilterGenerator.getResult().build().length() > 0) {
-                queryGen.startFiltered();
-            }
+        } catch (IOException e) {
+            throw new SyntaxException("unable to build a valid query from " + node + " , reason: " + e.getMessage(), e);
+        }
+        traversal.child(node.getQuery());
+        traversal.step(() -> build(node));
+    }
+
+    /**
+     * Build the search request source after the query of a sorted query was visited.
+     *
+     * @param node the sorted query
+     */
+    private void build(SortedQuery node) {
+        try {
             Node querynode = stack.pop();
             if (querynode instanceof Token) {
                 Token token = (Token) querynode;
@@ -189,15 +508,34 @@ public class ElasticsearchQueryGenerator implements Visitor {
                         new Expression(Operator.MATCH_ALL) :
                         new Expression(Operator.ALL, new Name(globalField), querynode);
             }
-            queryGen.visit((Expression) querynode);
+            if (simplification != null && simplification.isUnsatisfiable()) {
+                querynode = new Expression(Operator.MATCH_NONE);
+            } else if (optimizer != null) {
+                next(Phase.OPTIMIZE);
+                optimization = optimizer.optimize(querynode);
+                querynode = optimization.getNode();
+            }
+            next(Phase.EMIT_QUERY);
+            if (boostField != null) {
+                queryGen.startBoost(boostField, modifier, factor, boostMode);
+            }
+            // test the filter generator result only once
+            boolean hasFilterClauses = !model.hasFilter() && elasticsearchFilterGenerator != null
+                    && elasticsearchFilterGenerator.getResult().build().length() > 0;
+            if (model.hasFilter() || hasFilterClauses) {
+                queryGen.startFiltered();
+            }
+            queryGen.buildQuery(querynode);
             if (model.hasFilter() && model.getFilterExpression() != null) {
                 queryGen.end();
                 filterGen = new FilterGenerator(queryGen);
+                filterGen.setDialect(dialect);
+                filterGen.setMaxTermsCount(maxTermsCount);
                 filterGen.startFilter();
                 filterGen.visit(model.getFilterExpression());
                 filterGen.endFilter();
                 queryGen.end();
-            } else if (elasticsearchFilterGenerator.getResult().build().length() > 0) {
+            } else if (hasFilterClauses) {
                 queryGen.end();
                 JsonBuilder contentBuilder = elasticsearchFilterGenerator.getResult();
                 queryGen.getResult(). copy(contentBuilder);
@@ -207,16 +545,16 @@ public class ElasticsearchQueryGenerator implements Visitor {
                 queryGen.endBoost();
             }
             if (model.hasFacets()) {
-                facetGen.visit(model.getFacetExpression());
+                facetGenerator().visit(model.getFacetExpression());
             }
             queryGen.end();
             if (model.getSort() != null) {
-                //sortGen = new SortGenerator();
+                SortGenerator sortGen = sortGenerator();
                 sortGen.start();
                 sortGen.visit(model.getSort());
                 sortGen.end();
             }
-            sourceGen.build(queryGen, from, size, sortGen.getResult(), facetGen.getResult());
+            translated = true;
         } catch (IOException e) {
             throw new SyntaxException("unable to build a valid query from " + node + " , reason: " + e.getMessage(), e);
         }
@@ -247,11 +585,14 @@ public class ElasticsearchQueryGenerator implements Visitor {
 
     @Override
     public void visit(Query node) {
+        if (walk(node)) {
+            return;
+        }
         for (PrefixAssignment assignment : node.getPrefixAssignments()) {
             assignment.accept(this);
         }
         if (node.getScopedClause() != null) {
-            node.getScopedClause().accept(this);
+            traversal.child(node.getScopedClause());
         }
     }
 
@@ -263,50 +604,90 @@ public class ElasticsearchQueryGenerator implements Visitor {
 
     @Override
     public void visit(ScopedClause node) {
-        if (node.getScopedClause() != null) {
-            node.getScopedClause().accept(this);
+        if (walk(node)) {
+            return;
         }
-        node.getSearchClause().accept(this);
-        if (node.getBooleanGroup() != null) {
-            node.getBooleanGroup().accept(this);
+        List<SearchClause> clauses = node.getSearchClauses();
+        List<BooleanGroup> groups = node.getBooleanGroups();
+        traversal.child(clauses.get(0));
+        traversal.step(() -> addFilter(null, clauses.get(0)));
+        // the operands of a run of equal conjunctions or disjunctions, collected into one expression
+        Run run = new Run();
+        for (int i = 1; i < clauses.size(); i++) {
+            BooleanGroup group = groups.get(i - 1);
+            SearchClause clause = clauses.get(i);
+            Operator op = booleanToES(group.getOperator());
+            boolean flat = group.getModifierList() == null && (op == Operator.AND || op == Operator.OR);
+            traversal.step(() -> {
+                if (run.operands != null && (!flat || op != run.op)) {
+                    run.end();
+                }
+            });
+            traversal.child(clause);
+            traversal.step(() -> {
+                group.accept(this);
+                addFilter(group, clause);
+                evaluate(run, op, flat);
+            });
         }
-        // format disjunctive or conjunctive filters
-        if (node.getSearchClause().getIndex() != null
-                && model.isFilterContext(node.getSearchClause().getIndex().getContext())) {
-            // assume that each operator-less filter is a conjunctive filter
-            BooleanOperator op = node.getBooleanGroup() != null
-                    ? node.getBooleanGroup().getOperator() : BooleanOperator.AND;
-            String filtername = node.getSearchClause().getIndex().getName();
-            Operator filterop = comparitorToES(node.getSearchClause().getRelation().getComparitor());
-            Node filterterm = termToESwithoutWildCard(node.getSearchClause().getTerm());
-            if (op == BooleanOperator.AND) {
-                model.addConjunctiveFilter(filtername, filterterm, filterop);
-            } else if (op == BooleanOperator.OR) {
-                model.addDisjunctiveFilter(filtername, filterterm, filterop);
+        traversal.step(() -> {
+            if (run.operands != null) {
+                run.end();
             }
-        }
-        // evaluate expression
+        });
+    }
+
+    /**
+     * Evaluate the boolean group on top of the stack, after a search clause of a scoped clause was visited.
+     */
+    private void evaluate(Run run, Operator op, boolean flat) {
         if (!stack.isEmpty() && stack.peek() instanceof Operator) {
-            Operator op = (Operator) stack.pop();
+            stack.pop();
             if (!stack.isEmpty()) {
-                Node esnode = stack.pop();
-                // add default context if node is a literal without a context
-                if (esnode instanceof Token && TokenType.STRING.equals(esnode.getType())) {
-                    esnode = new Expression(Operator.ALL, new Name(globalField), esnode);
-                }
-                if (stack.isEmpty()) {
+                Node esnode = withGlobalField(stack.pop());
+                if (run.operands != null) {
+                    run.operands.add(esnode);
+                } else if (stack.isEmpty()) {
                     // unary expression
                     throw new IllegalArgumentException("unary expression not allowed, op=" + op + " node=" + esnode);
+                } else if (flat) {
+                    run.operands = new ArrayList<>();
+                    run.op = op;
+                    run.operands.add(withGlobalField(stack.pop()));
+                    run.operands.add(esnode);
                 } else {
                     // binary expression
-                    Node esnode2 = stack.pop();
-                    // add default context if node is a literal without context
-                    if (esnode2 instanceof Token && TokenType.STRING.equals(esnode2.getType())) {
-                        esnode2 = new Expression(Operator.ALL, new Name(globalField), esnode2);
-                    }
-                    esnode = new Expression(op, esnode2, esnode);
+                    stack.push(new Expression(op, withGlobalField(stack.pop()), esnode));
                 }
-                stack.push(esnode);
+            }
+        }
+    }
+
+    /**
+     * Add default context if node is a literal without a context.
+     */
+    private Node withGlobalField(Node esnode) {
+        return esnode instanceof Token && TokenType.STRING.equals(esnode.getType())
+                ? new Expression(Operator.ALL, new Name(globalField), esnode) : esnode;
+    }
+
+    /**
+     * Format disjunctive or conjunctive filters.
+     *
+     * @param group  the boolean group before the search clause, or null for the first search clause
+     * @param clause the search clause
+     */
+    private void addFilter(BooleanGroup group, SearchClause clause) {
+        if (clause.getIndex() != null && model.isFilterContext(clause.getIndex().getContext())) {
+            // assume that each operator-less filter is a conjunctive filter
+            BooleanOperator op = group != null ? group.getOperator() : BooleanOperator.AND;
+            String filtername = clause.getIndex().getName();
+            Operator filterop = comparitorToES(clause.getRelation().getComparitor());
+            Node filterterm = termToESwithoutWildCard(clause.getTerm());
+            if (op == BooleanOperator.AND) {
+                model.addConjunctiveFilter(filtername, filterterm, filterop);
+            } else if (op == BooleanOperator.OR) {
+                model.addDisjunctiveFilter(filtername, filterterm, filterop);
             }
         }
     }
@@ -314,8 +695,13 @@ public class ElasticsearchQueryGenerator implements Visitor {
     @Override
     public void visit(SearchClause node) {
         if (node.getQuery() != null) {
-            // CQL query in parenthesis
-            node.getQuery().accept(this);
+            if (walk(node)) {
+                return;
+            }
+            // CQL query in parenthesis, it has no term, index or relation
+            traversal.child(node.getQuery());
+            traversal.step(this::evaluate);
+            return;
         }
         if (node.getTerm() != null) {
             node.getTerm().accept(this);
@@ -334,29 +720,39 @@ public class ElasticsearchQueryGenerator implements Visitor {
                 // stack layout: op, list of modifiers, modifiable index
                 Node op = stack.pop();
                 StringBuilder sb = new StringBuilder();
+                List<Modifier> modifiers = new ArrayList<>();
                 Node modifier = stack.pop();
                 while (modifier instanceof Modifier) {
                     if (sb.length() > 0) {
                         sb.append('.');
                     }
                     sb.append(modifier);
+                    modifiers.add(0, (Modifier) modifier);
                     modifier = stack.pop();
                 }
                 String modifiable = sb.toString();
-                stack.push(new Name(modifiable));
+                Name name = new Name(modifiable);
+                name.setModifiers(modifiers);
+                stack.push(name);
                 stack.push(op);
             }
         }
-        // evaluate expression
+        evaluate();
+    }
+
+    /**
+     * Evaluate the relation on top of the stack, after a search clause was visited.
+     */
+    private void evaluate() {
         if (!stack.isEmpty() && stack.peek() instanceof Operator) {
             Operator op = (Operator) stack.pop();
             Node arg1 = stack.pop();
             Node arg2 = stack.pop();
-            // fold two expressions if they have the same operator
+            // an expression with the same operator takes the new argument, in one n-ary expression
             boolean fold = arg1.isVisible() && arg2.isVisible()
                     && arg2 instanceof Expression
                     && ((Expression) arg2).getOperator().equals(op);
-            Expression expression = fold ? new Expression((Expression) arg2, arg1) : new Expression(op, arg1, arg2);
+            Expression expression = fold ? ((Expression) arg2).prepend(arg1) : new Expression(op, arg1, arg2);
             stack.push(expression);
         }
     }
@@ -428,7 +824,7 @@ public class ElasticsearchQueryGenerator implements Visitor {
         } else if (node.isIdentifier()) {
             return new Token(node.getValue());
         } else if (node.isDate()) {
-            return new Token(ZonedDateTime.from(DateTimeFormatter.ISO_INSTANT.parse(node.getValue())));
+            return new Token(node.getDate());
         } else if (node.isString()) {
             return new Token(node.getValue());
         }
@@ -500,4 +896,56 @@ public class ElasticsearchQueryGenerator implements Visitor {
         }
         return esop;
     }
+
+    /**
+     * Start a walk if the node is not visited by the running walk.
+     *
+     * @param node the node
+     * @return true if the node was visited by a new walk
+     */
+    private boolean walk(org.xbib.cql.Node node) {
+        if (traversal.isRunning()) {
+            return false;
+        }
+        query = node;
+        phase = Phase.TRANSLATE;
+        phaseStart = metrics.start();
+        GenerateEvent event = new GenerateEvent();
+        event.begin();
+        try {
+            traversal.run(node, (n, t) -> n.accept(this));
+        } catch (RuntimeException e) {
+            metrics.failed(phase, e);
+            event.finish(this, node, 0L, e);
+            throw e;
+        }
+        metrics.stop(phase, phaseStart);
+        event.finish(this, node, queryGen.getOutputSize(), null);
+        return true;
+    }
+
+    /**
+     * Stop the current phase of a walk and start the next phase.
+     *
+     * @param next the next phase
+     */
+    private void next(Phase next) {
+        phaseStart = metrics.stop(phase, phaseStart);
+        phase = next;
+    }
+
+    /**
+     * The operands of a run of equal conjunctions or disjunctions in a scoped clause.
+     */
+    private final class Run {
+
+        private List<Node> operands;
+
+        private Operator op;
+
+        void end() {
+            stack.push(new Expression(op, operands.toArray(new Node[0])));
+            operands = null;
+        }
+    }
 }
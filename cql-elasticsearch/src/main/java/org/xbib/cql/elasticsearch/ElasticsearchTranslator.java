@@ -0,0 +1,318 @@
+package org.xbib.cql.elasticsearch;
+
+import org.xbib.cql.CQLNormalizer;
+import org.xbib.cql.CQLParser;
+import org.xbib.cql.CQLSimplifier;
+import org.xbib.cql.QueryTemplate;
+import org.xbib.cql.Simplification;
+import org.xbib.cql.SortedQuery;
+import org.xbib.cql.SyntaxException;
+import org.xbib.cql.elasticsearch.optimizer.ExpressionOptimizer;
+import org.xbib.cql.metrics.Phase;
+import org.xbib.cql.metrics.QueryMetrics;
+
+import java.io.IOException;
+import java.util.Objects;
+
+/**
+ * Translate CQL abstract syntax trees to Elasticsearch search requests.
+ *
+ * A translator is immutable and configured once, so one instance can be shared by all request threads.
+ * The settings, the generator factories and the resolved clause placement are kept by the translator.
+ * The per-call state, that is the stack, the query model and the JSON builders, lives in an
+ * {@link ElasticsearchQueryGenerator} that is created for each call and discarded afterwards. A call
+ * creates only the builders its query writes to.
+ */
+public class ElasticsearchTranslator {
+
+    private final QuerySettings settings;
+
+    private final GeneratorFactory<SourceGenerator> sourceGenerators;
+
+    private final GeneratorFactory<QueryGenerator> queryGenerators;
+
+    private final GeneratorFactory<FacetsGenerator> facetsGenerators;
+
+    private final GeneratorFactory<SortGenerator> sortGenerators;
+
+    private final ExpressionOptimizer optimizer;
+
+    private final boolean normalize;
+
+    private final boolean simplify;
+
+    private final ClausePlacement placement;
+
+    private final ClausePlacement effectivePlacement;
+
+    private final QueryMetrics metrics;
+
+    public ElasticsearchTranslator(String globalField) {
+        this(new QuerySettings(globalField));
+    }
+
+    public ElasticsearchTranslator(QuerySettings settings) {
+        this(settings, SourceGenerator::new, QueryGenerator::new, FacetsGenerator::new, SortGenerator::new);
+    }
+
+    public ElasticsearchTranslator(QuerySettings settings,
+                                   GeneratorFactory<SourceGenerator> sourceGenerators,
+                                   GeneratorFactory<QueryGenerator> queryGenerators,
+                                   GeneratorFactory<FacetsGenerator> facetsGenerators,
+                                   GeneratorFactory<SortGenerator> sortGenerators) {
+        this(settings, sourceGenerators, queryGenerators, facetsGenerators, sortGenerators, null, false, false, null,
+                QueryMetrics.NONE);
+    }
+
+    private ElasticsearchTranslator(QuerySettings settings,
+                                    GeneratorFactory<SourceGenerator> sourceGenerators,
+                                    GeneratorFactory<QueryGenerator> queryGenerators,
+                                    GeneratorFactory<FacetsGenerator> facetsGenerators,
+                                    GeneratorFactory<SortGenerator> sortGenerators,
+                                    ExpressionOptimizer optimizer,
+                                    boolean normalize,
+                                    boolean simplify,
+                                    ClausePlacement placement,
+                                    QueryMetrics metrics) {
+        this.settings = Objects.requireNonNull(settings, "settings");
+        this.sourceGenerators = Objects.requireNonNull(sourceGenerators, "sourceGenerators");
+        this.queryGenerators = Objects.requireNonNull(queryGenerators, "queryGenerators");
+        this.facetsGenerators = Objects.requireNonNull(facetsGenerators, "facetsGenerators");
+        this.sortGenerators = Objects.requireNonNull(sortGenerators, "sortGenerators");
+        this.optimizer = optimizer;
+        this.normalize = normalize;
+        this.simplify = simplify;
+        this.placement = placement;
+        this.effectivePlacement = placement != null ? placement : settings.getDialect().getClausePlacement();
+        this.metrics = metrics != null ? metrics : QueryMetrics.NONE;
+    }
+
+    /**
+     * Return a translator that is configured like this one, but rewrites the query tree with
+     * an optimizer before the query is generated.
+     *
+     * @param optimizer the optimizer, or null for no optimization
+     * @return the new translator
+     */
+    public ElasticsearchTranslator withOptimizer(ExpressionOptimizer optimizer) {
+        return new ElasticsearchTranslator(settings, sourceGenerators, queryGenerators, facetsGenerators,
+                sortGenerators, optimizer, normalize, simplify, placement, metrics);
+    }
+
+    /**
+     * Return a translator that is configured like this one, but brings queries into the canonical
+     * form of {@link CQLNormalizer} before they are translated. Queries that differ only in the
+     * order of the operands of conjunctions and disjunctions are then translated to byte-identical
+     * requests, which can share the entries of the Elasticsearch request cache.
+     *
+     * @param normalize true if queries should be normalized
+     * @return the new translator
+     */
+    public ElasticsearchTranslator withNormalization(boolean normalize) {
+        return new ElasticsearchTranslator(settings, sourceGenerators, queryGenerators, facetsGenerators,
+                sortGenerators, optimizer, normalize, simplify, placement, metrics);
+    }
+
+    /**
+     * Return a translator that is configured like this one, but simplifies queries with
+     * {@link CQLSimplifier} before they are translated. Queries that can not match anything are
+     * translated to a query that matches no document, and their results report
+     * {@link TranslationResult#isNoResults()}, so callers can skip the search request. Simplified
+     * queries are normalized, too.
+     *
+     * @param simplify true if queries should be simplified
+     * @return the new translator
+     */
+    public ElasticsearchTranslator withSimplification(boolean simplify) {
+        return new ElasticsearchTranslator(settings, sourceGenerators, queryGenerators, facetsGenerators,
+                sortGenerators, optimizer, normalize, simplify, placement, metrics);
+    }
+
+    /**
+     * Return a translator that is configured like this one, but places the clauses that do not
+     * affect relevance, like range comparisons and exact keyword matches, into boolean filters.
+     *
+     * @param placement the placement, or null for the placement of the dialect
+     * @return the new translator
+     */
+    public ElasticsearchTranslator withClausePlacement(ClausePlacement placement) {
+        return new ElasticsearchTranslator(settings, sourceGenerators, queryGenerators, facetsGenerators,
+                sortGenerators, optimizer, normalize, simplify, placement, metrics);
+    }
+
+    /**
+     * Return a translator that is configured like this one, but records the phases of the translation,
+     * from lexing to emitting the search request source, in metrics. The metrics are shared by all calls.
+     *
+     * @param metrics the metrics, or null for no metrics
+     * @return the new translator
+     */
+    public ElasticsearchTranslator withMetrics(QueryMetrics metrics) {
+        return new ElasticsearchTranslator(settings, sourceGenerators, queryGenerators, facetsGenerators,
+                sortGenerators, optimizer, normalize, simplify, placement, metrics);
+    }
+
+    public QuerySettings getSettings() {
+        return settings;
+    }
+
+    public ExpressionOptimizer getOptimizer() {
+        return optimizer;
+    }
+
+    public ClausePlacement getClausePlacement() {
+        return placement;
+    }
+
+    public boolean isNormalization() {
+        return normalize;
+    }
+
+    public boolean isSimplification() {
+        return simplify;
+    }
+
+    public QueryMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * The placement of boolean query clauses of the generated queries.
+     *
+     * @return the placement of this translator, or else the placement of the dialect
+     */
+    ClausePlacement getEffectiveClausePlacement() {
+        return effectivePlacement;
+    }
+
+    GeneratorFactory<SourceGenerator> getSourceGenerators() {
+        return sourceGenerators;
+    }
+
+    GeneratorFactory<QueryGenerator> getQueryGenerators() {
+        return queryGenerators;
+    }
+
+    GeneratorFactory<FacetsGenerator> getFacetsGenerators() {
+        return facetsGenerators;
+    }
+
+    GeneratorFactory<SortGenerator> getSortGenerators() {
+        return sortGenerators;
+    }
+
+    /**
+     * Parse and translate a CQL query.
+     *
+     * @param cql  the CQL query
+     * @param from the offset of the first hit
+     * @param size the number of hits
+     * @return the translation result
+     * @throws SyntaxException if the query is not valid, or exceeds the limits of the settings
+     */
+    public TranslationResult translate(String cql, int from, int size) {
+        return new TranslationResult(generate(parse(cql), from, size));
+    }
+
+    /**
+     * Prepare a CQL query with placeholders, like <code>dc.title = ? and dc.date &gt;= ?</code>.
+     * The template is parsed within the limits of the settings.
+     *
+     * @param cql  the CQL query with placeholders
+     * @param from the offset of the first hit
+     * @param size the number of hits
+     * @return the prepared query
+     * @throws SyntaxException if the query is not valid, or exceeds the limits of the settings
+     */
+    public PreparedQuery prepare(String cql, int from, int size) {
+        return new PreparedQuery(this, new QueryTemplate(parse(cql)), from, size);
+    }
+
+    /**
+     * Translate a parsed CQL query. The query is only read, so parsed queries can be translated
+     * by several threads at the same time. The query is checked against the limits of the settings first.
+     *
+     * @param query the parsed CQL query
+     * @param from  the offset of the first hit
+     * @param size  the number of hits
+     * @return the translation result
+     * @throws SyntaxException if the query can not be translated, or exceeds the limits of the settings
+     */
+    public TranslationResult translate(SortedQuery query, int from, int size) {
+        settings.getLimits().check(query);
+        return new TranslationResult(generate(query, from, size));
+    }
+
+    /**
+     * Translate a parsed CQL query and write the search request source as UTF-8, without building it
+     * as a string.
+     *
+     * @param query  the parsed CQL query
+     * @param from   the offset of the first hit
+     * @param size   the number of hits
+     * @param writer the writer, flushed after the source is written
+     * @throws IOException if writing fails
+     * @throws SyntaxException if the query can not be translated, or exceeds the limits of the settings
+     */
+    public void translate(SortedQuery query, int from, int size, Utf8JsonWriter writer) throws IOException {
+        settings.getLimits().check(query);
+        generate(query, from, size).writeSource(writer);
+    }
+
+    /**
+     * Parse a CQL query within the limits of the settings. The parser aborts as soon as a limit
+     * is exceeded, so the parsed query needs no further check.
+     *
+     * @param cql the CQL query
+     * @return the parsed query
+     * @throws SyntaxException if the query is not valid, or exceeds the limits of the settings
+     */
+    SortedQuery parse(String cql) {
+        CQLParser parser = new CQLParser(cql, settings.getLimits(), metrics);
+        parser.parse();
+        return parser.getCQLQuery();
+    }
+
+    /**
+     * Generate a query that is parsed within the limits of the settings, or that is already checked.
+     */
+    ElasticsearchQueryGenerator generate(SortedQuery query, int from, int size) {
+        ElasticsearchQueryGenerator generator = newContext(from, size);
+        SortedQuery translated = query;
+        if (simplify || normalize) {
+            long start = metrics.start();
+            try {
+                if (simplify) {
+                    Simplification simplification = CQLSimplifier.simplify(query);
+                    generator.setSimplification(simplification);
+                    if (!simplification.isUnsatisfiable()) {
+                        translated = simplification.getQuery();
+                    }
+                } else {
+                    translated = CQLNormalizer.normalize(query);
+                }
+            } catch (RuntimeException e) {
+                metrics.failed(Phase.NORMALIZE, e);
+                throw e;
+            }
+            metrics.stop(Phase.NORMALIZE, start);
+        }
+        translated.accept(generator);
+        return generator;
+    }
+
+    /**
+     * Create the per-call context of a translation.
+     *
+     * @param from the offset of the first hit
+     * @param size the number of hits
+     * @return a new generator, configured with the settings of this translator
+     */
+    protected ElasticsearchQueryGenerator newContext(int from, int size) {
+        try {
+            return new ElasticsearchQueryGenerator(this, from, size);
+        } catch (IOException e) {
+            throw new SyntaxException("unable to create generator, reason: " + e.getMessage(), e);
+        }
+    }
+}
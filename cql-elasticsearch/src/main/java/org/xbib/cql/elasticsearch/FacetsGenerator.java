@@ -9,18 +9,33 @@ import org.xbib.cql.elasticsearch.ast.Token;
 import org.xbib.datastructures.json.tiny.JsonBuilder;
 
 import java.io.IOException;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
 
 /**
  * Build facet from abstract syntax tree.
  */
 public class FacetsGenerator implements Visitor {
 
+    private final StringBuilder output;
+
     private final JsonBuilder builder;
 
+    private Dialect dialect = Dialect.LEGACY;
+
     public FacetsGenerator() throws IOException {
-        this.builder = JsonBuilder.builder();
+        this.output = new StringBuilder();
+        this.builder = JsonBuilder.builder(output);
+    }
+
+    /**
+     * Set the dialect of the generated aggregations.
+     *
+     * @param dialect the dialect
+     */
+    public void setDialect(Dialect dialect) {
+        this.dialect = Objects.requireNonNull(dialect, "dialect");
     }
 
     public void start() throws IOException {
@@ -43,6 +58,10 @@ public class FacetsGenerator implements Visitor {
         return builder;
     }
 
+    CharSequence getOutput() {
+        return output;
+    }
+
     @Override
     public void visit(Token node) {
         try {
@@ -112,7 +131,7 @@ public class FacetsGenerator implements Visitor {
                     order = "_count";
                     break;
                 case "alphanumeric":
-                    order = "_term";
+                    order = dialect.getTermOrder();
                     break;
                 case "ascending":
                     dir = "asc";
@@ -143,7 +162,8 @@ public class FacetsGenerator implements Visitor {
     }
 
     private Map<String, Integer> parseFacet(String spec, int defaultFacetLimit) {
-        Map<String, Integer> m = new HashMap<>();
+        // sorted, so the aggregations do not depend on the order of the facet specification
+        Map<String, Integer> m = new TreeMap<>();
         m.put("*", defaultFacetLimit);
         if (spec == null || spec.length() == 0) {
             return m;
@@ -6,27 +6,72 @@ import org.xbib.cql.elasticsearch.ast.Modifier;
 import org.xbib.cql.elasticsearch.ast.Name;
 import org.xbib.cql.elasticsearch.ast.Node;
 import org.xbib.cql.elasticsearch.ast.Operator;
+import org.xbib.cql.elasticsearch.ast.Terms;
 import org.xbib.cql.elasticsearch.ast.Token;
 import org.xbib.cql.util.QuotedStringTokenizer;
+import org.xbib.cql.util.Traversal;
 import org.xbib.datastructures.json.tiny.JsonBuilder;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.Objects;
 
 /**
  * Build query filter in Elasticsearch JSON syntax from abstract syntax tree.
+ *
+ * Boolean expressions are written on an explicit-stack {@link Traversal}, so deeply nested
+ * expressions do not use the thread stack.
  */
 public class FilterGenerator implements Visitor {
 
+    private final CountingAppendable output;
+
     private final JsonBuilder builder;
 
+    private final Traversal<Node> traversal = new Traversal<>();
+
+    /**
+     * The default of the <code>index.max_terms_count</code> setting of Elasticsearch.
+     */
+    public static final int DEFAULT_MAX_TERMS_COUNT = 65536;
+
+    private Dialect dialect = Dialect.LEGACY;
+
+    private int maxTermsCount = DEFAULT_MAX_TERMS_COUNT;
+
     public FilterGenerator() {
-        this.builder = JsonBuilder.builder();
+        this.output = new CountingAppendable();
+        this.builder = JsonBuilder.builder(output);
     }
 
     public FilterGenerator(QueryGenerator queryGenerator) throws IOException {
+        this.output = queryGenerator.getOutput();
         this.builder = queryGenerator.getResult();
     }
 
+    /**
+     * Set the dialect of the generated filter.
+     *
+     * @param dialect the dialect
+     */
+    public void setDialect(Dialect dialect) {
+        this.dialect = Objects.requireNonNull(dialect, "dialect");
+    }
+
+    /**
+     * Set the maximum number of values in a terms filter, the <code>index.max_terms_count</code>
+     * setting of the cluster. Terms filters with more values are split into several terms filters,
+     * of which one should match.
+     *
+     * @param maxTermsCount the maximum number of values
+     */
+    public void setMaxTermsCount(int maxTermsCount) {
+        if (maxTermsCount < 1) {
+            throw new IllegalArgumentException("max terms count must be positive: " + maxTermsCount);
+        }
+        this.maxTermsCount = maxTermsCount;
+    }
+
     public FilterGenerator start() throws IOException {
         builder.beginMap();
         return this;
@@ -51,6 +96,16 @@ public class FilterGenerator implements Visitor {
         return builder;
     }
 
+    /**
+     * The number of UTF-8 bytes of the filter, counted while it is written. A filter that is written
+     * into a query counts the bytes of the query, too.
+     *
+     * @return the number of bytes
+     */
+    public long getOutputSize() {
+        return output.getUtf8Length();
+    }
+
     @Override
     public void visit(Token node) {
         try {
@@ -89,7 +144,7 @@ public class FilterGenerator implements Visitor {
 
     @Override
     public void visit(Expression node) {
-        if (!node.isVisible()) {
+        if (!node.isVisible() || walk(node)) {
             return;
         }
         try {
@@ -118,10 +173,11 @@ public class FilterGenerator implements Visitor {
                         case NOT_EQUALS: {
                             String field = arg1.toString();
                             String value = tok2 != null ? tok2.getString() : "";
-                            builder.beginMap("not")
-                                    .beginMap(tok2 != null && tok2.isBoundary() ? "prefix" : "term")
+                            dialect.startNot(builder);
+                            builder.beginMap(tok2 != null && tok2.isBoundary() ? "prefix" : "term")
                                     .field(field, value)
-                                    .endMap().endMap();
+                                    .endMap();
+                            dialect.endNot(builder);
                             break;
                         }
                         case ALL: {
@@ -129,14 +185,14 @@ public class FilterGenerator implements Visitor {
                             String value = arg2 != null ? arg2.toString() : "";
                             boolean phrase = arg2 instanceof Token && ((Token) arg2).isQuoted();
                             if (phrase) {
-                                builder.beginCollection("and");
+                                dialect.startClauses(builder, Occur.MUST);
                                 QuotedStringTokenizer qst = new QuotedStringTokenizer(value);
                                 while (qst.hasMoreTokens()) {
                                     builder.beginMap().beginMap("term")
                                             .field(field, qst.nextToken())
                                             .endMap().endMap();
                                 }
-                                builder.endCollection();
+                                dialect.endClauses(builder);
                             } else {
                                 builder.beginMap(tok2 != null && tok2.isBoundary() ? "prefix" : "term")
                                         .field(field, value)
@@ -149,13 +205,13 @@ public class FilterGenerator implements Visitor {
                             String field = arg1.toString();
                             String value = arg2 != null ? arg2.toString() : "";
                             if (phrase) {
-                                builder.beginCollection("or");
+                                dialect.startClauses(builder, Occur.SHOULD);
                                 QuotedStringTokenizer qst = new QuotedStringTokenizer(value);
                                 while (qst.hasMoreTokens()) {
                                     builder.beginMap().beginMap("term")
                                             .field(field, qst.nextToken()).endMap().endMap();
                                 }
-                                builder.endCollection();
+                                dialect.endClauses(builder);
                             } else {
                                 builder.beginMap(tok2 != null && tok2.isBoundary() ? "prefix" : "term")
                                         .field(field, value)
@@ -166,90 +222,51 @@ public class FilterGenerator implements Visitor {
                         case RANGE_GREATER_THAN: {
                             String field = arg1.toString();
                             String value = tok2 != null ? tok2.getString() : "";
-                            builder.beginMap("range").beginMap(field)
-                                    .field("from", value)
-                                    .field("include_lower", false)
-                                    .endMap().endMap();
+                            dialect.range(builder, field, value, false, null, false);
                             break;
                         }
                         case RANGE_GREATER_OR_EQUAL: {
                             String field = arg1.toString();
                             String value = arg2 != null ? arg2.toString() : "";
-                            builder.beginMap("range").beginMap(field)
-                                    .field("from", value)
-                                    .field("include_lower", true)
-                                    .endMap().endMap();
+                            dialect.range(builder, field, value, true, null, false);
                             break;
                         }
                         case RANGE_LESS_THAN: {
                             String field = arg1.toString();
                             String value = arg2 != null ? arg2.toString() : "";
-                            builder.beginMap("range").beginMap(field)
-                                    .field("to", value)
-                                    .field("include_upper", false)
-                                    .endMap().endMap();
+                            dialect.range(builder, field, null, false, value, false);
                             break;
                         }
                         case RANGE_LESS_OR_EQUALS: {
                             String field = arg1.toString();
                             String value = arg2 != null ? arg2.toString() : "";
-                            builder.beginMap("range").beginMap(field)
-                                    .field("to", value)
-                                    .field("include_upper", true)
-                                    .endMap().endMap();
+                            dialect.range(builder, field, null, false, value, true);
                             break;
                         }
                         case RANGE_WITHIN: {
                             String field = arg1.toString();
                             String value = tok2 != null ? tok2.getString() : "";
                             String[] s = value.split(" ");
-                            builder.beginMap("range").beginMap(field).
-                                    field("from", s[0])
-                                    .field("to", s[1])
-                                    .field("include_lower", true)
-                                    .field("include_upper", true)
-                                    .endMap().endMap();
+                            dialect.range(builder, field, s[0], true, s[1], true);
                             break;
                         }
                         case AND: {
                             if (arg2 == null) {
                                 if (arg1.isVisible()) {
-                                    arg1.accept(this);
+                                    traversal.child(arg1);
                                 }
                             } else {
-                                builder.beginMap("bool");
-                                builder.beginCollection("must");
-                                Node[] args = node.getArgs();
-                                for (int i = 0; i < node.getArgs().length; i++) {
-                                    if (args[i].isVisible()) {
-                                        builder.beginMap();
-                                        args[i].accept(this);
-                                        builder.endMap();
-                                    }
-                                }
-                                builder.endCollection();
-                                builder.endMap();
+                                writeClauses("must", node.getArgs());
                             }
                             break;
                         }
                         case OR: {
                             if (arg2 == null) {
                                 if (arg1.isVisible()) {
-                                    arg1.accept(this);
+                                    traversal.child(arg1);
                                 }
                             } else {
-                                builder.beginMap("bool");
-                                builder.beginCollection("should");
-                                Node[] args = node.getArgs();
-                                for (int i = 0; i < node.getArgs().length; i++) {
-                                    if (args[i].isVisible()) {
-                                        builder.beginMap();
-                                        args[i].accept(this);
-                                        builder.endMap();
-                                    }
-                                }
-                                builder.endCollection();
-                                builder.endMap();
+                                writeClauses("should", node.getArgs());
                             }
                             break;
                         }
@@ -288,21 +305,10 @@ public class FilterGenerator implements Visitor {
                         case ANDNOT: {
                             if (arg2 == null) {
                                 if (arg1.isVisible()) {
-                                    arg1.accept(this);
+                                    traversal.child(arg1);
                                 }
                             } else {
-                                builder.beginMap("bool");
-                                builder.beginCollection("must_not");
-                                Node[] args = node.getArgs();
-                                for (int i = 0; i < node.getArgs().length; i++) {
-                                    if (args[i].isVisible()) {
-                                        builder.beginMap();
-                                        args[i].accept(this);
-                                        builder.endMap();
-                                    }
-                                }
-                                builder.endCollection();
-                                builder.endMap();
+                                writeClauses("must_not", node.getArgs());
                             }
                             break;
                         }
@@ -319,10 +325,14 @@ public class FilterGenerator implements Visitor {
                             builder.beginMap("term").field(field, value).endMap();
                             break;
                         }
+                        case TERMS_FILTER: {
+                            writeTerms(arg1.toString(), node.getArgs());
+                            break;
+                        }
                         case QUERY_FILTER: {
-                            builder.beginMap("query");
-                            arg1.accept(this);
-                            builder.endMap();
+                            dialect.startQueryFilter(builder);
+                            traversal.child(arg1);
+                            traversal.step(write(() -> dialect.endQueryFilter(builder)));
                             break;
                         }
                         default:
@@ -336,4 +346,98 @@ public class FilterGenerator implements Visitor {
             throw new SyntaxException("internal error while building elasticsearch query filter", e);
         }
     }
+
+    /**
+     * Write a boolean query of the visible arguments. The arguments are scheduled on the running traversal.
+     */
+    private void writeClauses(String occur, Node[] args) throws IOException {
+        builder.beginMap("bool");
+        builder.beginCollection(occur);
+        for (Node arg : args) {
+            if (arg.isVisible()) {
+                traversal.step(write(builder::beginMap));
+                traversal.child(arg);
+                traversal.step(write(builder::endMap));
+            }
+        }
+        traversal.step(write(() -> builder.endCollection().endMap()));
+    }
+
+    /**
+     * Start a walk if the expression is not visited by the running walk.
+     *
+     * @param node the expression
+     * @return true if the expression was written by a new walk
+     */
+    private boolean walk(Expression node) {
+        if (traversal.isRunning()) {
+            return false;
+        }
+        traversal.run(node, (n, t) -> n.accept(this));
+        return true;
+    }
+
+    private Runnable write(BuilderStep step) {
+        return () -> {
+            try {
+                step.run();
+            } catch (IOException e) {
+                throw new SyntaxException("internal error while building elasticsearch query filter", e);
+            }
+        };
+    }
+
+    /**
+     * Write terms filters for the terms that follow the field name. A single terms filter is written
+     * if there is only one lookup, or values up to the maximum count, otherwise one of the terms
+     * filters should match.
+     */
+    private void writeTerms(String field, Node[] args) throws IOException {
+        int filters = 0;
+        for (int i = 1; i < args.length; i++) {
+            Terms terms = (Terms) args[i];
+            int size = terms.getValues().size();
+            filters += terms.isLookup() ? 1 : Math.max(1, (size + maxTermsCount - 1) / maxTermsCount);
+        }
+        if (filters > 1) {
+            dialect.startClauses(builder, Occur.SHOULD);
+        }
+        for (int i = 1; i < args.length; i++) {
+            Terms terms = (Terms) args[i];
+            if (terms.isLookup()) {
+                TermsLookup lookup = terms.getLookup();
+                if (filters > 1) {
+                    builder.beginMap();
+                }
+                builder.beginMap("terms").beginMap(field)
+                        .field("index", lookup.getIndex())
+                        .field("id", lookup.getId())
+                        .field("path", lookup.getPath());
+                if (lookup.getRouting() != null) {
+                    builder.field("routing", lookup.getRouting());
+                }
+                builder.endMap().endMap();
+                if (filters > 1) {
+                    builder.endMap();
+                }
+                continue;
+            }
+            List<Object> values = terms.getValues();
+            int from = 0;
+            do {
+                int to = Math.min(values.size(), from + maxTermsCount);
+                if (filters > 1) {
+                    builder.beginMap();
+                }
+                builder.beginMap("terms").field(field, values.subList(from, to)).endMap();
+                if (filters > 1) {
+                    builder.endMap();
+                }
+                from = to;
+            } while (from < values.size());
+        }
+        if (filters > 1) {
+            dialect.endClauses(builder);
+        }
+    }
 }
@@ -0,0 +1,15 @@
+package org.xbib.cql.elasticsearch;
+
+import java.io.IOException;
+
+/**
+ * Creates a fresh generator for each translation. Factories are shared between threads
+ * by {@link ElasticsearchTranslator}, so they must be thread-safe.
+ *
+ * @param <T> the generator type
+ */
+@FunctionalInterface
+public interface GeneratorFactory<T> {
+
+    T create() throws IOException;
+}
@@ -0,0 +1,103 @@
+package org.xbib.cql.elasticsearch;
+
+import org.xbib.datastructures.json.tiny.JsonBuilder;
+
+import java.io.IOException;
+
+/**
+ * The query language of Elasticsearch 1.x: <code>filtered</code> queries, <code>and</code>,
+ * <code>or</code> and <code>not</code> filters, ranges with <code>from</code> and <code>to</code>,
+ * and <code>ignore_unmapped</code> in sorts. Boolean queries have no filter clauses, so there is
+ * no default clause placement.
+ */
+public class LegacyDialect implements Dialect {
+
+    @Override
+    public String getName() {
+        return "legacy";
+    }
+
+    @Override
+    public ClausePlacement getClausePlacement() {
+        return null;
+    }
+
+    @Override
+    public void startFiltered(JsonBuilder builder) throws IOException {
+        builder.beginMap("filtered").beginMap("query");
+    }
+
+    @Override
+    public void matchNone(JsonBuilder builder) throws IOException {
+        builder.beginMap("bool").beginMap("must_not").beginMap("match_all").endMap().endMap().endMap();
+    }
+
+    @Override
+    public void range(JsonBuilder builder, String field, String from, boolean includeLower,
+                      String to, boolean includeUpper) throws IOException {
+        builder.beginMap("range").beginMap(field);
+        if (from != null) {
+            builder.field("from", from);
+        }
+        if (to != null) {
+            builder.field("to", to);
+        }
+        if (from != null) {
+            builder.field("include_lower", includeLower);
+        }
+        if (to != null) {
+            builder.field("include_upper", includeUpper);
+        }
+        builder.endMap().endMap();
+    }
+
+    @Override
+    public void prefix(JsonBuilder builder, String field, String value, boolean exact) throws IOException {
+        builder.beginMap("prefix").field(field, value).endMap();
+    }
+
+    @Override
+    public void startNot(JsonBuilder builder) throws IOException {
+        builder.beginMap("not");
+    }
+
+    @Override
+    public void endNot(JsonBuilder builder) throws IOException {
+        builder.endMap();
+    }
+
+    @Override
+    public void startClauses(JsonBuilder builder, Occur occur) throws IOException {
+        builder.beginCollection(occur == Occur.SHOULD ? "or" : "and");
+    }
+
+    @Override
+    public void endClauses(JsonBuilder builder) throws IOException {
+        builder.endCollection();
+    }
+
+    @Override
+    public void startQueryFilter(JsonBuilder builder) throws IOException {
+        builder.beginMap("query");
+    }
+
+    @Override
+    public void endQueryFilter(JsonBuilder builder) throws IOException {
+        builder.endMap();
+    }
+
+    @Override
+    public void unmappedSort(JsonBuilder builder, String field) throws IOException {
+        builder.field("ignore_unmapped", "true");
+    }
+
+    @Override
+    public String getTermOrder() {
+        return "_term";
+    }
+
+    @Override
+    public String toString() {
+        return getName();
+    }
+}
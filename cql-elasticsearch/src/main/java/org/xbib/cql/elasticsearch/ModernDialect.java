@@ -0,0 +1,155 @@
+package org.xbib.cql.elasticsearch;
+
+import org.xbib.datastructures.json.tiny.JsonBuilder;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * The query language of Elasticsearch 7.x and 8.x, and of OpenSearch 2.x.
+ *
+ * Filters are boolean queries with <code>filter</code> and <code>must_not</code> clauses, which
+ * are not scored and can be cached. By default, range comparisons and exact keyword matches are
+ * placed into filter clauses. Ranges use <code>gt</code>, <code>gte</code>, <code>lt</code> and
+ * <code>lte</code>, prefixes of analyzed fields use <code>match_bool_prefix</code>, and sorts on
+ * unmapped fields use <code>unmapped_type</code>.
+ *
+ * The unmapped type of a sort field must be the type that the field has on the shards that map it,
+ * otherwise the sort values of the shards can not be merged. It is <code>long</code>, which fits
+ * numeric and date fields, unless another type is configured for the field with
+ * {@link #withUnmappedTypes(Map)}.
+ */
+public class ModernDialect implements Dialect {
+
+    private final String name;
+
+    private final ClausePlacement placement;
+
+    private final Map<String, String> unmappedTypes;
+
+    public ModernDialect(String name) {
+        this(name, new ClausePlacement());
+    }
+
+    /**
+     * Create a dialect.
+     *
+     * @param name      the name
+     * @param placement the default placement of boolean query clauses, or null
+     */
+    public ModernDialect(String name, ClausePlacement placement) {
+        this(name, placement, Collections.emptyMap());
+    }
+
+    private ModernDialect(String name, ClausePlacement placement, Map<String, String> unmappedTypes) {
+        this.name = Objects.requireNonNull(name, "name");
+        this.placement = placement;
+        this.unmappedTypes = unmappedTypes;
+    }
+
+    /**
+     * Return a dialect that is equal to this one, but with the mapping types of sort fields on shards
+     * without a mapping of the field, for example <code>keyword</code> for a keyword field.
+     *
+     * @param unmappedTypes the mapping types, by field name
+     * @return the dialect
+     */
+    public ModernDialect withUnmappedTypes(Map<String, String> unmappedTypes) {
+        return new ModernDialect(name, placement, Collections.unmodifiableMap(new TreeMap<>(unmappedTypes)));
+    }
+
+    /**
+     * The configured mapping types of sort fields on shards without a mapping of the field.
+     *
+     * @return the mapping types, by field name, sorted by field name
+     */
+    public Map<String, String> getUnmappedTypes() {
+        return unmappedTypes;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public ClausePlacement getClausePlacement() {
+        return placement;
+    }
+
+    @Override
+    public void startFiltered(JsonBuilder builder) throws IOException {
+        builder.beginMap("bool").beginMap("must");
+    }
+
+    @Override
+    public void matchNone(JsonBuilder builder) throws IOException {
+        builder.beginMap("match_none").endMap();
+    }
+
+    @Override
+    public void range(JsonBuilder builder, String field, String from, boolean includeLower,
+                      String to, boolean includeUpper) throws IOException {
+        builder.beginMap("range").beginMap(field);
+        if (from != null) {
+            builder.field(includeLower ? "gte" : "gt", from);
+        }
+        if (to != null) {
+            builder.field(includeUpper ? "lte" : "lt", to);
+        }
+        builder.endMap().endMap();
+    }
+
+    @Override
+    public void prefix(JsonBuilder builder, String field, String value, boolean exact) throws IOException {
+        builder.beginMap(exact ? "prefix" : "match_bool_prefix").field(field, value).endMap();
+    }
+
+    @Override
+    public void startNot(JsonBuilder builder) throws IOException {
+        builder.beginMap("bool").beginMap("must_not");
+    }
+
+    @Override
+    public void endNot(JsonBuilder builder) throws IOException {
+        builder.endMap().endMap();
+    }
+
+    @Override
+    public void startClauses(JsonBuilder builder, Occur occur) throws IOException {
+        builder.beginMap("bool").beginCollection(occur == Occur.SHOULD ? "should" : "filter");
+    }
+
+    @Override
+    public void endClauses(JsonBuilder builder) throws IOException {
+        builder.endCollection().endMap();
+    }
+
+    @Override
+    public void startQueryFilter(JsonBuilder builder) {
+        // every query can be a filter
+    }
+
+    @Override
+    public void endQueryFilter(JsonBuilder builder) {
+        // every query can be a filter
+    }
+
+    @Override
+    public void unmappedSort(JsonBuilder builder, String field) throws IOException {
+        builder.field("unmapped_type", unmappedTypes.getOrDefault(field, "long"));
+    }
+
+    @Override
+    public String getTermOrder() {
+        return "_key";
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
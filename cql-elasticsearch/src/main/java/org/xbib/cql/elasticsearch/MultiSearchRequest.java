@@ -0,0 +1,146 @@
+package org.xbib.cql.elasticsearch;
+
+import org.xbib.cql.SortedQuery;
+import org.xbib.cql.SyntaxException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A multi search request body: several translated queries, each with a header line, written as
+ * newline-delimited JSON for the Elasticsearch {@code _msearch} endpoint.
+ *
+ * Queries are translated when they are added. The bodies are kept as generator output and are
+ * serialized only when the request is written, directly into the UTF-8 target, so several
+ * search round trips can be folded into one without building intermediate strings.
+ */
+public class MultiSearchRequest {
+
+    /**
+     * The content type of a multi search request body.
+     */
+    public static final String CONTENT_TYPE = "application/x-ndjson";
+
+    private final ElasticsearchTranslator translator;
+
+    private final List<Item> items;
+
+    public MultiSearchRequest(ElasticsearchTranslator translator) {
+        this.translator = Objects.requireNonNull(translator, "translator");
+        this.items = new ArrayList<>();
+    }
+
+    /**
+     * Parse, translate and add a CQL query.
+     *
+     * @param index      the index name or comma-separated index names, or null for the default index
+     * @param preference the search preference, or null
+     * @param cql        the CQL query
+     * @param from       the offset of the first hit
+     * @param size       the number of hits
+     * @return this request
+     * @throws SyntaxException if the query is not valid, or exceeds the limits of the settings
+     */
+    public MultiSearchRequest add(String index, String preference, String cql, int from, int size) {
+        items.add(new Item(index, preference, translator.generate(translator.parse(cql), from, size), null));
+        return this;
+    }
+
+    /**
+     * Translate and add a parsed CQL query.
+     *
+     * @param index      the index name or comma-separated index names, or null for the default index
+     * @param preference the search preference, or null
+     * @param query      the parsed CQL query
+     * @param from       the offset of the first hit
+     * @param size       the number of hits
+     * @return this request
+     * @throws SyntaxException if the query can not be translated, or exceeds the limits of the settings
+     */
+    public MultiSearchRequest add(String index, String preference, SortedQuery query, int from, int size) {
+        translator.getSettings().getLimits().check(query);
+        items.add(new Item(index, preference, translator.generate(query, from, size), null));
+        return this;
+    }
+
+    /**
+     * Add a compiled query, for example from a {@link CompiledQueryCache}. Its source is copied as is.
+     *
+     * @param index      the index name or comma-separated index names, or null for the default index
+     * @param preference the search preference, or null
+     * @param query      the compiled query
+     * @return this request
+     */
+    public MultiSearchRequest add(String index, String preference, CompiledQuery query) {
+        items.add(new Item(index, preference, null, query.getSource()));
+        return this;
+    }
+
+    /**
+     * The number of searches in this request.
+     *
+     * @return the number of searches
+     */
+    public int size() {
+        return items.size();
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        writeTo(new Utf8JsonWriter(out));
+    }
+
+    public void writeTo(WritableByteChannel channel) throws IOException {
+        writeTo(new Utf8JsonWriter(channel));
+    }
+
+    /**
+     * Write the request body, one header line and one body line for each search, and flush the writer.
+     *
+     * @param writer the writer
+     * @throws IOException if writing fails
+     */
+    public void writeTo(Utf8JsonWriter writer) throws IOException {
+        for (Item item : items) {
+            writer.beginMap();
+            if (item.index != null) {
+                writer.buildKey("index").buildValue(item.index);
+            }
+            if (item.preference != null) {
+                writer.buildKey("preference").buildValue(item.preference);
+            }
+            writer.endMap().newline();
+            if (item.generator != null) {
+                item.generator.write(writer);
+            } else {
+                writer.raw(item.source);
+            }
+            writer.newline();
+        }
+        writer.flush();
+    }
+
+    /**
+     * A search of the request.
+     */
+    private static final class Item {
+
+        private final String index;
+
+        private final String preference;
+
+        private final ElasticsearchQueryGenerator generator;
+
+        private final String source;
+
+        Item(String index, String preference, ElasticsearchQueryGenerator generator, String source) {
+            this.index = index;
+            this.preference = preference;
+            this.generator = generator;
+            this.source = source;
+        }
+    }
+}
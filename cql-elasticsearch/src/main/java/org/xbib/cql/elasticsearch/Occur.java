@@ -0,0 +1,30 @@
+package org.xbib.cql.elasticsearch;
+
+/**
+ * The occurrence of a clause in an Elasticsearch boolean query.
+ */
+public enum Occur {
+    /**
+     * The clause must match and contributes to the score.
+     */
+    MUST("must"),
+    /**
+     * The clause should match and contributes to the score.
+     */
+    SHOULD("should"),
+    /**
+     * The clause must match, but is not scored. Filter clauses can be cached by Elasticsearch.
+     */
+    FILTER("filter");
+
+    private final String key;
+
+    Occur(String key) {
+        this.key = key;
+    }
+
+    @Override
+    public String toString() {
+        return key;
+    }
+}
@@ -0,0 +1,407 @@
+package org.xbib.cql.elasticsearch;
+
+import org.xbib.cql.QueryTemplate;
+import org.xbib.cql.SortedQuery;
+import org.xbib.cql.Term;
+import org.xbib.datastructures.json.tiny.JsonBuilder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A prepared query: a CQL query template with placeholders, see {@link QueryTemplate}, that is
+ * translated once into a skeleton of the search request source. Binding values fills the slots of
+ * the skeleton, instead of parsing and translating the query again.
+ *
+ * A skeleton is built for each combination of parameter types, by translating the template with two
+ * sets of sentinel values. The sentinels are at opposite ends of the range of their type and in
+ * opposite order, so a translation that depends on the values, like a simplified range or a normalized
+ * order of clauses, produces different sources, and the skeleton is rejected. Values that could
+ * change the translation, like strings with spaces or wildcards, and parameter types without a
+ * skeleton are translated in full. The source is the same in both cases.
+ *
+ * Parameters are strings, integral numbers, floating point numbers, {@link LocalDate} and
+ * {@link ZonedDateTime}. A prepared query is thread safe.
+ */
+public final class PreparedQuery {
+
+    private static final Skeleton UNPREPARED = new Skeleton(null, null);
+
+    /**
+     * The words that {@link org.xbib.cql.elasticsearch.ast.Token} converts to booleans.
+     */
+    private static final Set<String> BOOLEAN_WORDS = Set.of("true", "yes", "on", "false", "no", "off");
+
+    private final ElasticsearchTranslator translator;
+
+    private final QueryTemplate template;
+
+    private final int from;
+
+    private final int size;
+
+    private final ConcurrentHashMap<String, Skeleton> skeletons;
+
+    PreparedQuery(ElasticsearchTranslator translator, QueryTemplate template, int from, int size) {
+        this.translator = translator;
+        this.template = template;
+        this.from = from;
+        this.size = size;
+        this.skeletons = new ConcurrentHashMap<>();
+    }
+
+    public QueryTemplate getTemplate() {
+        return template;
+    }
+
+    public int getParameterCount() {
+        return template.getParameterCount();
+    }
+
+    /**
+     * Bind values to the placeholders and get the search request source.
+     *
+     * @param values the values, in the order of the placeholders
+     * @return the search request source
+     * @throws IllegalArgumentException if the number or the types of the values do not match
+     */
+    public String getSource(Object... values) {
+        Kind[] kinds = kinds(values);
+        Skeleton skeleton = skeleton(kinds, values);
+        if (skeleton == UNPREPARED) {
+            return translator.translate(bind(kinds, values), from, size).getSource();
+        }
+        String[] rendered = render(kinds, values);
+        int length = 0;
+        for (String part : skeleton.parts) {
+            length += part.length();
+        }
+        for (String s : rendered) {
+            length += s.length();
+        }
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < skeleton.slots.length; i++) {
+            sb.append(skeleton.parts[i]).append(rendered[skeleton.slots[i]]);
+        }
+        return sb.append(skeleton.parts[skeleton.slots.length]).toString();
+    }
+
+    /**
+     * Bind values to the placeholders and write the search request source as UTF-8.
+     *
+     * @param out    the output stream
+     * @param values the values, in the order of the placeholders
+     * @throws IOException if writing fails
+     * @throws IllegalArgumentException if the number or the types of the values do not match
+     */
+    public void writeSource(OutputStream out, Object... values) throws IOException {
+        Kind[] kinds = kinds(values);
+        Skeleton skeleton = skeleton(kinds, values);
+        if (skeleton == UNPREPARED) {
+            Utf8JsonWriter writer = new Utf8JsonWriter(out);
+            translator.translate(bind(kinds, values), from, size, writer);
+            writer.flush();
+            return;
+        }
+        String[] rendered = render(kinds, values);
+        for (int i = 0; i < skeleton.slots.length; i++) {
+            out.write(skeleton.bytes[i]);
+            out.write(rendered[skeleton.slots[i]].getBytes(StandardCharsets.UTF_8));
+        }
+        out.write(skeleton.bytes[skeleton.slots.length]);
+    }
+
+    /**
+     * Whether values are bound to a skeleton, or translated in full.
+     *
+     * @param values the values
+     * @return true if the values are bound to a skeleton
+     */
+    public boolean isPrepared(Object... values) {
+        return skeleton(kinds(values), values) != UNPREPARED;
+    }
+
+    @Override
+    public String toString() {
+        return template.toString();
+    }
+
+    private Kind[] kinds(Object[] values) {
+        if (values.length != template.getParameterCount()) {
+            throw new IllegalArgumentException("expected " + template.getParameterCount() + " values, got "
+                    + values.length);
+        }
+        Kind[] kinds = new Kind[values.length];
+        for (int i = 0; i < values.length; i++) {
+            kinds[i] = Kind.of(values[i]);
+            if (kinds[i] == null) {
+                throw new IllegalArgumentException("unsupported type of value " + i + ": "
+                        + (values[i] != null ? values[i].getClass().getName() : null));
+            }
+        }
+        return kinds;
+    }
+
+    private Skeleton skeleton(Kind[] kinds, Object[] values) {
+        for (int i = 0; i < values.length; i++) {
+            if (!kinds[i].isSlot(values[i])) {
+                return UNPREPARED;
+            }
+        }
+        StringBuilder signature = new StringBuilder(kinds.length);
+        for (Kind kind : kinds) {
+            signature.append(kind.code);
+        }
+        return skeletons.computeIfAbsent(signature.toString(), s -> {
+            try {
+                return build(kinds);
+            } catch (RuntimeException e) {
+                // for example, the sentinels exceed a limit, the values are checked when they are translated
+                return UNPREPARED;
+            }
+        });
+    }
+
+    /**
+     * Translate the template with two sets of sentinels, and split the source at the sentinels
+     * of the first set.
+     */
+    private Skeleton build(Kind[] kinds) {
+        Object[] high = new Object[kinds.length];
+        Object[] low = new Object[kinds.length];
+        for (int i = 0; i < kinds.length; i++) {
+            high[i] = kinds[i].sentinel(i, true);
+            low[i] = kinds[i].sentinel(i, false);
+        }
+        String source = translator.translate(bind(kinds, high), from, size).getSource();
+        String[] sentinels = render(kinds, high);
+        List<String> parts = new ArrayList<>();
+        List<Integer> slots = new ArrayList<>();
+        int pos = 0;
+        while (true) {
+            int next = -1;
+            int slot = -1;
+            for (int i = 0; i < sentinels.length; i++) {
+                int found = source.indexOf(sentinels[i], pos);
+                if (found >= 0 && (next < 0 || found < next)) {
+                    next = found;
+                    slot = i;
+                }
+            }
+            if (next < 0) {
+                break;
+            }
+            parts.add(source.substring(pos, next));
+            slots.add(slot);
+            pos = next + sentinels[slot].length();
+        }
+        parts.add(source.substring(pos));
+        Skeleton skeleton = new Skeleton(parts.toArray(new String[0]),
+                slots.stream().mapToInt(Integer::intValue).toArray());
+        String[] rendered = render(kinds, low);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < skeleton.slots.length; i++) {
+            sb.append(skeleton.parts[i]).append(rendered[skeleton.slots[i]]);
+        }
+        sb.append(skeleton.parts[skeleton.slots.length]);
+        return sb.toString().equals(translator.translate(bind(kinds, low), from, size).getSource())
+                ? skeleton : UNPREPARED;
+    }
+
+    private SortedQuery bind(Kind[] kinds, Object[] values) {
+        Term[] terms = new Term[values.length];
+        for (int i = 0; i < values.length; i++) {
+            terms[i] = kinds[i].term(values[i]);
+        }
+        return template.bind(terms);
+    }
+
+    private static String[] render(Kind[] kinds, Object[] values) {
+        String[] rendered = new String[values.length];
+        for (int i = 0; i < values.length; i++) {
+            rendered[i] = kinds[i].render(values[i]);
+        }
+        return rendered;
+    }
+
+    /**
+     * The types of parameters.
+     */
+    private enum Kind {
+
+        STRING('s') {
+            @Override
+            Term term(Object value) {
+                return QueryTemplate.term((String) value);
+            }
+
+            /**
+             * A string is bound to a slot if it is one word of letters and digits, like the sentinels,
+             * because whitespace, quotes, wildcards and other symbols change the translation. The words
+             * that the generator converts to booleans change the translation, too.
+             */
+            @Override
+            boolean isSlot(Object value) {
+                String s = (String) value;
+                if (s.isEmpty() || BOOLEAN_WORDS.contains(s)) {
+                    return false;
+                }
+                for (int i = 0; i < s.length(); ) {
+                    int cp = s.codePointAt(i);
+                    if (!Character.isLetterOrDigit(cp)) {
+                        return false;
+                    }
+                    i += Character.charCount(cp);
+                }
+                return true;
+            }
+
+            @Override
+            Object sentinel(int i, boolean high) {
+                return high ? String.format(Locale.ROOT, "zzqa%05dqzz", i)
+                        : String.format(Locale.ROOT, "00qb%05dqzz", 99999 - i);
+            }
+
+            @Override
+            String render(Object value) {
+                // escaped like the generator escapes strings, without the quotation marks
+                try {
+                    String json = JsonBuilder.builder().buildValue(value).build();
+                    return json.substring(1, json.length() - 1);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        },
+
+        LONG('l') {
+            @Override
+            Term term(Object value) {
+                return QueryTemplate.term(((Number) value).longValue());
+            }
+
+            @Override
+            Object sentinel(int i, boolean high) {
+                return high ? Long.MAX_VALUE / 2 + i * 1009L : Long.MIN_VALUE / 2 - i * 1009L;
+            }
+
+            @Override
+            String render(Object value) {
+                return Long.toString(((Number) value).longValue());
+            }
+        },
+
+        DOUBLE('d') {
+            @Override
+            Term term(Object value) {
+                return QueryTemplate.term(((Number) value).doubleValue());
+            }
+
+            @Override
+            boolean isSlot(Object value) {
+                return Double.isFinite(((Number) value).doubleValue());
+            }
+
+            @Override
+            Object sentinel(int i, boolean high) {
+                return high ? 1.0e300 + i * 1.0e285 : -1.0e300 - i * 1.0e285;
+            }
+
+            @Override
+            String render(Object value) {
+                return Double.toString(((Number) value).doubleValue());
+            }
+        },
+
+        DATE('t') {
+            @Override
+            Term term(Object value) {
+                return value instanceof LocalDate ? QueryTemplate.term((LocalDate) value)
+                        : QueryTemplate.term((ZonedDateTime) value);
+            }
+
+            @Override
+            Object sentinel(int i, boolean high) {
+                return high ? LocalDate.of(9999 - i, 6, 15) : LocalDate.of(1000 + i, 3, 21);
+            }
+
+            /**
+             * Rendered like the generator renders a date, as the year in UTC.
+             */
+            @Override
+            String render(Object value) {
+                int year = value instanceof LocalDate ? ((LocalDate) value).getYear()
+                        : ((ZonedDateTime) value).withZoneSameInstant(ZoneOffset.UTC).getYear();
+                return Integer.toString(year);
+            }
+        };
+
+        private final char code;
+
+        Kind(char code) {
+            this.code = code;
+        }
+
+        static Kind of(Object value) {
+            if (value instanceof String) {
+                return STRING;
+            }
+            if (value instanceof Long || value instanceof Integer || value instanceof Short
+                    || value instanceof Byte) {
+                return LONG;
+            }
+            if (value instanceof Double || value instanceof Float) {
+                return DOUBLE;
+            }
+            if (value instanceof LocalDate || value instanceof ZonedDateTime) {
+                return DATE;
+            }
+            return null;
+        }
+
+        abstract Term term(Object value);
+
+        boolean isSlot(Object value) {
+            return true;
+        }
+
+        abstract Object sentinel(int i, boolean high);
+
+        abstract String render(Object value);
+    }
+
+    /**
+     * The source, split at the slots of the values.
+     */
+    private static final class Skeleton {
+
+        private final String[] parts;
+
+        private final byte[][] bytes;
+
+        private final int[] slots;
+
+        Skeleton(String[] parts, int[] slots) {
+            this.parts = parts;
+            this.slots = slots;
+            if (parts != null) {
+                this.bytes = new byte[parts.length][];
+                for (int i = 0; i < parts.length; i++) {
+                    bytes[i] = parts[i].getBytes(StandardCharsets.UTF_8);
+                }
+            } else {
+                this.bytes = null;
+            }
+        }
+    }
+}
@@ -7,28 +7,66 @@ import org.xbib.cql.elasticsearch.ast.Name;
 import org.xbib.cql.elasticsearch.ast.Node;
 import org.xbib.cql.elasticsearch.ast.Operator;
 import org.xbib.cql.elasticsearch.ast.Token;
+import org.xbib.cql.util.Traversal;
 import org.xbib.datastructures.json.tiny.JsonBuilder;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
 /**
  * Build Elasticsearch query from abstract syntax tree.
+ *
+ * Boolean expressions are written on an explicit-stack {@link Traversal}, so deeply nested
+ * expressions do not use the thread stack.
  */
 public class QueryGenerator implements Visitor {
 
+    private final CountingAppendable output;
+
     private final JsonBuilder builder;
 
+    private final Traversal<Node> traversal;
+
     private boolean phraseBoostHint;
 
+    private ClausePlacement placement;
+
+    private Dialect dialect = Dialect.LEGACY;
+
     public QueryGenerator() {
-        this.builder = JsonBuilder.builder();
+        this.output = new CountingAppendable();
+        this.builder = JsonBuilder.builder(output);
+        this.traversal = new Traversal<>();
     }
 
     public void setPhraseBoostHint(boolean phraseBoostHint) {
         this.phraseBoostHint = phraseBoostHint;
     }
 
+    /**
+     * Set the placement of boolean query clauses. Without a placement, all clauses of
+     * conjunctions are placed in <code>must</code>.
+     *
+     * @param placement the placement, or null
+     */
+    public void setClausePlacement(ClausePlacement placement) {
+        this.placement = placement;
+    }
+
+    /**
+     * Set the dialect of the generated query.
+     *
+     * @param dialect the dialect
+     */
+    public void setDialect(Dialect dialect) {
+        this.dialect = Objects.requireNonNull(dialect, "dialect");
+    }
+
     public void start() throws IOException {
         builder.beginMap();
     }
@@ -38,7 +76,7 @@ public class QueryGenerator implements Visitor {
     }
 
     public void startFiltered() throws IOException {
-        builder.beginMap("filtered").beginMap("query");
+        dialect.startFiltered(builder);
     }
 
     public void endFiltered() throws IOException {
@@ -60,10 +98,42 @@ public class QueryGenerator implements Visitor {
         builder.endMap().endMap();
     }
 
+    /**
+     * Build the query of a tree. If the root clause is not scored, it is placed into a filter
+     * with a constant score.
+     *
+     * @param node the root of the tree
+     * @throws IOException if the query can not be built
+     */
+    public void buildQuery(Node node) throws IOException {
+        if (placement != null && node instanceof Expression && node.isVisible()
+                && ((Expression) node).getOperator() != Operator.AND
+                && placement.place(Occur.MUST, node) == Occur.FILTER) {
+            builder.beginMap("constant_score").beginMap("filter");
+            node.accept(this);
+            builder.endMap().endMap();
+        } else {
+            node.accept(this);
+        }
+    }
+
     public JsonBuilder getResult() {
         return builder;
     }
 
+    /**
+     * The number of UTF-8 bytes of the query, counted while it is written.
+     *
+     * @return the number of bytes
+     */
+    public long getOutputSize() {
+        return output.getUtf8Length();
+    }
+
+    CountingAppendable getOutput() {
+        return output;
+    }
+
     @Override
     public void visit(Token token) {
         try {
@@ -120,7 +190,7 @@ public class QueryGenerator implements Visitor {
 
     @Override
     public void visit(Expression node) {
-        if (!node.isVisible()) {
+        if (!node.isVisible() || walk(node)) {
             return;
         }
         try {
@@ -129,6 +199,8 @@ public class QueryGenerator implements Visitor {
                 case 0: {
                     if (op == Operator.MATCH_ALL) {
                         builder.beginMap("match_all").endMap();
+                    } else if (op == Operator.MATCH_NONE) {
+                        dialect.matchNone(builder);
                     }
                     break;
                 }
@@ -154,10 +226,8 @@ public class QueryGenerator implements Visitor {
                             String value = arg2 != null ? arg2.toString() : ""; // with quote
                             if (field.endsWith("Keyword")) {
                                 // exact search
-                                builder.beginMap()
-                                        .beginMap("term")
+                                builder.beginMap("term")
                                         .field(field, value)
-                                        .endMap()
                                         .endMap();
                             } else {
                                 if (phraseBoostHint) {
@@ -307,7 +377,7 @@ public class QueryGenerator implements Visitor {
                                 } else if (tok2.isWildcard()) {
                                     builder.beginMap("wildcard").field(field, value).endMap();
                                 } else if (tok2.isBoundary()) {
-                                    builder.beginMap("prefix").field(field, value).endMap();
+                                    dialect.prefix(builder, field, value, field.endsWith("Keyword"));
                                 } else {
                                     if (field.endsWith("Keyword")) {
                                         // exact search
@@ -328,34 +398,22 @@ public class QueryGenerator implements Visitor {
                         }
                         case RANGE_GREATER_THAN: {
                             String value = arg2 != null ? arg2.toString() : "";
-                            builder.beginMap("range").beginMap(field)
-                                    .field("from", value)
-                                    .field("include_lower", false)
-                                    .endMap().endMap();
+                            dialect.range(builder, field, value, false, null, false);
                             break;
                         }
                         case RANGE_GREATER_OR_EQUAL: {
                             String value = arg2 != null ? arg2.toString() : "";
-                            builder.beginMap("range").beginMap(field)
-                                    .field("from", value)
-                                    .field("include_lower", true)
-                                    .endMap().endMap();
+                            dialect.range(builder, field, value, true, null, false);
                             break;
                         }
                         case RANGE_LESS_THAN: {
                             String value = arg2 != null ? arg2.toString() : "";
-                            builder.beginMap("range").beginMap(field)
-                                    .field("to", value)
-                                    .field("include_upper", false)
-                                    .endMap().endMap();
+                            dialect.range(builder, field, null, false, value, false);
                             break;
                         }
                         case RANGE_LESS_OR_EQUALS: {
                             String value = arg2 != null ? arg2.toString() : "";
-                            builder.beginMap("range").beginMap(field)
-                                    .field("to", value)
-                                    .field("include_upper", true)
-                                    .endMap().endMap();
+                            dialect.range(builder, field, null, false, value, true);
                             break;
                         }
                         case RANGE_WITHIN: {
@@ -375,37 +433,16 @@ public class QueryGenerator implements Visitor {
                                 from = tok2.getStringList().get(0);
                                 to = tok2.getStringList().get(1);
                             }
-                            builder.beginMap("range").beginMap(field)
-                                    .field("from", from)
-                                    .field("to", to)
-                                    .field("include_lower", true)
-                                    .field("include_upper", true)
-                                    .endMap().endMap();
+                            dialect.range(builder, field, from, true, to, true);
                             break;
                         }
                         case AND: {
                             if (arg2 == null) {
                                 if (arg1.isVisible()) {
-                                    arg1.accept(this);
+                                    traversal.child(arg1);
                                 }
                             } else {
-                                builder.beginMap("bool");
-                                if (arg1.isVisible() && arg2.isVisible()) {
-                                    builder.beginCollection("must").beginMap();
-                                    arg1.accept(this);
-                                    builder.endMap().beginMap();
-                                    arg2.accept(this);
-                                    builder.endMap().endCollection();
-                                } else if (arg1.isVisible()) {
-                                    builder.beginMap("must");
-                                    arg1.accept(this);
-                                    builder.endMap();
-                                } else if (arg2.isVisible()) {
-                                    builder.beginMap("must");
-                                    arg2.accept(this);
-                                    builder.endMap();
-                                }
-                                builder.endMap();
+                                buildBool(Occur.MUST, node.getArgs());
                             }
                             break;
                         }
@@ -413,53 +450,54 @@ public class QueryGenerator implements Visitor {
                             // short expression
                             if (arg2 == null) {
                                 if (arg1.isVisible()) {
-                                    arg1.accept(this);
+                                    traversal.child(arg1);
                                 }
                             } else {
-                                builder.beginMap("bool");
-                                if (arg1.isVisible() && arg2.isVisible()) {
-                                    builder.beginCollection("should").beginMap();
-                                    arg1.accept(this);
-                                    builder.endMap().beginMap();
-                                    arg2.accept(this);
-                                    builder.endMap().endCollection();
-                                } else if (arg1.isVisible()) {
-                                    builder.beginMap("should");
-                                    arg1.accept(this);
-                                    builder.endMap();
-                                } else if (arg2.isVisible()) {
-                                    builder.beginMap("should");
-                                    arg2.accept(this);
-                                    builder.endMap();
-                                }
-                                builder.endMap();
+                                buildBool(Occur.SHOULD, node.getArgs());
                             }
                             break;
                         }
                         case ANDNOT: {
                             if (arg2 == null) {
                                 if (arg1.isVisible()) {
-                                    arg1.accept(this);
+                                    traversal.child(arg1);
                                 }
                             } else {
                                 builder.beginMap("bool");
                                 if (arg1.isVisible() && arg2.isVisible()) {
                                     builder.beginCollection("must_not").beginMap();
-                                    arg1.accept(this);
-                                    builder.endMap().beginMap();
-                                    arg2.accept(this);
-                                    builder.endMap().endCollection();
+                                    traversal.child(arg1);
+                                    traversal.step(write(() -> builder.endMap().beginMap()));
+                                    traversal.child(arg2);
+                                    traversal.step(write(() -> builder.endMap().endCollection()));
                                 } else if (arg1.isVisible()) {
                                     builder.beginMap("must_not");
-                                    arg1.accept(this);
-                                    builder.endMap();
+                                    traversal.child(arg1);
+                                    traversal.step(write(builder::endMap));
                                 } else if (arg2.isVisible()) {
                                     builder.beginMap("must_not");
-                                    arg2.accept(this);
-                                    builder.endMap();
+                                    traversal.child(arg2);
+                                    traversal.step(write(builder::endMap));
                                 }
-                                builder.endMap();
+                                traversal.step(write(builder::endMap));
+                            }
+                            break;
+                        }
+                        case TERMS: {
+                            List<String> values = new ArrayList<>();
+                            for (int i = 1; i < node.getArgs().length; i++) {
+                                values.add(node.getArgs()[i].toString());
                             }
+                            builder.beginMap("terms")
+                                    .field(field, values)
+                                    .endMap();
+                            break;
+                        }
+                        case RANGE: {
+                            // field, lower bound operator and value, upper bound operator and value
+                            Node[] args = node.getArgs();
+                            dialect.range(builder, field, args[2].toString(), args[1] == Operator.RANGE_GREATER_OR_EQUAL,
+                                    args[4].toString(), args[3] == Operator.RANGE_LESS_OR_EQUALS);
                             break;
                         }
                         case PROX: {
@@ -480,4 +518,63 @@ public class QueryGenerator implements Visitor {
         }
     }
 
+    /**
+     * Build a boolean query of the visible arguments of a conjunction or disjunction.
+     * If there is a clause placement, the arguments are grouped by their placement.
+     * A single argument of an occurrence is not wrapped into a collection.
+     * The arguments are scheduled on the running traversal.
+     */
+    private void buildBool(Occur occur, Node[] args) throws IOException {
+        Map<Occur, List<Node>> clauses = new EnumMap<>(Occur.class);
+        for (Node arg : args) {
+            if (arg.isVisible()) {
+                Occur placed = placement != null ? placement.place(occur, arg) : occur;
+                clauses.computeIfAbsent(placed, k -> new ArrayList<>()).add(arg);
+            }
+        }
+        builder.beginMap("bool");
+        for (Map.Entry<Occur, List<Node>> entry : clauses.entrySet()) {
+            String key = entry.getKey().toString();
+            List<Node> list = entry.getValue();
+            if (list.size() > 1) {
+                traversal.step(write(() -> builder.beginCollection(key)));
+                for (Node arg : list) {
+                    traversal.step(write(builder::beginMap));
+                    traversal.child(arg);
+                    traversal.step(write(builder::endMap));
+                }
+                traversal.step(write(builder::endCollection));
+            } else {
+                traversal.step(write(() -> builder.beginMap(key)));
+                traversal.child(list.get(0));
+                traversal.step(write(builder::endMap));
+            }
+        }
+        traversal.step(write(builder::endMap));
+    }
+
+    /**
+     * Start a walk if the expression is not visited by the running walk.
+     *
+     * @param node the expression
+     * @return true if the expression was written by a new walk
+     */
+    private boolean walk(Expression node) {
+        if (traversal.isRunning()) {
+            return false;
+        }
+        traversal.run(node, (n, t) -> n.accept(this));
+        return true;
+    }
+
+    private Runnable write(BuilderStep step) {
+        return () -> {
+            try {
+                step.run();
+            } catch (IOException e) {
+                throw new SyntaxException("internal error while building elasticsearch query", e);
+            }
+        };
+    }
+
 }
@@ -0,0 +1,155 @@
+package org.xbib.cql.elasticsearch;
+
+import org.xbib.cql.QueryLimits;
+
+import java.util.Objects;
+
+/**
+ * Immutable settings of an Elasticsearch query generator: the global field for index-less terms,
+ * the boost parameters, the phrase boost hint, the dialect, and the {@link QueryLimits} of the queries.
+ * Settings are value objects, so they can be part of cache keys.
+ */
+public final class QuerySettings {
+
+    private final String globalField;
+
+    private final String boostField;
+
+    private final String modifier;
+
+    private final Float factor;
+
+    private final String boostMode;
+
+    private final boolean phraseBoostHint;
+
+    private final Dialect dialect;
+
+    private final QueryLimits limits;
+
+    private final int hash;
+
+    public QuerySettings(String globalField) {
+        this(globalField, false);
+    }
+
+    public QuerySettings(String globalField, boolean phraseBoostHint) {
+        this(globalField, null, null, null, null, phraseBoostHint);
+    }
+
+    public QuerySettings(String globalField, String boostField, String modifier, Float factor, String boostMode,
+                         boolean phraseBoostHint) {
+        this(globalField, boostField, modifier, factor, boostMode, phraseBoostHint, Dialect.LEGACY);
+    }
+
+    public QuerySettings(String globalField, String boostField, String modifier, Float factor, String boostMode,
+                         boolean phraseBoostHint, Dialect dialect) {
+        this(globalField, boostField, modifier, factor, boostMode, phraseBoostHint, dialect, QueryLimits.UNLIMITED);
+    }
+
+    private QuerySettings(String globalField, String boostField, String modifier, Float factor, String boostMode,
+                          boolean phraseBoostHint, Dialect dialect, QueryLimits limits) {
+        this.globalField = globalField;
+        this.boostField = boostField;
+        this.modifier = modifier;
+        this.factor = factor;
+        this.boostMode = boostMode;
+        this.phraseBoostHint = phraseBoostHint;
+        this.dialect = Objects.requireNonNull(dialect, "dialect");
+        this.limits = Objects.requireNonNull(limits, "limits");
+        this.hash = Objects.hash(globalField, boostField, modifier, factor, boostMode, phraseBoostHint, dialect,
+                limits);
+    }
+
+    public String getGlobalField() {
+        return globalField;
+    }
+
+    public String getBoostField() {
+        return boostField;
+    }
+
+    public String getModifier() {
+        return modifier;
+    }
+
+    public Float getFactor() {
+        return factor;
+    }
+
+    public String getBoostMode() {
+        return boostMode;
+    }
+
+    public boolean isPhraseBoostHint() {
+        return phraseBoostHint;
+    }
+
+    public Dialect getDialect() {
+        return dialect;
+    }
+
+    public QueryLimits getLimits() {
+        return limits;
+    }
+
+    /**
+     * Return settings that are equal to these, but with another dialect.
+     *
+     * @param dialect the dialect
+     * @return the settings
+     */
+    public QuerySettings withDialect(Dialect dialect) {
+        return new QuerySettings(globalField, boostField, modifier, factor, boostMode, phraseBoostHint, dialect,
+                limits);
+    }
+
+    /**
+     * Return settings that are equal to these, but with other limits of the complexity of queries.
+     * Different tenants can share one cache with different limits, because the limits are part of
+     * the settings.
+     *
+     * @param limits the limits
+     * @return the settings
+     */
+    public QuerySettings withLimits(QueryLimits limits) {
+        return new QuerySettings(globalField, boostField, modifier, factor, boostMode, phraseBoostHint, dialect,
+                limits);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof QuerySettings)) {
+            return false;
+        }
+        QuerySettings other = (QuerySettings) o;
+        return phraseBoostHint == other.phraseBoostHint
+                && Objects.equals(globalField, other.globalField)
+                && Objects.equals(boostField, other.boostField)
+                && Objects.equals(modifier, other.modifier)
+                && Objects.equals(factor, other.factor)
+                && Objects.equals(boostMode, other.boostMode)
+                && dialect.equals(other.dialect)
+                && limits.equals(other.limits);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return "[globalField=" + globalField
+                + ",boostField=" + boostField
+                + ",modifier=" + modifier
+                + ",factor=" + factor
+                + ",boostMode=" + boostMode
+                + ",phraseBoostHint=" + phraseBoostHint
+                + ",dialect=" + dialect
+                + ",limits=" + limits + "]";
+    }
+}
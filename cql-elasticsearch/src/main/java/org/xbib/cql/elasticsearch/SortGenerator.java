@@ -10,6 +10,7 @@ import org.xbib.cql.elasticsearch.ast.Token;
 import org.xbib.datastructures.json.tiny.JsonBuilder;
 
 import java.io.IOException;
+import java.util.Objects;
 import java.util.Stack;
 
 /**
@@ -17,15 +18,29 @@ import java.util.Stack;
  */
 public class SortGenerator implements Visitor {
 
+    private final StringBuilder output;
+
     private final JsonBuilder builder;
 
     private final Stack<Modifier> modifiers;
 
+    private Dialect dialect = Dialect.LEGACY;
+
     public SortGenerator() {
-        this.builder = JsonBuilder.builder();
+        this.output = new StringBuilder();
+        this.builder = JsonBuilder.builder(output);
         this.modifiers = new Stack<>();
     }
 
+    /**
+     * Set the dialect of the generated sort.
+     *
+     * @param dialect the dialect
+     */
+    public void setDialect(Dialect dialect) {
+        this.dialect = Objects.requireNonNull(dialect, "dialect");
+    }
+
     public void start() throws IOException {
         builder.beginCollection();
     }
@@ -38,6 +53,10 @@ public class SortGenerator implements Visitor {
         return builder;
     }
 
+    CharSequence getOutput() {
+        return output;
+    }
+
     @Override
     public void visit(Token node) {
     }
@@ -48,9 +67,9 @@ public class SortGenerator implements Visitor {
             if (modifiers.isEmpty()) {
                 builder.beginMap()
                         .buildKey(node.getName())
-                        .beginMap()
-                        .field("ignore_unmapped", "true")
-                        .field("missing", "_last")
+                        .beginMap();
+                dialect.unmappedSort(builder, node.getName());
+                builder.field("missing", "_last")
                         .endMap()
                         .endMap();
             } else {
@@ -75,7 +94,7 @@ public class SortGenerator implements Visitor {
                         }
                     }
                 }
-                builder.field("ignore_unmapped", "true");
+                dialect.unmappedSort(builder, node.getName());
                 builder.field("missing", "_last");
                 builder.endMap();
                 builder.endMap();
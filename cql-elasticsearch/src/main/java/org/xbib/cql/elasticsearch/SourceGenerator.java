@@ -46,6 +46,42 @@ public class SourceGenerator {
         builder.endMap();
     }
 
+    /**
+     * Write the search request source directly to a UTF-8 writer, without building it in
+     * the builder of this generator. The outputs of the query, sort and facets generators are
+     * streamed into the writer, no part is built as a string.
+     *
+     * @param query  the query
+     * @param from   the offset of the first hit, or null
+     * @param size   the number of hits, or null
+     * @param sort   the sort, or null
+     * @param facets the aggregations, or null
+     * @param writer the writer
+     * @throws IOException if writing fails
+     */
+    public void write(QueryGenerator query, Integer from, Integer size,
+                      SortGenerator sort, FacetsGenerator facets, Utf8JsonWriter writer) throws IOException {
+        writer.beginMap();
+        if (query != null) {
+            if (from != null) {
+                writer.field("from", from);
+            }
+            if (size != null) {
+                writer.field("size", size);
+            }
+            if (query.getResult() != null) {
+                writer.buildKey("query").raw(query.getOutput());
+            }
+            if (sort != null && sort.getOutput().length() > 0) {
+                writer.buildKey("sort").raw(sort.getOutput());
+            }
+            if (facets != null && facets.getOutput().length() > 0) {
+                writer.buildKey("aggregations").raw(facets.getOutput());
+            }
+        }
+        writer.endMap();
+    }
+
     public JsonBuilder getResult() {
         return builder;
     }
@@ -0,0 +1,84 @@
+package org.xbib.cql.elasticsearch;
+
+import java.util.Objects;
+
+/**
+ * A terms lookup: the values of a terms filter are fetched by Elasticsearch from a field of a document,
+ * instead of being sent with every request. Large and shared value sets, like the library sigels of
+ * a holdings filter, are stored once in a lookup document.
+ */
+public final class TermsLookup {
+
+    private final String index;
+
+    private final String id;
+
+    private final String path;
+
+    private final String routing;
+
+    /**
+     * Create a terms lookup.
+     *
+     * @param index the index of the lookup document
+     * @param id    the id of the lookup document
+     * @param path  the field of the lookup document that contains the values
+     */
+    public TermsLookup(String index, String id, String path) {
+        this(index, id, path, null);
+    }
+
+    /**
+     * Create a terms lookup.
+     *
+     * @param index   the index of the lookup document
+     * @param id      the id of the lookup document
+     * @param path    the field of the lookup document that contains the values
+     * @param routing the routing of the lookup document, or null
+     */
+    public TermsLookup(String index, String id, String path, String routing) {
+        this.index = Objects.requireNonNull(index, "index");
+        this.id = Objects.requireNonNull(id, "id");
+        this.path = Objects.requireNonNull(path, "path");
+        this.routing = routing;
+    }
+
+    public String getIndex() {
+        return index;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getRouting() {
+        return routing;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof TermsLookup)) {
+            return false;
+        }
+        TermsLookup other = (TermsLookup) o;
+        return index.equals(other.index) && id.equals(other.id) && path.equals(other.path)
+                && Objects.equals(routing, other.routing);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(index, id, path, routing);
+    }
+
+    @Override
+    public String toString() {
+        return index + "/" + id + "/" + path + (routing != null ? "?routing=" + routing : "");
+    }
+}
@@ -0,0 +1,97 @@
+package org.xbib.cql.elasticsearch;
+
+import org.xbib.cql.Simplification;
+import org.xbib.cql.elasticsearch.optimizer.Optimization;
+
+/**
+ * The result of an {@link ElasticsearchTranslator} call.
+ */
+public final class TranslationResult {
+
+    private final String query;
+
+    private final String filter;
+
+    private final String facets;
+
+    private final String sort;
+
+    private final String source;
+
+    private final Optimization optimization;
+
+    private final Simplification simplification;
+
+    TranslationResult(ElasticsearchQueryGenerator generator) {
+        this.query = generator.getQueryResult();
+        this.filter = generator.getFilterResult();
+        this.facets = generator.getFacetResult();
+        this.sort = generator.getSortRequest();
+        this.source = generator.getSourceResult();
+        this.optimization = generator.getOptimization();
+        this.simplification = generator.getSimplification();
+    }
+
+    public String getQuery() {
+        return query;
+    }
+
+    /**
+     * The filter, if the query has filter clauses.
+     *
+     * @return the filter, or null
+     */
+    public String getFilter() {
+        return filter;
+    }
+
+    public String getFacets() {
+        return facets;
+    }
+
+    public String getSort() {
+        return sort;
+    }
+
+    /**
+     * The complete search request source, with query, result window, sort and aggregations.
+     *
+     * @return the search request source
+     */
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * The optimization of the query, with the rewrite rules that fired.
+     *
+     * @return the optimization, or null if the translator has no optimizer
+     */
+    public Optimization getOptimization() {
+        return optimization;
+    }
+
+    /**
+     * The simplification of the query.
+     *
+     * @return the simplification, or null if the translator does not simplify queries
+     */
+    public Simplification getSimplification() {
+        return simplification;
+    }
+
+    /**
+     * Whether the query was proven to match nothing. The source then contains a query that
+     * matches no document, and the search request need not be executed.
+     *
+     * @return true if the query has no results
+     */
+    public boolean isNoResults() {
+        return simplification != null && simplification.isUnsatisfiable();
+    }
+
+    @Override
+    public String toString() {
+        return source;
+    }
+}
@@ -0,0 +1,299 @@
+package org.xbib.cql.elasticsearch;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A minimal JSON writer that encodes directly to UTF-8 bytes, without materializing the document
+ * as a string. Bytes are collected in a small buffer and handed to an output stream, a channel,
+ * or a caller-supplied byte buffer.
+ *
+ * Runs of ASCII characters that need no escaping are copied with a tight loop, only other
+ * characters take the escaping and multi-byte encoding path.
+ *
+ * The writer does not close its target.
+ */
+public class Utf8JsonWriter implements Flushable {
+
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private final Sink sink;
+
+    private final OutputStream out;
+
+    private final byte[] buffer;
+
+    private int position;
+
+    private boolean[] hasValue;
+
+    private int depth;
+
+    private boolean afterKey;
+
+    private long flushed;
+
+    public Utf8JsonWriter(OutputStream out) {
+        this(out::write, out);
+    }
+
+    public Utf8JsonWriter(WritableByteChannel channel) {
+        this((b, off, len) -> {
+            ByteBuffer byteBuffer = ByteBuffer.wrap(b, off, len);
+            while (byteBuffer.hasRemaining()) {
+                channel.write(byteBuffer);
+            }
+        }, null);
+    }
+
+    /**
+     * Create a writer that puts the bytes into a byte buffer, for example a pooled one.
+     *
+     * If the output does not fit into the remaining buffer, a {@link BufferOverflowException} is thrown
+     * when the bytes are handed to the buffer, and the position of the buffer is reset to its position
+     * when the writer was created, so the buffer never holds a partial document. The writer can not be
+     * used any more after an overflow.
+     *
+     * @param target the byte buffer
+     */
+    public Utf8JsonWriter(ByteBuffer target) {
+        this(sink(target), null);
+    }
+
+    private Utf8JsonWriter(Sink sink, OutputStream out) {
+        this.sink = sink;
+        this.out = out;
+        this.buffer = new byte[DEFAULT_BUFFER_SIZE];
+        this.hasValue = new boolean[8];
+    }
+
+    public Utf8JsonWriter beginMap() throws IOException {
+        beforeValue();
+        writeByte('{');
+        if (++depth == hasValue.length) {
+            hasValue = Arrays.copyOf(hasValue, depth * 2);
+        }
+        hasValue[depth] = false;
+        return this;
+    }
+
+    public Utf8JsonWriter endMap() throws IOException {
+        depth--;
+        writeByte('}');
+        return this;
+    }
+
+    public Utf8JsonWriter buildKey(CharSequence key) throws IOException {
+        beforeValue();
+        writeByte('"');
+        writeChars(key, true);
+        writeByte('"');
+        writeByte(':');
+        afterKey = true;
+        return this;
+    }
+
+    public Utf8JsonWriter buildValue(CharSequence value) throws IOException {
+        beforeValue();
+        writeByte('"');
+        writeChars(value, true);
+        writeByte('"');
+        return this;
+    }
+
+    public Utf8JsonWriter buildValue(int value) throws IOException {
+        beforeValue();
+        writeChars(Integer.toString(value), false);
+        return this;
+    }
+
+    /**
+     * Write a JSON value that is already serialized, for example the result of a JSON builder.
+     *
+     * @param json the serialized JSON value
+     * @return this writer
+     * @throws IOException if the value can not be written
+     */
+    public Utf8JsonWriter raw(CharSequence json) throws IOException {
+        beforeValue();
+        writeChars(json, false);
+        return this;
+    }
+
+    public Utf8JsonWriter field(String key, int value) throws IOException {
+        return buildKey(key).buildValue(value);
+    }
+
+    /**
+     * End a top-level document with a line feed, so that the next document starts a new line,
+     * as in newline-delimited JSON.
+     *
+     * @return this writer
+     * @throws IOException if the line feed can not be written
+     * @throws IllegalStateException if a map is still open
+     */
+    public Utf8JsonWriter newline() throws IOException {
+        if (depth != 0 || afterKey) {
+            throw new IllegalStateException("document is not complete");
+        }
+        writeByte('\n');
+        hasValue[0] = false;
+        return this;
+    }
+
+    /**
+     * Write the buffered bytes to the target, and flush the target if it is an output stream.
+     *
+     * @throws IOException if the bytes can not be written
+     */
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        if (out != null) {
+            out.flush();
+        }
+    }
+
+    /**
+     * The number of bytes that were written, including the bytes that are still buffered.
+     *
+     * @return the number of bytes
+     */
+    public long getByteCount() {
+        return flushed + position;
+    }
+
+    private static Sink sink(ByteBuffer target) {
+        int start = target.position();
+        return (b, off, len) -> {
+            if (len > target.remaining()) {
+                target.position(start);
+                throw new BufferOverflowException();
+            }
+            target.put(b, off, len);
+        };
+    }
+
+    private void beforeValue() throws IOException {
+        if (afterKey) {
+            afterKey = false;
+            return;
+        }
+        if (hasValue[depth]) {
+            writeByte(',');
+        }
+        hasValue[depth] = true;
+    }
+
+    private void writeByte(char c) throws IOException {
+        if (position == buffer.length) {
+            flushBuffer();
+        }
+        buffer[position++] = (byte) c;
+    }
+
+    private void writeChars(CharSequence s, boolean escape) throws IOException {
+        int len = s.length();
+        int i = 0;
+        while (i < len) {
+            // fast path: a run of ASCII characters without escaping
+            int limit = Math.min(len, i + buffer.length - position);
+            while (i < limit) {
+                char c = s.charAt(i);
+                if (c >= 0x80 || (escape && (c < 0x20 || c == '"' || c == '\\'))) {
+                    break;
+                }
+                buffer[position++] = (byte) c;
+                i++;
+            }
+            if (i == len) {
+                break;
+            }
+            if (position + 12 > buffer.length) {
+                flushBuffer();
+                continue;
+            }
+            char c = s.charAt(i++);
+            if (c < 0x80) {
+                writeEscaped(c);
+            } else if (c < 0x800) {
+                buffer[position++] = (byte) (0xc0 | (c >> 6));
+                buffer[position++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i < len && Character.isLowSurrogate(s.charAt(i))) {
+                    int cp = Character.toCodePoint(c, s.charAt(i++));
+                    buffer[position++] = (byte) (0xf0 | (cp >> 18));
+                    buffer[position++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+                    buffer[position++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+                    buffer[position++] = (byte) (0x80 | (cp & 0x3f));
+                } else {
+                    // unpaired surrogate, replaced like the JDK UTF-8 encoder does
+                    buffer[position++] = (byte) '?';
+                }
+            } else {
+                buffer[position++] = (byte) (0xe0 | (c >> 12));
+                buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                buffer[position++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+    }
+
+    private void writeEscaped(char c) {
+        buffer[position++] = '\\';
+        switch (c) {
+            case '"':
+                buffer[position++] = '"';
+                break;
+            case '\\':
+                buffer[position++] = '\\';
+                break;
+            case '\n':
+                buffer[position++] = 'n';
+                break;
+            case '\r':
+                buffer[position++] = 'r';
+                break;
+            case '\t':
+                buffer[position++] = 't';
+                break;
+            case '\b':
+                buffer[position++] = 'b';
+                break;
+            case '\f':
+                buffer[position++] = 'f';
+                break;
+            default:
+                buffer[position++] = 'u';
+                buffer[position++] = '0';
+                buffer[position++] = '0';
+                buffer[position++] = HEX[c >> 4];
+                buffer[position++] = HEX[c & 0xf];
+                break;
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (position > 0) {
+            sink.write(buffer, 0, position);
+            flushed += position;
+            position = 0;
+        }
+    }
+
+    /**
+     * The byte target of the writer.
+     */
+    @FunctionalInterface
+    private interface Sink {
+
+        void write(byte[] b, int off, int len) throws IOException;
+    }
+}
@@ -4,6 +4,7 @@ import org.xbib.cql.elasticsearch.ast.Expression;
 import org.xbib.cql.elasticsearch.ast.Modifier;
 import org.xbib.cql.elasticsearch.ast.Name;
 import org.xbib.cql.elasticsearch.ast.Operator;
+import org.xbib.cql.elasticsearch.ast.Terms;
 import org.xbib.cql.elasticsearch.ast.Token;
 
 /**
@@ -21,4 +22,13 @@ public interface Visitor {
 
     void visit(Expression node);
 
+    /**
+     * Visit the values of a terms filter. They are written by the expression that contains them,
+     * so the default does nothing.
+     *
+     * @param node the terms
+     */
+    default void visit(Terms node) {
+    }
+
 }
@@ -1,6 +1,7 @@
 package org.xbib.cql.elasticsearch.ast;
 
 import org.xbib.cql.elasticsearch.Visitor;
+import org.xbib.cql.util.Traversal;
 
 /**
  * Elasticsearch expression.
@@ -60,6 +61,20 @@ public class Expression implements Node {
         }
     }
 
+    /**
+     * Create one n-ary expression with the operator of this expression, from an argument followed by
+     * the arguments of this expression. The arguments are copied once.
+     *
+     * @param arg the first argument
+     * @return the expression
+     */
+    public Expression prepend(Node arg) {
+        Node[] newArgs = new Node[args.length + 1];
+        newArgs[0] = arg;
+        System.arraycopy(args, 0, newArgs, 1, args.length);
+        return new Expression(op, newArgs);
+    }
+
     public Operator getOperator() {
         return op;
     }
@@ -91,20 +106,37 @@ public class Expression implements Node {
         visitor.visit(this);
     }
 
+    /**
+     * The string of this expression. Nested expressions are written on an explicit-stack traversal,
+     * so the thread stack does not depend on the depth of the expression.
+     */
     @Override
     public String toString() {
         if (!visible) {
             return "";
         }
-        StringBuilder sb = new StringBuilder(op.toString());
-        sb.append('(');
-        for (int i = 0; i < args.length; i++) {
-            sb.append(args[i]);
-            if (i < args.length - 1) {
-                sb.append(',');
+        StringBuilder sb = new StringBuilder();
+        Runnable comma = () -> sb.append(',');
+        Runnable close = () -> sb.append(')');
+        Traversal.walk((Node) this, (node, traversal) -> {
+            if (!(node instanceof Expression)) {
+                sb.append(node);
+                return;
             }
-        }
-        sb.append(')');
+            Expression expression = (Expression) node;
+            if (!expression.visible) {
+                return;
+            }
+            sb.append(expression.op).append('(');
+            Node[] nodes = expression.args;
+            for (int i = 0; i < nodes.length; i++) {
+                traversal.child(nodes[i]);
+                if (i < nodes.length - 1) {
+                    traversal.step(comma);
+                }
+            }
+            traversal.step(close);
+        });
         return sb.toString();
     }
 }
@@ -2,6 +2,8 @@ package org.xbib.cql.elasticsearch.ast;
 
 import org.xbib.cql.elasticsearch.Visitor;
 
+import java.util.List;
+
 /**
  * A name for Elasticsearch fields.
  */
@@ -13,6 +15,8 @@ public class Name implements Node {
 
     private boolean visible;
 
+    private List<Modifier> modifiers;
+
     public Name(String name) {
         this(name, true);
     }
@@ -26,6 +30,19 @@ public class Name implements Node {
         return name;
     }
 
+    /**
+     * Set the relation modifiers of the clause this name belongs to.
+     *
+     * @param modifiers the modifiers
+     */
+    public void setModifiers(List<Modifier> modifiers) {
+        this.modifiers = modifiers;
+    }
+
+    public List<Modifier> getModifiers() {
+        return modifiers;
+    }
+
     public void setType(TokenType type) {
         this.type = type;
     }
@@ -26,7 +26,24 @@ public enum Operator implements Node {
     TERMS_FACET(0),
     OR_FILTER(2),
     AND_FILTER(2),
-    MATCH_ALL(0);
+    MATCH_ALL(0),
+    /**
+     * Matches no document, for queries that are known to have no hits.
+     */
+    MATCH_NONE(0),
+    /**
+     * Exact match of one of several values: a field name followed by the value tokens.
+     */
+    TERMS(2),
+    /**
+     * A two-sided range: a field name, the lower bound operator and token,
+     * and the upper bound operator and token.
+     */
+    RANGE(2),
+    /**
+     * A filter for one of many values: a field name followed by terms, that are values or a lookup.
+     */
+    TERMS_FILTER(2);
 
 
     private final int arity;
@@ -0,0 +1,114 @@
+package org.xbib.cql.elasticsearch.ast;
+
+import org.xbib.cql.elasticsearch.TermsLookup;
+import org.xbib.cql.elasticsearch.Visitor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The values of a terms filter, in bulk: a list of strings and numbers, or a terms lookup.
+ *
+ * Unlike tokens, the values are taken as they are. They are not unquoted, and words like
+ * <code>yes</code> or <code>on</code> are not converted to booleans.
+ */
+public class Terms implements Node {
+
+    private final List<Object> values;
+
+    private final TermsLookup lookup;
+
+    private Terms(List<Object> values, TermsLookup lookup) {
+        this.values = values;
+        this.lookup = lookup;
+    }
+
+    /**
+     * Create terms from a collection. Numbers are kept, other values are converted to strings.
+     * Duplicate values are removed, the order of the collection is kept.
+     *
+     * @param values the values
+     * @return the terms
+     */
+    public static Terms of(Collection<?> values) {
+        Collection<?> unique = values instanceof Set ? values : new LinkedHashSet<>(values);
+        List<Object> list = new ArrayList<>(unique.size());
+        for (Object value : unique) {
+            if (value == null) {
+                continue;
+            }
+            list.add(value instanceof Number ? value : value.toString());
+        }
+        return new Terms(Collections.unmodifiableList(list), null);
+    }
+
+    /**
+     * Create terms from numbers. Duplicate values are removed, the order of the numbers is kept.
+     *
+     * @param values the values
+     * @return the terms
+     */
+    public static Terms of(long... values) {
+        Set<Long> unique = new LinkedHashSet<>();
+        for (long value : values) {
+            unique.add(value);
+        }
+        return new Terms(Collections.unmodifiableList(new ArrayList<>(unique)), null);
+    }
+
+    /**
+     * Create terms that are looked up from a document.
+     *
+     * @param lookup the terms lookup
+     * @return the terms
+     */
+    public static Terms lookup(TermsLookup lookup) {
+        return new Terms(Collections.emptyList(), lookup);
+    }
+
+    /**
+     * Get the values.
+     *
+     * @return the values, empty for a terms lookup
+     */
+    public List<Object> getValues() {
+        return values;
+    }
+
+    /**
+     * Get the terms lookup.
+     *
+     * @return the terms lookup, or null if the values are given
+     */
+    public TermsLookup getLookup() {
+        return lookup;
+    }
+
+    public boolean isLookup() {
+        return lookup != null;
+    }
+
+    @Override
+    public void accept(Visitor visitor) {
+        visitor.visit(this);
+    }
+
+    @Override
+    public boolean isVisible() {
+        return true;
+    }
+
+    @Override
+    public TokenType getType() {
+        return TokenType.STRING;
+    }
+
+    @Override
+    public String toString() {
+        return lookup != null ? lookup.toString() : values.toString();
+    }
+}
@@ -4,31 +4,47 @@ import org.xbib.cql.elasticsearch.ast.Expression;
 import org.xbib.cql.elasticsearch.ast.Name;
 import org.xbib.cql.elasticsearch.ast.Node;
 import org.xbib.cql.elasticsearch.ast.Operator;
+import org.xbib.cql.elasticsearch.ast.Terms;
 import org.xbib.cql.elasticsearch.ast.Token;
 import org.xbib.cql.elasticsearch.ast.TokenType;
 import org.xbib.cql.model.CQLQueryModel;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Stack;
+import java.util.TreeMap;
 
 /**
  * Elasticsearch query model.
+ *
+ * Filters and facets are kept in maps sorted by name, so the filter and facet expressions do not
+ * depend on the order of the clauses in the query. Queries that differ only in the order of filter
+ * and facet clauses with different names are translated to identical requests, which is important
+ * for the Elasticsearch request cache. The values of a filter name keep the order of the query.
+ *
+ * Bulk filters with many values are kept apart, as one terms filter expression per name, so that
+ * their values are neither folded one by one nor compared by their string.
  */
 public final class ElasticsearchQueryModel {
 
-    private final Map<String, Expression> conjunctivefilters;
+    private final Map<String, Map<String, Expression>> conjunctivefilters;
 
-    private final Map<String, Expression> disjunctivefilters;
+    private final Map<String, Map<String, Expression>> disjunctivefilters;
+
+    private final Map<String, List<Node>> termsfilters;
 
     private final Map<String, Expression> facets;
 
     private Expression sortexpr;
 
     public ElasticsearchQueryModel() {
-        this.conjunctivefilters = new HashMap<>();
-        this.disjunctivefilters = new HashMap<>();
-        this.facets = new HashMap<>();
+        this.conjunctivefilters = new TreeMap<>();
+        this.disjunctivefilters = new TreeMap<>();
+        this.termsfilters = new TreeMap<>();
+        this.facets = new TreeMap<>();
     }
 
     /**
@@ -107,8 +123,19 @@ public final class ElasticsearchQueryModel {
         addFilter(disjunctivefilters, new ElasticsearchFilter<>(name, value, op));
     }
 
+    /**
+     * Add a bulk filter. A document matches if the field has one of the terms. Bulk filters are
+     * combined with the conjunctive filters; several terms of the same name are alternatives.
+     *
+     * @param name  the filter name
+     * @param terms the terms
+     */
+    public void addTermsFilter(String name, Terms terms) {
+        termsfilters.computeIfAbsent(name, k -> new ArrayList<>()).add(terms);
+    }
+
     public boolean hasFilter() {
-        return !conjunctivefilters.isEmpty() || !disjunctivefilters.isEmpty();
+        return !conjunctivefilters.isEmpty() || !disjunctivefilters.isEmpty() || !termsfilters.isEmpty();
     }
 
     /**
@@ -126,14 +153,21 @@ public final class ElasticsearchQueryModel {
             return null;
         }
         Expression conjunctiveclause = null;
-        if (!conjunctivefilters.isEmpty()) {
-            conjunctiveclause = new Expression(Operator.AND,
-                    conjunctivefilters.values().toArray(new Node[0]));
+        if (!conjunctivefilters.isEmpty() || !termsfilters.isEmpty()) {
+            List<Node> clauses = new ArrayList<>(Arrays.asList(fold(conjunctivefilters)));
+            for (Map.Entry<String, List<Node>> entry : termsfilters.entrySet()) {
+                Name name = new Name(entry.getKey());
+                name.setType(getElasticsearchType(entry.getKey()));
+                List<Node> args = new ArrayList<>(entry.getValue().size() + 1);
+                args.add(name);
+                args.addAll(entry.getValue());
+                clauses.add(new Expression(Operator.TERMS_FILTER, args.toArray(new Node[0])));
+            }
+            conjunctiveclause = new Expression(Operator.AND, clauses.toArray(new Node[0]));
         }
         Expression disjunctiveclause = null;
         if (!disjunctivefilters.isEmpty()) {
-            disjunctiveclause = new Expression(Operator.OR,
-                    disjunctivefilters.values().toArray(new Node[0]));
+            disjunctiveclause = new Expression(Operator.OR, fold(disjunctivefilters));
         }
         if (conjunctiveclause != null && disjunctiveclause == null) {
             return conjunctiveclause;
@@ -168,20 +202,44 @@ public final class ElasticsearchQueryModel {
      * @param filters the filter list
      * @param filter  the filter to add
      */
-    private void addFilter(Map<String, Expression> filters, ElasticsearchFilter<Node> filter) {
+    private void addFilter(Map<String, Map<String, Expression>> filters, ElasticsearchFilter<Node> filter) {
         Name name = new Name(filter.getName());
         name.setType(getElasticsearchType(filter.getName()));
         Node value = filter.getValue();
         if (value instanceof Token) {
             value = new Expression(filter.getFilterOperation(), name, value);
         }
-        if (filters.containsKey(filter.getName())) {
-            Expression expression = filters.get(filter.getName());
-            expression = new Expression(expression, value);
-            filters.put(filter.getName(), expression);
-        } else {
-            filters.put(filter.getName(), (Expression) value);
+        // equal filters are only added once
+        filters.computeIfAbsent(filter.getName(), k -> new LinkedHashMap<>())
+                .putIfAbsent(value.toString(), (Expression) value);
+    }
+
+    /**
+     * Helper method to fold the filters of each name into one expression.
+     *
+     * @param filters the filters, by name and value
+     * @return the folded expressions, ordered by name
+     */
+    private static Node[] fold(Map<String, Map<String, Expression>> filters) {
+        Node[] nodes = new Node[filters.size()];
+        int i = 0;
+        for (Map<String, Expression> values : filters.values()) {
+            if (values.size() == 1) {
+                nodes[i++] = values.values().iterator().next();
+                continue;
+            }
+            // concatenate the arguments once, instead of copying them on each fold
+            Operator op = null;
+            List<Node> args = new ArrayList<>();
+            for (Expression value : values.values()) {
+                if (op == null) {
+                    op = value.getOperator();
+                }
+                args.addAll(Arrays.asList(value.getArgs()));
+            }
+            nodes[i++] = new Expression(op, args.toArray(new Node[0]));
         }
+        return nodes;
     }
 
     /**
@@ -0,0 +1,136 @@
+package org.xbib.cql.elasticsearch.optimizer;
+
+import org.xbib.cql.elasticsearch.ast.Expression;
+import org.xbib.cql.elasticsearch.ast.Node;
+import org.xbib.cql.util.Traversal;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Rewrite an Elasticsearch abstract syntax tree with a list of rules until no rule fires any more.
+ *
+ * Each pass walks the tree bottom-up and offers every expression to the rules in their order.
+ * When a rule fires on an expression, the rules are offered the rewritten expression again.
+ * Passes are repeated until a pass does not change the tree, or the maximum number of passes
+ * is reached. The tree is walked on an explicit-stack {@link Traversal}, so deeply nested
+ * expressions do not use the thread stack.
+ *
+ * An optimizer is immutable and can be shared by threads, if its rules are stateless.
+ */
+public class ExpressionOptimizer {
+
+    private static final int DEFAULT_MAX_PASSES = 8;
+
+    private final List<RewriteRule> rules;
+
+    private final int maxPasses;
+
+    public ExpressionOptimizer(RewriteRule... rules) {
+        this(Arrays.asList(rules), DEFAULT_MAX_PASSES);
+    }
+
+    public ExpressionOptimizer(List<RewriteRule> rules, int maxPasses) {
+        if (maxPasses <= 0) {
+            throw new IllegalArgumentException("maximum passes must be positive: " + maxPasses);
+        }
+        this.rules = List.copyOf(rules);
+        this.maxPasses = maxPasses;
+    }
+
+    /**
+     * An optimizer with the default rules: flattening of nested boolean expressions, collapsing
+     * of keyword disjunctions into terms queries, and merging of range bounds.
+     *
+     * @return the optimizer
+     */
+    public static ExpressionOptimizer defaults() {
+        return new ExpressionOptimizer(new FlattenRule(), new TermsRule(), new RangeRule());
+    }
+
+    public List<RewriteRule> getRules() {
+        return rules;
+    }
+
+    /**
+     * Optimize a tree.
+     *
+     * @param node the root of the tree
+     * @return the optimization, with the rewritten tree
+     */
+    public Optimization optimize(Node node) {
+        Objects.requireNonNull(node, "node");
+        Map<String, Integer> fired = new LinkedHashMap<>();
+        Node current = node;
+        int passes = 0;
+        while (passes < maxPasses) {
+            passes++;
+            Node next = rewrite(current, fired);
+            if (next == current) {
+                break;
+            }
+            current = next;
+        }
+        return new Optimization(current, fired, passes);
+    }
+
+    private Node rewrite(Node root, Map<String, Integer> fired) {
+        // the rewritten nodes, the rewritten arguments of an expression are on top when it is left
+        Deque<Node> rewritten = new ArrayDeque<>();
+        Traversal.walk(root, new Traversal.Listener<Node>() {
+            @Override
+            public void enter(Node node, Traversal<Node> traversal) {
+                if (node instanceof Expression && ((Expression) node).getArgs() != null) {
+                    for (Node arg : ((Expression) node).getArgs()) {
+                        traversal.child(arg);
+                    }
+                }
+            }
+
+            @Override
+            public void leave(Node node) {
+                rewritten.push(node instanceof Expression ? rewrite((Expression) node, rewritten, fired) : node);
+            }
+        });
+        return rewritten.pop();
+    }
+
+    private Node rewrite(Expression expression, Deque<Node> results, Map<String, Integer> fired) {
+        Node[] args = expression.getArgs();
+        Node[] newArgs = null;
+        if (args != null) {
+            for (int i = args.length - 1; i >= 0; i--) {
+                Node arg = results.pop();
+                if (arg != args[i]) {
+                    if (newArgs == null) {
+                        newArgs = args.clone();
+                    }
+                    newArgs[i] = arg;
+                }
+            }
+        }
+        Node result = newArgs != null ? new Expression(expression.getOperator(), newArgs) : expression;
+        // bounded, so that rules that undo each other can not loop
+        int budget = rules.size() * 4;
+        boolean changed = true;
+        while (changed && budget > 0 && result instanceof Expression) {
+            changed = false;
+            for (RewriteRule rule : rules) {
+                Node rewritten = rule.rewrite((Expression) result);
+                if (rewritten != result) {
+                    fired.merge(rule.getName(), 1, Integer::sum);
+                    result = rewritten;
+                    changed = true;
+                    budget--;
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,56 @@
+package org.xbib.cql.elasticsearch.optimizer;
+
+import org.xbib.cql.elasticsearch.ast.Expression;
+import org.xbib.cql.elasticsearch.ast.Node;
+import org.xbib.cql.elasticsearch.ast.Operator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Flatten nested conjunctions and disjunctions: {@code AND(AND(a,b),c)} becomes {@code AND(a,b,c)},
+ * and a conjunction or disjunction of a single argument becomes the argument.
+ * Flat argument lists give the other rules all operands of an operator at once.
+ */
+public class FlattenRule implements RewriteRule {
+
+    @Override
+    public String getName() {
+        return "flatten";
+    }
+
+    @Override
+    public Node rewrite(Expression expression) {
+        Operator op = expression.getOperator();
+        if (op != Operator.AND && op != Operator.OR) {
+            return expression;
+        }
+        Node[] args = expression.getArgs();
+        if (args.length == 1 && args[0] instanceof Expression) {
+            return args[0];
+        }
+        boolean nested = false;
+        for (Node arg : args) {
+            nested = nested || isNested(op, arg);
+        }
+        if (!nested) {
+            return expression;
+        }
+        List<Node> list = new ArrayList<>();
+        for (Node arg : args) {
+            if (isNested(op, arg)) {
+                for (Node child : ((Expression) arg).getArgs()) {
+                    list.add(child);
+                }
+            } else {
+                list.add(arg);
+            }
+        }
+        return new Expression(op, list.toArray(new Node[0]));
+    }
+
+    private static boolean isNested(Operator op, Node arg) {
+        return arg instanceof Expression && arg.isVisible() && ((Expression) arg).getOperator() == op
+                && ((Expression) arg).getArgs().length > 0;
+    }
+}
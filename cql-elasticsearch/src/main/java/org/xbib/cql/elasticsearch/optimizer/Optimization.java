@@ -0,0 +1,56 @@
+package org.xbib.cql.elasticsearch.optimizer;
+
+import org.xbib.cql.elasticsearch.ast.Node;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * The result of an {@link ExpressionOptimizer} run: the rewritten tree and the rules that fired.
+ */
+public final class Optimization {
+
+    private final Node node;
+
+    private final Map<String, Integer> firedRules;
+
+    private final int passes;
+
+    Optimization(Node node, Map<String, Integer> firedRules, int passes) {
+        this.node = node;
+        this.firedRules = Collections.unmodifiableMap(firedRules);
+        this.passes = passes;
+    }
+
+    public Node getNode() {
+        return node;
+    }
+
+    /**
+     * The names of the rules that fired, with the number of rewrites, in the order the rules
+     * fired first.
+     *
+     * @return the fired rules
+     */
+    public Map<String, Integer> getFiredRules() {
+        return firedRules;
+    }
+
+    /**
+     * The number of passes over the tree, including the last pass that did not change anything.
+     *
+     * @return the number of passes
+     */
+    public int getPasses() {
+        return passes;
+    }
+
+    public boolean isChanged() {
+        return !firedRules.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "[passes=" + passes + ",fired=" + firedRules + "]";
+    }
+}
@@ -0,0 +1,190 @@
+package org.xbib.cql.elasticsearch.optimizer;
+
+import org.xbib.cql.elasticsearch.ast.Expression;
+import org.xbib.cql.elasticsearch.ast.Name;
+import org.xbib.cql.elasticsearch.ast.Node;
+import org.xbib.cql.elasticsearch.ast.Operator;
+import org.xbib.cql.elasticsearch.ast.Token;
+import org.xbib.cql.elasticsearch.ast.TokenType;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Merge the range bounds of a conjunction on the same field into one range:
+ * {@code AND(RANGE_GREATER_THAN(date,2000),RANGE_LESS_THAN(date,2010))} becomes
+ * {@code RANGE(date,RANGE_GREATER_THAN,2000,RANGE_LESS_THAN,2010)}.
+ * Of several lower or upper bounds, the tighter one is kept. Bounds are only compared if both
+ * are numbers or both are dates, otherwise the field is left alone.
+ */
+public class RangeRule implements RewriteRule {
+
+    @Override
+    public String getName() {
+        return "range";
+    }
+
+    @Override
+    public Node rewrite(Expression expression) {
+        if (expression.getOperator() != Operator.AND) {
+            return expression;
+        }
+        Node[] args = expression.getArgs();
+        Map<String, List<Integer>> positions = new LinkedHashMap<>();
+        boolean candidate = false;
+        for (int i = 0; i < args.length; i++) {
+            if (isBound(args[i])) {
+                List<Integer> list = positions.computeIfAbsent(((Expression) args[i]).getArg1().toString(),
+                        k -> new ArrayList<>());
+                list.add(i);
+                candidate = candidate || list.size() > 1;
+            }
+        }
+        if (!candidate) {
+            return expression;
+        }
+        Node[] newArgs = args.clone();
+        boolean changed = false;
+        for (List<Integer> list : positions.values()) {
+            if (list.size() < 2) {
+                continue;
+            }
+            Bounds bounds = new Bounds();
+            boolean mergeable = true;
+            for (int i : list) {
+                mergeable = mergeable && bounds.add((Expression) args[i]);
+            }
+            if (!mergeable) {
+                continue;
+            }
+            for (int i : list) {
+                newArgs[i] = null;
+            }
+            newArgs[list.get(0)] = bounds.toNode(((Expression) args[list.get(0)]).getArg1());
+            changed = true;
+        }
+        if (!changed) {
+            return expression;
+        }
+        List<Node> remaining = new ArrayList<>();
+        for (Node arg : newArgs) {
+            if (arg != null) {
+                remaining.add(arg);
+            }
+        }
+        return remaining.size() == 1 ? remaining.get(0)
+                : new Expression(Operator.AND, remaining.toArray(new Node[0]));
+    }
+
+    private static boolean isBound(Node node) {
+        if (!(node instanceof Expression)) {
+            return false;
+        }
+        Expression expression = (Expression) node;
+        Node[] args = expression.getArgs();
+        if (args.length < 2 || !(args[0] instanceof Name) || !args[0].isVisible()) {
+            return false;
+        }
+        switch (expression.getOperator()) {
+            case RANGE_GREATER_THAN:
+            case RANGE_GREATER_OR_EQUAL:
+            case RANGE_LESS_THAN:
+            case RANGE_LESS_OR_EQUALS:
+                return args.length == 2 && args[1] instanceof Token;
+            case RANGE:
+                return args.length == 5;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * The tightest lower and upper bound of a field.
+     */
+    private static final class Bounds {
+
+        private Operator lowerOp;
+
+        private Token lower;
+
+        private Expression lowerExpression;
+
+        private Operator upperOp;
+
+        private Token upper;
+
+        private Expression upperExpression;
+
+        boolean add(Expression expression) {
+            Node[] args = expression.getArgs();
+            if (expression.getOperator() == Operator.RANGE) {
+                return add((Operator) args[1], (Token) args[2], null) && add((Operator) args[3], (Token) args[4], null);
+            }
+            return add(expression.getOperator(), (Token) args[1], expression);
+        }
+
+        Node toNode(Node name) {
+            if (lower != null && upper != null) {
+                return new Expression(Operator.RANGE, name, lowerOp, lower, upperOp, upper);
+            }
+            if (lower != null) {
+                return lowerExpression != null ? lowerExpression : new Expression(lowerOp, name, lower);
+            }
+            return upperExpression != null ? upperExpression : new Expression(upperOp, name, upper);
+        }
+
+        private boolean add(Operator op, Token token, Expression expression) {
+            boolean isLower = op == Operator.RANGE_GREATER_THAN || op == Operator.RANGE_GREATER_OR_EQUAL;
+            if (isLower) {
+                if (lower != null) {
+                    Integer cmp = compare(token, lower);
+                    if (cmp == null) {
+                        return false;
+                    }
+                    // a greater bound is tighter, on equal bounds the exclusive one
+                    if (cmp < 0 || (cmp == 0 && lowerOp == Operator.RANGE_GREATER_THAN)) {
+                        return true;
+                    }
+                }
+                lowerOp = op;
+                lower = token;
+                lowerExpression = expression;
+            } else {
+                if (upper != null) {
+                    Integer cmp = compare(token, upper);
+                    if (cmp == null) {
+                        return false;
+                    }
+                    // a smaller bound is tighter, on equal bounds the exclusive one
+                    if (cmp > 0 || (cmp == 0 && upperOp == Operator.RANGE_LESS_THAN)) {
+                        return true;
+                    }
+                }
+                upperOp = op;
+                upper = token;
+                upperExpression = expression;
+            }
+            return true;
+        }
+
+        private static Integer compare(Token a, Token b) {
+            if (isNumber(a) && isNumber(b)) {
+                return Double.compare(toDouble(a), toDouble(b));
+            }
+            if (a.getType() == TokenType.DATETIME && b.getType() == TokenType.DATETIME) {
+                return a.getDate().compareTo(b.getDate());
+            }
+            return null;
+        }
+
+        private static boolean isNumber(Token token) {
+            return token.getType() == TokenType.INT || token.getType() == TokenType.FLOAT;
+        }
+
+        private static double toDouble(Token token) {
+            return token.getType() == TokenType.INT ? token.getInteger() : token.getFloat();
+        }
+    }
+}
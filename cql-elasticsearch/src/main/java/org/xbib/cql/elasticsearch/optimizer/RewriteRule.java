@@ -0,0 +1,27 @@
+package org.xbib.cql.elasticsearch.optimizer;
+
+import org.xbib.cql.elasticsearch.ast.Expression;
+import org.xbib.cql.elasticsearch.ast.Node;
+
+/**
+ * A rewrite rule of the {@link ExpressionOptimizer}. Rules must not modify the expression
+ * they are given, they return a new node instead. Rules must be stateless, so an optimizer
+ * can be shared by threads.
+ */
+public interface RewriteRule {
+
+    /**
+     * The name of the rule, used in the optimization report.
+     *
+     * @return the name
+     */
+    String getName();
+
+    /**
+     * Rewrite an expression. The arguments of the expression are already rewritten.
+     *
+     * @param expression the expression
+     * @return the rewritten node, or the same expression if the rule does not apply
+     */
+    Node rewrite(Expression expression);
+}
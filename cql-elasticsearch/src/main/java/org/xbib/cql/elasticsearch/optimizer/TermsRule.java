@@ -0,0 +1,113 @@
+package org.xbib.cql.elasticsearch.optimizer;
+
+import org.xbib.cql.elasticsearch.ast.Expression;
+import org.xbib.cql.elasticsearch.ast.Name;
+import org.xbib.cql.elasticsearch.ast.Node;
+import org.xbib.cql.elasticsearch.ast.Operator;
+import org.xbib.cql.elasticsearch.ast.Token;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collapse a disjunction of exact matches on the same keyword field into one terms query:
+ * {@code OR(EQUALS(typeKeyword,a),EQUALS(typeKeyword,b))} becomes {@code TERMS(typeKeyword,a,b)}.
+ * Keyword fields are the fields whose name ends with <code>Keyword</code>, the query generator
+ * translates exact matches on them to term queries.
+ */
+public class TermsRule implements RewriteRule {
+
+    private static final String KEYWORD_SUFFIX = "Keyword";
+
+    @Override
+    public String getName() {
+        return "terms";
+    }
+
+    @Override
+    public Node rewrite(Expression expression) {
+        if (expression.getOperator() != Operator.OR) {
+            return expression;
+        }
+        Node[] args = expression.getArgs();
+        Map<String, List<Integer>> positions = new LinkedHashMap<>();
+        boolean candidate = false;
+        for (int i = 0; i < args.length; i++) {
+            String field = keywordField(args[i]);
+            if (field != null) {
+                List<Integer> list = positions.computeIfAbsent(field, k -> new ArrayList<>());
+                list.add(i);
+                candidate = candidate || list.size() > 1;
+            }
+        }
+        if (!candidate) {
+            return expression;
+        }
+        Node[] newArgs = args.clone();
+        for (List<Integer> list : positions.values()) {
+            if (list.size() < 2) {
+                continue;
+            }
+            List<Node> terms = new ArrayList<>();
+            Node name = null;
+            for (int i : list) {
+                Expression match = (Expression) args[i];
+                if (name == null) {
+                    name = match.getArg1();
+                }
+                Node[] matchArgs = match.getArgs();
+                if (match.getOperator() == Operator.TERMS) {
+                    for (int j = 1; j < matchArgs.length; j++) {
+                        terms.add(matchArgs[j]);
+                    }
+                } else {
+                    terms.add(matchArgs[1]);
+                }
+                newArgs[i] = null;
+            }
+            terms.add(0, name);
+            newArgs[list.get(0)] = new Expression(Operator.TERMS, terms.toArray(new Node[0]));
+        }
+        List<Node> remaining = new ArrayList<>();
+        for (Node arg : newArgs) {
+            if (arg != null) {
+                remaining.add(arg);
+            }
+        }
+        return remaining.size() == 1 ? remaining.get(0)
+                : new Expression(Operator.OR, remaining.toArray(new Node[0]));
+    }
+
+    /**
+     * The keyword field of an exact match, that is an equality, an unquoted all or any match, or
+     * a terms query.
+     */
+    private static String keywordField(Node node) {
+        if (!(node instanceof Expression)) {
+            return null;
+        }
+        Expression expression = (Expression) node;
+        Node[] args = expression.getArgs();
+        if (args.length < 2 || !(args[0] instanceof Name) || !args[0].isVisible()) {
+            return null;
+        }
+        String field = args[0].toString();
+        if (!field.endsWith(KEYWORD_SUFFIX)) {
+            return null;
+        }
+        switch (expression.getOperator()) {
+            case TERMS:
+                return field;
+            case EQUALS:
+                return args.length == 2 && args[1] instanceof Token ? field : null;
+            case ALL:
+            case ANY:
+                // the query generator uses the unquoted value, which is only the same for unquoted tokens
+                return args.length == 2 && args[1] instanceof Token && !((Token) args[1]).isQuoted() ? field : null;
+            default:
+                return null;
+        }
+    }
+}
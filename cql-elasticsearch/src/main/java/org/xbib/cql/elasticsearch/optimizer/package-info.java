@@ -0,0 +1,4 @@
+/**
+ * Rule-based rewriting of Elasticsearch abstract syntax trees before query generation.
+ */
+package org.xbib.cql.elasticsearch.optimizer;
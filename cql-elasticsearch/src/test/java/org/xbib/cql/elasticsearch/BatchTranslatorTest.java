@@ -0,0 +1,138 @@
+package org.xbib.cql.elasticsearch;
+
+import org.junit.jupiter.api.Test;
+import org.xbib.cql.SyntaxException;
+import org.xbib.cql.elasticsearch.ast.Expression;
+import org.xbib.cql.elasticsearch.ast.Node;
+import org.xbib.cql.elasticsearch.optimizer.ExpressionOptimizer;
+import org.xbib.cql.elasticsearch.optimizer.RewriteRule;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.LineNumberReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BatchTranslatorTest {
+
+    private static final String INVALID = "dc.title = ";
+
+    @Test
+    void testTranslateAll() throws Exception {
+        List<String[]> lines = load("queries.txt");
+        List<String> queries = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            for (String[] line : lines) {
+                queries.add(line[0]);
+            }
+            queries.add(INVALID);
+        }
+        try (BatchTranslator batchTranslator = new BatchTranslator(new ElasticsearchTranslator("cql.allIndexes"), 4)) {
+            List<BatchResult> results = batchTranslator.translateAll(queries, 0, 10);
+            assertEquals(queries.size(), results.size());
+            for (int i = 0; i < results.size(); i++) {
+                BatchResult result = results.get(i);
+                assertEquals(i, result.getIndex());
+                assertEquals(queries.get(i), result.getCQL());
+                if (INVALID.equals(queries.get(i))) {
+                    assertFalse(result.isSuccess());
+                    assertNull(result.getResult());
+                    assertTrue(result.getError() instanceof SyntaxException);
+                } else {
+                    assertTrue(result.isSuccess(), result.toString());
+                    assertEquals(lines.get(i % (lines.size() + 1))[1], result.getResult().getSource());
+                }
+            }
+        }
+    }
+
+    @Test
+    void testStreamWithVirtualThreads() throws Exception {
+        List<String[]> lines = load("queries.txt");
+        List<String> queries = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            for (String[] line : lines) {
+                queries.add(line[0]);
+            }
+        }
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        try (BatchTranslator batchTranslator = new BatchTranslator(new ElasticsearchTranslator("cql.allIndexes"),
+                executor, 2)) {
+            List<BatchResult> results = batchTranslator.translate(queries.stream(), 0, 10)
+                    .collect(Collectors.toList());
+            assertEquals(queries.size(), results.size());
+            for (int i = 0; i < results.size(); i++) {
+                assertEquals(i, results.get(i).getIndex());
+                assertEquals(lines.get(i % lines.size())[1], results.get(i).getResult().getSource());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void testFailureIsPerQuery() {
+        ExpressionOptimizer failing = new ExpressionOptimizer(new RewriteRule() {
+            @Override
+            public String getName() {
+                return "failing";
+            }
+
+            @Override
+            public Node rewrite(Expression expression) {
+                if (expression.toString().contains("unsupported")) {
+                    throw new UnsupportedOperationException("unsupported");
+                }
+                if (expression.toString().contains("overflow")) {
+                    throw new StackOverflowError();
+                }
+                return expression;
+            }
+        });
+        List<String> queries = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            queries.add(i % 10 == 3 ? "dc.title = unsupported"
+                    : i % 10 == 7 ? "dc.title = overflow" : "dc.title = " + i);
+        }
+        try (BatchTranslator batchTranslator = new BatchTranslator(new ElasticsearchTranslator("cql.allIndexes")
+                .withOptimizer(failing), 4)) {
+            List<BatchResult> results = batchTranslator.translateAll(queries, 0, 10);
+            assertEquals(queries.size(), results.size());
+            for (int i = 0; i < results.size(); i++) {
+                BatchResult result = results.get(i);
+                if (i % 10 == 3) {
+                    assertTrue(result.getError() instanceof UnsupportedOperationException);
+                } else if (i % 10 == 7) {
+                    assertTrue(result.getError() instanceof IllegalStateException);
+                    assertTrue(result.getError().getCause() instanceof StackOverflowError);
+                } else {
+                    assertTrue(result.isSuccess(), result.toString());
+                }
+            }
+        }
+    }
+
+    private List<String[]> load(String path) throws IOException {
+        List<String[]> list = new ArrayList<>();
+        try (LineNumberReader lr = new LineNumberReader(new InputStreamReader(getClass().getResourceAsStream(path),
+                StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = lr.readLine()) != null) {
+                int pos = line.indexOf('|');
+                if (line.trim().length() > 0 && !line.startsWith("#") && pos > 0) {
+                    list.add(new String[] { line.substring(0, pos), line.substring(pos + 1) });
+                }
+            }
+        }
+        return list;
+    }
+}
@@ -0,0 +1,57 @@
+package org.xbib.cql.elasticsearch;
+
+import org.junit.jupiter.api.Test;
+import org.xbib.cql.elasticsearch.ast.Expression;
+import org.xbib.cql.elasticsearch.ast.Name;
+import org.xbib.cql.elasticsearch.ast.Operator;
+import org.xbib.cql.elasticsearch.ast.Token;
+import org.xbib.cql.elasticsearch.optimizer.ExpressionOptimizer;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClausePlacementTest {
+
+    private final ElasticsearchTranslator translator = new ElasticsearchTranslator("cql.allIndexes")
+            .withClausePlacement(new ClausePlacement());
+
+    @Test
+    void testFilterPlacement() {
+        assertEquals("{\"from\":0,\"size\":10,\"query\":{\"constant_score\":{\"filter\":{\"term\":{\"dc.typeKeyword\":\"a\"}}}}}",
+                translator.translate("dc.typeKeyword = a", 0, 10).getSource());
+        assertEquals("{\"from\":0,\"size\":10,\"query\":{\"bool\":{\"must\":{\"simple_query_string\":{\"query\":\"unix\",\"fields\":[\"cql.allIndexes\"],\"analyze_wildcard\":true,\"default_operator\":\"and\"}},\"filter\":{\"range\":{\"dc.date\":{\"from\":\"2000\",\"to\":\"2010\",\"include_lower\":false,\"include_upper\":false}}}}}}",
+                translator.withOptimizer(ExpressionOptimizer.defaults())
+                        .translate("unix and dc.date > 2000 and dc.date < 2010", 0, 10).getSource());
+        assertEquals("{\"from\":0,\"size\":10,\"query\":{\"bool\":{\"must\":{\"simple_query_string\":{\"query\":\"unix\",\"fields\":[\"cql.allIndexes\"],\"analyze_wildcard\":true,\"default_operator\":\"and\"}},\"filter\":{\"bool\":{\"should\":[{\"term\":{\"dc.typeKeyword\":\"a\"}},{\"term\":{\"dc.typeKeyword\":\"b\"}}]}}}}}",
+                translator.translate("unix and (dc.typeKeyword = a or dc.typeKeyword = b)", 0, 10).getSource());
+    }
+
+    @Test
+    void testScoringPlacement() {
+        // disjunctions keep their clauses scoring
+        assertEquals("{\"from\":0,\"size\":10,\"query\":{\"bool\":{\"should\":[{\"simple_query_string\":{\"query\":\"unix\",\"fields\":[\"cql.allIndexes\"],\"analyze_wildcard\":true,\"default_operator\":\"and\"}},{\"range\":{\"dc.date\":{\"from\":\"2000\",\"include_lower\":false}}}]}}}",
+                translator.translate("unix or dc.date > 2000", 0, 10).getSource());
+        ElasticsearchTranslator plain = new ElasticsearchTranslator("cql.allIndexes");
+        assertEquals(plain.translate("unix and linux", 0, 10).getSource(),
+                translator.translate("unix and linux", 0, 10).getSource());
+        // the relevant relation modifier keeps a clause scoring
+        assertFalse(translator.translate("dc.date >/relevant 2000 and unix", 0, 10).getSource().contains("filter"));
+    }
+
+    @Test
+    void testPolicy() {
+        ClausePlacement placement = new ClausePlacement(field -> field.startsWith("id"), Set.of("relevant"));
+        Expression exact = new Expression(Operator.EQUALS, new Name("identifier"), new Token("1"));
+        Expression analyzed = new Expression(Operator.EQUALS, new Name("title"), new Token("unix"));
+        assertFalse(placement.isScoring(exact));
+        assertTrue(placement.isScoring(analyzed));
+        assertFalse(placement.isScoring(new Expression(Operator.RANGE_LESS_THAN, new Name("year"), new Token("2000"))));
+        assertTrue(placement.isScoring(new Expression(Operator.AND, exact, analyzed)));
+        assertEquals(Occur.FILTER, placement.place(Occur.MUST, exact));
+        assertEquals(Occur.SHOULD, placement.place(Occur.SHOULD, exact));
+        assertEquals(Occur.MUST, placement.place(Occur.MUST, analyzed));
+    }
+}
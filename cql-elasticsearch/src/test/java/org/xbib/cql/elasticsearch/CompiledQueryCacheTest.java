@@ -0,0 +1,120 @@
+package org.xbib.cql.elasticsearch;
+
+import org.junit.jupiter.api.Test;
+import org.xbib.cql.CQLParser;
+import org.xbib.cql.SyntaxException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompiledQueryCacheTest {
+
+    private static final QuerySettings SETTINGS = new QuerySettings("cql.allIndexes");
+
+    @Test
+    void testHitAndMiss() throws Exception {
+        CompiledQueryCache cache = new CompiledQueryCache(100);
+        String cql = "dc.format = book*";
+        assertNull(cache.getIfPresent(cql, SETTINGS, 0, 10));
+        CompiledQuery first = cache.get(cql, SETTINGS, 0, 10);
+        CompiledQuery second = cache.get(cql, SETTINGS, 0, 10);
+        assertSame(first, second);
+        assertNotSame(first, cache.get(cql, SETTINGS, 10, 10));
+        assertNotSame(first, cache.get(cql, new QuerySettings("cql.allIndexes", true), 0, 10));
+        CQLParser parser = new CQLParser(cql);
+        parser.parse();
+        ElasticsearchQueryGenerator generator = new ElasticsearchQueryGenerator("cql.allIndexes");
+        parser.getCQLQuery().accept(generator);
+        assertEquals(generator.getSourceResult(), first.getSource());
+        CacheStats stats = cache.getStats();
+        assertEquals(1L, stats.getHitCount());
+        assertEquals(4L, stats.getMissCount());
+        assertEquals(3L, stats.getLoadCount());
+        assertEquals(3L, cache.size());
+    }
+
+    @Test
+    void testBoostSettings() throws Exception {
+        CompiledQueryCache cache = new CompiledQueryCache(10);
+        QuerySettings settings = new QuerySettings("cql.allIndexes", "boost", "log2p", 2.0f, "sum", false);
+        ElasticsearchQueryGenerator generator = new ElasticsearchQueryGenerator("cql.allIndexes");
+        generator.setBoostParams("boost", "log2p", 2.0f, "sum");
+        CQLParser parser = new CQLParser("Jörg");
+        parser.parse();
+        parser.getCQLQuery().accept(generator);
+        assertEquals(generator.getSourceResult(), cache.get("Jörg", settings, 0, 10).getSource());
+    }
+
+    @Test
+    void testFailureIsNotCached() {
+        CompiledQueryCache cache = new CompiledQueryCache(10);
+        assertThrows(SyntaxException.class, () -> cache.get("dc.title = ", SETTINGS, 0, 10));
+        assertThrows(SyntaxException.class, () -> cache.get("dc.title = ", SETTINGS, 0, 10));
+        assertEquals(2L, cache.getStats().getLoadFailureCount());
+        assertEquals(0L, cache.size());
+    }
+
+    @Test
+    void testEviction() {
+        CompiledQueryCache cache = new CompiledQueryCache(20, 4);
+        String frequent = "dc.title = frequent";
+        cache.get(frequent, SETTINGS, 0, 10);
+        cache.get(frequent, SETTINGS, 0, 10);
+        for (int i = 0; i < 100; i++) {
+            cache.get("dc.title = term" + i, SETTINGS, 0, 10);
+            assertTrue(cache.size() <= 20);
+        }
+        assertEquals(81L, cache.getStats().getEvictionCount());
+        // the promoted entry survives the scan of one-off queries
+        assertTrue(cache.getIfPresent(frequent, SETTINGS, 0, 10) != null);
+        cache.invalidateAll();
+        assertEquals(0L, cache.size());
+    }
+
+    @Test
+    void testConcurrentMissesAreCoalesced() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompiledQueryCache cache = new CompiledQueryCache(10) {
+            @Override
+            protected CompiledQuery compile(String cql, QuerySettings settings, int from, int size) {
+                started.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.compile(cql, settings, from, size);
+            }
+        };
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<CompiledQuery>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executorService.submit(() -> cache.get("dc.type = electronic", SETTINGS, 0, 10)));
+            }
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            Thread.sleep(100L);
+            release.countDown();
+            CompiledQuery result = futures.get(0).get(10, TimeUnit.SECONDS);
+            for (Future<CompiledQuery> future : futures) {
+                assertSame(result, future.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            executorService.shutdown();
+        }
+        assertEquals(1L, cache.getStats().getLoadCount());
+    }
+}
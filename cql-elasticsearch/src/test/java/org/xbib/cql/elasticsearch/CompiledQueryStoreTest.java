@@ -0,0 +1,210 @@
+package org.xbib.cql.elasticsearch;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompiledQueryStoreTest {
+
+    private static final QuerySettings SETTINGS = new QuerySettings("cql.allIndexes");
+
+    private static final CompiledQueryCache COMPILER = new CompiledQueryCache(100);
+
+    @Test
+    void testPutAndGet() throws IOException {
+        Path path = Files.createTempFile("cql", ".store");
+        try {
+            CompiledQuery query = COMPILER.get("dc.title = Jörg and dc.date > 2000 sortby dc.date", SETTINGS, 0, 10);
+            try (CompiledQueryStore store = new CompiledQueryStore(path)) {
+                assertNull(store.get(query.getCQL(), SETTINGS, 0, 10));
+                store.put(query, SETTINGS, 0, 10);
+                assertStored(query, store.get(query.getCQL(), SETTINGS, 0, 10));
+                assertNull(store.get(query.getCQL(), SETTINGS, 10, 10));
+                assertNull(store.get(query.getCQL(), SETTINGS.withDialect(Dialect.ELASTICSEARCH_8), 0, 10));
+                assertNull(store.get("dc.title = b", SETTINGS, 0, 10));
+            }
+            try (CompiledQueryStore store = new CompiledQueryStore(path)) {
+                assertEquals(1, store.size());
+                assertStored(query, store.get(query.getCQL(), SETTINGS, 0, 10));
+            }
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    void testTornTail() throws IOException {
+        Path path = Files.createTempFile("cql", ".store");
+        try {
+            long length;
+            try (CompiledQueryStore store = new CompiledQueryStore(path)) {
+                store.put(COMPILER.get("a", SETTINGS, 0, 10), SETTINGS, 0, 10);
+                length = store.getFileLength();
+                store.put(COMPILER.get("b", SETTINGS, 0, 10), SETTINGS, 0, 10);
+            }
+            // a crash during the second append
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                channel.truncate(Files.size(path) - 3);
+            }
+            try (CompiledQueryStore store = new CompiledQueryStore(path)) {
+                assertEquals(1, store.size());
+                assertNotNull(store.get("a", SETTINGS, 0, 10));
+                assertNull(store.get("b", SETTINGS, 0, 10));
+                assertEquals(length, Files.size(path));
+                store.put(COMPILER.get("c", SETTINGS, 0, 10), SETTINGS, 0, 10);
+            }
+            // a corrupt record and the records after it are dropped
+            byte[] bytes = Files.readAllBytes(path);
+            bytes[(int) length - 1] ^= 1;
+            Files.write(path, bytes);
+            try (CompiledQueryStore store = new CompiledQueryStore(path)) {
+                assertEquals(0, store.size());
+                assertEquals(8L, store.getFileLength());
+            }
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    void testCompact() throws IOException {
+        Path path = Files.createTempFile("cql", ".store");
+        try (CompiledQueryStore store = new CompiledQueryStore(path)) {
+            for (int i = 0; i < 100; i++) {
+                String cql = "dc.title = " + (i % 10);
+                store.put(COMPILER.get(cql, SETTINGS, 0, 10), SETTINGS, 0, 10);
+            }
+            assertEquals(10, store.size());
+            assertTrue(store.getLiveLength() * 10 < store.getFileLength());
+            store.compact();
+            assertEquals(8L + store.getLiveLength(), store.getFileLength());
+            assertEquals(store.getFileLength(), Files.size(path));
+            for (int i = 0; i < 10; i++) {
+                String cql = "dc.title = " + i;
+                assertStored(COMPILER.get(cql, SETTINGS, 0, 10), store.get(cql, SETTINGS, 0, 10));
+            }
+            store.put(COMPILER.get("dc.title = 10", SETTINGS, 0, 10), SETTINGS, 0, 10);
+            assertEquals(11, store.size());
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    void testAppendedRecords() throws IOException {
+        Path path = Files.createTempFile("cql", ".store");
+        try (CompiledQueryStore store = new CompiledQueryStore(path)) {
+            for (int i = 0; i < 200; i++) {
+                String cql = "dc.title = " + i;
+                store.put(COMPILER.get(cql, SETTINGS, 0, 10), SETTINGS, 0, 10);
+                assertStored(COMPILER.get(cql, SETTINGS, 0, 10), store.get(cql, SETTINGS, 0, 10));
+                cql = "dc.title = " + (i / 2);
+                assertStored(COMPILER.get(cql, SETTINGS, 0, 10), store.get(cql, SETTINGS, 0, 10));
+            }
+            assertEquals(200, store.size());
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    void testSettingsFingerprint() throws IOException {
+        Path path = Files.createTempFile("cql", ".store");
+        try {
+            QuerySettings settings = SETTINGS.withDialect(new CustomDialect());
+            CompiledQuery query = COMPILER.get("dc.title = a", settings, 0, 10);
+            try (CompiledQueryStore store = new CompiledQueryStore(path)) {
+                store.put(query, settings, 0, 10);
+            }
+            try (CompiledQueryStore store = new CompiledQueryStore(path)) {
+                // another instance of the dialect, as after a restart
+                assertStored(query, store.get("dc.title = a", SETTINGS.withDialect(new CustomDialect()), 0, 10));
+                assertNull(store.get("dc.title = a", SETTINGS.withDialect(new ModernDialect("custom")), 0, 10));
+                assertNull(store.get("dc.title = a", new QuerySettings(null, "cql.allIndexes", null, null, null,
+                        false, settings.getDialect()), 0, 10));
+                // the unmapped sort types of a dialect change the sort
+                ModernDialect dialect = (ModernDialect) Dialect.ELASTICSEARCH_8;
+                QuerySettings modern = SETTINGS.withDialect(dialect);
+                store.put(COMPILER.get("dc.title = a", modern, 0, 10), modern, 0, 10);
+                assertNotNull(store.get("dc.title = a", modern, 0, 10));
+                assertNotNull(store.get("dc.title = a", modern.withDialect(dialect
+                        .withUnmappedTypes(Collections.emptyMap())), 0, 10));
+                assertNull(store.get("dc.title = a", modern.withDialect(dialect
+                        .withUnmappedTypes(Collections.singletonMap("dc.date", "date"))), 0, 10));
+            }
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    void testWarmCache() throws IOException {
+        Path path = Files.createTempFile("cql", ".store");
+        try {
+            String cql = "dc.format = book* and dc.date > 2000";
+            CompiledQuery compiled;
+            try (CompiledQueryStore store = new CompiledQueryStore(path)) {
+                compiled = new CompiledQueryCache(10, 1, store).get(cql, SETTINGS, 0, 10);
+                assertEquals(1, store.size());
+            }
+            try (CompiledQueryStore store = new CompiledQueryStore(path)) {
+                CompiledQueryCache cache = new CompiledQueryCache(10, 1, store) {
+                    @Override
+                    protected CompiledQuery compile(String cql, QuerySettings settings, int from, int size) {
+                        throw new AssertionError("compiled " + cql);
+                    }
+                };
+                assertStored(compiled, cache.get(cql, SETTINGS, 0, 10));
+                assertEquals(1L, cache.getStats().getLoadCount());
+            }
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    void testForeignFile() throws IOException {
+        Path path = Files.createTempFile("cql", ".store");
+        try {
+            Files.write(path, "not a store".getBytes(StandardCharsets.UTF_8));
+            assertThrows(IOException.class, () -> new CompiledQueryStore(path));
+            assertEquals("not a store", new String(Files.readAllBytes(path), StandardCharsets.UTF_8));
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    /**
+     * A dialect whose string is different for each instance.
+     */
+    private static final class CustomDialect extends ModernDialect {
+
+        CustomDialect() {
+            super("custom");
+        }
+
+        @Override
+        public String toString() {
+            return "custom@" + Integer.toHexString(System.identityHashCode(this));
+        }
+    }
+
+    private static void assertStored(CompiledQuery expected, CompiledQuery actual) {
+        assertNotNull(actual);
+        assertEquals(expected.getCQL(), actual.getCQL());
+        assertEquals(expected.getQuery(), actual.getQuery());
+        assertEquals(expected.getSource(), actual.getSource());
+    }
+}
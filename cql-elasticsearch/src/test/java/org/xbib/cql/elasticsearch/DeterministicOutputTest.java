@@ -0,0 +1,150 @@
+package org.xbib.cql.elasticsearch;
+
+import org.junit.jupiter.api.Test;
+import org.xbib.cql.SyntaxException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.LineNumberReader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DeterministicOutputTest {
+
+    private static final String[][] PERMUTATIONS = {
+            {
+                    "unix and filter.dc.type = book and filter.dc.creator = meyer",
+                    "filter.dc.creator = meyer and unix and filter.dc.type = book"
+            },
+            {
+                    "unix and filter.dc.type = book and filter.dc.date > 2000",
+                    "unix and filter.dc.date > 2000 and filter.dc.type = book"
+            },
+            {
+                    "unix and facet.dc.subject = 10 and facet.dc.creator = 5",
+                    "facet.dc.creator = 5 and unix and facet.dc.subject = 10"
+            },
+            {
+                    "(linux or unix) and dc.date > 2000 and filter.dc.type = book",
+                    "filter.dc.type = book and dc.date > 2000 and (unix or linux)"
+            }
+    };
+
+    @Test
+    void testOperandOrder() {
+        ElasticsearchTranslator translator = new ElasticsearchTranslator("cql.allIndexes").withNormalization(true);
+        for (String[] permutation : PERMUTATIONS) {
+            assertEquals(translator.translate(permutation[0], 0, 0).getSource(),
+                    translator.translate(permutation[1], 0, 0).getSource(), permutation[1]);
+        }
+        // filters and facets are ordered without normalization, too
+        ElasticsearchTranslator plain = new ElasticsearchTranslator("cql.allIndexes");
+        assertEquals(plain.translate(PERMUTATIONS[1][0], 0, 0).getSource(),
+                plain.translate(PERMUTATIONS[1][1], 0, 0).getSource());
+    }
+
+    @Test
+    void testFilterOperators() {
+        ElasticsearchTranslator plain = new ElasticsearchTranslator("cql.allIndexes");
+        ElasticsearchTranslator[] translators = {
+                new ElasticsearchTranslator("cql.allIndexes").withNormalization(true),
+                new ElasticsearchTranslator("cql.allIndexes").withSimplification(true),
+        };
+        // the operator before a filter decides whether the filter is conjunctive or disjunctive
+        String[] queries = {
+                "filter.dc.type = book or dc.title = unix",
+                "dc.title = unix or filter.dc.type = book",
+                "filter.dc.type = book or dc.creator = meyer or dc.title = unix or filter.dc.date = 2000",
+                "dc.creator = meyer and filter.dc.type = book and dc.title = unix",
+                "dc.title = unix or (filter.dc.type = book)"
+        };
+        for (String query : queries) {
+            String expected = plain.translate(query, 0, 10).getSource();
+            for (ElasticsearchTranslator translator : translators) {
+                assertEquals(expected, translator.translate(query, 0, 10).getSource(), query);
+            }
+        }
+        String grouped = "(filter.dc.type = book or dc.title = unix) or dc.title = linux";
+        assertEquals(plain.translate(grouped, 0, 10).getSource(), translators[0].translate(grouped, 0, 10).getSource());
+    }
+
+    /**
+     * Translate the corpus in other JVMs, with other identity hash code algorithms, and compare
+     * the digests of the requests.
+     */
+    @Test
+    void testAcrossRuns() throws Exception {
+        String expected = digest();
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        String classpath = System.getProperty("java.class.path");
+        String modulepath = System.getProperty("jdk.module.path");
+        if (modulepath != null && !modulepath.isEmpty()) {
+            classpath = classpath + File.pathSeparator + modulepath;
+        }
+        for (String hashCode : new String[] { "2", "3", "4" }) {
+            Process process = new ProcessBuilder(java, "-XX:+UnlockExperimentalVMOptions", "-XX:hashCode=" + hashCode,
+                    "-cp", classpath, DeterministicOutputTest.class.getName())
+                    .redirectErrorStream(true)
+                    .start();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (InputStream in = process.getInputStream()) {
+                in.transferTo(out);
+            }
+            assertTrue(process.waitFor(60, TimeUnit.SECONDS));
+            assertEquals(0, process.exitValue(), out.toString(StandardCharsets.UTF_8));
+            assertEquals(expected, out.toString(StandardCharsets.UTF_8).trim(), "hashCode=" + hashCode);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.out.println(digest());
+    }
+
+    private static String digest() throws IOException, NoSuchAlgorithmException {
+        List<String> queries = new ArrayList<>();
+        try (LineNumberReader lr = new LineNumberReader(new InputStreamReader(
+                DeterministicOutputTest.class.getResourceAsStream("queries.txt"), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = lr.readLine()) != null) {
+                int pos = line.indexOf('|');
+                if (line.trim().length() > 0 && !line.startsWith("#") && pos > 0) {
+                    queries.add(line.substring(0, pos));
+                }
+            }
+        }
+        for (String[] permutation : PERMUTATIONS) {
+            queries.add(permutation[0]);
+            queries.add(permutation[1]);
+        }
+        ElasticsearchTranslator[] translators = {
+                new ElasticsearchTranslator("cql.allIndexes"),
+                new ElasticsearchTranslator(new QuerySettings("cql.allIndexes").withDialect(Dialect.ELASTICSEARCH_8))
+                        .withNormalization(true)
+        };
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        for (ElasticsearchTranslator translator : translators) {
+            for (String query : queries) {
+                String source;
+                try {
+                    source = translator.translate(query, 0, 0).getSource();
+                } catch (SyntaxException | IllegalArgumentException e) {
+                    source = e.getClass().getName();
+                }
+                digest.update(source.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) '\n');
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+}
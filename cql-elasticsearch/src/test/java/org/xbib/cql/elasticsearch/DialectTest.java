@@ -0,0 +1,61 @@
+package org.xbib.cql.elasticsearch;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DialectTest {
+
+    private final ElasticsearchTranslator legacy = new ElasticsearchTranslator(new QuerySettings("cql.allIndexes"));
+
+    private final ElasticsearchTranslator modern = new ElasticsearchTranslator(new QuerySettings("cql.allIndexes")
+            .withDialect(Dialect.ELASTICSEARCH_8));
+
+    @Test
+    void testFiltered() {
+        String cql = "dc.date > 2000 and filter.dc.type = book";
+        assertEquals("{\"from\":0,\"size\":10,\"query\":{\"filtered\":{\"query\":{\"bool\":{\"must\":{\"range\":{\"dc.date\":{\"from\":\"2000\",\"include_lower\":false}}}}},\"filter\":{\"term\":{\"dc.type\":\"book\"}}}}}",
+                legacy.translate(cql, 0, 10).getSource());
+        assertEquals("{\"from\":0,\"size\":10,\"query\":{\"bool\":{\"must\":{\"bool\":{\"filter\":{\"range\":{\"dc.date\":{\"gt\":\"2000\"}}}}},\"filter\":{\"term\":{\"dc.type\":\"book\"}}}}}",
+                modern.translate(cql, 0, 10).getSource());
+    }
+
+    @Test
+    void testSort() {
+        String cql = "dc.date > 2000 sortby dc.date/sort.descending";
+        assertEquals("{\"from\":0,\"size\":10,\"query\":{\"range\":{\"dc.date\":{\"from\":\"2000\",\"include_lower\":false}}},\"sort\":[{\"dc.date\":{\"order\":\"desc\",\"ignore_unmapped\":\"true\",\"missing\":\"_last\"}}]}",
+                legacy.translate(cql, 0, 10).getSource());
+        assertEquals("{\"from\":0,\"size\":10,\"query\":{\"constant_score\":{\"filter\":{\"range\":{\"dc.date\":{\"gt\":\"2000\"}}}}},\"sort\":[{\"dc.date\":{\"order\":\"desc\",\"unmapped_type\":\"long\",\"missing\":\"_last\"}}]}",
+                modern.translate(cql, 0, 10).getSource());
+        // configured unmapped types replace the numeric default
+        ElasticsearchTranslator typed = new ElasticsearchTranslator(new QuerySettings("cql.allIndexes")
+                .withDialect(((ModernDialect) Dialect.ELASTICSEARCH_8)
+                        .withUnmappedTypes(Collections.singletonMap("dc.title", "keyword"))));
+        assertTrue(typed.translate("unix sortby dc.title", 0, 10).getSource()
+                .contains("{\"dc.title\":{\"unmapped_type\":\"keyword\",\"missing\":\"_last\"}}"));
+        assertTrue(typed.translate("unix sortby dc.date", 0, 10).getSource()
+                .contains("{\"dc.date\":{\"unmapped_type\":\"long\",\"missing\":\"_last\"}}"));
+    }
+
+    @Test
+    void testPrefixAndMatchNone() {
+        assertEquals("{\"from\":0,\"size\":10,\"query\":{\"prefix\":{\"title\":\"uni\"}}}",
+                legacy.translate("title adj ^uni", 0, 10).getSource());
+        assertEquals("{\"from\":0,\"size\":10,\"query\":{\"match_bool_prefix\":{\"title\":\"uni\"}}}",
+                modern.translate("title adj ^uni", 0, 10).getSource());
+        assertEquals("{\"from\":0,\"size\":10,\"query\":{\"match_none\":{}}}",
+                modern.withSimplification(true).translate("year > 2010 and year < 2000", 0, 10).getSource());
+    }
+
+    @Test
+    void testSettings() {
+        QuerySettings settings = new QuerySettings("cql.allIndexes");
+        assertEquals(Dialect.LEGACY, settings.getDialect());
+        assertNotEquals(settings, settings.withDialect(Dialect.OPENSEARCH_2));
+        assertEquals(settings, settings.withDialect(Dialect.OPENSEARCH_2).withDialect(Dialect.LEGACY));
+    }
+}
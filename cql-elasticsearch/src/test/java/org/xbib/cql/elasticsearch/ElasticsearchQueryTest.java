@@ -7,10 +7,12 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.LineNumberReader;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class ElasticsearchQueryTest {
 
@@ -64,8 +66,8 @@ class ElasticsearchQueryTest {
         parser.getCQLQuery().accept(generator);
         String json = generator.getResult().build();
         assertEquals(
-                "{\"query\":{\"bool\":{\"must\":[{\"bool\":{\"must\":[{\"term\":{\"dc.format\":\"online\"}}," +
-                        "{\"term\":{\"dc.type\":\"electronic\"}}]}},{\"term\":{\"dc.date\":\"2013\"}}]}}}",
+                "{\"query\":{\"bool\":{\"must\":[{\"term\":{\"dc.format\":\"online\"}}," +
+                        "{\"term\":{\"dc.type\":\"electronic\"}},{\"term\":{\"dc.date\":\"2013\"}}]}}}",
                 json);
     }
 
@@ -106,6 +108,54 @@ class ElasticsearchQueryTest {
                 json);
     }
 
+    @Test
+    void testTermsFilter() throws Exception {
+        ElasticsearchQueryGenerator generator = new ElasticsearchQueryGenerator("cql.allIndexes")
+                .termsfilter("location", Arrays.asList("DE-929", "DE-107", "yes", "DE-929"));
+        CQLParser parser = new CQLParser("unix");
+        parser.parse();
+        parser.getCQLQuery().accept(generator);
+        assertEquals("{\"from\":0,\"size\":10,\"query\":{\"filtered\":{\"query\":{\"simple_query_string\":"
+                        + "{\"query\":\"unix\",\"fields\":[\"cql.allIndexes\"],\"analyze_wildcard\":true,"
+                        + "\"default_operator\":\"and\"}},\"filter\":{\"terms\":{\"location\":[\"DE-929\",\"DE-107\",\"yes\"]}}}}}",
+                generator.getSourceResult());
+    }
+
+    @Test
+    void testChunkedTermsFilter() throws Exception {
+        long[] ids = new long[10000];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = i;
+        }
+        ElasticsearchQueryGenerator generator = new ElasticsearchQueryGenerator("cql.allIndexes")
+                .setMaxTermsCount(4096)
+                .termsfilter("id", ids);
+        generator.setDialect(Dialect.ELASTICSEARCH_8);
+        CQLParser parser = new CQLParser("unix");
+        parser.parse();
+        parser.getCQLQuery().accept(generator);
+        String json = generator.getQueryResult();
+        assertTrue(json.contains("\"filter\":{\"bool\":{\"should\":[{\"terms\":{\"id\":[0,1,2,"));
+        assertTrue(json.contains(",4095]}},{\"terms\":{\"id\":[4096,"));
+        assertTrue(json.contains(",8191]}},{\"terms\":{\"id\":[8192,"));
+        assertTrue(json.endsWith(",9999]}}]}}}}"));
+    }
+
+    @Test
+    void testTermsLookupFilter() throws Exception {
+        ElasticsearchQueryGenerator generator = new ElasticsearchQueryGenerator("cql.allIndexes")
+                .termsfilter("location", new TermsLookup("holdings", "network-1", "sigels"));
+        generator.setDialect(Dialect.ELASTICSEARCH_8);
+        CQLParser parser = new CQLParser("dc.title = unix and filter.format = online");
+        parser.parse();
+        parser.getCQLQuery().accept(generator);
+        assertEquals("{\"bool\":{\"must\":{\"bool\":{\"must\":{\"simple_query_string\":{\"query\":\"unix\",\"fields\":[\"dc.title\"],"
+                        + "\"analyze_wildcard\":true,\"default_operator\":\"and\"}}}},\"filter\":{\"bool\":{\"must\":["
+                        + "{\"term\":{\"format\":\"online\"}},{\"terms\":{\"location\":{\"index\":\"holdings\","
+                        + "\"id\":\"network-1\",\"path\":\"sigels\"}}}]}}}}",
+                generator.getQueryResult());
+    }
+
     private void test(String path) throws IOException {
         int count = 0;
         int ok = 0;
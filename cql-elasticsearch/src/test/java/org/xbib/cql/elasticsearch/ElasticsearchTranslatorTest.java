@@ -0,0 +1,302 @@
+package org.xbib.cql.elasticsearch;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.xbib.cql.BooleanOperator;
+import org.xbib.cql.CQLParser;
+import org.xbib.cql.Comparitor;
+import org.xbib.cql.QueryLimitExceededException;
+import org.xbib.cql.QueryLimits;
+import org.xbib.cql.SortedQuery;
+import org.xbib.cql.SyntaxException;
+import org.xbib.cql.elasticsearch.optimizer.ExpressionOptimizer;
+import org.xbib.cql.metrics.DefaultQueryMetrics;
+import org.xbib.cql.metrics.MetricsSnapshot;
+import org.xbib.cql.metrics.Phase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.LineNumberReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ElasticsearchTranslatorTest {
+
+    @Test
+    void testSharedTranslator() throws Exception {
+        List<String[]> lines = load("queries.txt");
+        ElasticsearchTranslator translator = new ElasticsearchTranslator("cql.allIndexes");
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Integer>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                futures.add(executorService.submit(() -> {
+                    int count = 0;
+                    for (String[] line : lines) {
+                        assertEquals(line[1], translator.translate(line[0], 0, 10).getSource());
+                        count++;
+                    }
+                    return count;
+                }));
+            }
+            for (Future<Integer> future : futures) {
+                assertEquals(lines.size(), (int) future.get(60, TimeUnit.SECONDS));
+            }
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    void testSettingsAndPlugins() {
+        AtomicInteger created = new AtomicInteger();
+        AtomicInteger facets = new AtomicInteger();
+        AtomicInteger sorts = new AtomicInteger();
+        QuerySettings settings = new QuerySettings("cql.allIndexes", "boost", "log2p", 2.0f, "sum", false);
+        ElasticsearchTranslator translator = new ElasticsearchTranslator(settings,
+                SourceGenerator::new,
+                () -> {
+                    created.incrementAndGet();
+                    return new QueryGenerator();
+                },
+                () -> {
+                    facets.incrementAndGet();
+                    return new FacetsGenerator();
+                },
+                () -> {
+                    sorts.incrementAndGet();
+                    return new SortGenerator();
+                });
+        TranslationResult result = translator.translate("Jörg", 20, 5);
+        assertEquals("{\"from\":20,\"size\":5,\"query\":{\"function_score\":{\"field_value_factor\":{\"field\":\"boost\",\"modifier\":\"log2p\",\"factor\":2.0},\"boost_mode\":\"sum\",\"query\":{\"simple_query_string\":{\"query\":\"Jörg\",\"fields\":[\"cql.allIndexes\"],\"analyze_wildcard\":true,\"default_operator\":\"and\"}}}}}",
+                result.getSource());
+        assertNull(result.getFilter());
+        translator.translate("Jörg", 0, 10);
+        assertEquals(2, created.get());
+        // the generators of sorts and aggregations are created only for queries that need them
+        assertEquals(0, facets.get());
+        assertEquals(0, sorts.get());
+        assertTrue(translator.translate("Jörg sortby dc.date", 0, 10).getSource().contains("\"sort\""));
+        assertEquals(0, facets.get());
+        assertEquals(1, sorts.get());
+    }
+
+    @Test
+    void testSimplification() {
+        ElasticsearchTranslator translator = new ElasticsearchTranslator("cql.allIndexes").withSimplification(true);
+        TranslationResult result = translator.translate("year > 2010 and year < 2000", 0, 10);
+        assertTrue(result.isNoResults());
+        assertEquals("{\"from\":0,\"size\":10,\"query\":{\"bool\":{\"must_not\":{\"match_all\":{}}}}}", result.getSource());
+        result = translator.translate("dc.title = unix and (dc.title = unix or dc.title = linux)", 0, 10);
+        assertFalse(result.isNoResults());
+        assertTrue(result.getSimplification().isChanged());
+        assertEquals(new ElasticsearchTranslator("cql.allIndexes").translate("dc.title = unix", 0, 10).getSource(),
+                result.getSource());
+        assertFalse(new ElasticsearchTranslator("cql.allIndexes").translate("a not a", 0, 10).isNoResults());
+    }
+
+    @Test
+    void testLimits() {
+        QuerySettings settings = new QuerySettings("cql.allIndexes");
+        QuerySettings limited = settings.withLimits(QueryLimits.UNLIMITED.withMaxClauses(2)
+                .withMaxLeadingWildcardTerms(0));
+        assertNotEquals(settings, limited);
+        assertEquals(settings, limited.withLimits(QueryLimits.UNLIMITED));
+        ElasticsearchTranslator translator = new ElasticsearchTranslator(limited);
+        translator.translate("a and b", 0, 10);
+        assertEquals(QueryLimits.Limit.CLAUSES, assertThrows(QueryLimitExceededException.class,
+                () -> translator.translate("a and b and c", 0, 10)).getLimit());
+        assertEquals(QueryLimits.Limit.LEADING_WILDCARD_TERMS, assertThrows(QueryLimitExceededException.class,
+                () -> translator.translate("dc.title = *nix", 0, 10)).getLimit());
+        // queries that are parsed elsewhere are checked before they are translated
+        CQLParser parser = new CQLParser("a or b or c");
+        parser.parse();
+        SortedQuery query = parser.getCQLQuery();
+        new ElasticsearchTranslator(settings).translate(query, 0, 10);
+        assertThrows(QueryLimitExceededException.class, () -> translator.translate(query, 0, 10));
+        assertThrows(QueryLimitExceededException.class,
+                () -> new MultiSearchRequest(translator).add(null, null, query, 0, 10));
+        try (BatchTranslator batch = new BatchTranslator(translator, 1)) {
+            List<BatchResult> results = batch.translateAll(List.of("a and b", "a and b and c"), 0, 10);
+            assertTrue(results.get(0).isSuccess());
+            assertTrue(results.get(1).getError() instanceof QueryLimitExceededException);
+        }
+    }
+
+    @Test
+    void testMetrics() throws IOException {
+        DefaultQueryMetrics metrics = new DefaultQueryMetrics();
+        ElasticsearchTranslator translator = new ElasticsearchTranslator("cql.allIndexes")
+                .withOptimizer(ExpressionOptimizer.defaults())
+                .withNormalization(true)
+                .withMetrics(metrics);
+        TranslationResult result = translator.translate("dc.title = unix and dc.date > 2000", 0, 10);
+        assertEquals(new ElasticsearchTranslator("cql.allIndexes")
+                .withOptimizer(ExpressionOptimizer.defaults())
+                .withNormalization(true)
+                .translate("dc.title = unix and dc.date > 2000", 0, 10).getSource(), result.getSource());
+        CQLParser parser = new CQLParser("a or b");
+        parser.parse();
+        translator.translate(parser.getCQLQuery(), 0, 10, new Utf8JsonWriter(new ByteArrayOutputStream()));
+        assertThrows(SyntaxException.class, () -> translator.translate("a and", 0, 10));
+        MetricsSnapshot snapshot = metrics.snapshot();
+        assertEquals(1L, snapshot.getLatency(Phase.LEX).getCount());
+        assertEquals(1L, snapshot.getLatency(Phase.PARSE).getCount());
+        assertEquals(2L, snapshot.getLatency(Phase.NORMALIZE).getCount());
+        assertEquals(2L, snapshot.getLatency(Phase.TRANSLATE).getCount());
+        assertEquals(2L, snapshot.getLatency(Phase.OPTIMIZE).getCount());
+        assertEquals(2L, snapshot.getLatency(Phase.EMIT_QUERY).getCount());
+        assertEquals(2L, snapshot.getLatency(Phase.EMIT_SOURCE).getCount());
+        assertEquals(1L, snapshot.getFailureCount(Phase.PARSE));
+        // the operator of the query with the syntax error is counted, too
+        assertEquals(2L, snapshot.getCount(BooleanOperator.AND));
+        assertEquals(1L, snapshot.getCount(Comparitor.GREATER));
+    }
+
+    @Test
+    void testFlightRecorderEvents() throws IOException {
+        CQLParser parser = new CQLParser("dc.title = \"Jörg\" and dc.date > 2000");
+        parser.parse();
+        SortedQuery query = parser.getCQLQuery();
+        // events record the fingerprint only if the query is rendered already
+        long fingerprint = query.getFingerprint();
+        ElasticsearchTranslator translator = new ElasticsearchTranslator("cql.allIndexes");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        String[] source = new String[1];
+        Path file = Files.createTempFile("cql", ".jfr");
+        List<RecordedEvent> events = new ArrayList<>();
+        try (Recording recording = new Recording()) {
+            recording.enable("org.xbib.cql.Generate").withoutThreshold();
+            recording.enable("org.xbib.cql.Source").withoutThreshold();
+            recording.start();
+            source[0] = translator.translate(query, 0, 10).getSource();
+            translator.translate(query, 0, 10, new Utf8JsonWriter(out));
+            recording.stop();
+            recording.dump(file);
+            for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+                if (event.getEventType().getName().startsWith("org.xbib.cql.")) {
+                    events.add(event);
+                }
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+        events.sort((e1, e2) -> e1.getStartTime().compareTo(e2.getStartTime()));
+        assertEquals(4, events.size());
+        for (int i = 0; i < events.size(); i++) {
+            RecordedEvent event = events.get(i);
+            assertEquals(i % 2 == 0 ? "org.xbib.cql.Generate" : "org.xbib.cql.Source", event.getEventType().getName());
+            assertEquals(fingerprint, event.getLong("fingerprint"));
+            assertEquals(2, event.getInt("clauses"));
+            assertEquals("success", event.getString("outcome"));
+        }
+        assertEquals("ElasticsearchQueryGenerator", events.get(0).getString("generator"));
+        assertEquals(translator.translate(query, 0, 10).getQuery().getBytes(StandardCharsets.UTF_8).length,
+                events.get(0).getLong("outputSize"));
+        assertEquals(source[0].getBytes(StandardCharsets.UTF_8).length, events.get(1).getLong("outputSize"));
+        assertEquals(out.size(), events.get(3).getLong("outputSize"));
+        assertEquals(out.size(), events.get(1).getLong("outputSize"));
+    }
+
+    @Test
+    void testDeepNesting() throws InterruptedException {
+        int depth = 5000;
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            sb.append("idKeyword = ").append(i).append(i % 2 == 0 ? " and (" : " or (");
+        }
+        sb.append("title = end");
+        for (int i = 0; i < depth; i++) {
+            sb.append(')');
+        }
+        CQLParser parser = new CQLParser(sb.toString());
+        parser.parse();
+        SortedQuery query = parser.getCQLQuery();
+        String[] sources = new String[2];
+        // the translation must not depend on the stack size
+        Thread thread = new Thread(null, () -> {
+            sources[0] = new ElasticsearchTranslator("cql.allIndexes").translate(query, 0, 10).getSource();
+            sources[1] = new ElasticsearchTranslator("cql.allIndexes")
+                    .withOptimizer(ExpressionOptimizer.defaults())
+                    .withClausePlacement(new ClausePlacement())
+                    .translate(query, 0, 10).getSource();
+        }, "small-stack", 128 * 1024);
+        thread.start();
+        thread.join();
+        for (String source : sources) {
+            assertEquals(depth, count(source, "{\"term\":{\"idKeyword\""));
+            assertEquals(depth, count(source, "\"bool\""));
+            assertEquals(count(source, "{"), count(source, "}"));
+        }
+        assertTrue(sources[1].contains("\"filter\""));
+    }
+
+    @Test
+    void testDeepNestingNormalized() throws InterruptedException {
+        int depth = 1000;
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            sb.append("idKeyword = ").append(i).append(i % 2 == 0 ? " and (" : " or (");
+        }
+        sb.append("title = end");
+        for (int i = 0; i < depth; i++) {
+            sb.append(')');
+        }
+        CQLParser parser = new CQLParser(sb.toString());
+        parser.parse();
+        SortedQuery query = parser.getCQLQuery();
+        String[] source = new String[1];
+        // normalization and simplification must not depend on the stack size
+        Thread thread = new Thread(null, () -> source[0] = new ElasticsearchTranslator("cql.allIndexes")
+                .withNormalization(true)
+                .withSimplification(true)
+                .translate(query, 0, 10).getSource(), "small-stack", 128 * 1024);
+        thread.start();
+        thread.join();
+        assertNotNull(source[0]);
+        assertEquals(depth, count(source[0], "{\"term\":{\"idKeyword\""));
+        assertEquals(count(source[0], "{"), count(source[0], "}"));
+    }
+
+    private static int count(String s, String part) {
+        int count = 0;
+        for (int pos = s.indexOf(part); pos >= 0; pos = s.indexOf(part, pos + part.length())) {
+            count++;
+        }
+        return count;
+    }
+
+    private List<String[]> load(String path) throws IOException {
+        List<String[]> list = new ArrayList<>();
+        try (LineNumberReader lr = new LineNumberReader(new InputStreamReader(getClass().getResourceAsStream(path),
+                StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = lr.readLine()) != null) {
+                int pos = line.indexOf('|');
+                if (line.trim().length() > 0 && !line.startsWith("#") && pos > 0) {
+                    list.add(new String[] { line.substring(0, pos), line.substring(pos + 1) });
+                }
+            }
+        }
+        return list;
+    }
+}
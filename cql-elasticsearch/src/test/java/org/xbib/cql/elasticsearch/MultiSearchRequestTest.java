@@ -0,0 +1,40 @@
+package org.xbib.cql.elasticsearch;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MultiSearchRequestTest {
+
+    @Test
+    void testNewlineDelimitedBody() throws Exception {
+        ElasticsearchTranslator translator = new ElasticsearchTranslator("cql.allIndexes");
+        CompiledQuery compiled = new CompiledQueryCache(10)
+                .get("dc.creator = Wolfinger", translator.getSettings(), 0, 0);
+        MultiSearchRequest request = new MultiSearchRequest(translator)
+                .add("books", "session-1", "Jörg and dc.title = unix", 0, 10)
+                .add(null, null, "dc.subject = \"\\\"Linux\\\"\" sortby dc.date/sort.descending", 10, 20)
+                .add("books,articles", null, compiled);
+        assertEquals(3, request.size());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        request.writeTo(out);
+        String expected = "{\"index\":\"books\",\"preference\":\"session-1\"}\n"
+                + translator.translate("Jörg and dc.title = unix", 0, 10).getSource() + "\n"
+                + "{}\n"
+                + translator.translate("dc.subject = \"\\\"Linux\\\"\" sortby dc.date/sort.descending", 10, 20).getSource() + "\n"
+                + "{\"index\":\"books,articles\"}\n"
+                + compiled.getSource() + "\n";
+        assertEquals(expected, out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testIncompleteDocument() throws Exception {
+        Utf8JsonWriter writer = new Utf8JsonWriter(new ByteArrayOutputStream());
+        writer.beginMap().buildKey("a");
+        assertThrows(IllegalStateException.class, writer::newline);
+    }
+}
@@ -0,0 +1,92 @@
+package org.xbib.cql.elasticsearch;
+
+import org.junit.jupiter.api.Test;
+import org.xbib.cql.QueryTemplate;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PreparedQueryTest {
+
+    @Test
+    void testBind() throws IOException {
+        ElasticsearchTranslator translator = new ElasticsearchTranslator("cql.allIndexes");
+        PreparedQuery prepared = translator.prepare("dc.title = ? and dc.date > ?", 0, 10);
+        assertEquals(2, prepared.getParameterCount());
+        assertTrue(prepared.isPrepared("Jörg", 2000L));
+        assertEquals(translator.translate("dc.title = \"Jörg\" and dc.date > 2000", 0, 10).getSource(),
+                prepared.getSource("Jörg", 2000L));
+        assertEquals(translator.translate("dc.title = \"unix\" and dc.date > 1990", 0, 10).getSource(),
+                prepared.getSource("unix", 1990));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        prepared.writeSource(out, "unix", 1990);
+        assertEquals(prepared.getSource("unix", 1990), new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testTranslatedInFull() throws IOException {
+        ElasticsearchTranslator translator = new ElasticsearchTranslator("cql.allIndexes");
+        PreparedQuery prepared = translator.prepare("dc.title = ?", 0, 10);
+        for (String value : new String[] {"unix linux", "uni*", "a \"b\"", "", "true", "yes", "on", "false", "no",
+                "off"}) {
+            assertFalse(prepared.isPrepared(value));
+            String expected = translator.translate(prepared.getTemplate().bind(QueryTemplate.term(value)), 0, 10)
+                    .getSource();
+            assertEquals(expected, prepared.getSource(value));
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            prepared.writeSource(out, value);
+            assertEquals(expected, new String(out.toByteArray(), StandardCharsets.UTF_8));
+        }
+        assertEquals(translator.translate("dc.title = \"unix linux\"", 0, 10).getSource(),
+                prepared.getSource("unix linux"));
+        assertEquals(translator.translate("dc.title = \"yes\"", 0, 10).getSource(), prepared.getSource("yes"));
+        assertTrue(prepared.isPrepared("Yes"));
+        assertEquals(translator.translate("dc.title = \"Yes\"", 0, 10).getSource(), prepared.getSource("Yes"));
+    }
+
+    @Test
+    void testTypes() {
+        ElasticsearchTranslator translator = new ElasticsearchTranslator("cql.allIndexes");
+        PreparedQuery prepared = translator.prepare("dc.date >= ? and price < ?", 0, 10);
+        assertTrue(prepared.isPrepared(LocalDate.of(2001, 2, 3), 9.5));
+        // dates are translated to years
+        QueryTemplate template = prepared.getTemplate();
+        assertEquals(translator.translate(template.bind(QueryTemplate.term(LocalDate.of(2001, 2, 3)),
+                QueryTemplate.term(9.5)), 0, 10).getSource(), prepared.getSource(LocalDate.of(2001, 2, 3), 9.5));
+        assertTrue(prepared.getSource(LocalDate.of(2001, 2, 3), 9.5).contains("\"from\":\"2001\""));
+        // the date is converted to UTC, which is the next year here
+        ZonedDateTime date = ZonedDateTime.of(2001, 12, 31, 23, 30, 0, 0, ZoneOffset.ofHours(-1));
+        assertEquals(translator.translate(template.bind(QueryTemplate.term(date), QueryTemplate.term(9L)), 0, 10)
+                .getSource(), prepared.getSource(date, 9L));
+        assertTrue(prepared.getSource(date, 9L).contains("\"from\":\"2002\""));
+        assertThrows(IllegalArgumentException.class, () -> prepared.getSource(LocalDate.of(2001, 2, 3)));
+        assertThrows(IllegalArgumentException.class, () -> prepared.getSource(new Object(), 1L));
+        assertThrows(IllegalArgumentException.class, () -> prepared.getSource(null, 1L));
+    }
+
+    @Test
+    void testSimplification() {
+        ElasticsearchTranslator translator = new ElasticsearchTranslator("cql.allIndexes")
+                .withSimplification(true)
+                .withNormalization(true);
+        PreparedQuery prepared = translator.prepare("year > ? and year < ?", 0, 10);
+        assertEquals(translator.translate("year > 2000 and year < 2010", 0, 10).getSource(),
+                prepared.getSource(2000L, 2010L));
+        assertEquals(translator.translate("year > 2010 and year < 2000", 0, 10).getSource(),
+                prepared.getSource(2010L, 2000L));
+        prepared = translator.prepare("dc.title = ? or dc.creator = ?", 0, 10);
+        assertEquals(translator.translate("dc.title = \"b\" or dc.creator = \"a\"", 0, 10).getSource(),
+                prepared.getSource("b", "a"));
+        assertEquals(translator.translate("dc.title = \"a\" or dc.creator = \"b\"", 0, 10).getSource(),
+                prepared.getSource("a", "b"));
+    }
+}
@@ -0,0 +1,89 @@
+package org.xbib.cql.elasticsearch;
+
+import org.junit.jupiter.api.Test;
+import org.xbib.cql.CQLParser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.LineNumberReader;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class Utf8JsonWriterTest {
+
+    @Test
+    void testEscapingAndEncoding() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Utf8JsonWriter writer = new Utf8JsonWriter(out);
+        writer.beginMap()
+                .buildKey("a\"b").buildValue("x\\y\n\u0001")
+                .buildKey("text").buildValue("Jörg € 😀")
+                .field("size", 10)
+                .buildKey("raw").raw("{\"k\":[1,2]}")
+                .endMap();
+        writer.flush();
+        assertEquals("{\"a\\\"b\":\"x\\\\y\\n\\u0001\",\"text\":\"Jörg € 😀\",\"size\":10,\"raw\":{\"k\":[1,2]}}",
+                new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testLongValue() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            sb.append("abä中\"");
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Utf8JsonWriter writer = new Utf8JsonWriter(Channels.newChannel(out));
+        writer.buildValue(sb);
+        writer.flush();
+        String expected = "\"" + sb.toString().replace("\"", "\\\"") + "\"";
+        assertEquals(expected, new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testByteBufferOverflow() {
+        ByteBuffer buffer = ByteBuffer.allocate(16 * 1024);
+        buffer.put((byte) 'x');
+        Utf8JsonWriter writer = new Utf8JsonWriter(buffer);
+        char[] value = new char[16 * 1024];
+        Arrays.fill(value, 'a');
+        // the first 8 KB are handed to the buffer before the overflow
+        assertThrows(BufferOverflowException.class, () -> {
+            writer.buildValue(new String(value));
+            writer.flush();
+        });
+        assertEquals(1, buffer.position());
+    }
+
+    @Test
+    void testWriteSourceMatchesSourceResult() throws Exception {
+        int count = 0;
+        try (LineNumberReader lr = new LineNumberReader(new InputStreamReader(
+                getClass().getResourceAsStream("queries.txt"), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = lr.readLine()) != null) {
+                int pos = line.indexOf('|');
+                if (line.trim().length() > 0 && !line.startsWith("#") && pos > 0) {
+                    CQLParser parser = new CQLParser(line.substring(0, pos));
+                    parser.parse();
+                    ElasticsearchQueryGenerator generator = new ElasticsearchQueryGenerator("cql.allIndexes");
+                    parser.getCQLQuery().accept(generator);
+                    ByteBuffer buffer = ByteBuffer.allocate(16 * 1024);
+                    generator.writeSource(new Utf8JsonWriter(buffer));
+                    buffer.flip();
+                    assertEquals(line.substring(pos + 1), StandardCharsets.UTF_8.decode(buffer).toString());
+                    assertEquals(line.substring(pos + 1), generator.getSourceResult());
+                    count++;
+                }
+            }
+        }
+        assertEquals(true, count > 0);
+    }
+}
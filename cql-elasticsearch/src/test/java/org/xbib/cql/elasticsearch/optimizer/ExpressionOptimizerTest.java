@@ -0,0 +1,99 @@
+package org.xbib.cql.elasticsearch.optimizer;
+
+import org.junit.jupiter.api.Test;
+import org.xbib.cql.elasticsearch.ElasticsearchTranslator;
+import org.xbib.cql.elasticsearch.TranslationResult;
+import org.xbib.cql.elasticsearch.ast.Expression;
+import org.xbib.cql.elasticsearch.ast.Name;
+import org.xbib.cql.elasticsearch.ast.Node;
+import org.xbib.cql.elasticsearch.ast.Operator;
+import org.xbib.cql.elasticsearch.ast.Token;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExpressionOptimizerTest {
+
+    private final ElasticsearchTranslator translator = new ElasticsearchTranslator("cql.allIndexes")
+            .withOptimizer(ExpressionOptimizer.defaults());
+
+    @Test
+    void testTerms() {
+        TranslationResult result = translator.translate("dc.typeKeyword = a or dc.typeKeyword = b or dc.typeKeyword = c", 0, 10);
+        assertEquals("{\"from\":0,\"size\":10,\"query\":{\"terms\":{\"dc.typeKeyword\":[\"a\",\"b\",\"c\"]}}}",
+                result.getSource());
+        assertTrue(result.getOptimization().getFiredRules().containsKey("terms"));
+        // analyzed fields are not collapsed
+        result = translator.translate("dc.type = a or dc.type = b", 0, 10);
+        assertFalse(result.getOptimization().isChanged());
+    }
+
+    @Test
+    void testRange() {
+        TranslationResult result = translator.translate("date > 2000 and date < 2010", 0, 10);
+        assertEquals("{\"from\":0,\"size\":10,\"query\":{\"range\":{\"date\":{\"from\":\"2000\",\"to\":\"2010\",\"include_lower\":false,\"include_upper\":false}}}}",
+                result.getSource());
+        result = translator.translate("unix and date >= 2000 and (date > 2005 and date <= 2010)", 0, 10);
+        assertEquals("{\"from\":0,\"size\":10,\"query\":{\"bool\":{\"must\":[{\"simple_query_string\":{\"query\":\"unix\",\"fields\":[\"cql.allIndexes\"],\"analyze_wildcard\":true,\"default_operator\":\"and\"}},{\"range\":{\"date\":{\"from\":\"2005\",\"to\":\"2010\",\"include_lower\":false,\"include_upper\":true}}}]}}}",
+                result.getSource());
+        assertEquals(2, (int) result.getOptimization().getFiredRules().get("range"));
+        // the chain is built flat, and the parenthesized conjunction becomes a range before it is flattened
+        assertFalse(result.getOptimization().getFiredRules().containsKey("flatten"));
+    }
+
+    @Test
+    void testLongChain() {
+        StringBuilder or = new StringBuilder("idKeyword = 0");
+        StringBuilder and = new StringBuilder("id = 0");
+        for (int i = 1; i < 10000; i++) {
+            or.append(" or idKeyword = ").append(i);
+            and.append(" and id = ").append(i);
+        }
+        // one terms query with all values
+        String source = translator.translate(or.toString(), 0, 10).getSource();
+        assertTrue(source.startsWith("{\"from\":0,\"size\":10,\"query\":{\"terms\":{\"idKeyword\":[\"0\",\"1\","));
+        assertTrue(source.endsWith(",\"9999\"]}}}"));
+        // one bool query with all clauses
+        source = new ElasticsearchTranslator("cql.allIndexes").translate(and.toString(), 0, 10).getSource();
+        assertTrue(source.startsWith("{\"from\":0,\"size\":10,\"query\":{\"bool\":{\"must\":[{\"simple_query_string\""));
+        assertEquals(1, source.split("\"bool\"", -1).length - 1);
+        assertEquals(10000, source.split("simple_query_string", -1).length - 1);
+    }
+
+    @Test
+    void testWithoutOptimizer() {
+        TranslationResult result = new ElasticsearchTranslator("cql.allIndexes")
+                .translate("date > 2000 and date < 2010", 0, 10);
+        assertNull(result.getOptimization());
+        assertEquals("{\"from\":0,\"size\":10,\"query\":{\"bool\":{\"must\":[{\"range\":{\"date\":{\"from\":\"2000\",\"include_lower\":false}}},{\"range\":{\"date\":{\"to\":\"2010\",\"include_upper\":false}}}]}}}",
+                result.getSource());
+    }
+
+    @Test
+    void testCustomRule() {
+        RewriteRule matchAll = new RewriteRule() {
+            @Override
+            public String getName() {
+                return "match_all";
+            }
+
+            @Override
+            public Node rewrite(Expression expression) {
+                return expression.getOperator() == Operator.PHRASE
+                        && "*".equals(expression.getArg2().toString())
+                        ? new Expression(Operator.MATCH_ALL) : expression;
+            }
+        };
+        Expression expression = new Expression(Operator.PHRASE, new Name("title"), new Token("*"));
+        Optimization optimization = new ExpressionOptimizer(matchAll).optimize(expression);
+        assertEquals(Operator.MATCH_ALL, ((Expression) optimization.getNode()).getOperator());
+        assertEquals(1, (int) optimization.getFiredRules().get("match_all"));
+        Expression unchanged = new Expression(Operator.EQUALS, new Name("title"), new Token("unix"));
+        optimization = new ExpressionOptimizer(matchAll).optimize(unchanged);
+        assertSame(unchanged, optimization.getNode());
+        assertEquals(1, optimization.getPasses());
+    }
+}